@@ -1,10 +1,12 @@
 package ejercicio2;
 
 import ejercicio2.auth.Authenticator;
+import ejercicio2.database.AsyncDataBaseManager;
 import ejercicio2.database.DataBaseManager;
 import ejercicio2.exceptions.AuthenticationException;
 import ejercicio2.exceptions.OrderException;
 import ejercicio2.exceptions.PaymentException;
+import ejercicio2.interfaces.IAsyncDataBaseManager;
 import ejercicio2.interfaces.IAuthenticator;
 import ejercicio2.interfaces.IDataBaseManager;
 import ejercicio2.interfaces.IOrderManager;
@@ -14,8 +16,13 @@ import ejercicio2.model.Pizza;
 import ejercicio2.model.User;
 import ejercicio2.order.OrderManager;
 import ejercicio2.payment.PaymentProcessor;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Clase principal que demuestra la inyección de dependencias
@@ -24,14 +31,18 @@ import java.util.List;
 public class Main {
 
     public static void main(String[] args) {
+        // Las operaciones asíncronas comparten un ejecutor de pocos hilos
+        ExecutorService executor = Executors.newFixedThreadPool(2);
         try {
             // Crear las dependencias
             IDataBaseManager dbManager = new DataBaseManager();
             dbManager.connect();
 
+            IAsyncDataBaseManager asyncDbManager = new AsyncDataBaseManager(dbManager, executor);
+
             IAuthenticator authenticator = new Authenticator(dbManager);
-            IOrderManager orderManager = new OrderManager(dbManager);
-            IPaymentProcessor paymentProcessor = new PaymentProcessor(dbManager);
+            IOrderManager orderManager = new OrderManager(dbManager, asyncDbManager);
+            IPaymentProcessor paymentProcessor = new PaymentProcessor(dbManager, asyncDbManager);
 
             // Registrar un usuario
             User user = authenticator.register("usuario1", "password123", "usuario1@example.com");
@@ -52,12 +63,18 @@ public class Main {
             pizzas.add(pizza1);
             pizzas.add(pizza2);
 
-            // Crear un pedido
-            Order order = orderManager.createOrder(user, pizzas);
-            System.out.println("Pedido creado: " + order);
-
-            // Procesar el pago
-            String transactionId = paymentProcessor.processPayment(order, "1234 5678 9012 3456", "12/25", "123");
+            // Tarjeta que caduca dentro de un año, para que la demo no dependa de la fecha
+            String expiryDate = YearMonth.now().plusYears(1).format(DateTimeFormatter.ofPattern("MM/yy"));
+
+            // Crear un pedido y procesar el pago encadenados, sin bloquear el hilo principal
+            Order order = orderManager.createOrderAsync(user, pizzas)
+                    .thenCompose(created -> {
+                        System.out.println("Pedido creado: " + created);
+                        return paymentProcessor.processPaymentAsync(created, "1234 5678 9012 3456", expiryDate, "123")
+                                .thenApply(transactionId -> created);
+                    })
+                    .join();
+            String transactionId = order.getPaymentTransactionId();
             System.out.println("Pago procesado, transacción: " + transactionId);
 
             // Verificar el estado del pago
@@ -79,6 +96,12 @@ public class Main {
         } catch (AuthenticationException | OrderException | PaymentException e) {
             System.err.println("Error: " + e.getMessage());
             e.printStackTrace();
+        } catch (CompletionException e) {
+            System.err.println("Error: " + e.getCause().getMessage());
+            e.getCause().printStackTrace();
+        } finally {
+            // Sus hilos no son demonio: sin cerrarlo la JVM no terminaría
+            executor.shutdown();
         }
     }
 }
\ No newline at end of file
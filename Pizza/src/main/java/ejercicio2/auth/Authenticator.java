@@ -5,6 +5,7 @@ import ejercicio2.interfaces.IAuthenticator;
 import ejercicio2.interfaces.IDataBaseManager;
 import ejercicio2.model.User;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
@@ -14,17 +15,21 @@ import java.util.UUID;
  */
 public class Authenticator implements IAuthenticator {
 
+    private static final String USERNAME_INDEX = "username";
+
     private final IDataBaseManager dbManager;
     private final Map<String, Long> activeTokens; // Token -> userId
 
     /**
      * Constructor con inyección de dependencia.
+     * Declara el índice de usuarios por nombre que usa login.
      *
      * @param dbManager Gestor de base de datos
      */
     public Authenticator(IDataBaseManager dbManager) {
         this.dbManager = dbManager;
         this.activeTokens = new HashMap<>();
+        this.dbManager.createIndex(USERNAME_INDEX, User.class, User::getUsername);
     }
 
     @Override
@@ -46,13 +51,12 @@ public class Authenticator implements IAuthenticator {
             throw new AuthenticationException("El nombre de usuario y la contraseña son obligatorios");
         }
 
-        // En una implementación real, se buscaría al usuario por username en la base de datos
-        // y se verificaría la contraseña encriptada
-
-        // Simulación de búsqueda de usuario
-        // En una implementación real se haría una consulta específica
-        // Aquí simplificamos asumiendo que tenemos el usuario
-        User user = new User(1L, username, password, username + "@example.com", "Dirección de ejemplo", "123456789");
+        // En una implementación real se verificaría la contraseña encriptada
+        List<User> users = dbManager.findBy(USERNAME_INDEX, User.class, username);
+        if (users.isEmpty()) {
+            throw new AuthenticationException("Usuario no encontrado");
+        }
+        User user = users.get(0);
 
         if (!user.getPassword().equals(password)) {
             throw new AuthenticationException("Contraseña incorrecta");
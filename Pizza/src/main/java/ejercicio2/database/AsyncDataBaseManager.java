@@ -0,0 +1,120 @@
+package ejercicio2.database;
+
+import ejercicio2.interfaces.IAsyncDataBaseManager;
+import ejercicio2.interfaces.IDataBaseManager;
+import ejercicio2.interfaces.ITransaction;
+import ejercicio2.model.Versioned;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Adaptador que ofrece un IDataBaseManager síncrono como IAsyncDataBaseManager.
+ * Cada operación se ejecuta en el ejecutor indicado, de modo que el hilo que
+ * la pide no espera nunca al almacenamiento: con un ejecutor de pocos hilos se
+ * pueden tener muchas operaciones en curso, y el número de hilos limita cuántas
+ * llegan a la vez al almacenamiento.
+ */
+public class AsyncDataBaseManager implements IAsyncDataBaseManager {
+
+    private final IDataBaseManager dbManager;
+    private final Executor executor;
+
+    /**
+     * Constructor.
+     *
+     * @param dbManager Gestor de base de datos síncrono
+     * @param executor Ejecutor en el que se realizan las operaciones
+     */
+    public AsyncDataBaseManager(IDataBaseManager dbManager, Executor executor) {
+        if (dbManager == null || executor == null) {
+            throw new IllegalArgumentException("El gestor de base de datos y el ejecutor no pueden ser nulos");
+        }
+        this.dbManager = dbManager;
+        this.executor = executor;
+    }
+
+    @Override
+    public <T> CompletableFuture<T> saveAsync(T object) {
+        return submit(() -> dbManager.save(object));
+    }
+
+    @Override
+    public <T> CompletableFuture<Optional<T>> findByIdAsync(Long id, Class<T> clazz) {
+        return submit(() -> dbManager.findById(id, clazz));
+    }
+
+    @Override
+    public <T> CompletableFuture<T> updateAsync(T object) {
+        return submit(() -> dbManager.update(object));
+    }
+
+    @Override
+    public <T> CompletableFuture<Optional<Versioned<T>>> findVersionedByIdAsync(Long id, Class<T> clazz) {
+        return submit(() -> dbManager.findVersionedById(id, clazz));
+    }
+
+    @Override
+    public <T> CompletableFuture<Versioned<T>> compareAndUpdateAsync(T object, long expectedVersion) {
+        return submit(() -> dbManager.compareAndUpdate(object, expectedVersion));
+    }
+
+    @Override
+    public <T> CompletableFuture<Boolean> deleteAsync(Long id, Class<T> clazz) {
+        return submit(() -> dbManager.delete(id, clazz));
+    }
+
+    @Override
+    public <T> CompletableFuture<List<T>> findAllAsync(Class<T> clazz) {
+        return submit(() -> dbManager.findAll(clazz));
+    }
+
+    @Override
+    public <T> CompletableFuture<List<T>> saveAllAsync(Collection<T> objects) {
+        return submit(() -> dbManager.saveAll(objects));
+    }
+
+    @Override
+    public <T> CompletableFuture<List<T>> findByAsync(String indexName, Class<T> clazz, Object key) {
+        return submit(() -> dbManager.findBy(indexName, clazz, key));
+    }
+
+    @Override
+    public <R> CompletableFuture<R> inTransactionAsync(TransactionWork<R> work) {
+        return submit(() -> {
+            try (ITransaction transaction = dbManager.beginTransaction()) {
+                R result = work.execute(transaction);
+                transaction.commit();
+                return result;
+            }
+        });
+    }
+
+    /**
+     * Ejecuta una operación en el ejecutor. A diferencia de
+     * CompletableFuture.supplyAsync, el futuro falla con la excepción de la
+     * operación y no con una CompletionException que la envuelva.
+     *
+     * @param operation Operación a ejecutar
+     * @return Futuro con el resultado de la operación
+     */
+    private <R> CompletableFuture<R> submit(Callable<R> operation) {
+        CompletableFuture<R> future = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                try {
+                    future.complete(operation.call());
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RuntimeException e) {
+            // El ejecutor puede rechazar la tarea, por ejemplo si está apagado
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+}
@@ -0,0 +1,85 @@
+package ejercicio2.database;
+
+import ejercicio2.interfaces.IIdGenerator;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generador de IDs por bloques. Cada hilo reserva un bloque de IDs
+ * consecutivos de un contador compartido y los entrega sin tocar el
+ * contador hasta agotarlo, así que los hilos solo compiten una vez por
+ * bloque.
+ *
+ * Con un solo hilo los IDs son consecutivos; con varios crecen por bloques.
+ * Los IDs de un bloque que no se llegan a usar se pierden.
+ */
+public class BlockIdGenerator implements IIdGenerator {
+
+    private static final int DEFAULT_BLOCK_SIZE = 64;
+
+    private final AtomicLong highWaterMark;
+    private final int blockSize;
+    private final ThreadLocal<long[]> blocks; // {siguiente, límite} del bloque del hilo
+
+    /**
+     * Constructor por defecto. Empieza en 1 con bloques de 64 IDs.
+     */
+    public BlockIdGenerator() {
+        this(1, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param firstId Primer ID a entregar
+     * @param blockSize Número de IDs que reserva cada hilo de una vez
+     */
+    public BlockIdGenerator(long firstId, int blockSize) {
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("El tamaño de bloque debe ser positivo");
+        }
+        this.highWaterMark = new AtomicLong(firstId);
+        this.blockSize = blockSize;
+        this.blocks = ThreadLocal.withInitial(() -> new long[2]);
+    }
+
+    @Override
+    public long nextId() {
+        long[] block = blocks.get();
+        if (block[0] == block[1]) {
+            block[0] = highWaterMark.getAndAdd(blockSize);
+            block[1] = block[0] + blockSize;
+        }
+        return block[0]++;
+    }
+
+    @Override
+    public long[] nextIds(int count) {
+        if (count < blockSize) {
+            return IIdGenerator.super.nextIds(count);
+        }
+
+        // Los lotes grandes se reservan directamente sin pasar por el bloque del hilo
+        long first = highWaterMark.getAndAdd(count);
+        long[] ids = new long[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = first + i;
+        }
+        return ids;
+    }
+
+    /**
+     * Los bloques ya repartidos no se revisan: solo se garantiza que los
+     * bloques siguientes empiecen después del ID.
+     */
+    @Override
+    public void observe(long id) {
+        if (id >= highWaterMark.get()) {
+            highWaterMark.accumulateAndGet(id + 1, Math::max);
+        }
+    }
+
+    @Override
+    public long getHighWaterMark() {
+        return highWaterMark.get();
+    }
+}
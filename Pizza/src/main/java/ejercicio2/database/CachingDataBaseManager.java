@@ -0,0 +1,469 @@
+package ejercicio2.database;
+
+import ejercicio2.exceptions.ChangeFeedOverrunException;
+import ejercicio2.interfaces.IChangeSubscription;
+import ejercicio2.interfaces.IDataBaseManager;
+import ejercicio2.interfaces.ITransaction;
+import ejercicio2.model.CacheStats;
+import ejercicio2.model.ChangeEvent;
+import ejercicio2.model.Page;
+import ejercicio2.model.Query;
+import ejercicio2.model.QueryResult;
+import ejercicio2.model.Versioned;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Decorador que añade una caché de lectura a otro IDataBaseManager.
+ *
+ * Las búsquedas por ID (findById y findAllById) se sirven desde una caché
+ * por clase de tamaño acotado y, si fallan, leen del gestor decorado y
+ * guardan el resultado. Toda escritura hecha a través del decorador, también
+ * las de sus transacciones, invalida las filas afectadas después de
+ * aplicarse, y las cargas que se solapan con una escritura no llegan a
+ * guardarse, así que una lectura posterior a una escritura nunca devuelve la
+ * fila anterior. El resto de consultas pasan directamente al gestor decorado.
+ *
+ * Si el gestor decorado es un DataBaseManager, el decorador además sigue su
+ * flujo de cambios y, antes de servir una búsqueda por ID, invalida las filas
+ * que han cambiado desde la anterior: así tampoco se sirven filas escritas o
+ * borradas sin pasar por el decorador, como las que expulsa la retención. Si
+ * se queda tan atrás que el flujo ha descartado cambios, vacía la caché.
+ * Con otros gestores, las escrituras que no pasan por el decorador no
+ * invalidan la caché.
+ */
+public class CachingDataBaseManager implements IDataBaseManager {
+
+    private static final int DEFAULT_CAPACITY = 10_000;
+    private static final int CHANGE_BATCH = 1024;
+
+    private final IDataBaseManager dbManager;
+    private final int capacity;
+    private final ConcurrentMap<Class<?>, SegmentedLruCache<Object>> caches;
+    private final DataBaseManager changeSource; // null si el gestor decorado no tiene flujo de cambios
+    private final Object changesLock;
+    private IChangeSubscription changes; // Protegida por changesLock
+    private volatile long appliedSequence;
+
+    /**
+     * Constructor con la capacidad por defecto.
+     *
+     * @param dbManager Gestor de base de datos decorado
+     */
+    public CachingDataBaseManager(IDataBaseManager dbManager) {
+        this(dbManager, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param dbManager Gestor de base de datos decorado
+     * @param capacity Número máximo de filas en caché por cada clase
+     */
+    public CachingDataBaseManager(IDataBaseManager dbManager, int capacity) {
+        if (dbManager == null) {
+            throw new IllegalArgumentException("El gestor de base de datos no puede ser nulo");
+        }
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("La capacidad de la caché debe ser positiva");
+        }
+        this.dbManager = dbManager;
+        this.capacity = capacity;
+        this.caches = new ConcurrentHashMap<>();
+        this.changeSource = dbManager instanceof DataBaseManager ? (DataBaseManager) dbManager : null;
+        this.changesLock = new Object();
+        if (changeSource != null) {
+            this.appliedSequence = changeSource.getNextChangeSequence();
+            this.changes = changeSource.subscribe(appliedSequence);
+        }
+    }
+
+    /**
+     * Obtiene los contadores de la caché, sumando todas las clases.
+     *
+     * @return Aciertos, fallos, expulsiones y tamaño actuales
+     */
+    public CacheStats getStats() {
+        long hits = 0;
+        long misses = 0;
+        long evictions = 0;
+        long size = 0;
+        for (SegmentedLruCache<Object> cache : caches.values()) {
+            hits += cache.getHitCount();
+            misses += cache.getMissCount();
+            evictions += cache.getEvictionCount();
+            size += cache.size();
+        }
+        return new CacheStats(hits, misses, evictions, size);
+    }
+
+    @Override
+    public <T> T save(T object) {
+        try {
+            return dbManager.save(object);
+        } finally {
+            invalidate(object);
+        }
+    }
+
+    @Override
+    public <T> Optional<T> findById(Long id, Class<T> clazz) {
+        ensureConnected();
+        if (id == null) {
+            return dbManager.findById(id, clazz);
+        }
+
+        applyChanges();
+        SegmentedLruCache<Object> cache = cacheFor(clazz);
+        Object cached = cache.get(id);
+        if (cached != null) {
+            return Optional.of(clazz.cast(cached));
+        }
+
+        // La generación se anota antes de leer para no guardar una fila que se escriba mientras tanto
+        long generation = cache.generation(id);
+        Optional<T> found = dbManager.findById(id, clazz);
+        found.ifPresent(object -> cache.putIfUnchanged(id, object, generation));
+        return found;
+    }
+
+    @Override
+    public <T> T update(T object) {
+        try {
+            return dbManager.update(object);
+        } finally {
+            invalidate(object);
+        }
+    }
+
+    @Override
+    public <T> Optional<Versioned<T>> findVersionedById(Long id, Class<T> clazz) {
+        // La versión solo la conoce el gestor decorado
+        return dbManager.findVersionedById(id, clazz);
+    }
+
+    @Override
+    public <T> Versioned<T> compareAndUpdate(T object, long expectedVersion) {
+        try {
+            return dbManager.compareAndUpdate(object, expectedVersion);
+        } finally {
+            invalidate(object);
+        }
+    }
+
+    @Override
+    public ITransaction beginTransaction() {
+        return new CachingTransaction(dbManager.beginTransaction());
+    }
+
+    @Override
+    public <T> boolean delete(Long id, Class<T> clazz) {
+        try {
+            return dbManager.delete(id, clazz);
+        } finally {
+            invalidate(clazz, id);
+        }
+    }
+
+    @Override
+    public <T> List<T> findAll(Class<T> clazz) {
+        return dbManager.findAll(clazz);
+    }
+
+    @Override
+    public <T> List<T> saveAll(Collection<T> objects) {
+        try {
+            return dbManager.saveAll(objects);
+        } finally {
+            for (T object : objects) {
+                invalidate(object);
+            }
+        }
+    }
+
+    @Override
+    public <T> List<T> updateAll(Collection<T> objects) {
+        try {
+            return dbManager.updateAll(objects);
+        } finally {
+            for (T object : objects) {
+                invalidate(object);
+            }
+        }
+    }
+
+    @Override
+    public <T> List<T> findAllById(Collection<Long> ids, Class<T> clazz) {
+        ensureConnected();
+        applyChanges();
+        SegmentedLruCache<Object> cache = cacheFor(clazz);
+
+        // Los fallos se piden al gestor decorado en un solo lote
+        Map<Long, Object> found = new HashMap<>();
+        Map<Long, Long> generations = new HashMap<>();
+        for (Long id : ids) {
+            if (id != null && !found.containsKey(id) && !generations.containsKey(id)) {
+                Object cached = cache.get(id);
+                if (cached != null) {
+                    found.put(id, cached);
+                } else {
+                    generations.put(id, cache.generation(id));
+                }
+            }
+        }
+        if (!generations.isEmpty()) {
+            for (T object : dbManager.findAllById(generations.keySet(), clazz)) {
+                long id = EntityMetadata.of(clazz).getId(object);
+                found.put(id, object);
+                cache.putIfUnchanged(id, object, generations.get(id));
+            }
+        }
+
+        // Se conserva el orden de los IDs pedidos
+        List<T> result = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            Object object = id != null ? found.get(id) : null;
+            if (object != null) {
+                result.add(clazz.cast(object));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public <T> int deleteAll(Collection<Long> ids, Class<T> clazz) {
+        try {
+            return dbManager.deleteAll(ids, clazz);
+        } finally {
+            for (Long id : ids) {
+                invalidate(clazz, id);
+            }
+        }
+    }
+
+    @Override
+    public <T> Stream<T> stream(Class<T> clazz) {
+        return dbManager.stream(clazz);
+    }
+
+    @Override
+    public <T> Page<T> findPage(Class<T> clazz, String cursor, int pageSize) {
+        return dbManager.findPage(clazz, cursor, pageSize);
+    }
+
+    @Override
+    public <T> void createIndex(String indexName, Class<T> clazz, Function<? super T, ?> keyExtractor) {
+        dbManager.createIndex(indexName, clazz, keyExtractor);
+    }
+
+    @Override
+    public <T> List<T> findBy(String indexName, Class<T> clazz, Object key) {
+        return dbManager.findBy(indexName, clazz, key);
+    }
+
+    @Override
+    public <T> int countBy(String indexName, Class<T> clazz, Object key) {
+        return dbManager.countBy(indexName, clazz, key);
+    }
+
+    @Override
+    public <T> void createSortedIndex(String indexName, Class<T> clazz,
+                                      Function<? super T, ? extends Comparable<?>> keyExtractor) {
+        dbManager.createSortedIndex(indexName, clazz, keyExtractor);
+    }
+
+    @Override
+    public <T> List<T> findRange(String indexName, Class<T> clazz, Comparable<?> from, Comparable<?> to) {
+        return dbManager.findRange(indexName, clazz, from, to);
+    }
+
+    @Override
+    public <T> List<T> findLatest(String indexName, Class<T> clazz, int limit) {
+        return dbManager.findLatest(indexName, clazz, limit);
+    }
+
+    @Override
+    public <T> List<T> findLatest(String indexName, Class<T> clazz, Comparable<?> from, Comparable<?> to,
+                                  int limit) {
+        return dbManager.findLatest(indexName, clazz, from, to, limit);
+    }
+
+    @Override
+    public <T, R> QueryResult<R> query(Query<T> query, Function<? super T, ? extends R> projection) {
+        // Las consultas recorren muchas filas: pasarlas por la caché solo expulsaría las habituales
+        return dbManager.query(query, projection);
+    }
+
+    @Override
+    public boolean connect() {
+        return dbManager.connect();
+    }
+
+    @Override
+    public void disconnect() {
+        dbManager.disconnect();
+        // Al volver a conectar el contenido puede ser otro
+        for (SegmentedLruCache<Object> cache : caches.values()) {
+            cache.clear();
+        }
+    }
+
+    @Override
+    public boolean isConnected() {
+        return dbManager.isConnected();
+    }
+
+    private SegmentedLruCache<Object> cacheFor(Class<?> clazz) {
+        return caches.computeIfAbsent(clazz, c -> new SegmentedLruCache<>(capacity));
+    }
+
+    /**
+     * Invalida la fila de un objeto escrito. Un objeto sin ID no puede estar en caché.
+     */
+    private void invalidate(Object object) {
+        if (object == null) {
+            return;
+        }
+        Long id;
+        try {
+            id = EntityMetadata.of(object.getClass()).getId(object);
+        } catch (IllegalArgumentException e) {
+            // Clase sin ID: el gestor decorado ya la ha rechazado
+            return;
+        }
+        invalidate(object.getClass(), id);
+    }
+
+    private void invalidate(Class<?> clazz, Long id) {
+        SegmentedLruCache<Object> cache = caches.get(clazz);
+        if (cache != null && id != null) {
+            cache.invalidate(id);
+        }
+    }
+
+    /**
+     * Invalida las filas de los cambios publicados desde la última vez. Si no
+     * hay cambios nuevos no toma el cerrojo.
+     */
+    private void applyChanges() {
+        if (changeSource == null || changeSource.getNextChangeSequence() == appliedSequence) {
+            return;
+        }
+        synchronized (changesLock) {
+            List<ChangeEvent> events = new ArrayList<>();
+            try {
+                while (changes.drain(events, CHANGE_BATCH) > 0) {
+                    for (ChangeEvent event : events) {
+                        invalidate(event.getTable(), event.getId());
+                    }
+                    events.clear();
+                }
+            } catch (ChangeFeedOverrunException e) {
+                // Se han perdido cambios: ninguna fila en caché es fiable. Se vacía
+                // después de volver a suscribirse para no perder los cambios intermedios
+                changes.close();
+                changes = changeSource.subscribe(changeSource.getNextChangeSequence());
+                for (SegmentedLruCache<Object> cache : caches.values()) {
+                    cache.clear();
+                }
+            }
+            appliedSequence = changes.getNextSequence();
+        }
+    }
+
+    /**
+     * Las lecturas desde la caché también deben fallar sin conexión.
+     */
+    private void ensureConnected() {
+        if (!dbManager.isConnected()) {
+            throw new IllegalStateException("No hay conexión con la base de datos");
+        }
+    }
+
+    /**
+     * Transacción del gestor decorado que invalida al confirmar las filas que ha escrito.
+     */
+    private final class CachingTransaction implements ITransaction {
+
+        private final ITransaction transaction;
+        private final Map<Class<?>, Set<Long>> written;
+
+        CachingTransaction(ITransaction transaction) {
+            this.transaction = transaction;
+            this.written = new HashMap<>();
+        }
+
+        @Override
+        public <T> T save(T object) {
+            T saved = transaction.save(object);
+            written(object.getClass(), EntityMetadata.of(object.getClass()).getId(object));
+            return saved;
+        }
+
+        @Override
+        public <T> Optional<T> findById(Long id, Class<T> clazz) {
+            // Las lecturas de la transacción deben anotar su versión en el gestor decorado
+            return transaction.findById(id, clazz);
+        }
+
+        @Override
+        public <T> T update(T object) {
+            T updated = transaction.update(object);
+            written(object.getClass(), EntityMetadata.of(object.getClass()).getId(object));
+            return updated;
+        }
+
+        @Override
+        public <T> boolean delete(Long id, Class<T> clazz) {
+            boolean deleted = transaction.delete(id, clazz);
+            if (deleted) {
+                written(clazz, id);
+            }
+            return deleted;
+        }
+
+        @Override
+        public void commit() {
+            try {
+                transaction.commit();
+            } finally {
+                for (Map.Entry<Class<?>, Set<Long>> rows : written.entrySet()) {
+                    for (Long id : rows.getValue()) {
+                        invalidate(rows.getKey(), id);
+                    }
+                }
+                written.clear();
+            }
+        }
+
+        @Override
+        public void rollback() {
+            transaction.rollback();
+            written.clear();
+        }
+
+        @Override
+        public boolean isActive() {
+            return transaction.isActive();
+        }
+
+        @Override
+        public void close() {
+            transaction.close();
+        }
+
+        private void written(Class<?> clazz, Long id) {
+            written.computeIfAbsent(clazz, c -> new LinkedHashSet<>()).add(id);
+        }
+    }
+}
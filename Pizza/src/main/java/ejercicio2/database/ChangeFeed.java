@@ -0,0 +1,179 @@
+package ejercicio2.database;
+
+import ejercicio2.exceptions.ChangeFeedOverrunException;
+import ejercicio2.interfaces.IChangeSubscription;
+import ejercicio2.model.ChangeEvent;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Flujo de cambios de la base de datos sobre un buffer circular compartido.
+ *
+ * Cada cambio recibe una secuencia global y se guarda en la posición
+ * secuencia módulo capacidad, sustituyendo al cambio de hace una vuelta.
+ * Publicar no espera nunca a los suscriptores: cada uno lleva su propia
+ * posición de lectura y detecta que se ha quedado atrás cuando encuentra
+ * su posición ocupada por un cambio posterior.
+ *
+ * Los escritores publican con los cerrojos de las filas tomados, así que los
+ * cambios de una misma fila quedan en el orden en que se aplicaron. Un cambio
+ * con secuencia reservada pero aún no publicado detiene la lectura hasta que
+ * se publica, de modo que los suscriptores nunca ven huecos.
+ */
+final class ChangeFeed {
+
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final AtomicReferenceArray<ChangeEvent> ring;
+    private final int mask;
+    private final AtomicLong nextSequence;
+
+    /**
+     * Constructor.
+     *
+     * @param capacity Número de cambios que se conservan; se redondea a potencia de 2
+     */
+    ChangeFeed(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1) << 1);
+        this.ring = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+        this.nextSequence = new AtomicLong(1);
+    }
+
+    /**
+     * Publica un cambio. No bloquea.
+     *
+     * @param table Clase de las entidades de la tabla modificada
+     * @param id ID de la fila
+     * @param operation Tipo de cambio
+     */
+    void publish(Class<?> table, long id, ChangeEvent.Operation operation) {
+        ChangeEvent event = new ChangeEvent(nextSequence.getAndIncrement(), table, id, operation);
+        int index = (int) event.getSequence() & mask;
+        // Un escritor que ya ha dado la vuelta no debe ser sustituido por uno más lento
+        ChangeEvent current;
+        do {
+            current = ring.get(index);
+            if (current != null && current.getSequence() > event.getSequence()) {
+                return;
+            }
+        } while (!ring.compareAndSet(index, current, event));
+    }
+
+    /**
+     * Obtiene la secuencia que recibirá el próximo cambio.
+     *
+     * @return Número de secuencia
+     */
+    long getNextSequence() {
+        return nextSequence.get();
+    }
+
+    /**
+     * Crea una suscripción que empieza en una secuencia.
+     *
+     * @param table Clase de la tabla cuyos cambios se leen, o null para todas
+     * @param fromSequence Secuencia del primer cambio a leer
+     * @return Suscripción
+     * @throws IllegalArgumentException Si la secuencia todavía no existe
+     * @throws ChangeFeedOverrunException Si los cambios desde esa secuencia ya se han descartado
+     */
+    IChangeSubscription subscribe(Class<?> table, long fromSequence) {
+        long next = nextSequence.get();
+        if (fromSequence < 1 || fromSequence > next) {
+            throw new IllegalArgumentException("Secuencia no válida: " + fromSequence
+                    + " (la siguiente es " + next + ")");
+        }
+        if (fromSequence < oldestAvailable(next)) {
+            throw overrun(fromSequence, next);
+        }
+        return new Subscription(table, fromSequence);
+    }
+
+    private long oldestAvailable(long next) {
+        return Math.max(1, next - ring.length());
+    }
+
+    private ChangeFeedOverrunException overrun(long sequence, long next) {
+        return new ChangeFeedOverrunException("Los cambios desde la secuencia " + sequence
+                + " se han descartado; el más antiguo disponible es " + oldestAvailable(next));
+    }
+
+    /**
+     * Suscripción con su propia posición de lectura en el buffer.
+     */
+    private final class Subscription implements IChangeSubscription {
+
+        private final Class<?> table;
+        private long cursor;
+        private boolean closed;
+
+        Subscription(Class<?> table, long cursor) {
+            this.table = table;
+            this.cursor = cursor;
+        }
+
+        @Override
+        public int drain(List<? super ChangeEvent> out, int maxEvents) {
+            if (closed) {
+                throw new IllegalStateException("La suscripción está cerrada");
+            }
+
+            int read = 0;
+            while (read < maxEvents) {
+                ChangeEvent event = ring.get((int) cursor & mask);
+                if (event == null || event.getSequence() < cursor) {
+                    // Aún no publicado, salvo que otro escritor ya haya dado la vuelta
+                    long next = nextSequence.get();
+                    if (cursor < oldestAvailable(next)) {
+                        throw overrun(cursor, next);
+                    }
+                    break;
+                }
+                if (event.getSequence() > cursor) {
+                    throw overrun(cursor, nextSequence.get());
+                }
+                cursor++;
+                if (table == null || event.getTable() == table) {
+                    out.add(event);
+                    read++;
+                }
+            }
+            return read;
+        }
+
+        @Override
+        public int drain(List<? super ChangeEvent> out, int maxEvents, long timeout, TimeUnit unit)
+                throws InterruptedException {
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            long park = 1_000;
+            int read;
+            while ((read = drain(out, maxEvents)) == 0) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    break;
+                }
+                // Los escritores no avisan, así que se espera con pausas crecientes
+                LockSupport.parkNanos(Math.min(park, remaining));
+                park = Math.min(park << 1, MAX_PARK_NANOS);
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+            return read;
+        }
+
+        @Override
+        public long getNextSequence() {
+            return cursor;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package ejercicio2.database;
+
+import ejercicio2.exceptions.DataAccessException;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pool de conexiones JDBC de tamaño fijo. Las conexiones se abren bajo demanda
+ * hasta el máximo y después se reutilizan; si están todas en uso, quien pide
+ * una espera a que otra se devuelva. Las conexiones que han fallado se
+ * descartan al devolverlas en lugar de volver al pool.
+ */
+final class ConnectionPool implements AutoCloseable {
+
+    private static final long BORROW_TIMEOUT_SECONDS = 30;
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final Semaphore permits;
+    private final ConcurrentLinkedQueue<PooledConnection> idle;
+    private volatile boolean closed;
+
+    /**
+     * Constructor. No abre ninguna conexión.
+     *
+     * @param url URL JDBC de la base de datos
+     * @param user Usuario de la base de datos
+     * @param password Contraseña del usuario
+     * @param maxSize Número máximo de conexiones abiertas
+     */
+    ConnectionPool(String url, String user, String password, int maxSize) {
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.permits = new Semaphore(maxSize, true);
+        this.idle = new ConcurrentLinkedQueue<>();
+    }
+
+    /**
+     * Toma una conexión del pool, abriendo una nueva si no hay libres y no se
+     * ha llegado al máximo. Debe devolverse siempre con release.
+     *
+     * @return Conexión
+     * @throws DataAccessException Si no se puede abrir la conexión o no queda ninguna libre a tiempo
+     * @throws IllegalStateException Si el pool está cerrado
+     */
+    PooledConnection borrow() {
+        try {
+            if (!permits.tryAcquire(BORROW_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                throw new DataAccessException("No hay conexiones libres con la base de datos");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DataAccessException("Interrumpido esperando una conexión con la base de datos", e);
+        }
+
+        try {
+            if (closed) {
+                throw new IllegalStateException("No hay conexión con la base de datos");
+            }
+            PooledConnection connection = idle.poll();
+            if (connection == null) {
+                connection = new PooledConnection(DriverManager.getConnection(url, user, password));
+            }
+            return connection;
+        } catch (SQLException e) {
+            permits.release();
+            throw new DataAccessException("No se puede abrir la conexión con la base de datos", e);
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Devuelve una conexión al pool.
+     *
+     * @param connection Conexión tomada con borrow
+     * @param broken true si ha fallado y debe comprobarse antes de reutilizarla
+     */
+    void release(PooledConnection connection, boolean broken) {
+        if (closed || (broken && !connection.isValid())) {
+            connection.close();
+        } else {
+            idle.offer(connection);
+            // Si el pool se ha cerrado entretanto, la conexión no debe quedarse abierta
+            if (closed && idle.remove(connection)) {
+                connection.close();
+            }
+        }
+        permits.release();
+    }
+
+    /**
+     * Cierra las conexiones libres. Las que están en uso se cierran al devolverlas.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        PooledConnection connection;
+        while ((connection = idle.poll()) != null) {
+            connection.close();
+        }
+    }
+}
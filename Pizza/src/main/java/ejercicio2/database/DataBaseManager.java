@@ -1,41 +1,265 @@
 package ejercicio2.database;
 
+import ejercicio2.exceptions.ChangeFeedOverrunException;
+import ejercicio2.exceptions.VersionConflictException;
+import ejercicio2.interfaces.IChangeSubscription;
 import ejercicio2.interfaces.IDataBaseManager;
+import ejercicio2.interfaces.IEntityResolver;
+import ejercicio2.interfaces.IIdGenerator;
+import ejercicio2.interfaces.IReferencingEntity;
+import ejercicio2.interfaces.ITransaction;
+import ejercicio2.model.ChangeEvent;
+import ejercicio2.model.Order;
+import ejercicio2.model.Page;
+import ejercicio2.model.Query;
+import ejercicio2.model.QueryResult;
+import ejercicio2.model.TableStats;
+import ejercicio2.model.Versioned;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Implementación de IDataBaseManager que simula una base de datos en memoria.
+ * Es segura para su uso concurrente: cada clase tiene su propia tabla, las
+ * lecturas no bloquean y las escrituras solo se serializan por franjas de IDs.
+ *
+ * Opcionalmente puede ser duradera: cada escritura se añade a un registro de
+ * escritura anticipada en disco antes de confirmarse. Cuando el registro crece
+ * lo bastante se guarda en segundo plano una instantánea de todas las tablas y
+ * se borran los segmentos del registro que ya contiene; al conectar se carga la
+ * última instantánea y se reproduce solo el final del registro.
+ *
+ * Cada inserción, actualización y borrado confirmado se publica además en un
+ * flujo de cambios ordenado al que pueden suscribirse otros componentes.
+ *
+ * Los IDs los asigna un IIdGenerator; por defecto, por bloques de cada hilo.
+ * Para varios nodos que escriben a la vez conviene TimeOrderedIdGenerator con
+ * un número de nodo distinto en cada uno.
  */
 public class DataBaseManager implements IDataBaseManager {
 
-    private boolean connected;
-    private final Map<Class<?>, Map<Long, Object>> database;
-    private final Map<Class<?>, AtomicLong> idGenerators;
+    private static final long DEFAULT_SYNC_INTERVAL_MILLIS = 10;
+    private static final long DEFAULT_SNAPSHOT_LOG_BYTES = 64L * 1024 * 1024;
+    private static final int CHANGE_FEED_CAPACITY = 1 << 16;
+    private static final int BOOTSTRAP_BATCH_ROWS = 1_024;
+    private static final ReplicationChannel[] NO_REPLICAS = new ReplicationChannel[0];
+    private static final long RETENTION_STEP_MILLIS = 10;
+
+    private volatile boolean connected;
+    private final ConcurrentMap<Class<?>, Table> database;
+    private final IIdGenerator idGenerator;
+    private final AtomicInteger tableOrdinals;
+    private final Path directory;
+    private final SyncPolicy syncPolicy;
+    private final long syncIntervalMillis;
+    private final long snapshotLogBytes;
+    private final ReentrantLock snapshotLock;
+    private final ReentrantReadWriteLock logGate; // Lectura: usar el registro; escritura: cerrarlo
+    private final AtomicBoolean snapshotScheduled;
+    private volatile WriteAheadLog wal;
+    private ExecutorService snapshotExecutor;
+    private boolean recovered;
+    private final Set<Object> recoveryStubs; // Solo se usa durante la recuperación
+    private final ChangeFeed changeFeed;
+    private final AtomicLong restoredRows; // Filas recuperadas o replicadas, que no pasan por el flujo de cambios
+    private volatile ReplicationChannel[] replicas;
+    private final Map<Class<?>, Map<Long, Object>> replicationStubs; // Solo se usa como réplica
+    private final ConcurrentMap<Class<?>, TableRetention> retention;
+    private ScheduledExecutorService retentionExecutor;
+    private final IEntityResolver references;
 
     /**
-     * Constructor por defecto.
+     * Constructor por defecto. Los datos solo se guardan en memoria.
      */
     public DataBaseManager() {
-        this.database = new HashMap<>();
-        this.idGenerators = new HashMap<>();
+        this(new BlockIdGenerator());
+    }
+
+    /**
+     * Constructor para una base de datos en memoria con otra estrategia de IDs.
+     *
+     * @param idGenerator Generador de los IDs de las entidades nuevas
+     */
+    public DataBaseManager(IIdGenerator idGenerator) {
+        this(null, SyncPolicy.OS_MANAGED, DEFAULT_SYNC_INTERVAL_MILLIS, 0, idGenerator);
+    }
+
+    /**
+     * Constructor para una base de datos duradera.
+     *
+     * @param directory Directorio donde se guarda el registro
+     * @param syncPolicy Política de sincronización con el disco
+     */
+    public DataBaseManager(Path directory, SyncPolicy syncPolicy) {
+        this(directory, syncPolicy, DEFAULT_SYNC_INTERVAL_MILLIS);
+    }
+
+    /**
+     * Constructor para una base de datos duradera.
+     *
+     * @param directory Directorio donde se guarda el registro, o null para trabajar solo en memoria
+     * @param syncPolicy Política de sincronización con el disco
+     * @param syncIntervalMillis Intervalo de sincronización para SyncPolicy.INTERVAL
+     */
+    public DataBaseManager(Path directory, SyncPolicy syncPolicy, long syncIntervalMillis) {
+        this(directory, syncPolicy, syncIntervalMillis, DEFAULT_SNAPSHOT_LOG_BYTES);
+    }
+
+    /**
+     * Constructor para una base de datos duradera.
+     *
+     * @param directory Directorio donde se guardan el registro y las instantáneas, o null para trabajar solo en memoria
+     * @param syncPolicy Política de sincronización con el disco
+     * @param syncIntervalMillis Intervalo de sincronización para SyncPolicy.INTERVAL
+     * @param snapshotLogBytes Tamaño del registro a partir del cual se toma una instantánea automática (0 para no tomarlas)
+     */
+    public DataBaseManager(Path directory, SyncPolicy syncPolicy, long syncIntervalMillis, long snapshotLogBytes) {
+        this(directory, syncPolicy, syncIntervalMillis, snapshotLogBytes, new BlockIdGenerator());
+    }
+
+    /**
+     * Constructor completo.
+     *
+     * @param directory Directorio donde se guardan el registro y las instantáneas, o null para trabajar solo en memoria
+     * @param syncPolicy Política de sincronización con el disco
+     * @param syncIntervalMillis Intervalo de sincronización para SyncPolicy.INTERVAL
+     * @param snapshotLogBytes Tamaño del registro a partir del cual se toma una instantánea automática (0 para no tomarlas)
+     * @param idGenerator Generador de los IDs de las entidades nuevas
+     */
+    public DataBaseManager(Path directory, SyncPolicy syncPolicy, long syncIntervalMillis, long snapshotLogBytes,
+                           IIdGenerator idGenerator) {
+        if (syncPolicy == null) {
+            throw new IllegalArgumentException("La política de sincronización no puede ser nula");
+        }
+        if (syncIntervalMillis <= 0) {
+            throw new IllegalArgumentException("El intervalo de sincronización debe ser positivo");
+        }
+        if (snapshotLogBytes < 0) {
+            throw new IllegalArgumentException("El tamaño de registro para las instantáneas no puede ser negativo");
+        }
+        if (idGenerator == null) {
+            throw new IllegalArgumentException("El generador de IDs no puede ser nulo");
+        }
+        this.database = new ConcurrentHashMap<>();
+        this.idGenerator = idGenerator;
+        this.tableOrdinals = new AtomicInteger();
+        this.directory = directory;
+        this.syncPolicy = syncPolicy;
+        this.syncIntervalMillis = syncIntervalMillis;
+        this.snapshotLogBytes = snapshotLogBytes;
+        this.snapshotLock = new ReentrantLock();
+        this.logGate = new ReentrantReadWriteLock();
+        this.snapshotScheduled = new AtomicBoolean();
+        this.recoveryStubs = Collections.newSetFromMap(new IdentityHashMap<>());
+        this.changeFeed = new ChangeFeed(CHANGE_FEED_CAPACITY);
+        this.restoredRows = new AtomicLong();
+        this.replicas = NO_REPLICAS;
+        this.replicationStubs = new HashMap<>();
+        this.retention = new ConcurrentHashMap<>();
+        this.references = new IEntityResolver() {
+            @Override
+            public Object resolve(Class<?> clazz, long id) {
+                return resolveReference(clazz, id);
+            }
+
+            @Override
+            public long getGeneration() {
+                return generation();
+            }
+        };
         this.connected = false;
     }
 
     @Override
-    public boolean connect() {
-        // Simulación de conexión a base de datos
+    public synchronized boolean connect() {
+        if (directory != null && wal == null) {
+            WriteAheadLog log = new WriteAheadLog(directory, syncPolicy, syncIntervalMillis);
+            try {
+                Files.createDirectories(directory);
+                // La recuperación solo se hace la primera vez; al reconectar la memoria ya está al día
+                if (recovered) {
+                    log.open(0, (lsn, payload) -> { });
+                } else {
+                    recover(log);
+                }
+            } catch (IOException | RuntimeException e) {
+                closeQuietly(log);
+                return false;
+            }
+            recovered = true;
+            wal = log;
+            snapshotExecutor = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "db-snapshot");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
         this.connected = true;
+        if (!retention.isEmpty()) {
+            startRetention();
+        }
         return true;
     }
 
     @Override
-    public void disconnect() {
+    public synchronized void disconnect() {
+        stopRetention();
         this.connected = false;
+        WriteAheadLog log = wal;
+        if (log != null) {
+            // Se deja terminar la instantánea en curso antes de cerrar el registro
+            snapshotExecutor.shutdown();
+            try {
+                snapshotExecutor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            snapshotExecutor = null;
+            // Se espera a los commits en curso, que ya han leído el registro, y se
+            // impide que empiecen otros antes de cerrarlo
+            logGate.writeLock().lock();
+            try {
+                wal = null;
+                log.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Error al cerrar el registro de la base de datos", e);
+            } finally {
+                logGate.writeLock().unlock();
+            }
+        }
     }
 
     @Override
@@ -43,50 +267,81 @@ public class DataBaseManager implements IDataBaseManager {
         return this.connected;
     }
 
+    /**
+     * Guarda una instantánea de todas las tablas y borra los segmentos del
+     * registro que ya contiene. Las escrituras pueden continuar mientras tanto:
+     * las que lleguen durante la instantánea quedan en el registro nuevo.
+     *
+     * @throws IllegalStateException Si no hay conexión o la base de datos no es duradera
+     * @throws UncheckedIOException Si falla la escritura de la instantánea
+     */
+    public void snapshot() {
+        if (!isConnected()) {
+            throw new IllegalStateException("No hay conexión con la base de datos");
+        }
+        logGate.readLock().lock();
+        snapshotLock.lock();
+        try {
+            WriteAheadLog log = wal;
+            if (log == null) {
+                throw new IllegalStateException(directory != null
+                        ? "No hay conexión con la base de datos" : "La base de datos no es duradera");
+            }
+            // Lo anterior a la rotación está en la instantánea; lo posterior se reproduce del registro
+            long lsn = log.rotate();
+            long nextId = idGenerator.getHighWaterMark();
+            Snapshot.write(directory.resolve(Snapshot.FILE_NAME), lsn, nextId, new ArrayList<>(database.values()));
+            log.deleteUpTo(lsn);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error al guardar la instantánea de la base de datos", e);
+        } finally {
+            snapshotLock.unlock();
+            logGate.readLock().unlock();
+        }
+    }
+
     @Override
-    @SuppressWarnings("unchecked")
     public <T> T save(T object) {
         if (!isConnected()) {
             throw new IllegalStateException("No hay conexión con la base de datos");
         }
 
-        Class<?> clazz = object.getClass();
-
         // Aseguramos que exista la tabla para esta clase
-        database.putIfAbsent(clazz, new HashMap<>());
-
-        // Aseguramos que exista un generador de IDs para esta clase
-        idGenerators.putIfAbsent(clazz, new AtomicLong(1));
+        Table table = tableFor(object.getClass());
+        EntityMetadata metadata = table.getMetadata();
 
         // Asignamos un ID al objeto si no tiene uno
-        try {
-            java.lang.reflect.Field idField = clazz.getDeclaredField("id");
-            idField.setAccessible(true);
-            Long id = (Long) idField.get(object);
-
-            if (id == null) {
-                Long newId = idGenerators.get(clazz).getAndIncrement();
-                idField.set(object, newId);
-                database.get(clazz).put(newId, object);
-            } else {
-                database.get(clazz).put(id, object);
-            }
-
-        } catch (NoSuchFieldException | IllegalAccessException e) {
-            throw new RuntimeException("Error al guardar el objeto: " + e.getMessage(), e);
+        Long id = metadata.getId(object);
+        if (id == null) {
+            id = idGenerator.nextId();
+            metadata.setId(object, id);
         }
+        commit(List.of(Mutation.put(table, id, object)));
 
         return object;
     }
 
     @Override
-    @SuppressWarnings("unchecked")
     public <T> Optional<T> findById(Long id, Class<T> clazz) {
         if (!isConnected()) {
             throw new IllegalStateException("No hay conexión con la base de datos");
         }
 
-        Map<Long, Object> table = database.get(clazz);
+        if (id == null) {
+            return Optional.empty();
+        }
+
+        return findById(id.longValue(), clazz);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> Optional<T> findById(long id, Class<T> clazz) {
+        if (!isConnected()) {
+            throw new IllegalStateException("No hay conexión con la base de datos");
+        }
+
+        Table table = database.get(clazz);
         if (table == null) {
             return Optional.empty();
         }
@@ -95,35 +350,70 @@ public class DataBaseManager implements IDataBaseManager {
     }
 
     @Override
-    @SuppressWarnings("unchecked")
     public <T> T update(T object) {
         if (!isConnected()) {
             throw new IllegalStateException("No hay conexión con la base de datos");
         }
 
-        Class<?> clazz = object.getClass();
+        Long id = EntityMetadata.of(object.getClass()).getId(object);
 
-        try {
-            java.lang.reflect.Field idField = clazz.getDeclaredField("id");
-            idField.setAccessible(true);
-            Long id = (Long) idField.get(object);
+        if (id == null) {
+            throw new IllegalArgumentException("No se puede actualizar un objeto sin ID");
+        }
 
-            if (id == null) {
-                throw new IllegalArgumentException("No se puede actualizar un objeto sin ID");
-            }
+        Table table = database.get(object.getClass());
+        if (table == null) {
+            throw new IllegalArgumentException("El objeto con ID " + id + " no existe en la base de datos");
+        }
+        commit(List.of(Mutation.update(table, id, object)));
 
-            Map<Long, Object> table = database.get(clazz);
-            if (table == null || !table.containsKey(id)) {
-                throw new IllegalArgumentException("El objeto con ID " + id + " no existe en la base de datos");
-            }
+        return object;
+    }
 
-            table.put(id, object);
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> Optional<Versioned<T>> findVersionedById(Long id, Class<T> clazz) {
+        if (!isConnected()) {
+            throw new IllegalStateException("No hay conexión con la base de datos");
+        }
 
-        } catch (NoSuchFieldException | IllegalAccessException e) {
-            throw new RuntimeException("Error al actualizar el objeto: " + e.getMessage(), e);
+        Table table = database.get(clazz);
+        if (table == null || id == null) {
+            return Optional.empty();
         }
 
-        return object;
+        return Optional.ofNullable((Versioned<T>) (Versioned<?>) table.getVersioned(id));
+    }
+
+    @Override
+    public <T> Versioned<T> compareAndUpdate(T object, long expectedVersion) {
+        if (!isConnected()) {
+            throw new IllegalStateException("No hay conexión con la base de datos");
+        }
+
+        Long id = EntityMetadata.of(object.getClass()).getId(object);
+
+        if (id == null) {
+            throw new IllegalArgumentException("No se puede actualizar un objeto sin ID");
+        }
+
+        Table table = database.get(object.getClass());
+        if (table == null) {
+            throw new IllegalArgumentException("El objeto con ID " + id + " no existe en la base de datos");
+        }
+        Mutation mutation = Mutation.update(table, id, object, expectedVersion);
+        commit(List.of(mutation));
+
+        return new Versioned<>(object, mutation.appliedVersion);
+    }
+
+    @Override
+    public ITransaction beginTransaction() {
+        if (!isConnected()) {
+            throw new IllegalStateException("No hay conexión con la base de datos");
+        }
+
+        return new Transaction(this);
     }
 
     @Override
@@ -132,13 +422,12 @@ public class DataBaseManager implements IDataBaseManager {
             throw new IllegalStateException("No hay conexión con la base de datos");
         }
 
-        Map<Long, Object> table = database.get(clazz);
-        if (table == null || !table.containsKey(id)) {
+        Table table = database.get(clazz);
+        if (table == null || id == null) {
             return false;
         }
 
-        table.remove(id);
-        return true;
+        return commit(List.of(Mutation.delete(table, id))) > 0;
     }
 
     @Override
@@ -148,11 +437,1122 @@ public class DataBaseManager implements IDataBaseManager {
             throw new IllegalStateException("No hay conexión con la base de datos");
         }
 
-        Map<Long, Object> table = database.get(clazz);
+        Table table = database.get(clazz);
         if (table == null) {
             return new ArrayList<>();
         }
 
-        return new ArrayList<>((List<T>) table.values());
+        return (List<T>) table.values();
+    }
+
+    @Override
+    public <T> List<T> saveAll(Collection<T> objects) {
+        if (!isConnected()) {
+            throw new IllegalStateException("No hay conexión con la base de datos");
+        }
+
+        List<T> saved = new ArrayList<>(objects);
+        List<Mutation> mutations = new ArrayList<>(saved.size());
+        for (List<Object> batch : groupByClass(saved)) {
+            Table table = tableFor(batch.get(0).getClass());
+            EntityMetadata metadata = table.getMetadata();
+
+            // Reservamos de una vez un bloque de IDs para los objetos que no tienen
+            long[] ids = new long[batch.size()];
+            int missing = 0;
+            for (int i = 0; i < ids.length; i++) {
+                Long id = metadata.getId(batch.get(i));
+                if (id == null) {
+                    missing++;
+                } else {
+                    ids[i] = id;
+                }
+            }
+            long[] fresh = missing > 0 ? idGenerator.nextIds(missing) : null;
+
+            Object[] rows = batch.toArray();
+            for (int i = 0, next = 0; i < ids.length && next < missing; i++) {
+                if (metadata.getId(rows[i]) == null) {
+                    ids[i] = fresh[next++];
+                    metadata.setId(rows[i], ids[i]);
+                }
+            }
+            for (int i = 0; i < ids.length; i++) {
+                mutations.add(Mutation.put(table, ids[i], rows[i]));
+            }
+        }
+        commit(mutations);
+
+        return saved;
+    }
+
+    @Override
+    public <T> List<T> updateAll(Collection<T> objects) {
+        if (!isConnected()) {
+            throw new IllegalStateException("No hay conexión con la base de datos");
+        }
+
+        List<T> updated = new ArrayList<>(objects);
+        List<Mutation> mutations = new ArrayList<>(updated.size());
+        for (List<Object> batch : groupByClass(updated)) {
+            Class<?> clazz = batch.get(0).getClass();
+            EntityMetadata metadata = EntityMetadata.of(clazz);
+            Table table = database.get(clazz);
+
+            for (Object object : batch) {
+                Long id = metadata.getId(object);
+                if (id == null) {
+                    throw new IllegalArgumentException("No se puede actualizar un objeto sin ID");
+                }
+                if (table == null) {
+                    throw new IllegalArgumentException("El objeto con ID " + id + " no existe en la base de datos");
+                }
+                mutations.add(Mutation.update(table, id, object));
+            }
+        }
+        // Todo el lote se confirma o se rechaza de una vez
+        commit(mutations);
+
+        return updated;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> List<T> findAllById(Collection<Long> ids, Class<T> clazz) {
+        if (!isConnected()) {
+            throw new IllegalStateException("No hay conexión con la base de datos");
+        }
+
+        List<T> found = new ArrayList<>(ids.size());
+        Table table = database.get(clazz);
+        if (table == null) {
+            return found;
+        }
+
+        for (Long id : ids) {
+            Object object = id != null ? table.get(id) : null;
+            if (object != null) {
+                found.add((T) object);
+            }
+        }
+        return found;
+    }
+
+    @Override
+    public <T> int deleteAll(Collection<Long> ids, Class<T> clazz) {
+        if (!isConnected()) {
+            throw new IllegalStateException("No hay conexión con la base de datos");
+        }
+
+        Table table = database.get(clazz);
+        if (table == null) {
+            return 0;
+        }
+
+        List<Mutation> mutations = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            if (id != null) {
+                mutations.add(Mutation.delete(table, id));
+            }
+        }
+        return commit(mutations);
+    }
+
+    @Override
+    public <T> Stream<T> stream(Class<T> clazz) {
+        if (!isConnected()) {
+            throw new IllegalStateException("No hay conexión con la base de datos");
+        }
+
+        Table table = database.get(clazz);
+        if (table == null) {
+            return Stream.empty();
+        }
+
+        return StreamSupport.stream(table.spliterator(), false).map(clazz::cast);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> Page<T> findPage(Class<T> clazz, String cursor, int pageSize) {
+        if (!isConnected()) {
+            throw new IllegalStateException("No hay conexión con la base de datos");
+        }
+
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("El tamaño de página debe ser positivo");
+        }
+
+        long position;
+        try {
+            position = cursor == null ? 0 : Long.parseLong(cursor);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Cursor no válido: " + cursor, e);
+        }
+
+        Table table = database.get(clazz);
+        if (table == null || position < 0) {
+            return new Page<>(new ArrayList<>(), null);
+        }
+
+        List<Object> items = new ArrayList<>(pageSize);
+        long next = table.scan(position, pageSize, items);
+        return new Page<>((List<T>) items, next >= 0 ? String.valueOf(next) : null);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> void createIndex(String indexName, Class<T> clazz, Function<? super T, ?> keyExtractor) {
+        // La declaración de índices forma parte del esquema y no requiere conexión
+        tableFor(clazz).createIndex(new HashIndex(indexName, (Function<Object, ?>) keyExtractor));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> void createSortedIndex(String indexName, Class<T> clazz,
+                                      Function<? super T, ? extends Comparable<?>> keyExtractor) {
+        tableFor(clazz).createIndex(new SortedIndex(indexName, (Function<Object, ?>) keyExtractor));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> List<T> findBy(String indexName, Class<T> clazz, Object key) {
+        if (!isConnected()) {
+            throw new IllegalStateException("No hay conexión con la base de datos");
+        }
+
+        Table table = database.get(clazz);
+        SecondaryIndex index = table != null ? table.getIndex(indexName) : null;
+        if (index == null) {
+            throw new IllegalArgumentException("No existe el índice " + indexName + " para " + clazz.getSimpleName());
+        }
+
+        List<T> result = new ArrayList<>();
+        for (Long id : index.lookup(key)) {
+            Object object = table.get(id);
+            if (object != null) {
+                result.add((T) object);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * El índice se mantiene en cada escritura, así que contar no lee las filas.
+     */
+    @Override
+    public <T> int countBy(String indexName, Class<T> clazz, Object key) {
+        if (!isConnected()) {
+            throw new IllegalStateException("No hay conexión con la base de datos");
+        }
+
+        Table table = database.get(clazz);
+        SecondaryIndex index = table != null ? table.getIndex(indexName) : null;
+        if (index == null) {
+            throw new IllegalArgumentException("No existe el índice " + indexName + " para " + clazz.getSimpleName());
+        }
+        return index.lookup(key).size();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> List<T> findRange(String indexName, Class<T> clazz, Comparable<?> from, Comparable<?> to) {
+        Table table = database.get(clazz);
+        SortedIndex index = sortedIndex(table, indexName, clazz);
+
+        List<T> result = new ArrayList<>();
+        index.range(from, to).forEach(id -> {
+            Object object = table.get(id);
+            // El objeto puede haber cambiado de clave desde que se leyó el índice
+            if (object != null && SortedIndex.inRange(index.keyOf(object), from, to)) {
+                result.add((T) object);
+            }
+        });
+        return result;
+    }
+
+    @Override
+    public <T> List<T> findLatest(String indexName, Class<T> clazz, int limit) {
+        return findLatest(indexName, clazz, null, null, limit);
+    }
+
+    /**
+     * Recorre el rango del índice de la clave más alta a la más baja y se
+     * detiene al llenar el límite, así que el coste depende del límite y no
+     * del tamaño del rango.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> List<T> findLatest(String indexName, Class<T> clazz, Comparable<?> from, Comparable<?> to,
+                                  int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("El límite no puede ser negativo");
+        }
+        Table table = database.get(clazz);
+        SortedIndex index = sortedIndex(table, indexName, clazz);
+
+        List<T> result = new ArrayList<>(Math.min(limit, 1024));
+        if (limit == 0) {
+            return result;
+        }
+        boolean bounded = from != null || to != null;
+        Iterator<Long> ids = index.descending(from, to).iterator();
+        while (result.size() < limit && ids.hasNext()) {
+            Object object = table.get(ids.next());
+            // El objeto puede haber cambiado de clave desde que se leyó el índice
+            if (object != null && (!bounded || SortedIndex.inRange(index.keyOf(object), from, to))) {
+                result.add((T) object);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Ejecuta una consulta. Si alguna condición tiene un índice con su nombre
+     * se recorren solo las filas del índice, prefiriendo una búsqueda por
+     * clave a un rango; si no, se recorre la tabla en paralelo por segmentos.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T, R> QueryResult<R> query(Query<T> query, Function<? super T, ? extends R> projection) {
+        if (!isConnected()) {
+            throw new IllegalStateException("No hay conexión con la base de datos");
+        }
+
+        Table table = database.get(query.getEntityClass());
+        if (table == null || query.getLimit() == 0) {
+            return new QueryResult<>(new ArrayList<>(), QueryResult.Plan.FULL_SCAN, null, 0);
+        }
+
+        Query.Condition<T> chosen = null;
+        SecondaryIndex index = null;
+        for (Query.Condition<T> condition : query.getConditions()) {
+            SecondaryIndex candidate = table.getIndex(condition.getAttribute());
+            // Los índices no guardan las claves nulas
+            boolean usable = candidate != null && (condition.isRange()
+                    ? candidate instanceof SortedIndex : condition.getValue() != null);
+            if (usable && (chosen == null || (chosen.isRange() && !condition.isRange()))) {
+                chosen = condition;
+                index = candidate;
+            }
+        }
+        if (index == null) {
+            return ParallelScan.run(table, query, projection);
+        }
+
+        Iterator<Long> ids = chosen.isRange()
+                ? ((SortedIndex) index).range(chosen.getFrom(), chosen.getTo()).iterator()
+                : index.lookup(chosen.getValue()).iterator();
+        List<R> rows = new ArrayList<>();
+        long examined = 0;
+        while (rows.size() < query.getLimit() && ids.hasNext()) {
+            Object object = table.get(ids.next());
+            if (object == null) {
+                continue;
+            }
+            examined++;
+            // La fila puede haber cambiado desde que se leyó el índice: se comprueba entera
+            if (query.matches((T) object)) {
+                rows.add(projection.apply((T) object));
+            }
+        }
+        QueryResult.Plan plan = chosen.isRange() ? QueryResult.Plan.INDEX_RANGE : QueryResult.Plan.INDEX_LOOKUP;
+        return new QueryResult<>(rows, plan, index.getName(), examined);
+    }
+
+    /**
+     * Obtiene un índice ordenado de una tabla, comprobando la conexión.
+     *
+     * @param table Tabla de la clase o null si aún no existe
+     * @param indexName Nombre del índice
+     * @param clazz Clase de los objetos
+     * @return Índice ordenado
+     * @throws IllegalArgumentException Si el índice no existe o no es ordenado
+     */
+    private SortedIndex sortedIndex(Table table, String indexName, Class<?> clazz) {
+        if (!isConnected()) {
+            throw new IllegalStateException("No hay conexión con la base de datos");
+        }
+
+        SecondaryIndex index = table != null ? table.getIndex(indexName) : null;
+        if (!(index instanceof SortedIndex)) {
+            throw new IllegalArgumentException("No existe el índice ordenado " + indexName
+                    + " para " + clazz.getSimpleName());
+        }
+        return (SortedIndex) index;
+    }
+
+    /**
+     * Agrupa los objetos de un lote por su clase, conservando el orden.
+     * El caso habitual, un lote de una sola clase, no copia el lote.
+     *
+     * @param objects Objetos del lote
+     * @return Grupos de objetos de la misma clase
+     */
+    @SuppressWarnings("unchecked")
+    private static Collection<List<Object>> groupByClass(List<?> objects) {
+        if (objects.isEmpty()) {
+            return List.of();
+        }
+
+        Class<?> first = objects.get(0).getClass();
+        boolean sameClass = true;
+        for (Object object : objects) {
+            if (object.getClass() != first) {
+                sameClass = false;
+                break;
+            }
+        }
+        if (sameClass) {
+            return List.of((List<Object>) objects);
+        }
+
+        Map<Class<?>, List<Object>> groups = new LinkedHashMap<>();
+        for (Object object : objects) {
+            groups.computeIfAbsent(object.getClass(), c -> new ArrayList<>()).add(object);
+        }
+        return groups.values();
+    }
+
+    /**
+     * Obtiene la tabla de una clase, creándola si todavía no existe.
+     * Al crear la tabla se registra la clase y se resuelve su acceso al ID,
+     * por lo que las clases sin campo id se rechazan en ese momento.
+     *
+     * @param clazz Clase de las entidades
+     * @return Tabla asociada a la clase
+     * @throws IllegalArgumentException Si la clase no tiene un campo id válido
+     */
+    Table tableFor(Class<?> clazz) {
+        Table table = database.get(clazz);
+        if (table != null) {
+            return table;
+        }
+        return database.computeIfAbsent(clazz, c -> new Table(tableOrdinals.getAndIncrement(), EntityMetadata.of(c)));
+    }
+
+    /**
+     * Guarda los pedidos fuera del heap, codificados en memoria directa, en lugar
+     * de como objetos. Reduce el trabajo del recolector con muchos pedidos a
+     * cambio de materializar cada pedido al leerlo: cada lectura devuelve una
+     * instancia nueva, enlazada para resolver su usuario y sus pizzas al usarlos.
+     * Solo se admite para los pedidos, porque ninguna otra entidad los referencia.
+     * Forma parte del esquema: debe declararse antes de usar la clase, incluso
+     * antes de declarar sus índices.
+     *
+     * @param clazz Clase de las entidades, que debe ser Order
+     * @throws IllegalArgumentException Si la clase no es Order
+     * @throws IllegalStateException Si la tabla de la clase ya existe
+     */
+    public void storeOffHeap(Class<?> clazz) {
+        if (clazz != Order.class) {
+            throw new IllegalArgumentException("Solo los pedidos pueden guardarse fuera del heap");
+        }
+        Table table = new OffHeapTable(tableOrdinals.getAndIncrement(), EntityMetadata.of(clazz), references);
+        if (database.putIfAbsent(clazz, table) != null) {
+            throw new IllegalStateException("La tabla de " + clazz.getSimpleName() + " ya existe");
+        }
+    }
+
+    /**
+     * Resuelve una referencia de una fila enlazada con esta base de datos.
+     */
+    private Object resolveReference(Class<?> clazz, long id) {
+        Table table = database.get(clazz);
+        return table != null ? table.get(id) : null;
+    }
+
+    /**
+     * Obtiene un número que crece con cada fila escrita, después de escribirla,
+     * para que las filas enlazadas sepan si sus referencias resueltas siguen
+     * siendo las actuales.
+     */
+    long generation() {
+        return changeFeed.getNextSequence() + restoredRows.get();
+    }
+
+    /**
+     * Enlaza una entidad con esta base de datos para que resuelva por ella
+     * sus referencias, que pasan a guardarse por ID.
+     *
+     * @return false si alguna entidad referenciada no tiene ID
+     */
+    private boolean attachReferences(Object entity) {
+        return !(entity instanceof IReferencingEntity) || ((IReferencingEntity) entity).attach(references);
+    }
+
+    /**
+     * Establece la política de retención de una tabla, sustituyendo la
+     * anterior. Mientras hay conexión, un hilo en segundo plano revisa cada
+     * pocos milisegundos un segmento de cada tabla con política, de modo que
+     * las escrituras nunca esperan a una expulsión de toda la tabla. Las filas
+     * expulsadas se borran como cualquier otra: pasan por el registro, las
+     * réplicas y el flujo de cambios.
+     *
+     * @param policy Política de retención
+     */
+    public synchronized void setRetentionPolicy(RetentionPolicy<?> policy) {
+        if (policy == null) {
+            throw new IllegalArgumentException("La política de retención no puede ser nula");
+        }
+        Table table = tableFor(policy.getEntityClass());
+        retention.put(policy.getEntityClass(), new TableRetention(table, policy));
+        if (connected) {
+            startRetention();
+        }
+    }
+
+    /**
+     * Quita la política de retención de una tabla; sus filas dejan de expulsarse.
+     *
+     * @param clazz Clase de las entidades de la tabla
+     */
+    public synchronized void removeRetentionPolicy(Class<?> clazz) {
+        retention.remove(clazz);
+    }
+
+    /**
+     * Aplica ahora las políticas de retención a todas las tablas, sin esperar
+     * al hilo en segundo plano.
+     *
+     * @return Número de filas expulsadas
+     */
+    public int enforceRetention() {
+        if (!isConnected()) {
+            throw new IllegalStateException("No hay conexión con la base de datos");
+        }
+        int evicted = 0;
+        for (TableRetention table : retention.values()) {
+            evicted += table.sweep(this);
+        }
+        return evicted;
+    }
+
+    /**
+     * Obtiene el tamaño de una tabla y las filas que ha expulsado su política
+     * de retención.
+     *
+     * @param clazz Clase de las entidades de la tabla
+     * @return Estadísticas de la tabla, vacías si la tabla no existe
+     */
+    public TableStats getTableStats(Class<?> clazz) {
+        TableRetention policy = retention.get(clazz);
+        if (policy != null) {
+            return policy.stats();
+        }
+        Table table = database.get(clazz);
+        return new TableStats(clazz, table != null ? table.size() : 0, 0, 0, 0);
+    }
+
+    /**
+     * Obtiene las estadísticas de todas las tablas.
+     *
+     * @return Estadísticas de cada tabla existente
+     */
+    public List<TableStats> getTableStats() {
+        List<TableStats> stats = new ArrayList<>();
+        for (Class<?> clazz : database.keySet()) {
+            stats.add(getTableStats(clazz));
+        }
+        return stats;
+    }
+
+    /**
+     * Arranca el hilo de retención si no está ya en marcha.
+     */
+    private synchronized void startRetention() {
+        if (retentionExecutor != null) {
+            return;
+        }
+        retentionExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "db-retention");
+            thread.setDaemon(true);
+            return thread;
+        });
+        retentionExecutor.scheduleWithFixedDelay(() -> {
+            for (TableRetention table : retention.values()) {
+                try {
+                    table.step(this);
+                } catch (RuntimeException e) {
+                    // Las filas que no se han llegado a borrar se reintentan en la siguiente vuelta
+                }
+            }
+        }, RETENTION_STEP_MILLIS, RETENTION_STEP_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Detiene el hilo de retención dejando terminar el paso en curso.
+     */
+    private synchronized void stopRetention() {
+        if (retentionExecutor == null) {
+            return;
+        }
+        retentionExecutor.shutdown();
+        try {
+            retentionExecutor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        retentionExecutor = null;
+    }
+
+    /**
+     * Se suscribe a los cambios de todas las tablas a partir de una secuencia.
+     * Las secuencias son globales, empiezan en 1 con cada instancia y no se
+     * guardan en el registro: la recuperación al conectar no publica cambios.
+     * Los escritores nunca esperan al suscriptor; se conservan los últimos
+     * cambios y, si el suscriptor se queda más atrás, su lectura lanza
+     * ChangeFeedOverrunException.
+     *
+     * @param fromSequence Secuencia del primer cambio a leer
+     * @return Suscripción, que debe cerrarse al terminar
+     * @throws IllegalArgumentException Si la secuencia es posterior a la siguiente que se asignará
+     * @throws ChangeFeedOverrunException Si los cambios desde esa secuencia ya se han descartado
+     */
+    public IChangeSubscription subscribe(long fromSequence) {
+        return changeFeed.subscribe(null, fromSequence);
+    }
+
+    /**
+     * Se suscribe a los cambios de una tabla a partir de una secuencia. Los
+     * cambios de otras tablas se saltan, pero siguen ocupando su secuencia.
+     *
+     * @param clazz Clase de las entidades de la tabla
+     * @param fromSequence Secuencia del primer cambio a leer
+     * @return Suscripción, que debe cerrarse al terminar
+     * @throws IllegalArgumentException Si la secuencia es posterior a la siguiente que se asignará
+     * @throws ChangeFeedOverrunException Si los cambios desde esa secuencia ya se han descartado
+     */
+    public IChangeSubscription subscribe(Class<?> clazz, long fromSequence) {
+        if (clazz == null) {
+            throw new IllegalArgumentException("La clase no puede ser nula");
+        }
+        return changeFeed.subscribe(clazz, fromSequence);
+    }
+
+    /**
+     * Obtiene la secuencia que recibirá el próximo cambio, a partir de la
+     * cual suscribirse para recibir solo los cambios futuros.
+     *
+     * @return Número de secuencia
+     */
+    public long getNextChangeSequence() {
+        return changeFeed.getNextSequence();
+    }
+
+    /**
+     * Registra una réplica y obtiene la copia inicial de las filas. Desde el
+     * registro, cada confirmación envía su registro del log al canal; la copia
+     * se toma después, así que incluye toda escritura que no se haya enviado.
+     * Aplicar la copia y después los registros del canal, en orden, deja la
+     * réplica igual que esta base de datos. Mientras se copia cada segmento se
+     * espera a las escrituras en curso en él, pero no se bloquean las nuevas.
+     *
+     * @param channel Canal por el que se enviarán los registros
+     * @return Registros con todas las filas actuales, en el formato del log
+     * @throws IllegalStateException Si no hay conexión con la base de datos
+     */
+    synchronized List<byte[]> attachReplica(ReplicationChannel channel) {
+        if (!isConnected()) {
+            throw new IllegalStateException("No hay conexión con la base de datos");
+        }
+        ReplicationChannel[] current = replicas;
+        ReplicationChannel[] updated = Arrays.copyOf(current, current.length + 1);
+        updated[current.length] = channel;
+        replicas = updated;
+
+        List<byte[]> bootstrap = new ArrayList<>();
+        for (Table table : database.values()) {
+            String className = table.getMetadata().getEntityClass().getName();
+            List<Long> ids = new ArrayList<>(BOOTSTRAP_BATCH_ROWS);
+            List<Object> rows = new ArrayList<>(BOOTSTRAP_BATCH_ROWS);
+            table.forEachCommitted((id, entity) -> {
+                ids.add(id);
+                rows.add(entity);
+                if (rows.size() == BOOTSTRAP_BATCH_ROWS) {
+                    bootstrap.add(encodeRows(className, ids, rows));
+                    ids.clear();
+                    rows.clear();
+                }
+            });
+            if (!rows.isEmpty()) {
+                bootstrap.add(encodeRows(className, ids, rows));
+            }
+        }
+        return bootstrap;
+    }
+
+    /**
+     * Deja de enviar registros a una réplica.
+     *
+     * @param channel Canal registrado con attachReplica
+     */
+    synchronized void detachReplica(ReplicationChannel channel) {
+        List<ReplicationChannel> remaining = new ArrayList<>(Arrays.asList(replicas));
+        remaining.remove(channel);
+        replicas = remaining.toArray(NO_REPLICAS);
+    }
+
+    /**
+     * Aplica en esta base de datos, como réplica, un registro enviado por otra.
+     * Las referencias a filas que aún no han llegado se resuelven con una
+     * instancia vacía que se rellena cuando llega la fila. Cada fila recibida
+     * es una instancia nueva, igual que en la base de datos de origen tras un
+     * update, así que los lectores nunca ven una entidad a medio decodificar.
+     * Solo debe llamarse desde un hilo.
+     *
+     * @param record Registro en el formato del log
+     * @throws IOException Si el registro no se puede decodificar
+     */
+    void applyReplicated(byte[] record) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            Mutation.Type type = Mutation.Type.values()[in.readByte()];
+            Class<?> clazz = EntityCodec.classForName(in.readUTF());
+            long id = in.readLong();
+            Table table = tableFor(clazz);
+            if (type == Mutation.Type.DELETE) {
+                applyRecovered(table, id, null);
+                continue;
+            }
+
+            Map<Long, Object> stubs = replicationStubs.get(clazz);
+            Object entity = stubs != null ? stubs.remove(id) : null;
+            if (entity == null) {
+                entity = EntityCodec.newInstance(clazz);
+            }
+            EntityCodec.decodeInto(entity, in, this::resolveForReplica);
+            attachReferences(entity);
+            applyRecovered(table, id, entity);
+            idGenerator.observe(id);
+        }
+    }
+
+    /**
+     * Resuelve una referencia de un registro replicado.
+     */
+    private Object resolveForReplica(Class<?> clazz, long id) {
+        Object entity = tableFor(clazz).get(id);
+        if (entity == null) {
+            entity = replicationStubs.computeIfAbsent(clazz, c -> new HashMap<>()).computeIfAbsent(id, key -> {
+                Object stub = EntityCodec.newInstance(clazz);
+                EntityMetadata.of(clazz).setId(stub, key);
+                return stub;
+            });
+        }
+        return entity;
+    }
+
+    /**
+     * Reserva un ID nuevo.
+     *
+     * @return ID sin usar
+     */
+    long nextId() {
+        return idGenerator.nextId();
+    }
+
+    /**
+     * Confirma un conjunto de mutaciones de forma atómica. Es el único camino
+     * de escritura: bloquea los segmentos afectados en un orden global (tabla y
+     * después segmento), comprueba las filas a actualizar y las leídas, añade un
+     * único registro al log, lo envía a las réplicas, aplica los cambios y, ya
+     * sin cerrojos, espera a que el registro sea duradero según la política de
+     * sincronización. Los cambios
+     * se publican en el flujo de cambios con los cerrojos tomados, así que los
+     * de una misma fila llegan en el orden en que se aplicaron. Mientras
+     * dura, disconnect no cierra el registro.
+     *
+     * @param mutations Mutaciones a confirmar
+     * @return Número de filas eliminadas
+     * @throws IllegalStateException Si la base de datos es duradera y no hay conexión
+     * @throws IllegalArgumentException Si alguna fila a actualizar no existe
+     * @throws VersionConflictException Si alguna fila no está en la versión esperada
+     * @throws UncheckedIOException Si falla la escritura en el registro
+     */
+    int commit(List<Mutation> mutations) {
+        if (mutations.isEmpty()) {
+            return 0;
+        }
+
+        // El registro no se cierra mientras haya commits que lo usan
+        WriteAheadLog log;
+        int removed;
+        logGate.readLock().lock();
+        try {
+            log = wal;
+            if (log == null && directory != null) {
+                throw new IllegalStateException("No hay conexión con la base de datos");
+            }
+            removed = apply(mutations, log);
+        } finally {
+            logGate.readLock().unlock();
+        }
+
+        if (log != null && snapshotLogBytes > 0 && log.getSegmentBytes() >= snapshotLogBytes) {
+            scheduleSnapshot();
+        }
+        return removed;
+    }
+
+    /**
+     * Aplica las mutaciones de un commit y espera a que sean duraderas.
+     *
+     * @param log Registro en el que se escriben, o null si la base de datos no es duradera
+     * @return Número de filas eliminadas
+     */
+    private int apply(List<Mutation> mutations, WriteAheadLog log) {
+        // La codificación se hace fuera de los cerrojos, con las referencias ya por ID
+        for (Mutation mutation : mutations) {
+            if ((mutation.type == Mutation.Type.PUT || mutation.type == Mutation.Type.UPDATE)
+                    && !attachReferences(mutation.entity) && (log != null || replicas.length > 0)) {
+                throw new IllegalArgumentException("No se puede guardar una referencia a una entidad sin ID");
+            }
+        }
+        byte[] record = log != null || replicas.length > 0 ? encode(mutations) : null;
+        for (Mutation mutation : mutations) {
+            if (mutation.type == Mutation.Type.PUT || mutation.type == Mutation.Type.UPDATE) {
+                mutation.stored = mutation.table.prepare(mutation.entity);
+            }
+        }
+
+        LockSet locks = new LockSet(mutations);
+        int removed = 0;
+        long lsn = 0;
+        locks.lock();
+        try {
+            for (Mutation mutation : mutations) {
+                if (mutation.type == Mutation.Type.UPDATE) {
+                    validateUpdate(mutation);
+                } else if (mutation.type == Mutation.Type.CHECK) {
+                    validateCheck(mutation);
+                }
+            }
+            if (log != null && record != null) {
+                lsn = log.append(record);
+            }
+            // Las réplicas se leen con los cerrojos tomados: una que se registre después
+            // copiará estas filas ya escritas al arrancar
+            ReplicationChannel[] targets = replicas;
+            if (targets.length > 0) {
+                if (record == null) {
+                    record = encode(mutations);
+                }
+                if (record != null) {
+                    long now = System.nanoTime();
+                    for (ReplicationChannel target : targets) {
+                        target.ship(record, now);
+                    }
+                }
+            }
+            for (Mutation mutation : mutations) {
+                Class<?> clazz = mutation.table.getMetadata().getEntityClass();
+                if (mutation.type == Mutation.Type.DELETE) {
+                    if (mutation.table.removeLocked(mutation.id)) {
+                        removed++;
+                        changeFeed.publish(clazz, mutation.id, ChangeEvent.Operation.DELETE);
+                    }
+                } else if (mutation.type != Mutation.Type.CHECK) {
+                    boolean insert = mutation.type == Mutation.Type.PUT
+                            && mutation.table.versionLocked(mutation.id) == 0;
+                    mutation.appliedVersion = mutation.table.putLocked(mutation.id, mutation.entity, mutation.stored);
+                    changeFeed.publish(clazz, mutation.id,
+                            insert ? ChangeEvent.Operation.INSERT : ChangeEvent.Operation.UPDATE);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error al escribir en el registro de la base de datos", e);
+        } finally {
+            locks.unlock();
+        }
+
+        if (log != null && record != null) {
+            try {
+                log.awaitDurable(lsn);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Error al sincronizar el registro de la base de datos", e);
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Encarga una instantánea en segundo plano si no hay ya una pendiente.
+     */
+    private synchronized void scheduleSnapshot() {
+        if (snapshotExecutor == null || !snapshotScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        snapshotExecutor.execute(() -> {
+            try {
+                if (isConnected()) {
+                    snapshot();
+                }
+            } catch (RuntimeException e) {
+                // Se reintentará cuando el registro siga creciendo
+            } finally {
+                snapshotScheduled.set(false);
+            }
+        });
+    }
+
+    /**
+     * Comprueba, con el segmento bloqueado, que la fila a actualizar existe
+     * y que sigue en la versión esperada si la mutación indica una.
+     */
+    private static void validateUpdate(Mutation mutation) {
+        long version = mutation.table.versionLocked(mutation.id);
+        if (version == 0) {
+            throw new IllegalArgumentException("El objeto con ID " + mutation.id + " no existe en la base de datos");
+        }
+        if (mutation.expectedVersion != Mutation.ANY_VERSION && version != mutation.expectedVersion) {
+            throw new VersionConflictException("El objeto con ID " + mutation.id + " ha sido modificado (versión "
+                    + version + ", se esperaba " + mutation.expectedVersion + ")");
+        }
+    }
+
+    /**
+     * Comprueba, con el segmento bloqueado, que una fila leída por una
+     * transacción sigue en la versión leída (0 si no existía).
+     */
+    private static void validateCheck(Mutation mutation) {
+        long version = mutation.table.versionLocked(mutation.id);
+        if (version != mutation.expectedVersion) {
+            throw new VersionConflictException("El objeto con ID " + mutation.id
+                    + " ha sido modificado después de leerlo en la transacción");
+        }
+    }
+
+    /**
+     * Codifica las mutaciones como un registro del log:
+     * número de mutaciones y, por cada una, tipo, clase, ID y entidad (salvo en los borrados).
+     * Las comprobaciones no se registran.
+     *
+     * @return Registro codificado o null si no hay ningún cambio que registrar
+     */
+    private static byte[] encode(List<Mutation> mutations) {
+        int count = 0;
+        for (Mutation mutation : mutations) {
+            if (mutation.type != Mutation.Type.CHECK) {
+                count++;
+            }
+        }
+        if (count == 0) {
+            return null;
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 * count);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(count);
+            for (Mutation mutation : mutations) {
+                if (mutation.type == Mutation.Type.CHECK) {
+                    continue;
+                }
+                out.writeByte(mutation.type.ordinal());
+                out.writeUTF(mutation.table.getMetadata().getEntityClass().getName());
+                out.writeLong(mutation.id);
+                if (mutation.type != Mutation.Type.DELETE) {
+                    EntityCodec.encode(mutation.entity, out);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error al codificar el registro", e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Codifica filas de una tabla como un registro del log que las inserta.
+     */
+    private static byte[] encodeRows(String className, List<Long> ids, List<Object> rows) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 * rows.size());
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(rows.size());
+            for (int i = 0; i < rows.size(); i++) {
+                out.writeByte(Mutation.Type.PUT.ordinal());
+                out.writeUTF(className);
+                out.writeLong(ids.get(i));
+                EntityCodec.encode(rows.get(i), out);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error al codificar el registro", e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Carga la última instantánea, si existe, y reproduce después los registros
+     * del log posteriores a ella. Las entidades se decodifican sobre la instancia
+     * ya existente cuando la hay, de modo que las referencias entre entidades
+     * apuntan siempre al mismo objeto aunque se lean en cualquier orden.
+     */
+    private void recover(WriteAheadLog log) throws IOException {
+        try {
+            Snapshot snapshot = Snapshot.load(directory.resolve(Snapshot.FILE_NAME), new Snapshot.RowReader() {
+                @Override
+                public void read(Class<?> clazz, long id, DataInputStream in) throws IOException {
+                    recoverRow(clazz, id, in);
+                }
+
+                @Override
+                public void expect(Class<?> clazz, int rows) {
+                    tableFor(clazz).presize(rows);
+                }
+            });
+            long afterLsn = 0;
+            if (snapshot != null) {
+                afterLsn = snapshot.getLsn();
+                idGenerator.observe(snapshot.getNextId() - 1);
+            }
+            log.open(afterLsn, this::replay);
+
+            // Las referencias a filas que no han aparecido no deben dejar filas vacías
+            for (Object stub : recoveryStubs) {
+                Table table = database.get(stub.getClass());
+                long id = table.getMetadata().getId(stub);
+                if (table.get(id) == stub) {
+                    applyRecovered(table, id, null);
+                }
+            }
+        } finally {
+            recoveryStubs.clear();
+        }
+    }
+
+    /**
+     * Aplica un registro del log durante la recuperación.
+     */
+    private void replay(long lsn, ByteBuffer payload) throws IOException {
+        DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(payload.array(), payload.position(), payload.remaining()));
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            Mutation.Type type = Mutation.Type.values()[in.readByte()];
+            Class<?> clazz = EntityCodec.classForName(in.readUTF());
+            long id = in.readLong();
+            if (type == Mutation.Type.DELETE) {
+                applyRecovered(tableFor(clazz), id, null);
+            } else {
+                recoverRow(clazz, id, in);
+            }
+        }
+    }
+
+    /**
+     * Decodifica una fila recuperada y la guarda, adelantando el generador
+     * de IDs para que no reutilice los IDs recuperados.
+     */
+    private void recoverRow(Class<?> clazz, long id, DataInputStream in) throws IOException {
+        Table table = tableFor(clazz);
+        Object entity = table.get(id);
+        if (entity == null) {
+            entity = EntityCodec.newInstance(clazz);
+        }
+        EntityCodec.decodeInto(entity, in, this::resolveForRecovery);
+        attachReferences(entity);
+        if (!recoveryStubs.isEmpty()) {
+            recoveryStubs.remove(entity);
+        }
+        applyRecovered(table, id, entity);
+        idGenerator.observe(id);
+    }
+
+    /**
+     * Resuelve una referencia durante la recuperación. Si la entidad todavía no
+     * se ha leído se guarda una instancia vacía que se rellenará al leerla.
+     */
+    private Object resolveForRecovery(Class<?> clazz, long id) {
+        Table table = tableFor(clazz);
+        Object entity = table.get(id);
+        if (entity == null) {
+            entity = EntityCodec.newInstance(clazz);
+            table.getMetadata().setId(entity, id);
+            recoveryStubs.add(entity);
+            applyRecovered(table, id, entity);
+        }
+        return entity;
+    }
+
+    private void applyRecovered(Table table, long id, Object entity) {
+        long mask = table.segmentMask(id);
+        table.lock(mask);
+        try {
+            if (entity == null) {
+                table.removeLocked(id);
+            } else {
+                table.putLocked(id, entity);
+            }
+        } finally {
+            table.unlock(mask);
+        }
+        restoredRows.incrementAndGet();
+    }
+
+    private static void closeQuietly(WriteAheadLog log) {
+        try {
+            log.close();
+        } catch (IOException e) {
+            // Ya se está informando del error original
+        }
+    }
+
+    /**
+     * Segmentos que bloquea una escritura, agrupados por tabla y ordenados
+     * por número de tabla para que dos escrituras no puedan interbloquearse.
+     */
+    private static final class LockSet {
+
+        private Table[] tables;
+        private long[] masks;
+        private int count;
+
+        LockSet(List<Mutation> mutations) {
+            this.tables = new Table[4];
+            this.masks = new long[4];
+            for (Mutation mutation : mutations) {
+                int i = indexOf(mutation.table);
+                masks[i] |= mutation.table.segmentMask(mutation.id);
+            }
+            // Ordenación por inserción: casi siempre hay una o dos tablas
+            for (int i = 1; i < count; i++) {
+                Table table = tables[i];
+                long mask = masks[i];
+                int j = i - 1;
+                while (j >= 0 && tables[j].getOrdinal() > table.getOrdinal()) {
+                    tables[j + 1] = tables[j];
+                    masks[j + 1] = masks[j];
+                    j--;
+                }
+                tables[j + 1] = table;
+                masks[j + 1] = mask;
+            }
+        }
+
+        void lock() {
+            for (int i = 0; i < count; i++) {
+                tables[i].lock(masks[i]);
+            }
+        }
+
+        void unlock() {
+            for (int i = count - 1; i >= 0; i--) {
+                tables[i].unlock(masks[i]);
+            }
+        }
+
+        private int indexOf(Table table) {
+            for (int i = 0; i < count; i++) {
+                if (tables[i] == table) {
+                    return i;
+                }
+            }
+            if (count == tables.length) {
+                tables = Arrays.copyOf(tables, count * 2);
+                masks = Arrays.copyOf(masks, count * 2);
+            }
+            tables[count] = table;
+            return count++;
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,281 @@
+package ejercicio2.database;
+
+import ejercicio2.interfaces.IEntityResolver;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Codificador binario genérico de entidades basado en reflexión.
+ * Escribe los campos no estáticos ni transitorios en orden de declaración,
+ * cada uno precedido de una etiqueta de tipo. Los campos que referencian a
+ * otras entidades se guardan como referencia (clase e ID) y se resuelven al leer,
+ * y las enumeraciones por su nombre.
+ * Las entidades deben tener un constructor sin argumentos.
+ */
+final class EntityCodec {
+
+    private static final byte NULL = 0;
+    private static final byte LONG = 1;
+    private static final byte INT = 2;
+    private static final byte DOUBLE = 3;
+    private static final byte BOOLEAN = 4;
+    private static final byte STRING = 5;
+    private static final byte DATETIME = 6;
+    private static final byte LIST = 7;
+    private static final byte REFERENCE = 8;
+    private static final byte LONG_ARRAY = 9;
+    private static final byte ENUM = 10;
+
+    private static final ClassValue<Field[]> FIELDS = new ClassValue<>() {
+        @Override
+        protected Field[] computeValue(Class<?> type) {
+            List<Field> fields = new ArrayList<>();
+            for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    int modifiers = field.getModifiers();
+                    if (!Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers)) {
+                        field.setAccessible(true);
+                        fields.add(field);
+                    }
+                }
+            }
+            return fields.toArray(new Field[0]);
+        }
+    };
+
+    private static final ClassValue<Constructor<?>> CONSTRUCTORS = new ClassValue<>() {
+        @Override
+        protected Constructor<?> computeValue(Class<?> type) {
+            try {
+                Constructor<?> constructor = type.getDeclaredConstructor();
+                constructor.setAccessible(true);
+                return constructor;
+            } catch (NoSuchMethodException e) {
+                throw new IllegalArgumentException("La clase " + type.getName()
+                        + " necesita un constructor sin argumentos para poder persistirse", e);
+            }
+        }
+    };
+
+    private static final ConcurrentHashMap<String, Class<?>> CLASSES = new ConcurrentHashMap<>();
+
+    private EntityCodec() {
+    }
+
+    /**
+     * Codifica una entidad.
+     *
+     * @param entity Entidad a codificar
+     * @param out Salida donde se escribe
+     * @throws IOException Si falla la escritura
+     */
+    static void encode(Object entity, DataOutputStream out) throws IOException {
+        // Se rechaza al escribir lo que después no se podría leer
+        CONSTRUCTORS.get(entity.getClass());
+        try {
+            for (Field field : FIELDS.get(entity.getClass())) {
+                writeValue(field.get(entity), out);
+            }
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Error al codificar " + entity.getClass().getName(), e);
+        }
+    }
+
+    /**
+     * Decodifica una entidad.
+     *
+     * @param clazz Clase de la entidad
+     * @param in Entrada de la que se lee
+     * @param resolver Resolución de referencias a otras entidades
+     * @return Entidad decodificada
+     * @throws IOException Si falla la lectura o los datos no son válidos
+     */
+    static Object decode(Class<?> clazz, DataInputStream in, IEntityResolver resolver) throws IOException {
+        Object entity;
+        try {
+            entity = newInstance(clazz);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Error al decodificar " + clazz.getName(), e);
+        }
+        decodeInto(entity, in, resolver);
+        return entity;
+    }
+
+    /**
+     * Decodifica una entidad sobre una instancia ya existente, de modo que las
+     * referencias que otras entidades tengan a ella siguen siendo válidas.
+     *
+     * @param entity Instancia donde se escriben los campos
+     * @param in Entrada de la que se lee
+     * @param resolver Resolución de referencias a otras entidades
+     * @throws IOException Si falla la lectura o los datos no son válidos
+     */
+    static void decodeInto(Object entity, DataInputStream in, IEntityResolver resolver) throws IOException {
+        try {
+            for (Field field : FIELDS.get(entity.getClass())) {
+                Object value = readValue(in, resolver);
+                if (value instanceof String && field.getType().isEnum()) {
+                    // Registros escritos cuando el campo era el nombre del valor
+                    value = enumValue(field.getType(), (String) value);
+                }
+                if (value != null || !field.getType().isPrimitive()) {
+                    field.set(entity, value);
+                }
+            }
+        } catch (IllegalAccessException | IllegalArgumentException e) {
+            throw new IOException("Error al decodificar " + entity.getClass().getName(), e);
+        }
+    }
+
+    /**
+     * Crea una instancia vacía con el constructor sin argumentos de la clase.
+     *
+     * @param clazz Clase de la entidad
+     * @return Nueva instancia
+     * @throws IllegalArgumentException Si la clase no tiene constructor sin argumentos o falla al crearla
+     */
+    static Object newInstance(Class<?> clazz) {
+        try {
+            return CONSTRUCTORS.get(clazz).newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalArgumentException("No se puede crear una instancia de " + clazz.getName(), e);
+        }
+    }
+
+    /**
+     * Obtiene una clase a partir de su nombre, guardándola en caché.
+     *
+     * @param name Nombre completo de la clase
+     * @return Clase
+     * @throws IOException Si la clase no existe
+     */
+    static Class<?> classForName(String name) throws IOException {
+        Class<?> clazz = CLASSES.get(name);
+        if (clazz != null) {
+            return clazz;
+        }
+        try {
+            clazz = Class.forName(name);
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Clase desconocida en el registro: " + name, e);
+        }
+        CLASSES.put(name, clazz);
+        return clazz;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Object enumValue(Class<?> clazz, String name) throws IOException {
+        if (!clazz.isEnum()) {
+            throw new IOException("La clase " + clazz.getName() + " no es una enumeración");
+        }
+        try {
+            return Enum.valueOf((Class<? extends Enum>) clazz, name);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Valor desconocido de " + clazz.getName() + ": " + name, e);
+        }
+    }
+
+    private static void writeValue(Object value, DataOutputStream out) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof Long) {
+            out.writeByte(LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof Integer) {
+            out.writeByte(INT);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Double) {
+            out.writeByte(DOUBLE);
+            out.writeDouble((Double) value);
+        } else if (value instanceof Boolean) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof String) {
+            out.writeByte(STRING);
+            out.writeUTF((String) value);
+        } else if (value instanceof LocalDateTime) {
+            LocalDateTime dateTime = (LocalDateTime) value;
+            out.writeByte(DATETIME);
+            out.writeLong(dateTime.toEpochSecond(ZoneOffset.UTC));
+            out.writeInt(dateTime.getNano());
+        } else if (value instanceof long[]) {
+            long[] array = (long[]) value;
+            out.writeByte(LONG_ARRAY);
+            out.writeInt(array.length);
+            for (long element : array) {
+                out.writeLong(element);
+            }
+        } else if (value instanceof Enum) {
+            Enum<?> constant = (Enum<?>) value;
+            out.writeByte(ENUM);
+            out.writeUTF(constant.getDeclaringClass().getName());
+            out.writeUTF(constant.name());
+        } else if (value instanceof Collection) {
+            Collection<?> collection = (Collection<?>) value;
+            out.writeByte(LIST);
+            out.writeInt(collection.size());
+            for (Object element : collection) {
+                writeValue(element, out);
+            }
+        } else {
+            Long id = EntityMetadata.of(value.getClass()).getId(value);
+            if (id == null) {
+                throw new IllegalArgumentException("No se puede guardar una referencia a un "
+                        + value.getClass().getSimpleName() + " sin ID");
+            }
+            out.writeByte(REFERENCE);
+            out.writeUTF(value.getClass().getName());
+            out.writeLong(id);
+        }
+    }
+
+    private static Object readValue(DataInputStream in, IEntityResolver resolver) throws IOException {
+        byte tag = in.readByte();
+        switch (tag) {
+            case NULL:
+                return null;
+            case LONG:
+                return in.readLong();
+            case INT:
+                return in.readInt();
+            case DOUBLE:
+                return in.readDouble();
+            case BOOLEAN:
+                return in.readBoolean();
+            case STRING:
+                return in.readUTF();
+            case DATETIME:
+                return LocalDateTime.ofEpochSecond(in.readLong(), in.readInt(), ZoneOffset.UTC);
+            case LIST:
+                int size = in.readInt();
+                List<Object> list = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    list.add(readValue(in, resolver));
+                }
+                return list;
+            case LONG_ARRAY:
+                long[] array = new long[in.readInt()];
+                for (int i = 0; i < array.length; i++) {
+                    array[i] = in.readLong();
+                }
+                return array;
+            case REFERENCE:
+                Class<?> clazz = classForName(in.readUTF());
+                return resolver.resolve(clazz, in.readLong());
+            case ENUM:
+                return enumValue(classForName(in.readUTF()), in.readUTF());
+            default:
+                throw new IOException("Etiqueta de tipo desconocida: " + tag);
+        }
+    }
+}
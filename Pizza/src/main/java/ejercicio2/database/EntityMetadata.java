@@ -0,0 +1,96 @@
+package ejercicio2.database;
+
+import ejercicio2.interfaces.IEntity;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * Metadatos de una clase de entidad, resueltos una sola vez por clase.
+ * Las entidades que implementan IEntity acceden al ID con llamadas directas;
+ * para el resto se resuelve el campo "id" una vez y se guardan sus MethodHandles.
+ */
+final class EntityMetadata {
+
+    private static final ClassValue<EntityMetadata> REGISTRY = new ClassValue<>() {
+        @Override
+        protected EntityMetadata computeValue(Class<?> type) {
+            return new EntityMetadata(type);
+        }
+    };
+
+    private final Class<?> entityClass;
+    private final MethodHandle idGetter;
+    private final MethodHandle idSetter;
+
+    private EntityMetadata(Class<?> entityClass) {
+        this.entityClass = entityClass;
+
+        if (IEntity.class.isAssignableFrom(entityClass)) {
+            this.idGetter = null;
+            this.idSetter = null;
+            return;
+        }
+
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(entityClass, MethodHandles.lookup());
+            this.idGetter = lookup.findGetter(entityClass, "id", Long.class)
+                    .asType(MethodType.methodType(Long.class, Object.class));
+            this.idSetter = lookup.findSetter(entityClass, "id", Long.class)
+                    .asType(MethodType.methodType(void.class, Object.class, Long.class));
+        } catch (NoSuchFieldException | IllegalAccessException e) {
+            throw new IllegalArgumentException("La clase " + entityClass.getName()
+                    + " no tiene un campo id de tipo Long accesible", e);
+        }
+    }
+
+    /**
+     * Obtiene los metadatos de una clase, registrándola si es la primera vez.
+     *
+     * @param clazz Clase de la entidad
+     * @return Metadatos de la clase
+     * @throws IllegalArgumentException Si la clase no tiene un campo id de tipo Long
+     */
+    static EntityMetadata of(Class<?> clazz) {
+        return REGISTRY.get(clazz);
+    }
+
+    Class<?> getEntityClass() {
+        return entityClass;
+    }
+
+    /**
+     * Lee el ID de una entidad.
+     *
+     * @param entity Entidad
+     * @return ID de la entidad o null si no tiene
+     */
+    Long getId(Object entity) {
+        if (idGetter == null) {
+            return ((IEntity) entity).getId();
+        }
+        try {
+            return (Long) idGetter.invokeExact(entity);
+        } catch (Throwable e) {
+            throw new IllegalStateException("Error al leer el ID de " + entityClass.getName(), e);
+        }
+    }
+
+    /**
+     * Asigna el ID de una entidad.
+     *
+     * @param entity Entidad
+     * @param id Nuevo ID
+     */
+    void setId(Object entity, Long id) {
+        if (idSetter == null) {
+            ((IEntity) entity).setId(id);
+            return;
+        }
+        try {
+            idSetter.invokeExact(entity, id);
+        } catch (Throwable e) {
+            throw new IllegalStateException("Error al asignar el ID de " + entityClass.getName(), e);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package ejercicio2.database;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Índice secundario por igualdad sobre un atributo de las entidades de una tabla.
+ */
+final class HashIndex extends SecondaryIndex {
+
+    /**
+     * Constructor.
+     *
+     * @param name Nombre del índice
+     * @param keyExtractor Función que obtiene la clave de una entidad; no debe lanzar excepciones
+     */
+    HashIndex(String name, Function<Object, ?> keyExtractor) {
+        super(name, keyExtractor, new ConcurrentHashMap<>());
+    }
+
+    @Override
+    Set<Long> newIdSet() {
+        return ConcurrentHashMap.newKeySet();
+    }
+}
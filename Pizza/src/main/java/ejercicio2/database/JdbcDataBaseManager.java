@@ -0,0 +1,772 @@
+package ejercicio2.database;
+
+import ejercicio2.exceptions.DataAccessException;
+import ejercicio2.exceptions.VersionConflictException;
+import ejercicio2.interfaces.IDataBaseManager;
+import ejercicio2.interfaces.ITransaction;
+import ejercicio2.model.Order;
+import ejercicio2.model.Page;
+import ejercicio2.model.Pizza;
+import ejercicio2.model.User;
+import ejercicio2.model.Versioned;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+/**
+ * Implementación de IDataBaseManager sobre una base de datos relacional
+ * mediante JDBC. Guarda usuarios, pizzas y pedidos, cada uno en su tabla;
+ * el esquema se crea al conectar si no existe.
+ *
+ * Las conexiones salen de un pool propio que se abre al conectar y se cierra
+ * al desconectar, y cada conexión guarda sus sentencias preparadas. Cada
+ * operación es una transacción SQL, y las escrituras de un lote (saveAll,
+ * updateAll, deleteAll o la confirmación de una transacción) se envían por
+ * lotes JDBC: una ida y vuelta por tabla y tipo de escritura, no por fila.
+ *
+ * Los IDs se reservan por bloques en la tabla id_allocator, así que varias
+ * instancias pueden compartir la base de datos sin repetirlos. Las versiones
+ * de las filas salen de una secuencia de la base de datos.
+ *
+ * Los índices secundarios se declaran con funciones Java que la base de datos
+ * no puede evaluar, así que sus consultas recorren la tabla y aplican la
+ * función a cada fila leída.
+ */
+public class JdbcDataBaseManager implements IDataBaseManager {
+
+    private static final int DEFAULT_POOL_SIZE = 8;
+    private static final int ID_BLOCK_SIZE = 1_000;
+
+    private static final int CONCURRENT_UPDATE_ERROR = 90131; // Código de H2 para filas cambiadas por otra transacción
+
+    private static final String RESERVE_IDS = "UPDATE id_allocator SET next_id = next_id + ?";
+    private static final String READ_NEXT_ID = "SELECT next_id FROM id_allocator";
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final int poolSize;
+    private final Map<Class<?>, JdbcMapping<?>> mappings;
+    private final ConcurrentMap<Class<?>, ConcurrentMap<String, IndexDefinition>> indexes;
+    private volatile ConnectionPool pool;
+    private long nextId; // Siguiente ID del bloque reservado, protegido por this
+    private long idLimit; // Fin del bloque reservado, excluido
+
+    /**
+     * Constructor con el tamaño de pool por defecto.
+     *
+     * @param url URL JDBC de la base de datos
+     * @param user Usuario de la base de datos
+     * @param password Contraseña del usuario
+     */
+    public JdbcDataBaseManager(String url, String user, String password) {
+        this(url, user, password, DEFAULT_POOL_SIZE);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param url URL JDBC de la base de datos
+     * @param user Usuario de la base de datos
+     * @param password Contraseña del usuario
+     * @param poolSize Número máximo de conexiones abiertas a la vez
+     */
+    public JdbcDataBaseManager(String url, String user, String password, int poolSize) {
+        if (url == null || url.isEmpty()) {
+            throw new IllegalArgumentException("La URL de la base de datos no puede ser nula o vacía");
+        }
+        if (poolSize <= 0) {
+            throw new IllegalArgumentException("El tamaño del pool debe ser positivo");
+        }
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.poolSize = poolSize;
+
+        UserMapping users = new UserMapping();
+        PizzaMapping pizzas = new PizzaMapping();
+        this.mappings = new LinkedHashMap<>();
+        mappings.put(User.class, users);
+        mappings.put(Pizza.class, pizzas);
+        mappings.put(Order.class, new OrderMapping(users, pizzas));
+        this.indexes = new ConcurrentHashMap<>();
+    }
+
+    @Override
+    public synchronized boolean connect() {
+        if (pool != null) {
+            return true;
+        }
+
+        ConnectionPool connections = new ConnectionPool(url, user, password, poolSize);
+        PooledConnection connection = null;
+        try {
+            connection = connections.borrow();
+            for (String sql : schema()) {
+                try (PreparedStatement statement = connection.getConnection().prepareStatement(sql)) {
+                    statement.execute();
+                }
+            }
+            connection.commit();
+        } catch (SQLException | RuntimeException e) {
+            if (connection != null) {
+                connections.release(connection, true);
+                connection = null;
+            }
+            connections.close();
+            return false;
+        } finally {
+            if (connection != null) {
+                connections.release(connection, false);
+            }
+        }
+        pool = connections;
+        return true;
+    }
+
+    @Override
+    public synchronized void disconnect() {
+        ConnectionPool connections = pool;
+        pool = null;
+        if (connections != null) {
+            connections.close();
+        }
+        // Otra base de datos puede haber reservado IDs mientras tanto
+        nextId = 0;
+        idLimit = 0;
+    }
+
+    @Override
+    public boolean isConnected() {
+        return pool != null;
+    }
+
+    @Override
+    public <T> T save(T object) {
+        ensureConnected();
+        JdbcMapping<T> mapping = mappingFor(object);
+        boolean fresh = mapping.getId(object) == null;
+        if (fresh) {
+            mapping.setId(object, reserveIds(1));
+        }
+        commit(List.of(Change.put(mapping, mapping.getId(object), object, fresh)));
+        return object;
+    }
+
+    @Override
+    public <T> Optional<T> findById(Long id, Class<T> clazz) {
+        if (id == null) {
+            ensureConnected();
+            return Optional.empty();
+        }
+        Versioned<T> found = findVersioned(mappingFor(clazz), id);
+        return found != null ? Optional.of(found.getEntity()) : Optional.empty();
+    }
+
+    @Override
+    public <T> T update(T object) {
+        ensureConnected();
+        JdbcMapping<T> mapping = mappingFor(object);
+        commit(List.of(Change.update(mapping, idOf(mapping, object), object, Mutation.ANY_VERSION)));
+        return object;
+    }
+
+    @Override
+    public <T> Optional<Versioned<T>> findVersionedById(Long id, Class<T> clazz) {
+        if (id == null) {
+            ensureConnected();
+            return Optional.empty();
+        }
+        return Optional.ofNullable(findVersioned(mappingFor(clazz), id));
+    }
+
+    @Override
+    public <T> Versioned<T> compareAndUpdate(T object, long expectedVersion) {
+        ensureConnected();
+        JdbcMapping<T> mapping = mappingFor(object);
+        long id = idOf(mapping, object);
+        long version = execute(connection -> {
+            if (!mapping.updateAll(connection, List.of(object), new long[] {expectedVersion})[0]) {
+                throw updateFailure(connection, mapping, id, expectedVersion);
+            }
+            return mapping.lockVersion(connection, id);
+        });
+        return new Versioned<>(object, version);
+    }
+
+    @Override
+    public ITransaction beginTransaction() {
+        ensureConnected();
+        return new JdbcTransaction(this);
+    }
+
+    @Override
+    public <T> boolean delete(Long id, Class<T> clazz) {
+        JdbcMapping<T> mapping = mappingFor(clazz);
+        if (id == null) {
+            ensureConnected();
+            return false;
+        }
+        return commit(List.of(Change.delete(mapping, id))) > 0;
+    }
+
+    @Override
+    public <T> List<T> findAll(Class<T> clazz) {
+        JdbcMapping<T> mapping = mappingFor(clazz);
+        return entities(execute(mapping::findAll));
+    }
+
+    @Override
+    public <T> List<T> saveAll(Collection<T> objects) {
+        ensureConnected();
+        List<T> saved = new ArrayList<>(objects);
+        int missing = 0;
+        for (T object : saved) {
+            if (mappingFor(object).getId(object) == null) {
+                missing++;
+            }
+        }
+
+        // Un único bloque de IDs consecutivos para todo el lote
+        long id = missing > 0 ? reserveIds(missing) : 0;
+        List<Change> changes = new ArrayList<>(saved.size());
+        for (T object : saved) {
+            JdbcMapping<T> mapping = mappingFor(object);
+            boolean fresh = mapping.getId(object) == null;
+            if (fresh) {
+                mapping.setId(object, id++);
+            }
+            changes.add(Change.put(mapping, mapping.getId(object), object, fresh));
+        }
+        commit(changes);
+        return saved;
+    }
+
+    @Override
+    public <T> List<T> updateAll(Collection<T> objects) {
+        ensureConnected();
+        List<T> updated = new ArrayList<>(objects);
+        List<Change> changes = new ArrayList<>(updated.size());
+        for (T object : updated) {
+            JdbcMapping<T> mapping = mappingFor(object);
+            changes.add(Change.update(mapping, idOf(mapping, object), object, Mutation.ANY_VERSION));
+        }
+        // Todo el lote se confirma o se rechaza de una vez
+        commit(changes);
+        return updated;
+    }
+
+    @Override
+    public <T> List<T> findAllById(Collection<Long> ids, Class<T> clazz) {
+        JdbcMapping<T> mapping = mappingFor(clazz);
+        Long[] requested = ids.stream().filter(id -> id != null).toArray(Long[]::new);
+        Map<Long, T> byId = new HashMap<>();
+        for (Versioned<T> found : execute(connection -> mapping.findByIds(connection, requested))) {
+            byId.put(mapping.getId(found.getEntity()), found.getEntity());
+        }
+
+        // Se conserva el orden de los IDs pedidos
+        List<T> found = new ArrayList<>(requested.length);
+        for (Long id : requested) {
+            T object = byId.get(id);
+            if (object != null) {
+                found.add(object);
+            }
+        }
+        return found;
+    }
+
+    @Override
+    public <T> int deleteAll(Collection<Long> ids, Class<T> clazz) {
+        JdbcMapping<T> mapping = mappingFor(clazz);
+        List<Change> changes = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            if (id != null) {
+                changes.add(Change.delete(mapping, id));
+            }
+        }
+        return commit(changes);
+    }
+
+    @Override
+    public <T> Page<T> findPage(Class<T> clazz, String cursor, int pageSize) {
+        JdbcMapping<T> mapping = mappingFor(clazz);
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("El tamaño de página debe ser positivo");
+        }
+
+        // El cursor es el último ID de la página anterior: la página siguiente empieza después
+        long afterId;
+        try {
+            afterId = cursor == null ? Long.MIN_VALUE : Long.parseLong(cursor);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Cursor no válido: " + cursor, e);
+        }
+
+        // Se lee una fila de más para saber si hay página siguiente
+        List<T> items = entities(execute(connection -> mapping.findPage(connection, afterId, pageSize + 1)));
+        if (items.size() <= pageSize) {
+            return new Page<>(items, null);
+        }
+        items = new ArrayList<>(items.subList(0, pageSize));
+        return new Page<>(items, String.valueOf(mapping.getId(items.get(pageSize - 1))));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> void createIndex(String indexName, Class<T> clazz, Function<? super T, ?> keyExtractor) {
+        // La declaración de índices forma parte del esquema y no requiere conexión
+        mappingFor(clazz);
+        indexes.computeIfAbsent(clazz, c -> new ConcurrentHashMap<>())
+                .putIfAbsent(indexName, new IndexDefinition((Function<Object, ?>) keyExtractor, false));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> void createSortedIndex(String indexName, Class<T> clazz,
+                                      Function<? super T, ? extends Comparable<?>> keyExtractor) {
+        mappingFor(clazz);
+        indexes.computeIfAbsent(clazz, c -> new ConcurrentHashMap<>())
+                .putIfAbsent(indexName, new IndexDefinition((Function<Object, ?>) keyExtractor, true));
+    }
+
+    @Override
+    public <T> List<T> findBy(String indexName, Class<T> clazz, Object key) {
+        ensureConnected();
+        IndexDefinition index = index(indexName, clazz, false);
+
+        List<T> result = new ArrayList<>();
+        if (key == null) {
+            return result;
+        }
+        for (T object : findAll(clazz)) {
+            if (key.equals(index.keyExtractor.apply(object))) {
+                result.add(object);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public <T> List<T> findRange(String indexName, Class<T> clazz, Comparable<?> from, Comparable<?> to) {
+        ensureConnected();
+        IndexDefinition index = index(indexName, clazz, true);
+
+        List<T> result = new ArrayList<>();
+        for (T object : findAll(clazz)) {
+            if (SortedIndex.inRange(index.keyExtractor.apply(object), from, to)) {
+                result.add(object);
+            }
+        }
+        result.sort(index.comparator(mappingFor(clazz)));
+        return result;
+    }
+
+    @Override
+    public <T> List<T> findLatest(String indexName, Class<T> clazz, int limit) {
+        return findLatest(indexName, clazz, null, null, limit);
+    }
+
+    /**
+     * Las claves de los índices se calculan en memoria y no son columnas de
+     * la tabla, así que el límite no se puede llevar a la consulta SQL y se
+     * recorre la tabla entera. Se hace una sola pasada que solo guarda los
+     * objetos con las claves más altas vistas hasta el momento, sin ordenar
+     * el rango completo.
+     */
+    @Override
+    public <T> List<T> findLatest(String indexName, Class<T> clazz, Comparable<?> from, Comparable<?> to,
+                                  int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("El límite no puede ser negativo");
+        }
+        ensureConnected();
+        IndexDefinition index = index(indexName, clazz, true);
+        if (limit == 0) {
+            return new ArrayList<>();
+        }
+
+        // Montículo de mínimos: la cabeza es la clave más baja de las guardadas
+        Comparator<T> order = index.comparator(mappingFor(clazz));
+        PriorityQueue<T> latest = new PriorityQueue<>(Math.min(limit, 1024), order);
+        for (T object : findAll(clazz)) {
+            if (!SortedIndex.inRange(index.keyExtractor.apply(object), from, to)) {
+                continue;
+            }
+            if (latest.size() < limit) {
+                latest.add(object);
+            } else if (order.compare(object, latest.peek()) > 0) {
+                latest.poll();
+                latest.add(object);
+            }
+        }
+
+        List<T> result = new ArrayList<>(latest);
+        result.sort(order.reversed());
+        return result;
+    }
+
+    /**
+     * Obtiene la correspondencia de una clase con sus tablas.
+     *
+     * @param clazz Clase de las entidades
+     * @return Correspondencia de la clase
+     * @throws IllegalArgumentException Si la clase no se guarda en esta base de datos
+     */
+    @SuppressWarnings("unchecked")
+    <T> JdbcMapping<T> mappingFor(Class<T> clazz) {
+        JdbcMapping<?> mapping = mappings.get(clazz);
+        if (mapping == null) {
+            throw new IllegalArgumentException("La clase " + clazz.getName() + " no se puede guardar en la base de datos");
+        }
+        return (JdbcMapping<T>) mapping;
+    }
+
+    @SuppressWarnings("unchecked")
+    <T> JdbcMapping<T> mappingFor(T object) {
+        return mappingFor((Class<T>) object.getClass());
+    }
+
+    /**
+     * Reserva un bloque de IDs consecutivos. Los IDs se toman del bloque
+     * reservado en la base de datos y, si no quedan bastantes, se reserva otro.
+     * No debe llamarse con una conexión del pool tomada.
+     *
+     * @param count Número de IDs
+     * @return Primer ID del bloque
+     */
+    synchronized long reserveIds(int count) {
+        if (nextId + count > idLimit) {
+            int reserved = Math.max(count, ID_BLOCK_SIZE);
+            long limit = execute(connection -> {
+                PreparedStatement reserve = connection.prepare(RESERVE_IDS);
+                reserve.setLong(1, reserved);
+                reserve.executeUpdate();
+                try (ResultSet rows = connection.prepare(READ_NEXT_ID).executeQuery()) {
+                    rows.next();
+                    return rows.getLong(1);
+                }
+            });
+            nextId = limit - reserved;
+            idLimit = limit;
+        }
+        long first = nextId;
+        nextId += count;
+        return first;
+    }
+
+    /**
+     * Lee una fila con su versión.
+     *
+     * @return Entidad con su versión o null si no existe
+     */
+    <T> Versioned<T> findVersioned(JdbcMapping<T> mapping, long id) {
+        List<Versioned<T>> found = execute(connection -> mapping.findByIds(connection, new Long[] {id}));
+        return found.isEmpty() ? null : found.get(0);
+    }
+
+    /**
+     * Confirma un conjunto de cambios en una única transacción SQL. Es el
+     * único camino de escritura en lote: agrupa los cambios por tabla y tipo,
+     * comprueba las filas leídas bloqueándolas, y envía cada grupo de
+     * escrituras como un lote JDBC. Si algo falla no se aplica nada.
+     *
+     * @param changes Cambios a confirmar, como mucho uno por fila
+     * @return Número de filas eliminadas
+     * @throws IllegalArgumentException Si alguna fila a actualizar no existe
+     * @throws VersionConflictException Si alguna fila no está en la versión esperada
+     * @throws DataAccessException Si falla la base de datos
+     */
+    int commit(List<Change> changes) {
+        ensureConnected();
+        if (changes.isEmpty()) {
+            return 0;
+        }
+
+        Map<JdbcMapping<Object>, List<Change>> byTable = new LinkedHashMap<>();
+        for (Change change : changes) {
+            byTable.computeIfAbsent(change.mapping, m -> new ArrayList<>()).add(change);
+        }
+
+        return execute(connection -> {
+            int removed = 0;
+            for (Map.Entry<JdbcMapping<Object>, List<Change>> group : byTable.entrySet()) {
+                removed += apply(connection, group.getKey(), group.getValue());
+            }
+            return removed;
+        });
+    }
+
+    /**
+     * Aplica los cambios de una tabla.
+     *
+     * @return Número de filas eliminadas
+     */
+    private static int apply(PooledConnection connection, JdbcMapping<Object> mapping, List<Change> changes)
+            throws SQLException {
+        List<Change> updates = new ArrayList<>();
+        List<Change> checkedUpdates = new ArrayList<>();
+        List<Change> upserts = new ArrayList<>();
+        List<Object> inserts = new ArrayList<>();
+        List<Long> deletes = new ArrayList<>();
+
+        for (Change change : changes) {
+            switch (change.type) {
+                case CHECK:
+                    // Las filas leídas se bloquean hasta el final para que nadie las cambie antes de confirmar
+                    if (mapping.lockVersion(connection, change.id) != change.expectedVersion) {
+                        throw new VersionConflictException("El objeto con ID " + change.id
+                                + " ha sido modificado después de leerlo en la transacción");
+                    }
+                    break;
+                case UPDATE:
+                    (change.expectedVersion == Mutation.ANY_VERSION ? updates : checkedUpdates).add(change);
+                    break;
+                case PUT:
+                    if (change.fresh) {
+                        inserts.add(change.entity);
+                    } else {
+                        upserts.add(change);
+                    }
+                    break;
+                case DELETE:
+                    deletes.add(change.id);
+                    break;
+                default:
+                    throw new IllegalStateException("Tipo de cambio desconocido: " + change.type);
+            }
+        }
+
+        boolean[] updated = mapping.updateAll(connection, entitiesOf(updates), null);
+        for (int i = 0; i < updated.length; i++) {
+            if (!updated[i]) {
+                throw new IllegalArgumentException("El objeto con ID " + updates.get(i).id
+                        + " no existe en la base de datos");
+            }
+        }
+
+        long[] expected = new long[checkedUpdates.size()];
+        for (int i = 0; i < expected.length; i++) {
+            expected[i] = checkedUpdates.get(i).expectedVersion;
+        }
+        updated = mapping.updateAll(connection, entitiesOf(checkedUpdates), expected);
+        for (int i = 0; i < updated.length; i++) {
+            if (!updated[i]) {
+                throw updateFailure(connection, mapping, checkedUpdates.get(i).id, expected[i]);
+            }
+        }
+
+        // Guardar un objeto con ID es una actualización si la fila existe y una inserción si no
+        updated = mapping.updateAll(connection, entitiesOf(upserts), null);
+        for (int i = 0; i < updated.length; i++) {
+            if (!updated[i]) {
+                inserts.add(upserts.get(i).entity);
+            }
+        }
+        mapping.insertAll(connection, inserts);
+
+        return mapping.deleteAll(connection, deletes);
+    }
+
+    /**
+     * Construye la excepción de una actualización con versión que no ha modificado la fila.
+     */
+    private static RuntimeException updateFailure(PooledConnection connection, JdbcMapping<?> mapping, long id,
+                                                  long expectedVersion) throws SQLException {
+        long version = mapping.lockVersion(connection, id);
+        if (version == 0) {
+            return new IllegalArgumentException("El objeto con ID " + id + " no existe en la base de datos");
+        }
+        return new VersionConflictException("El objeto con ID " + id + " ha sido modificado (versión "
+                + version + ", se esperaba " + expectedVersion + ")");
+    }
+
+    /**
+     * Ejecuta una operación en una conexión del pool como una transacción SQL:
+     * la confirma si termina bien y la deshace si lanza cualquier excepción.
+     *
+     * @param work Operación a ejecutar
+     * @return Resultado de la operación
+     */
+    private <R> R execute(SqlWork<R> work) {
+        ConnectionPool connections = ensureConnected();
+        PooledConnection connection = connections.borrow();
+        boolean broken = false;
+        try {
+            R result = work.run(connection);
+            connection.commit();
+            return result;
+        } catch (SQLException e) {
+            broken = !rollbackQuietly(connection);
+            throw translate(e);
+        } catch (RuntimeException e) {
+            broken = !rollbackQuietly(connection);
+            throw e;
+        } finally {
+            connections.release(connection, broken);
+        }
+    }
+
+    private static boolean rollbackQuietly(PooledConnection connection) {
+        try {
+            connection.rollback();
+            return true;
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Traduce un error SQL. Los fallos de serialización y los interbloqueos,
+     * que la base de datos resuelve abortando una de las transacciones, son
+     * conflictos entre escrituras concurrentes como los de las versiones.
+     */
+    private static RuntimeException translate(SQLException e) {
+        String state = e.getSQLState();
+        if ((state != null && state.startsWith("40")) || e.getErrorCode() == CONCURRENT_UPDATE_ERROR) {
+            return new VersionConflictException("La operación ha entrado en conflicto con otra concurrente", e);
+        }
+        return new DataAccessException("Error al acceder a la base de datos: " + e.getMessage(), e);
+    }
+
+    private ConnectionPool ensureConnected() {
+        ConnectionPool connections = pool;
+        if (connections == null) {
+            throw new IllegalStateException("No hay conexión con la base de datos");
+        }
+        return connections;
+    }
+
+    private List<String> schema() {
+        List<String> schema = new ArrayList<>();
+        schema.add("CREATE SEQUENCE IF NOT EXISTS " + JdbcMapping.VERSION_SEQUENCE);
+        schema.add("CREATE TABLE IF NOT EXISTS id_allocator (next_id BIGINT NOT NULL)");
+        schema.add("INSERT INTO id_allocator (next_id) SELECT 1 WHERE NOT EXISTS (SELECT * FROM id_allocator)");
+        for (JdbcMapping<?> mapping : mappings.values()) {
+            schema.addAll(mapping.schema());
+        }
+        return schema;
+    }
+
+    private IndexDefinition index(String indexName, Class<?> clazz, boolean sorted) {
+        Map<String, IndexDefinition> tableIndexes = indexes.get(clazz);
+        IndexDefinition index = tableIndexes != null ? tableIndexes.get(indexName) : null;
+        if (index == null || (sorted && !index.sorted)) {
+            throw new IllegalArgumentException("No existe el índice " + (sorted ? "ordenado " : "") + indexName
+                    + " para " + clazz.getSimpleName());
+        }
+        return index;
+    }
+
+    private static <T> long idOf(JdbcMapping<T> mapping, T object) {
+        Long id = mapping.getId(object);
+        if (id == null) {
+            throw new IllegalArgumentException("No se puede actualizar un objeto sin ID");
+        }
+        return id;
+    }
+
+    private static List<Object> entitiesOf(List<Change> changes) {
+        List<Object> entities = new ArrayList<>(changes.size());
+        for (Change change : changes) {
+            entities.add(change.entity);
+        }
+        return entities;
+    }
+
+    private static <T> List<T> entities(List<Versioned<T>> rows) {
+        List<T> entities = new ArrayList<>(rows.size());
+        for (Versioned<T> row : rows) {
+            entities.add(row.getEntity());
+        }
+        return entities;
+    }
+
+    /**
+     * Operación sobre una conexión del pool.
+     */
+    @FunctionalInterface
+    private interface SqlWork<R> {
+        R run(PooledConnection connection) throws SQLException;
+    }
+
+    /**
+     * Índice secundario declarado: la función que obtiene la clave y si admite rangos.
+     */
+    private static final class IndexDefinition {
+        private final Function<Object, ?> keyExtractor;
+        private final boolean sorted;
+
+        IndexDefinition(Function<Object, ?> keyExtractor, boolean sorted) {
+            this.keyExtractor = keyExtractor;
+            this.sorted = sorted;
+        }
+
+        /**
+         * Orden ascendente de clave y, a igual clave, de ID, como en SortedIndex.
+         */
+        @SuppressWarnings("unchecked")
+        <T> Comparator<T> comparator(JdbcMapping<T> mapping) {
+            Comparator<T> byKey = Comparator.comparing(object -> (Comparable<Object>) keyExtractor.apply(object));
+            return byKey.thenComparing(mapping::getId);
+        }
+    }
+
+    /**
+     * Cambio sobre una fila pendiente de confirmar.
+     */
+    static final class Change {
+
+        enum Type {
+            PUT,
+            UPDATE,
+            DELETE,
+            CHECK
+        }
+
+        final Type type;
+        final JdbcMapping<Object> mapping;
+        final long id;
+        final Object entity;
+        final long expectedVersion;
+        final boolean fresh; // Fila nueva con un ID recién reservado: se inserta sin intentar actualizarla
+
+        @SuppressWarnings("unchecked")
+        private Change(Type type, JdbcMapping<?> mapping, long id, Object entity, long expectedVersion, boolean fresh) {
+            this.type = type;
+            this.mapping = (JdbcMapping<Object>) mapping;
+            this.id = id;
+            this.entity = entity;
+            this.expectedVersion = expectedVersion;
+            this.fresh = fresh;
+        }
+
+        static Change put(JdbcMapping<?> mapping, long id, Object entity, boolean fresh) {
+            return new Change(Type.PUT, mapping, id, entity, Mutation.ANY_VERSION, fresh);
+        }
+
+        static Change update(JdbcMapping<?> mapping, long id, Object entity, long expectedVersion) {
+            return new Change(Type.UPDATE, mapping, id, entity, expectedVersion, false);
+        }
+
+        static Change delete(JdbcMapping<?> mapping, long id) {
+            return new Change(Type.DELETE, mapping, id, null, Mutation.ANY_VERSION, false);
+        }
+
+        static Change check(JdbcMapping<?> mapping, long id, long expectedVersion) {
+            return new Change(Type.CHECK, mapping, id, null, expectedVersion, false);
+        }
+    }
+}
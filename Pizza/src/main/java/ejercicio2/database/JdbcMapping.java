@@ -0,0 +1,312 @@
+package ejercicio2.database;
+
+import ejercicio2.model.Versioned;
+import java.sql.Array;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Correspondencia entre una clase de entidades y sus tablas SQL.
+ *
+ * Cada entidad ocupa una fila con su ID, la versión de la fila y sus columnas
+ * propias; las listas van en tablas hijas que se borran en cascada con la
+ * fila. Las versiones salen de una secuencia global, así que una fila borrada
+ * y vuelta a insertar nunca recupera una versión anterior. Todas las
+ * escrituras se hacen por lotes JDBC, también cuando el lote es de una fila.
+ *
+ * @param <T> Tipo de las entidades
+ */
+abstract class JdbcMapping<T> {
+
+    static final String VERSION_SEQUENCE = "row_versions";
+
+    private final Class<T> entityClass;
+    private final String table;
+
+    private final String insertSql;
+    private final String updateSql;
+    private final String compareAndUpdateSql;
+    private final String deleteSql;
+    private final String selectSql;
+    private final String selectByIdsSql;
+    private final String selectPageSql;
+    private final String versionSql;
+
+    /**
+     * Constructor. Genera el SQL de las operaciones sobre la tabla.
+     *
+     * @param entityClass Clase de las entidades
+     * @param table Nombre de la tabla
+     * @param columns Columnas propias de la entidad, sin el ID ni la versión
+     */
+    JdbcMapping(Class<T> entityClass, String table, String... columns) {
+        this.entityClass = entityClass;
+        this.table = table;
+
+        String nextVersion = "NEXT VALUE FOR " + VERSION_SEQUENCE;
+        String columnList = String.join(", ", columns);
+        String placeholders = String.join(", ", nCopies("?", columns.length));
+        String assignments = String.join(" = ?, ", columns) + " = ?";
+
+        this.insertSql = "INSERT INTO " + table + " (" + columnList + ", id, version) VALUES (" + placeholders
+                + ", ?, " + nextVersion + ")";
+        this.updateSql = "UPDATE " + table + " SET version = " + nextVersion + ", " + assignments + " WHERE id = ?";
+        this.compareAndUpdateSql = updateSql + " AND version = ?";
+        this.deleteSql = "DELETE FROM " + table + " WHERE id = ?";
+        this.selectSql = "SELECT id, version, " + columnList + " FROM " + table;
+        this.selectByIdsSql = selectSql + " WHERE id = ANY(?)";
+        this.selectPageSql = selectSql + " WHERE id > ? ORDER BY id FETCH FIRST ? ROWS ONLY";
+        this.versionSql = "SELECT version FROM " + table + " WHERE id = ? FOR UPDATE";
+    }
+
+    Class<T> getEntityClass() {
+        return entityClass;
+    }
+
+    String getTable() {
+        return table;
+    }
+
+    /**
+     * Sentencias que crean las tablas e índices de la entidad si no existen.
+     *
+     * @return Sentencias DDL en orden de ejecución
+     */
+    abstract List<String> schema();
+
+    abstract Long getId(T entity);
+
+    abstract void setId(T entity, long id);
+
+    /**
+     * Asigna las columnas propias de la entidad a partir del parámetro 1.
+     *
+     * @param statement Sentencia de inserción o actualización
+     * @param entity Entidad
+     * @return Índice del siguiente parámetro libre
+     */
+    abstract int bind(PreparedStatement statement, T entity) throws SQLException;
+
+    /**
+     * Lee las filas de un resultado, con las columnas en el orden de la
+     * consulta base (ID, versión y columnas propias), y completa las
+     * entidades con sus tablas hijas y sus referencias.
+     *
+     * @param connection Conexión en la que se leen las tablas hijas
+     * @param rows Resultado a leer, que se cierra al terminar
+     * @return Entidades con la versión de su fila, en el orden del resultado
+     */
+    abstract List<Versioned<T>> readAll(PooledConnection connection, ResultSet rows) throws SQLException;
+
+    /**
+     * Sustituye las filas de las tablas hijas de unas entidades ya escritas.
+     * Por defecto la entidad no tiene tablas hijas.
+     *
+     * @param connection Conexión de la operación
+     * @param entities Entidades escritas
+     * @param inserted true si las entidades son nuevas y no tienen filas hijas que borrar
+     */
+    void writeChildren(PooledConnection connection, List<T> entities, boolean inserted) throws SQLException {
+    }
+
+    /**
+     * Inserta un lote de entidades.
+     *
+     * @param connection Conexión de la operación
+     * @param entities Entidades con su ID asignado
+     */
+    void insertAll(PooledConnection connection, List<T> entities) throws SQLException {
+        if (entities.isEmpty()) {
+            return;
+        }
+        PreparedStatement statement = connection.prepare(insertSql);
+        for (T entity : entities) {
+            statement.setLong(bind(statement, entity), getId(entity));
+            statement.addBatch();
+        }
+        statement.executeBatch();
+        writeChildren(connection, entities, true);
+    }
+
+    /**
+     * Actualiza un lote de entidades, comprobando la versión esperada de cada
+     * una si se indica. Las tablas hijas solo se reescriben en las actualizadas.
+     *
+     * @param connection Conexión de la operación
+     * @param entities Entidades con su ID asignado
+     * @param expectedVersions Versión esperada de cada entidad, o null para no comprobarla
+     * @return Por cada entidad, true si se ha actualizado y false si no existía o no estaba en la versión esperada
+     */
+    boolean[] updateAll(PooledConnection connection, List<T> entities, long[] expectedVersions) throws SQLException {
+        boolean[] updated = new boolean[entities.size()];
+        if (entities.isEmpty()) {
+            return updated;
+        }
+        PreparedStatement statement = connection.prepare(expectedVersions != null ? compareAndUpdateSql : updateSql);
+        for (int i = 0; i < entities.size(); i++) {
+            T entity = entities.get(i);
+            int next = bind(statement, entity);
+            statement.setLong(next, getId(entity));
+            if (expectedVersions != null) {
+                statement.setLong(next + 1, expectedVersions[i]);
+            }
+            statement.addBatch();
+        }
+        int[] counts = statement.executeBatch();
+
+        List<T> changed = new ArrayList<>(entities.size());
+        for (int i = 0; i < counts.length; i++) {
+            updated[i] = counts[i] > 0;
+            if (updated[i]) {
+                changed.add(entities.get(i));
+            }
+        }
+        writeChildren(connection, changed, false);
+        return updated;
+    }
+
+    /**
+     * Elimina un lote de filas. Las filas hijas se borran en cascada.
+     *
+     * @param connection Conexión de la operación
+     * @param ids IDs de las filas
+     * @return Número de filas eliminadas
+     */
+    int deleteAll(PooledConnection connection, List<Long> ids) throws SQLException {
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        PreparedStatement statement = connection.prepare(deleteSql);
+        for (Long id : ids) {
+            statement.setLong(1, id);
+            statement.addBatch();
+        }
+        int removed = 0;
+        for (int count : statement.executeBatch()) {
+            removed += Math.max(count, 0);
+        }
+        return removed;
+    }
+
+    /**
+     * Lee la versión de una fila bloqueándola hasta el final de la operación.
+     *
+     * @param connection Conexión de la operación
+     * @param id ID de la fila
+     * @return Versión de la fila o 0 si no existe
+     */
+    long lockVersion(PooledConnection connection, long id) throws SQLException {
+        PreparedStatement statement = connection.prepare(versionSql);
+        statement.setLong(1, id);
+        try (ResultSet rows = statement.executeQuery()) {
+            return rows.next() ? rows.getLong(1) : 0;
+        }
+    }
+
+    /**
+     * Lee las filas con los IDs indicados, en el orden de la tabla.
+     *
+     * @param connection Conexión de la operación
+     * @param ids IDs de las filas
+     * @return Entidades encontradas con su versión
+     */
+    List<Versioned<T>> findByIds(PooledConnection connection, Long[] ids) throws SQLException {
+        if (ids.length == 0) {
+            return new ArrayList<>();
+        }
+        PreparedStatement statement = connection.prepare(selectByIdsSql);
+        Array array = connection.getConnection().createArrayOf("BIGINT", ids);
+        try {
+            statement.setArray(1, array);
+            return readAll(connection, statement.executeQuery());
+        } finally {
+            array.free();
+        }
+    }
+
+    /**
+     * Lee todas las filas de la tabla.
+     *
+     * @param connection Conexión de la operación
+     * @return Entidades con su versión
+     */
+    List<Versioned<T>> findAll(PooledConnection connection) throws SQLException {
+        return readAll(connection, connection.prepare(selectSql).executeQuery());
+    }
+
+    /**
+     * Lee una página de filas en orden de ID.
+     *
+     * @param connection Conexión de la operación
+     * @param afterId ID a partir del cual, sin incluirlo, empieza la página
+     * @param pageSize Número máximo de filas
+     * @return Entidades de la página con su versión
+     */
+    List<Versioned<T>> findPage(PooledConnection connection, long afterId, int pageSize) throws SQLException {
+        PreparedStatement statement = connection.prepare(selectPageSql);
+        statement.setLong(1, afterId);
+        statement.setInt(2, pageSize);
+        return readAll(connection, statement.executeQuery());
+    }
+
+    /**
+     * Lee las filas de una tabla hija de las entidades con los IDs indicados.
+     *
+     * @param connection Conexión de la operación
+     * @param sql Consulta con un único parámetro, el array de IDs
+     * @param ids IDs de las entidades
+     * @return Resultado de la consulta
+     */
+    static ResultSet queryByIds(PooledConnection connection, String sql, Long[] ids) throws SQLException {
+        PreparedStatement statement = connection.prepare(sql);
+        Array array = connection.getConnection().createArrayOf("BIGINT", ids);
+        try {
+            statement.setArray(1, array);
+            return statement.executeQuery();
+        } finally {
+            array.free();
+        }
+    }
+
+    /**
+     * Borra las filas de una tabla hija de unas entidades.
+     *
+     * @param connection Conexión de la operación
+     * @param sql Borrado con un único parámetro, el array de IDs
+     * @param ids IDs de las entidades
+     */
+    static void deleteByIds(PooledConnection connection, String sql, Long[] ids) throws SQLException {
+        PreparedStatement statement = connection.prepare(sql);
+        Array array = connection.getConnection().createArrayOf("BIGINT", ids);
+        try {
+            statement.setArray(1, array);
+            statement.executeUpdate();
+        } finally {
+            array.free();
+        }
+    }
+
+    /**
+     * Obtiene los IDs de unas entidades.
+     *
+     * @param entities Entidades con ID asignado
+     * @return Array de IDs
+     */
+    Long[] idsOf(List<T> entities) {
+        Long[] ids = new Long[entities.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = getId(entities.get(i));
+        }
+        return ids;
+    }
+
+    private static List<String> nCopies(String value, int count) {
+        String[] copies = new String[count];
+        Arrays.fill(copies, value);
+        return Arrays.asList(copies);
+    }
+}
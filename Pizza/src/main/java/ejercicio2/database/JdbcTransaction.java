@@ -0,0 +1,201 @@
+package ejercicio2.database;
+
+import ejercicio2.database.JdbcDataBaseManager.Change;
+import ejercicio2.interfaces.ITransaction;
+import ejercicio2.model.Versioned;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Transacción optimista sobre JdbcDataBaseManager, con el mismo comportamiento
+ * que Transaction. No retiene ninguna conexión mientras está abierta: acumula
+ * las escrituras y las versiones de las filas leídas, y al confirmar lo envía
+ * todo en una única transacción SQL que bloquea las filas leídas para
+ * validarlas antes de escribir.
+ */
+final class JdbcTransaction implements ITransaction {
+
+    private static final Versioned<Object> MISSING = new Versioned<>(null, 0);
+
+    private final JdbcDataBaseManager dbManager;
+    private final Map<RowKey, Change> writes;
+    private final Map<RowKey, Versioned<Object>> reads;
+    private boolean active;
+
+    /**
+     * Constructor.
+     *
+     * @param dbManager Base de datos sobre la que se confirma la transacción
+     */
+    JdbcTransaction(JdbcDataBaseManager dbManager) {
+        this.dbManager = dbManager;
+        this.writes = new LinkedHashMap<>();
+        this.reads = new HashMap<>();
+        this.active = true;
+    }
+
+    @Override
+    public <T> T save(T object) {
+        ensureActive();
+
+        JdbcMapping<T> mapping = dbManager.mappingFor(object);
+        Long id = mapping.getId(object);
+        boolean fresh = id == null;
+        if (fresh) {
+            id = dbManager.reserveIds(1);
+            mapping.setId(object, id);
+        }
+        RowKey key = new RowKey(mapping, id);
+        Change previous = writes.get(key);
+        // Una fila nueva de esta misma transacción sigue siendo una inserción
+        fresh = fresh || (previous != null && previous.fresh);
+        writes.put(key, Change.put(mapping, id, object, fresh));
+
+        return object;
+    }
+
+    @Override
+    public <T> Optional<T> findById(Long id, Class<T> clazz) {
+        ensureActive();
+
+        if (id == null) {
+            return Optional.empty();
+        }
+
+        JdbcMapping<T> mapping = dbManager.mappingFor(clazz);
+        RowKey key = new RowKey(mapping, id);
+
+        // Las escrituras propias tienen prioridad sobre lo guardado
+        Change write = writes.get(key);
+        if (write != null) {
+            return write.type == Change.Type.DELETE ? Optional.empty() : Optional.of(clazz.cast(write.entity));
+        }
+
+        Versioned<Object> read = reads.get(key);
+        if (read == null) {
+            Versioned<T> found = dbManager.findVersioned(mapping, id);
+            read = found != null ? new Versioned<>(found.getEntity(), found.getVersion()) : MISSING;
+            reads.put(key, read);
+        }
+        return Optional.ofNullable(clazz.cast(read.getEntity()));
+    }
+
+    @Override
+    public <T> T update(T object) {
+        ensureActive();
+
+        JdbcMapping<T> mapping = dbManager.mappingFor(object);
+        Long id = mapping.getId(object);
+        if (id == null) {
+            throw new IllegalArgumentException("No se puede actualizar un objeto sin ID");
+        }
+
+        RowKey key = new RowKey(mapping, id);
+        Change write = writes.get(key);
+        Versioned<Object> read = reads.get(key);
+        if ((write != null && write.type == Change.Type.DELETE) || (write == null && read == MISSING)) {
+            throw new IllegalArgumentException("El objeto con ID " + id + " no existe en la base de datos");
+        }
+
+        if (write != null && write.type == Change.Type.PUT) {
+            // Sigue siendo una inserción de esta misma transacción
+            writes.put(key, Change.put(mapping, id, object, write.fresh));
+        } else {
+            // Si la fila se ha leído, solo se actualiza si nadie la ha cambiado desde entonces
+            long expectedVersion = read != null ? read.getVersion() : Mutation.ANY_VERSION;
+            writes.put(key, Change.update(mapping, id, object, expectedVersion));
+        }
+
+        return object;
+    }
+
+    @Override
+    public <T> boolean delete(Long id, Class<T> clazz) {
+        if (findById(id, clazz).isEmpty()) {
+            return false;
+        }
+
+        JdbcMapping<T> mapping = dbManager.mappingFor(clazz);
+        writes.put(new RowKey(mapping, id), Change.delete(mapping, id));
+        return true;
+    }
+
+    @Override
+    public void commit() {
+        ensureActive();
+        active = false;
+
+        List<Change> changes = new ArrayList<>(writes.size() + reads.size());
+        for (Map.Entry<RowKey, Versioned<Object>> read : reads.entrySet()) {
+            // Las actualizaciones ya comprueban la versión leída
+            Change write = writes.get(read.getKey());
+            if (write == null || write.type != Change.Type.UPDATE) {
+                RowKey key = read.getKey();
+                changes.add(Change.check(key.mapping, key.id, read.getValue().getVersion()));
+            }
+        }
+        changes.addAll(writes.values());
+
+        dbManager.commit(changes);
+    }
+
+    @Override
+    public void rollback() {
+        ensureActive();
+        active = false;
+        writes.clear();
+        reads.clear();
+    }
+
+    @Override
+    public boolean isActive() {
+        return active;
+    }
+
+    @Override
+    public void close() {
+        if (active) {
+            rollback();
+        }
+    }
+
+    private void ensureActive() {
+        if (!active) {
+            throw new IllegalStateException("La transacción ya ha terminado");
+        }
+    }
+
+    /**
+     * Fila identificada por su tabla y su ID.
+     */
+    private static final class RowKey {
+        private final JdbcMapping<?> mapping;
+        private final long id;
+
+        RowKey(JdbcMapping<?> mapping, long id) {
+            this.mapping = mapping;
+            this.id = id;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof RowKey)) {
+                return false;
+            }
+            RowKey other = (RowKey) o;
+            return mapping == other.mapping && id == other.id;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * mapping.hashCode() + Long.hashCode(id);
+        }
+    }
+}
@@ -0,0 +1,327 @@
+package ejercicio2.database;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Tabla hash de direccionamiento abierto con claves long primitivas.
+ * Evita el Long y el nodo que HashMap necesita por cada entrada.
+ *
+ * Admite un único escritor a la vez (el llamante debe serializar las escrituras)
+ * y cualquier número de lectores sin cerrojo: las ranuras se publican con
+ * semántica release/acquire y al crecer se sustituyen los arrays completos.
+ * Las entradas eliminadas dejan la clave con valor null (lápida), de modo que
+ * un lector concurrente nunca pierde una entrada por un desplazamiento.
+ *
+ * Cada tabla mezcla las claves con una semilla propia. Sin ella, copiar las
+ * entradas de una tabla grande en otra recién creada (al cargar una instantánea,
+ * por ejemplo) las insertaría en el orden de sus ranuras y formaría largas
+ * cadenas de colisiones mientras la tabla nueva es más pequeña.
+ */
+final class LongObjectMap {
+
+    private static final VarHandle KEYS = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final VarHandle VALUES = MethodHandles.arrayElementVarHandle(Object[].class);
+
+    private static final int MIN_CAPACITY = 16;
+    private static final long EMPTY = 0L;
+
+    /**
+     * Recorrido de las entradas de la tabla.
+     */
+    interface EntryVisitor {
+        /**
+         * Procesa una entrada.
+         *
+         * @param key Clave de la entrada
+         * @param value Valor de la entrada
+         */
+        void visit(long key, Object value);
+    }
+
+    /**
+     * Arrays de ranuras. Se sustituyen juntos para que un lector siempre
+     * vea claves y valores de la misma generación. Cada ranura guarda además
+     * la versión de su valor, que solo se lee y escribe con el cerrojo del escritor.
+     */
+    static final class Slots {
+        final long[] keys;
+        final Object[] values;
+        final long[] versions;
+
+        Slots(int capacity) {
+            this.keys = new long[capacity];
+            this.values = new Object[capacity];
+            this.versions = new long[capacity];
+        }
+
+        int capacity() {
+            return keys.length;
+        }
+
+        long keyAt(int index) {
+            return (long) KEYS.getAcquire(keys, index);
+        }
+
+        Object valueAt(int index) {
+            return VALUES.getAcquire(values, index);
+        }
+    }
+
+    private final long seed;
+    private volatile Slots slots;
+    private volatile Object zeroValue; // La clave 0 no cabe en las ranuras
+    private long zeroVersion;
+    private volatile int size;
+    private int used; // Ranuras ocupadas, incluidas las lápidas
+
+    /**
+     * Constructor por defecto.
+     */
+    LongObjectMap() {
+        this.seed = ThreadLocalRandom.current().nextLong();
+        this.slots = new Slots(MIN_CAPACITY);
+    }
+
+    /**
+     * Obtiene el valor asociado a una clave. No bloquea.
+     *
+     * @param key Clave
+     * @return Valor o null si no existe
+     */
+    Object get(long key) {
+        if (key == EMPTY) {
+            return zeroValue;
+        }
+        Slots current = slots;
+        int mask = current.capacity() - 1;
+        for (int i = index(key, mask); ; i = (i + 1) & mask) {
+            long k = current.keyAt(i);
+            if (k == key) {
+                return current.valueAt(i);
+            }
+            if (k == EMPTY) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Obtiene la versión del valor asociado a una clave.
+     * Solo debe llamarlo el escritor, con su cerrojo tomado.
+     *
+     * @param key Clave
+     * @return Versión del valor o 0 si la clave no existe
+     */
+    long version(long key) {
+        if (key == EMPTY) {
+            return zeroValue != null ? zeroVersion : 0;
+        }
+        Slots current = slots;
+        int mask = current.capacity() - 1;
+        for (int i = index(key, mask); ; i = (i + 1) & mask) {
+            long k = current.keys[i];
+            if (k == key) {
+                return current.values[i] != null ? current.versions[i] : 0;
+            }
+            if (k == EMPTY) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Asocia un valor a una clave sin versión. Solo debe llamarlo un escritor a la vez.
+     *
+     * @param key Clave
+     * @param value Valor, no nulo
+     * @return Valor anterior o null si no existía
+     */
+    Object put(long key, Object value) {
+        return put(key, value, 0);
+    }
+
+    /**
+     * Asocia un valor a una clave. Solo debe llamarlo un escritor a la vez.
+     *
+     * @param key Clave
+     * @param value Valor, no nulo
+     * @param version Versión del valor
+     * @return Valor anterior o null si no existía
+     */
+    Object put(long key, Object value, long version) {
+        if (key == EMPTY) {
+            Object previous = zeroValue;
+            zeroVersion = version;
+            zeroValue = value;
+            if (previous == null) {
+                size++;
+            }
+            return previous;
+        }
+
+        Slots current = slots;
+        int mask = current.capacity() - 1;
+        int i = index(key, mask);
+        long k;
+        while ((k = current.keys[i]) != EMPTY && k != key) {
+            i = (i + 1) & mask;
+        }
+
+        Object previous = current.values[i];
+        current.versions[i] = version;
+        VALUES.setRelease(current.values, i, value);
+        if (k == EMPTY) {
+            KEYS.setRelease(current.keys, i, key);
+            used++;
+        }
+        if (previous == null) {
+            size++;
+        }
+
+        if (used * 4L >= current.capacity() * 3L) {
+            rehash();
+        }
+        return previous;
+    }
+
+    /**
+     * Elimina una clave. Solo debe llamarlo un escritor a la vez.
+     *
+     * @param key Clave
+     * @return Valor eliminado o null si no existía
+     */
+    Object remove(long key) {
+        if (key == EMPTY) {
+            Object previous = zeroValue;
+            zeroValue = null;
+            if (previous != null) {
+                size--;
+            }
+            return previous;
+        }
+
+        Slots current = slots;
+        int mask = current.capacity() - 1;
+        for (int i = index(key, mask); ; i = (i + 1) & mask) {
+            long k = current.keys[i];
+            if (k == EMPTY) {
+                return null;
+            }
+            if (k == key) {
+                Object previous = current.values[i];
+                if (previous != null) {
+                    VALUES.setRelease(current.values, i, null);
+                    size--;
+                }
+                return previous;
+            }
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Reserva de una vez espacio para un número de entradas, evitando los
+     * sucesivos rehash de una carga masiva. Solo debe llamarlo un escritor a la vez.
+     *
+     * @param expected Número de entradas previsto
+     */
+    void ensureCapacity(int expected) {
+        int capacity = slots.capacity();
+        while (expected * 4L >= capacity * 3L) {
+            capacity <<= 1;
+        }
+        if (capacity > slots.capacity()) {
+            rehash(capacity);
+        }
+    }
+
+    /**
+     * Devuelve la generación actual de ranuras para recorrerla sin bloquear.
+     *
+     * @return Ranuras actuales
+     */
+    Slots slots() {
+        return slots;
+    }
+
+    /**
+     * Devuelve el valor asociado a la clave 0, que no se guarda en las ranuras.
+     *
+     * @return Valor de la clave 0 o null si no existe
+     */
+    Object zeroValue() {
+        return zeroValue;
+    }
+
+    /**
+     * Recorre las entradas presentes sin bloquear. Las escrituras concurrentes
+     * pueden verse o no, igual que en los iteradores de ConcurrentHashMap.
+     *
+     * @param visitor Función que procesa cada entrada
+     */
+    void forEach(EntryVisitor visitor) {
+        Object zero = zeroValue;
+        if (zero != null) {
+            visitor.visit(EMPTY, zero);
+        }
+        Slots current = slots;
+        for (int i = 0; i < current.capacity(); i++) {
+            long k = current.keyAt(i);
+            if (k != EMPTY) {
+                Object value = current.valueAt(i);
+                if (value != null) {
+                    visitor.visit(k, value);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reconstruye los arrays descartando las lápidas y duplicando la
+     * capacidad si las entradas vivas lo requieren.
+     */
+    private void rehash() {
+        int capacity = slots.capacity();
+        while (size * 2L >= capacity) {
+            capacity <<= 1;
+        }
+        rehash(capacity);
+    }
+
+    private void rehash(int capacity) {
+        Slots old = slots;
+        Slots fresh = new Slots(capacity);
+        int mask = capacity - 1;
+        int live = 0;
+        for (int j = 0; j < old.capacity(); j++) {
+            long k = old.keys[j];
+            Object value = old.values[j];
+            if (k != EMPTY && value != null) {
+                int i = index(k, mask);
+                while (fresh.keys[i] != EMPTY) {
+                    i = (i + 1) & mask;
+                }
+                fresh.keys[i] = k;
+                fresh.values[i] = value;
+                fresh.versions[i] = old.versions[j];
+                live++;
+            }
+        }
+
+        used = live;
+        slots = fresh;
+    }
+
+    private int index(long key, int mask) {
+        long h = key ^ seed;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return (int) h & mask;
+    }
+}
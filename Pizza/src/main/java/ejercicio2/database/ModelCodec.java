@@ -0,0 +1,431 @@
+package ejercicio2.database;
+
+import ejercicio2.interfaces.IEntityResolver;
+import ejercicio2.model.Order;
+import ejercicio2.model.Pizza;
+import ejercicio2.model.User;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Codificador binario compacto, escrito a mano, para User, Pizza y Order.
+ * Lee y escribe directamente sobre un ByteBuffer sin objetos intermedios.
+ *
+ * Cada registro empieza por el tipo de entidad y la versión de su esquema,
+ * seguidos de una máscara con los campos no nulos. Los enteros se guardan
+ * como varint (en zigzag si pueden ser negativos), las cadenas en UTF-8
+ * precedidas de su longitud más uno (0 es null), las fechas como segundos
+ * y nanosegundos desde la época en UTC, y el usuario y las pizzas de un
+ * pedido por su ID. El pedido leído queda enlazado y los resuelve al usarlos.
+ */
+final class ModelCodec {
+
+    static final byte USER = 1;
+    static final byte PIZZA = 2;
+    static final byte ORDER = 3;
+
+    private static final byte USER_VERSION = 1;
+    private static final byte PIZZA_VERSION = 1;
+    private static final byte ORDER_VERSION = 1;
+
+    private static final int HAS_ID = 1;
+    private static final int HAS_USER = 1 << 1;
+    private static final int HAS_PIZZAS = 1 << 2;
+    private static final int HAS_DATE = 1 << 3;
+    private static final int HAS_TOPPINGS = 1 << 1;
+
+    private ModelCodec() {
+    }
+
+    /**
+     * Comprueba si una clase tiene codificación propia.
+     *
+     * @param clazz Clase de la entidad
+     * @return true si es User, Pizza u Order
+     */
+    static boolean supports(Class<?> clazz) {
+        return clazz == User.class || clazz == Pizza.class || clazz == Order.class;
+    }
+
+    /**
+     * Codifica una entidad soportada.
+     *
+     * @param entity Entidad a codificar
+     * @param out Buffer donde se escribe; si no cabe se lanza BufferOverflowException
+     * @throws IllegalArgumentException Si la clase no está soportada
+     */
+    static void encode(Object entity, ByteBuffer out) {
+        Class<?> clazz = entity.getClass();
+        if (clazz == User.class) {
+            encodeUser((User) entity, out);
+        } else if (clazz == Pizza.class) {
+            encodePizza((Pizza) entity, out);
+        } else if (clazz == Order.class) {
+            encodeOrder((Order) entity, out);
+        } else {
+            throw new IllegalArgumentException("Tipo no soportado por el codificador: " + clazz.getName());
+        }
+    }
+
+    /**
+     * Decodifica la entidad que empieza en la posición actual del buffer.
+     *
+     * @param in Buffer del que se lee
+     * @param resolver Resolución de las referencias de los pedidos
+     * @return Entidad decodificada
+     * @throws IOException Si los datos no son válidos o están truncados
+     */
+    static Object decode(ByteBuffer in, IEntityResolver resolver) throws IOException {
+        byte type;
+        try {
+            type = in.get(in.position());
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("Registro truncado", e);
+        }
+        switch (type) {
+            case USER:
+                return decodeUser(in);
+            case PIZZA:
+                return decodePizza(in);
+            case ORDER:
+                return decodeOrder(in, resolver);
+            default:
+                throw new IOException("Tipo de entidad desconocido: " + type);
+        }
+    }
+
+    /**
+     * Calcula una cota superior del tamaño codificado de una entidad,
+     * para reservar el buffer sin recorrer dos veces las cadenas.
+     *
+     * @param entity Entidad soportada
+     * @return Número máximo de bytes que ocupará
+     */
+    static int maxEncodedSize(Object entity) {
+        int size = 3 + 10; // Cabecera y ID
+        if (entity instanceof User) {
+            User user = (User) entity;
+            size += maxSize(user.getUsername()) + maxSize(user.getPassword()) + maxSize(user.getEmail())
+                    + maxSize(user.getAddress()) + maxSize(user.getPhoneNumber());
+        } else if (entity instanceof Pizza) {
+            Pizza pizza = (Pizza) entity;
+            size += maxSize(pizza.getName()) + maxSize(pizza.getSize()) + 8 + 5;
+            if (pizza.getToppings() != null) {
+                for (String topping : pizza.getToppings()) {
+                    size += maxSize(topping);
+                }
+            }
+        } else if (entity instanceof Order) {
+            Order order = (Order) entity;
+            size += 10 + 10 + 5 + 8 + maxSize(order.getStatus()) + maxSize(order.getPaymentTransactionId()) + 5;
+            size += 10 * order.getPizzaIds().size();
+        } else {
+            throw new IllegalArgumentException("Tipo no soportado por el codificador: " + entity.getClass().getName());
+        }
+        return size;
+    }
+
+    static void encodeUser(User user, ByteBuffer out) {
+        out.put(USER);
+        out.put(USER_VERSION);
+        out.put((byte) (user.getId() != null ? HAS_ID : 0));
+        if (user.getId() != null) {
+            writeSignedVarLong(user.getId(), out);
+        }
+        writeString(user.getUsername(), out);
+        writeString(user.getPassword(), out);
+        writeString(user.getEmail(), out);
+        writeString(user.getAddress(), out);
+        writeString(user.getPhoneNumber(), out);
+    }
+
+    static User decodeUser(ByteBuffer in) throws IOException {
+        try {
+            int flags = readHeader(in, USER, USER_VERSION);
+            User user = new User();
+            if ((flags & HAS_ID) != 0) {
+                user.setId(readSignedVarLong(in));
+            }
+            user.setUsername(readString(in));
+            user.setPassword(readString(in));
+            user.setEmail(readString(in));
+            user.setAddress(readString(in));
+            user.setPhoneNumber(readString(in));
+            return user;
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Registro de usuario truncado", e);
+        }
+    }
+
+    static void encodePizza(Pizza pizza, ByteBuffer out) {
+        List<String> toppings = pizza.getToppings();
+        out.put(PIZZA);
+        out.put(PIZZA_VERSION);
+        out.put((byte) ((pizza.getId() != null ? HAS_ID : 0) | (toppings != null ? HAS_TOPPINGS : 0)));
+        if (pizza.getId() != null) {
+            writeSignedVarLong(pizza.getId(), out);
+        }
+        writeString(pizza.getName(), out);
+        writeString(pizza.getSize(), out);
+        out.putDouble(pizza.getPrice());
+        if (toppings != null) {
+            writeVarLong(toppings.size(), out);
+            for (String topping : toppings) {
+                writeString(topping, out);
+            }
+        }
+    }
+
+    static Pizza decodePizza(ByteBuffer in) throws IOException {
+        try {
+            int flags = readHeader(in, PIZZA, PIZZA_VERSION);
+            Pizza pizza = new Pizza();
+            if ((flags & HAS_ID) != 0) {
+                pizza.setId(readSignedVarLong(in));
+            }
+            pizza.setName(readString(in));
+            pizza.setSize(readString(in));
+            pizza.setPrice(in.getDouble());
+            if ((flags & HAS_TOPPINGS) != 0) {
+                int count = readLength(in);
+                List<String> toppings = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    toppings.add(readString(in));
+                }
+                pizza.setToppings(toppings);
+            } else {
+                pizza.setToppings(null);
+            }
+            return pizza;
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Registro de pizza truncado", e);
+        }
+    }
+
+    static void encodeOrder(Order order, ByteBuffer out) {
+        Long userId = order.getUserId();
+        if (userId == null && order.getUser() != null) {
+            referenceId(null, "User");
+        }
+        List<Long> pizzaIds = order.getPizzaIds();
+        LocalDateTime date = order.getOrderDate();
+        int flags = (order.getId() != null ? HAS_ID : 0) | (userId != null ? HAS_USER : 0)
+                | HAS_PIZZAS | (date != null ? HAS_DATE : 0);
+
+        out.put(ORDER);
+        out.put(ORDER_VERSION);
+        out.put((byte) flags);
+        if (order.getId() != null) {
+            writeSignedVarLong(order.getId(), out);
+        }
+        if (userId != null) {
+            writeSignedVarLong(userId, out);
+        }
+        writeVarLong(pizzaIds.size(), out);
+        for (Long pizzaId : pizzaIds) {
+            writeSignedVarLong(referenceId(pizzaId, "Pizza"), out);
+        }
+        if (date != null) {
+            writeSignedVarLong(date.toEpochSecond(ZoneOffset.UTC), out);
+            writeVarLong(date.getNano(), out);
+        }
+        writeString(order.getStatus(), out);
+        out.putDouble(order.getTotalPrice());
+        writeString(order.getPaymentTransactionId(), out);
+    }
+
+    static Order decodeOrder(ByteBuffer in, IEntityResolver resolver) throws IOException {
+        try {
+            int flags = readHeader(in, ORDER, ORDER_VERSION);
+            Long id = (flags & HAS_ID) != 0 ? readSignedVarLong(in) : null;
+            Long userId = (flags & HAS_USER) != 0 ? readSignedVarLong(in) : null;
+            List<Long> pizzaIds = null;
+            if ((flags & HAS_PIZZAS) != 0) {
+                int count = readLength(in);
+                pizzaIds = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    pizzaIds.add(readSignedVarLong(in));
+                }
+            }
+            LocalDateTime date = null;
+            if ((flags & HAS_DATE) != 0) {
+                long seconds = readSignedVarLong(in);
+                date = LocalDateTime.ofEpochSecond(seconds, (int) readVarLong(in), ZoneOffset.UTC);
+            }
+            String status = readString(in);
+            double totalPrice = in.getDouble();
+            String transactionId = readString(in);
+
+            // El constructor no recalcula el precio, que se conserva tal como se guardó
+            Order order = new Order(id, null, null, date, status, totalPrice, transactionId);
+            if (date == null) {
+                order.setOrderDate(null);
+            }
+            order.setUserId(userId);
+            order.setPizzaIds(pizzaIds);
+            order.attach(resolver);
+            return order;
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Registro de pedido truncado", e);
+        } catch (DateTimeException e) {
+            throw new IOException("Fecha no válida en el registro de pedido", e);
+        }
+    }
+
+    private static long referenceId(Long id, String type) {
+        if (id == null) {
+            throw new IllegalArgumentException("No se puede guardar una referencia a un " + type + " sin ID");
+        }
+        return id;
+    }
+
+    private static int readHeader(ByteBuffer in, byte type, byte version) throws IOException {
+        byte actualType = in.get();
+        if (actualType != type) {
+            throw new IOException("Se esperaba el tipo " + type + " y se encontró " + actualType);
+        }
+        byte actualVersion = in.get();
+        if (actualVersion != version) {
+            throw new IOException("Versión de esquema no soportada: " + actualVersion);
+        }
+        return in.get();
+    }
+
+    private static int readLength(ByteBuffer in) throws IOException {
+        long length = readVarLong(in);
+        if (length > in.remaining()) {
+            throw new IOException("Longitud no válida en el registro: " + length);
+        }
+        return (int) length;
+    }
+
+    private static void writeVarLong(long value, ByteBuffer out) {
+        while ((value & ~0x7FL) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    private static long readVarLong(ByteBuffer in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IOException("Entero variable demasiado largo");
+    }
+
+    private static void writeSignedVarLong(long value, ByteBuffer out) {
+        writeVarLong((value << 1) ^ (value >> 63), out);
+    }
+
+    private static long readSignedVarLong(ByteBuffer in) throws IOException {
+        long value = readVarLong(in);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static int maxSize(String value) {
+        return value == null ? 1 : 5 + 3 * value.length();
+    }
+
+    /**
+     * Escribe una cadena en UTF-8 sin pasar por un array intermedio.
+     * Los sustitutos sueltos se escriben como '?', igual que String.getBytes.
+     */
+    private static void writeString(String value, ByteBuffer out) {
+        if (value == null) {
+            out.put((byte) 0);
+            return;
+        }
+
+        int length = value.length();
+        int bytes = length;
+        boolean ascii = true;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c >= 0x80) {
+                ascii = false;
+                if (c < 0x800) {
+                    bytes++;
+                } else if (Character.isHighSurrogate(c) && i + 1 < length
+                        && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    bytes += 2; // Cuatro bytes por los dos caracteres del par
+                    i++;
+                } else if (!Character.isSurrogate(c)) {
+                    bytes += 2; // Un sustituto suelto se escribe como '?', en un byte
+                }
+            }
+        }
+        writeVarLong(bytes + 1L, out);
+
+        if (ascii && out.hasArray()) {
+            // Solo ASCII: se copia directamente en el array sin comprobar cada byte
+            if (length > out.remaining()) {
+                throw new BufferOverflowException();
+            }
+            byte[] array = out.array();
+            int offset = out.arrayOffset() + out.position();
+            for (int i = 0; i < length; i++) {
+                array[offset + i] = (byte) value.charAt(i);
+            }
+            out.position(out.position() + length);
+            return;
+        }
+
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                out.put((byte) c);
+            } else if (c < 0x800) {
+                out.put((byte) (0xC0 | (c >> 6)));
+                out.put((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                out.put((byte) (0xF0 | (codePoint >> 18)));
+                out.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                out.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                out.put((byte) (0x80 | (codePoint & 0x3F)));
+            } else if (Character.isSurrogate(c)) {
+                out.put((byte) '?');
+            } else {
+                out.put((byte) (0xE0 | (c >> 12)));
+                out.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                out.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+    }
+
+    private static String readString(ByteBuffer in) throws IOException {
+        long prefix = readVarLong(in);
+        if (prefix == 0) {
+            return null;
+        }
+        long length = prefix - 1;
+        if (length > in.remaining()) {
+            throw new IOException("Longitud de cadena no válida: " + length);
+        }
+
+        if (!in.hasArray()) {
+            byte[] bytes = new byte[(int) length];
+            in.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+        int position = in.position();
+        String value = new String(in.array(), in.arrayOffset() + position, (int) length, StandardCharsets.UTF_8);
+        in.position(position + (int) length);
+        return value;
+    }
+}
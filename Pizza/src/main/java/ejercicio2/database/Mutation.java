@@ -0,0 +1,62 @@
+package ejercicio2.database;
+
+/**
+ * Cambio sobre una fila de una tabla. Todas las escrituras de la base de datos
+ * se expresan como una lista de mutaciones que se aplica de forma atómica.
+ * Una transacción añade además comprobaciones de las filas que ha leído.
+ */
+final class Mutation {
+
+    /**
+     * Tipo de cambio.
+     */
+    enum Type {
+        /** Inserta o sustituye la fila. */
+        PUT,
+        /** Sustituye la fila, que debe existir. */
+        UPDATE,
+        /** Elimina la fila si existe. */
+        DELETE,
+        /** No modifica la fila: solo comprueba que sigue en la versión esperada. */
+        CHECK
+    }
+
+    /** Versión esperada que indica que la actualización no comprueba la versión. */
+    static final long ANY_VERSION = -1;
+
+    final Type type;
+    final Table table;
+    final long id;
+    final Object entity;
+    final long expectedVersion;
+    Object stored; // Forma almacenada de la entidad, preparada fuera de los cerrojos
+    long appliedVersion; // Versión asignada al aplicar la mutación
+
+    private Mutation(Type type, Table table, long id, Object entity, long expectedVersion) {
+        this.type = type;
+        this.table = table;
+        this.id = id;
+        this.entity = entity;
+        this.expectedVersion = expectedVersion;
+    }
+
+    static Mutation put(Table table, long id, Object entity) {
+        return new Mutation(Type.PUT, table, id, entity, ANY_VERSION);
+    }
+
+    static Mutation update(Table table, long id, Object entity) {
+        return new Mutation(Type.UPDATE, table, id, entity, ANY_VERSION);
+    }
+
+    static Mutation update(Table table, long id, Object entity, long expectedVersion) {
+        return new Mutation(Type.UPDATE, table, id, entity, expectedVersion);
+    }
+
+    static Mutation delete(Table table, long id) {
+        return new Mutation(Type.DELETE, table, id, null, ANY_VERSION);
+    }
+
+    static Mutation check(Table table, long id, long expectedVersion) {
+        return new Mutation(Type.CHECK, table, id, null, expectedVersion);
+    }
+}
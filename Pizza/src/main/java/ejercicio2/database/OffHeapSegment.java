@@ -0,0 +1,311 @@
+package ejercicio2.database;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Segmento de una tabla fuera del heap. Guarda los registros codificados en
+ * bloques de memoria directa que se rellenan de forma secuencial, y un índice
+ * hash de direccionamiento abierto, también en memoria directa, con el ID, la
+ * dirección y la versión de cada registro. Por cada fila no queda ningún
+ * objeto en el heap, así que el recolector no tiene nada que recorrer.
+ *
+ * Todas las operaciones requieren el cerrojo del segmento. Un registro escrito
+ * no se modifica nunca: al actualizarlo se escribe otro y el antiguo cuenta
+ * como espacio muerto, que se recupera copiando los vivos a bloques nuevos
+ * cuando supera al vivo. Por eso la vista que devuelve read puede leerse
+ * después de soltar el cerrojo. Como LongObjectMap, mezcla los IDs con una
+ * semilla propia para que cargar las filas en el orden de otro segmento no
+ * forme cadenas de colisiones.
+ */
+final class OffHeapSegment {
+
+    /**
+     * Recorrido de los registros del segmento.
+     */
+    interface RecordVisitor {
+        /**
+         * Procesa un registro.
+         *
+         * @param id ID de la fila
+         * @param record Vista de solo lectura del registro codificado
+         */
+        void visit(long id, ByteBuffer record);
+    }
+
+    private static final int MIN_BLOCK_SIZE = 1 << 14;
+    private static final int MAX_BLOCK_SIZE = 1 << 20;
+
+    private static final int ENTRY_SIZE = 24; // ID, dirección y versión; versión 0 es ranura libre
+    private static final int MIN_CAPACITY = 16;
+
+    private final long seed;
+    private ByteBuffer entries;
+    private int capacity;
+    private volatile int size;
+    private final List<ByteBuffer> blocks;
+    private ByteBuffer block; // Bloque en el que se escribe
+    private long writtenBytes;
+    private long deadBytes;
+
+    /**
+     * Constructor por defecto.
+     */
+    OffHeapSegment() {
+        this.seed = ThreadLocalRandom.current().nextLong();
+        this.capacity = MIN_CAPACITY;
+        this.entries = ByteBuffer.allocateDirect(MIN_CAPACITY * ENTRY_SIZE);
+        this.blocks = new ArrayList<>();
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Obtiene la versión de una fila.
+     *
+     * @param id ID de la fila
+     * @return Versión o 0 si la fila no existe
+     */
+    long version(long id) {
+        int slot = find(id);
+        return slot >= 0 ? entries.getLong(slot * ENTRY_SIZE + 16) : 0;
+    }
+
+    /**
+     * Obtiene el registro codificado de una fila.
+     *
+     * @param id ID de la fila
+     * @return Vista de solo lectura del registro o null si la fila no existe
+     */
+    ByteBuffer read(long id) {
+        int slot = find(id);
+        return slot >= 0 ? view(entries.getLong(slot * ENTRY_SIZE + 8)) : null;
+    }
+
+    /**
+     * Guarda el registro codificado de una fila, sustituyendo el anterior.
+     *
+     * @param id ID de la fila
+     * @param record Registro codificado, entre su posición y su límite
+     * @param version Versión de la fila, mayor que 0
+     */
+    void put(long id, ByteBuffer record, long version) {
+        long address = append(record);
+        int slot = find(id);
+        if (slot >= 0) {
+            deadBytes += recordSize(entries.getLong(slot * ENTRY_SIZE + 8));
+        } else {
+            if ((size + 1) * 4L >= capacity * 3L) {
+                resize(capacity << 1);
+            }
+            slot = freeSlot(id);
+            entries.putLong(slot * ENTRY_SIZE, id);
+            size++;
+        }
+        entries.putLong(slot * ENTRY_SIZE + 8, address);
+        entries.putLong(slot * ENTRY_SIZE + 16, version);
+        maybeCompact();
+    }
+
+    /**
+     * Elimina una fila. Las entradas siguientes del mismo grupo se desplazan
+     * hacia atrás, de modo que el índice nunca acumula lápidas.
+     *
+     * @param id ID de la fila
+     * @return true si la fila existía, false si no
+     */
+    boolean remove(long id) {
+        int slot = find(id);
+        if (slot < 0) {
+            return false;
+        }
+        deadBytes += recordSize(entries.getLong(slot * ENTRY_SIZE + 8));
+        size--;
+
+        int mask = capacity - 1;
+        int hole = slot;
+        for (int i = (hole + 1) & mask; versionAt(i) != 0; i = (i + 1) & mask) {
+            int home = index(entries.getLong(i * ENTRY_SIZE), mask);
+            // La entrada puede ocupar el hueco si su posición ideal no está entre el hueco y ella
+            if (((i - home) & mask) >= ((i - hole) & mask)) {
+                copyEntry(i, hole);
+                hole = i;
+            }
+        }
+        entries.putLong(hole * ENTRY_SIZE + 16, 0);
+        maybeCompact();
+        return true;
+    }
+
+    /**
+     * Reserva espacio en el índice para un número de filas.
+     *
+     * @param expected Número de filas previsto
+     */
+    void ensureCapacity(int expected) {
+        int target = capacity;
+        while (expected * 4L >= target * 3L) {
+            target <<= 1;
+        }
+        if (target > capacity) {
+            resize(target);
+        }
+    }
+
+    /**
+     * Recorre los registros del segmento en el orden de las ranuras del índice.
+     *
+     * @param visitor Función que procesa cada registro
+     */
+    void forEach(RecordVisitor visitor) {
+        scan(0, Integer.MAX_VALUE, visitor);
+    }
+
+    /**
+     * Recorre los registros a partir de una ranura del índice.
+     *
+     * @param slot Ranura de inicio
+     * @param limit Número máximo de registros
+     * @param visitor Función que procesa cada registro
+     * @return Ranura siguiente al último registro visitado, o -1 si se ha llegado al final
+     */
+    int scan(int slot, int limit, RecordVisitor visitor) {
+        int visited = 0;
+        for (int i = slot; i < capacity; i++) {
+            if (versionAt(i) != 0) {
+                if (visited == limit) {
+                    return i;
+                }
+                visitor.visit(entries.getLong(i * ENTRY_SIZE), view(entries.getLong(i * ENTRY_SIZE + 8)));
+                visited++;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Bytes ocupados fuera del heap por el índice y los bloques.
+     *
+     * @return Número de bytes reservados
+     */
+    long reservedBytes() {
+        long bytes = entries.capacity();
+        for (ByteBuffer b : blocks) {
+            bytes += b.capacity();
+        }
+        return bytes;
+    }
+
+    private long append(ByteBuffer record) {
+        int length = record.remaining();
+        if (block == null || block.remaining() < length + 4) {
+            // Los bloques crecen con el segmento para no reservar de más en tablas pequeñas
+            int blockSize = MIN_BLOCK_SIZE << Math.min(blocks.size(), 6);
+            block = ByteBuffer.allocateDirect(Math.max(blockSize, length + 4));
+            blocks.add(block);
+        }
+        long address = ((long) (blocks.size() - 1) << 32) | block.position();
+        block.putInt(length);
+        block.put(record);
+        writtenBytes += length + 4;
+        return address;
+    }
+
+    private ByteBuffer view(long address) {
+        ByteBuffer source = blocks.get((int) (address >>> 32));
+        int offset = (int) address;
+        ByteBuffer view = source.asReadOnlyBuffer();
+        view.limit(offset + 4 + source.getInt(offset));
+        view.position(offset + 4);
+        return view;
+    }
+
+    private int recordSize(long address) {
+        return blocks.get((int) (address >>> 32)).getInt((int) address) + 4;
+    }
+
+    /**
+     * Copia los registros vivos a bloques nuevos cuando el espacio muerto
+     * supera al vivo. Los bloques antiguos no se tocan: las vistas que ya se
+     * hayan entregado siguen siendo válidas hasta que el recolector los libere.
+     */
+    private void maybeCompact() {
+        if (deadBytes < MAX_BLOCK_SIZE || deadBytes * 2 < writtenBytes) {
+            return;
+        }
+
+        List<ByteBuffer> old = new ArrayList<>(blocks);
+        blocks.clear();
+        block = null;
+        writtenBytes = 0;
+        deadBytes = 0;
+        for (int i = 0; i < capacity; i++) {
+            if (versionAt(i) != 0) {
+                long address = entries.getLong(i * ENTRY_SIZE + 8);
+                ByteBuffer source = old.get((int) (address >>> 32)).duplicate();
+                int offset = (int) address;
+                source.limit(offset + 4 + source.getInt(offset));
+                source.position(offset + 4);
+                entries.putLong(i * ENTRY_SIZE + 8, append(source));
+            }
+        }
+    }
+
+    private void resize(int newCapacity) {
+        ByteBuffer old = entries;
+        int oldCapacity = capacity;
+        entries = ByteBuffer.allocateDirect(newCapacity * ENTRY_SIZE);
+        capacity = newCapacity;
+        for (int i = 0; i < oldCapacity; i++) {
+            long version = old.getLong(i * ENTRY_SIZE + 16);
+            if (version != 0) {
+                long id = old.getLong(i * ENTRY_SIZE);
+                int slot = freeSlot(id);
+                entries.putLong(slot * ENTRY_SIZE, id);
+                entries.putLong(slot * ENTRY_SIZE + 8, old.getLong(i * ENTRY_SIZE + 8));
+                entries.putLong(slot * ENTRY_SIZE + 16, version);
+            }
+        }
+    }
+
+    private int find(long id) {
+        int mask = capacity - 1;
+        for (int i = index(id, mask); versionAt(i) != 0; i = (i + 1) & mask) {
+            if (entries.getLong(i * ENTRY_SIZE) == id) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int freeSlot(long id) {
+        int mask = capacity - 1;
+        int i = index(id, mask);
+        while (versionAt(i) != 0) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    private long versionAt(int slot) {
+        return entries.getLong(slot * ENTRY_SIZE + 16);
+    }
+
+    private void copyEntry(int from, int to) {
+        for (int offset = 0; offset < ENTRY_SIZE; offset += 8) {
+            entries.putLong(to * ENTRY_SIZE + offset, entries.getLong(from * ENTRY_SIZE + offset));
+        }
+    }
+
+    private int index(long id, int mask) {
+        long h = id ^ seed;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return (int) h & mask;
+    }
+}
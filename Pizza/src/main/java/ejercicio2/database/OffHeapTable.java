@@ -0,0 +1,313 @@
+package ejercicio2.database;
+
+import ejercicio2.interfaces.IEntityResolver;
+import ejercicio2.model.Versioned;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Tabla que guarda sus filas fuera del heap, codificadas con ModelCodec en
+ * segmentos de memoria directa. Un pedido en el heap es un grafo de una
+ * decena de objetos (listas, cadenas, fecha); aquí es un registro de unas
+ * decenas de bytes que el recolector no recorre. Las entidades se
+ * materializan al leerlas, así que cada lectura devuelve una instancia nueva
+ * y las referencias a otras entidades se resuelven en ese momento.
+ *
+ * Las lecturas toman un instante el cerrojo del segmento para localizar el
+ * registro y lo decodifican ya sin cerrojo, porque un registro escrito no cambia.
+ */
+final class OffHeapTable extends Table {
+
+    private final OffHeapSegment[] stores;
+    private final long[] clocks; // Última versión asignada en cada segmento, protegida por su cerrojo
+    private final IEntityResolver resolver;
+
+    /**
+     * Constructor.
+     *
+     * @param ordinal Número de orden de la tabla, que fija el orden de bloqueo entre tablas
+     * @param metadata Metadatos de la clase de las entidades almacenadas
+     * @param resolver Resolución de las referencias a otras entidades al materializar una fila
+     * @throws IllegalArgumentException Si la clase no tiene codificación propia
+     */
+    OffHeapTable(int ordinal, EntityMetadata metadata, IEntityResolver resolver) {
+        super(ordinal, metadata);
+        if (!ModelCodec.supports(metadata.getEntityClass())) {
+            throw new IllegalArgumentException("La clase " + metadata.getEntityClass().getName()
+                    + " no se puede guardar fuera del heap");
+        }
+        this.stores = new OffHeapSegment[SEGMENTS];
+        this.clocks = new long[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) {
+            stores[i] = new OffHeapSegment();
+        }
+        this.resolver = resolver;
+    }
+
+    @Override
+    Object get(long id) {
+        ByteBuffer record;
+        long mask = segmentMask(id);
+        lock(mask);
+        try {
+            record = stores[segment(id)].read(id);
+        } finally {
+            unlock(mask);
+        }
+        return record != null ? decode(record) : null;
+    }
+
+    @Override
+    Versioned<Object> getVersioned(long id) {
+        ByteBuffer record;
+        long version;
+        long mask = segmentMask(id);
+        lock(mask);
+        try {
+            OffHeapSegment store = stores[segment(id)];
+            record = store.read(id);
+            version = store.version(id);
+        } finally {
+            unlock(mask);
+        }
+        return record != null ? new Versioned<>(decode(record), version) : null;
+    }
+
+    @Override
+    long versionLocked(long id) {
+        return stores[segment(id)].version(id);
+    }
+
+    /**
+     * Codifica la entidad en un buffer del tamaño justo.
+     */
+    @Override
+    Object prepare(Object object) {
+        ByteBuffer buffer = ByteBuffer.allocate(ModelCodec.maxEncodedSize(object));
+        ModelCodec.encode(object, buffer);
+        return buffer.flip();
+    }
+
+    @Override
+    long putLocked(long id, Object object, Object stored) {
+        int segment = segment(id);
+        long version = ++clocks[segment];
+        indexPut(id, object);
+        stores[segment].put(id, ((ByteBuffer) stored).duplicate(), version);
+        return version;
+    }
+
+    @Override
+    boolean removeLocked(long id) {
+        if (!stores[segment(id)].remove(id)) {
+            return false;
+        }
+        indexRemove(id);
+        return true;
+    }
+
+    @Override
+    List<Object> values() {
+        List<Object> values = new ArrayList<>(size());
+        forEachCommitted((id, value) -> values.add(value));
+        return values;
+    }
+
+    @Override
+    int size() {
+        int size = 0;
+        for (OffHeapSegment store : stores) {
+            size += store.size();
+        }
+        return size;
+    }
+
+    @Override
+    void presize(int rows) {
+        int perSegment = rows / SEGMENTS + rows / (SEGMENTS * 8);
+        for (int segment = 0; segment < SEGMENTS; segment++) {
+            long mask = 1L << segment;
+            lock(mask);
+            try {
+                stores[segment].ensureCapacity(perSegment);
+            } finally {
+                unlock(mask);
+            }
+        }
+    }
+
+    /**
+     * Recorre las filas de la tabla. Se localizan los registros de cada
+     * segmento con su cerrojo tomado y se materializan después sin él.
+     */
+    @Override
+    void forEachCommitted(LongObjectMap.EntryVisitor visitor) {
+        List<Long> ids = new ArrayList<>();
+        List<ByteBuffer> records = new ArrayList<>();
+        for (int segment = 0; segment < SEGMENTS; segment++) {
+            ids.clear();
+            records.clear();
+            collect(segment, 0, Integer.MAX_VALUE, ids, records);
+            for (int i = 0; i < records.size(); i++) {
+                visitor.visit(ids.get(i), decode(records.get(i)));
+            }
+        }
+    }
+
+    @Override
+    void forEachInSegment(int segment, LongObjectMap.EntryVisitor visitor) {
+        List<Long> ids = new ArrayList<>();
+        List<ByteBuffer> records = new ArrayList<>();
+        collect(segment, 0, Integer.MAX_VALUE, ids, records);
+        for (int i = 0; i < records.size(); i++) {
+            visitor.visit(ids.get(i), decode(records.get(i)));
+        }
+    }
+
+    @Override
+    void forEachLocked(int segment, LongObjectMap.EntryVisitor visitor) {
+        stores[segment].forEach((id, record) -> visitor.visit(id, decode(record)));
+    }
+
+    @Override
+    Spliterator<Object> spliterator() {
+        return new SegmentSpliterator(0, SEGMENTS);
+    }
+
+    /**
+     * Lee una página de filas. La posición codifica el segmento en los 32 bits
+     * altos y la ranura del índice del segmento en los bajos.
+     */
+    @Override
+    long scan(long position, int pageSize, List<Object> out) {
+        int segment = (int) (position >>> 32);
+        int slot = (int) position;
+        List<ByteBuffer> records = new ArrayList<>(pageSize);
+        long next = -1;
+
+        while (segment < SEGMENTS) {
+            int nextSlot = collect(segment, slot, pageSize - records.size(), null, records);
+            if (nextSlot >= 0) {
+                next = ((long) segment << 32) | nextSlot;
+                break;
+            }
+            segment++;
+            slot = 0;
+            if (records.size() == pageSize) {
+                next = segment < SEGMENTS ? (long) segment << 32 : -1;
+                break;
+            }
+        }
+        records.forEach(record -> out.add(decode(record)));
+        return next;
+    }
+
+    /**
+     * Bytes reservados fuera del heap por todos los segmentos.
+     *
+     * @return Número de bytes
+     */
+    long reservedBytes() {
+        long bytes = 0;
+        for (int segment = 0; segment < SEGMENTS; segment++) {
+            long mask = 1L << segment;
+            lock(mask);
+            try {
+                bytes += stores[segment].reservedBytes();
+            } finally {
+                unlock(mask);
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Copia, con el cerrojo del segmento tomado, las vistas de sus registros.
+     *
+     * @return Ranura por la que continuar o -1 si se ha llegado al final del segmento
+     */
+    private int collect(int segment, int slot, int limit, List<Long> ids, List<ByteBuffer> records) {
+        long mask = 1L << segment;
+        lock(mask);
+        try {
+            return stores[segment].scan(slot, limit, (id, record) -> {
+                if (ids != null) {
+                    ids.add(id);
+                }
+                records.add(record);
+            });
+        } finally {
+            unlock(mask);
+        }
+    }
+
+    private Object decode(ByteBuffer record) {
+        try {
+            return ModelCodec.decode(record, resolver);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Registro dañado en la tabla de "
+                    + getMetadata().getEntityClass().getSimpleName(), e);
+        }
+    }
+
+    /**
+     * Spliterator sobre un rango de segmentos. Al entrar en un segmento
+     * localiza sus registros y los materializa a medida que avanza.
+     */
+    private final class SegmentSpliterator implements Spliterator<Object> {
+
+        private int nextSegment;
+        private final int endSegment;
+        private List<ByteBuffer> records;
+        private int position;
+
+        SegmentSpliterator(int nextSegment, int endSegment) {
+            this.nextSegment = nextSegment;
+            this.endSegment = endSegment;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Object> action) {
+            while (records == null || position == records.size()) {
+                if (nextSegment >= endSegment) {
+                    return false;
+                }
+                records = new ArrayList<>();
+                position = 0;
+                collect(nextSegment++, 0, Integer.MAX_VALUE, null, records);
+            }
+            action.accept(decode(records.get(position++)));
+            return true;
+        }
+
+        @Override
+        public Spliterator<Object> trySplit() {
+            if (endSegment - nextSegment < 2) {
+                return null;
+            }
+            int mid = (nextSegment + endSegment) >>> 1;
+            SegmentSpliterator prefix = new SegmentSpliterator(nextSegment, mid);
+            nextSegment = mid;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            long estimate = records != null ? records.size() - position : 0;
+            for (int i = nextSegment; i < endSegment; i++) {
+                estimate += stores[i].size();
+            }
+            return estimate;
+        }
+
+        @Override
+        public int characteristics() {
+            return CONCURRENT | NONNULL;
+        }
+    }
+}
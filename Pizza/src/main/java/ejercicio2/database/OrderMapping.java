@@ -0,0 +1,168 @@
+package ejercicio2.database;
+
+import ejercicio2.model.Order;
+import ejercicio2.model.Pizza;
+import ejercicio2.model.User;
+import ejercicio2.model.Versioned;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Correspondencia de los pedidos con la tabla orders. El usuario y las pizzas
+ * se guardan como referencias por ID, las pizzas en la tabla hija order_pizzas
+ * en el orden del pedido, y se resuelven al leer con una consulta por tabla
+ * para todos los pedidos leídos a la vez. Como en DataBaseManager, guardar un
+ * pedido no guarda su usuario ni sus pizzas, que deben estar ya guardados.
+ */
+final class OrderMapping extends JdbcMapping<Order> {
+
+    private static final String SELECT_PIZZAS =
+            "SELECT order_id, pizza_id FROM order_pizzas WHERE order_id = ANY(?) ORDER BY order_id, line";
+    private static final String DELETE_PIZZAS = "DELETE FROM order_pizzas WHERE order_id = ANY(?)";
+    private static final String INSERT_PIZZA = "INSERT INTO order_pizzas (order_id, line, pizza_id) VALUES (?, ?, ?)";
+
+    private final UserMapping users;
+    private final PizzaMapping pizzas;
+
+    /**
+     * Constructor.
+     *
+     * @param users Correspondencia de los usuarios referenciados
+     * @param pizzas Correspondencia de las pizzas referenciadas
+     */
+    OrderMapping(UserMapping users, PizzaMapping pizzas) {
+        super(Order.class, "orders", "user_id", "order_date", "status", "total_price", "payment_transaction_id");
+        this.users = users;
+        this.pizzas = pizzas;
+    }
+
+    @Override
+    List<String> schema() {
+        return List.of(
+                "CREATE TABLE IF NOT EXISTS orders ("
+                        + "id BIGINT PRIMARY KEY, version BIGINT NOT NULL, user_id BIGINT, order_date TIMESTAMP(9), "
+                        + "status VARCHAR(32), total_price DOUBLE PRECISION NOT NULL, payment_transaction_id VARCHAR(64))",
+                "CREATE INDEX IF NOT EXISTS orders_user_id ON orders (user_id)",
+                "CREATE INDEX IF NOT EXISTS orders_order_date ON orders (order_date)",
+                "CREATE TABLE IF NOT EXISTS order_pizzas ("
+                        + "order_id BIGINT NOT NULL REFERENCES orders (id) ON DELETE CASCADE, "
+                        + "line INT NOT NULL, pizza_id BIGINT NOT NULL, PRIMARY KEY (order_id, line))");
+    }
+
+    @Override
+    Long getId(Order order) {
+        return order.getId();
+    }
+
+    @Override
+    void setId(Order order, long id) {
+        order.setId(id);
+    }
+
+    @Override
+    int bind(PreparedStatement statement, Order order) throws SQLException {
+        Long userId = order.getUserId();
+        if (userId != null) {
+            statement.setLong(1, userId);
+        } else if (order.getUser() != null) {
+            throw new IllegalArgumentException("El usuario del pedido debe estar guardado");
+        } else {
+            statement.setNull(1, Types.BIGINT);
+        }
+        statement.setObject(2, order.getOrderDate());
+        statement.setString(3, order.getStatus());
+        statement.setDouble(4, order.getTotalPrice());
+        statement.setString(5, order.getPaymentTransactionId());
+        return 6;
+    }
+
+    @Override
+    void writeChildren(PooledConnection connection, List<Order> orders, boolean inserted) throws SQLException {
+        if (orders.isEmpty()) {
+            return;
+        }
+        if (!inserted) {
+            deleteByIds(connection, DELETE_PIZZAS, idsOf(orders));
+        }
+
+        PreparedStatement statement = connection.prepare(INSERT_PIZZA);
+        boolean pending = false;
+        for (Order order : orders) {
+            List<Long> items = order.getPizzaIds();
+            for (int line = 0; line < items.size(); line++) {
+                Long pizzaId = items.get(line);
+                if (pizzaId == null) {
+                    throw new IllegalArgumentException("Las pizzas del pedido deben estar guardadas");
+                }
+                statement.setLong(1, order.getId());
+                statement.setInt(2, line);
+                statement.setLong(3, pizzaId);
+                statement.addBatch();
+                pending = true;
+            }
+        }
+        if (pending) {
+            statement.executeBatch();
+        }
+    }
+
+    @Override
+    List<Versioned<Order>> readAll(PooledConnection connection, ResultSet rows) throws SQLException {
+        List<Versioned<Order>> orders = new ArrayList<>();
+        Map<Long, Long> userIds = new HashMap<>();
+        Map<Long, Order> byId = new HashMap<>();
+        try (rows) {
+            while (rows.next()) {
+                long id = rows.getLong(1);
+                long userId = rows.getLong(3);
+                if (!rows.wasNull()) {
+                    userIds.put(id, userId);
+                }
+                Order order = new Order(id, null, new ArrayList<>(), rows.getObject(4, LocalDateTime.class),
+                        rows.getString(5), rows.getDouble(6), rows.getString(7));
+                orders.add(new Versioned<>(order, rows.getLong(2)));
+                byId.put(id, order);
+            }
+        }
+        if (byId.isEmpty()) {
+            return orders;
+        }
+
+        // Referencias de todos los pedidos leídos: una consulta por tabla
+        Map<Long, User> usersById = new HashMap<>();
+        for (Versioned<User> user : users.findByIds(connection, new LinkedHashSet<>(userIds.values()).toArray(new Long[0]))) {
+            usersById.put(user.getEntity().getId(), user.getEntity());
+        }
+        userIds.forEach((orderId, userId) -> byId.get(orderId).setUser(usersById.get(userId)));
+
+        List<long[]> lines = new ArrayList<>();
+        Set<Long> pizzaIds = new LinkedHashSet<>();
+        try (ResultSet items = queryByIds(connection, SELECT_PIZZAS, byId.keySet().toArray(new Long[0]))) {
+            while (items.next()) {
+                lines.add(new long[] {items.getLong(1), items.getLong(2)});
+                pizzaIds.add(items.getLong(2));
+            }
+        }
+        Map<Long, Pizza> pizzasById = new HashMap<>();
+        for (Versioned<Pizza> pizza : pizzas.findByIds(connection, pizzaIds.toArray(new Long[0]))) {
+            pizzasById.put(pizza.getEntity().getId(), pizza.getEntity());
+        }
+        for (long[] line : lines) {
+            // Una pizza borrada desaparece del pedido
+            Pizza pizza = pizzasById.get(line[1]);
+            if (pizza != null) {
+                byId.get(line[0]).getPizzas().add(pizza);
+            }
+        }
+        return orders;
+    }
+}
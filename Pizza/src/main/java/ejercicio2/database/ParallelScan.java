@@ -0,0 +1,202 @@
+package ejercicio2.database;
+
+import ejercicio2.model.Query;
+import ejercicio2.model.QueryResult;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Recorrido fork/join de una tabla que evalúa una consulta directamente
+ * sobre las ranuras de sus segmentos, sin copiar la tabla. La tabla se
+ * reparte primero por segmentos y, dentro de un segmento grande, por rangos
+ * de ranuras. Las tablas fuera del montón no guardan las filas en ranuras:
+ * se reparten dividiendo su spliterator, que parte por segmentos.
+ *
+ * El límite se comparte entre todas las tareas: cada resultado consume una
+ * plaza y, cuando se agotan, las tareas que quedan terminan sin recorrer.
+ * Como el resto de recorridos, es débilmente consistente.
+ */
+final class ParallelScan<T, R> extends RecursiveTask<List<R>> {
+
+    private static final int MIN_PARALLEL_ROWS = 8_192;
+    private static final int MIN_SPLIT_POSITIONS = 4_096;
+
+    private final Table table;
+    private final Query<T> query;
+    private final Function<? super T, ? extends R> projection;
+    private final AtomicInteger remaining;
+    private final LongAdder examined;
+    private final int fromSegment;
+    private final int toSegment;
+    private final LongObjectMap.Slots slots; // Solo si la tarea es un rango de un segmento
+    private final int fromPosition;
+    private final int toPosition;
+    private final Spliterator<Object> rows; // Solo si la tabla está fuera del montón
+
+    private ParallelScan(ParallelScan<T, R> parent, int fromSegment, int toSegment,
+                         LongObjectMap.Slots slots, int fromPosition, int toPosition) {
+        this(parent, fromSegment, toSegment, slots, fromPosition, toPosition, null);
+    }
+
+    private ParallelScan(ParallelScan<T, R> parent, Spliterator<Object> rows) {
+        this(parent, 0, 0, null, 0, 0, rows);
+    }
+
+    private ParallelScan(ParallelScan<T, R> parent, int fromSegment, int toSegment,
+                         LongObjectMap.Slots slots, int fromPosition, int toPosition, Spliterator<Object> rows) {
+        this.table = parent.table;
+        this.query = parent.query;
+        this.projection = parent.projection;
+        this.remaining = parent.remaining;
+        this.examined = parent.examined;
+        this.fromSegment = fromSegment;
+        this.toSegment = toSegment;
+        this.slots = slots;
+        this.fromPosition = fromPosition;
+        this.toPosition = toPosition;
+        this.rows = rows;
+    }
+
+    private ParallelScan(Table table, Query<T> query, Function<? super T, ? extends R> projection) {
+        this.table = table;
+        this.query = query;
+        this.projection = projection;
+        this.remaining = new AtomicInteger(query.getLimit());
+        this.examined = new LongAdder();
+        this.fromSegment = 0;
+        this.toSegment = Table.SEGMENTS;
+        this.slots = null;
+        this.fromPosition = 0;
+        this.toPosition = 0;
+        this.rows = table instanceof OffHeapTable ? table.spliterator() : null;
+    }
+
+    /**
+     * Ejecuta una consulta recorriendo la tabla. Las tablas pequeñas se
+     * recorren en el hilo que llama, donde repartirlas costaría más que
+     * recorrerlas.
+     *
+     * @param table Tabla de la clase consultada
+     * @param query Consulta
+     * @param projection Función que obtiene el resultado de cada fila
+     * @return Resultados con el plan PARALLEL_SCAN, o FULL_SCAN si no se ha repartido
+     */
+    @SuppressWarnings("unchecked")
+    static <T, R> QueryResult<R> run(Table table, Query<T> query, Function<? super T, ? extends R> projection) {
+        ParallelScan<T, R> scan = new ParallelScan<>(table, query, projection);
+        if (table.size() < MIN_PARALLEL_ROWS) {
+            List<R> rows = new ArrayList<>();
+            Spliterator<Object> all = table.spliterator();
+            Consumer<Object> visitor = value -> {
+                scan.examined.increment();
+                if (query.matches((T) value)) {
+                    rows.add(projection.apply((T) value));
+                }
+            };
+            while (rows.size() < query.getLimit() && all.tryAdvance(visitor)) {
+                // El visitante ya ha procesado la fila
+            }
+            return new QueryResult<>(rows, QueryResult.Plan.FULL_SCAN, null, scan.examined.sum());
+        }
+
+        List<R> rows = ForkJoinPool.commonPool().invoke(scan);
+        return new QueryResult<>(rows, QueryResult.Plan.PARALLEL_SCAN, null, scan.examined.sum());
+    }
+
+    @Override
+    protected List<R> compute() {
+        if (remaining.get() <= 0) {
+            return new ArrayList<>();
+        }
+        if (rows != null) {
+            return computeSplit();
+        }
+
+        // Varios segmentos: se reparten por la mitad
+        if (toSegment - fromSegment > 1) {
+            int mid = (fromSegment + toSegment) >>> 1;
+            ParallelScan<T, R> left = new ParallelScan<>(this, fromSegment, mid, null, 0, 0);
+            left.fork();
+            List<R> right = new ParallelScan<>(this, mid, toSegment, null, 0, 0).compute();
+            return concat(left.join(), right);
+        }
+
+        // Un segmento: se fijan sus ranuras y se reparten por rangos mientras sean grandes
+        LongObjectMap.Slots current = slots != null ? slots : table.slotsOf(fromSegment);
+        int from = slots != null ? fromPosition : 0;
+        int to = slots != null ? toPosition : current.capacity() + 1;
+        if (to - from > 2 * MIN_SPLIT_POSITIONS) {
+            int mid = (from + to) >>> 1;
+            ParallelScan<T, R> left = new ParallelScan<>(this, fromSegment, toSegment, current, from, mid);
+            left.fork();
+            List<R> right = new ParallelScan<>(this, fromSegment, toSegment, current, mid, to).compute();
+            return concat(left.join(), right);
+        }
+
+        List<R> rows = new ArrayList<>();
+        scanRange(fromSegment, current, from, to, rows);
+        return rows;
+    }
+
+    /**
+     * Reparte el spliterator mientras quede una parte grande y recorre el resto.
+     */
+    @SuppressWarnings("unchecked")
+    private List<R> computeSplit() {
+        if (rows.estimateSize() > 2 * MIN_SPLIT_POSITIONS) {
+            Spliterator<Object> prefix = rows.trySplit();
+            if (prefix != null) {
+                ParallelScan<T, R> left = new ParallelScan<>(this, prefix);
+                left.fork();
+                List<R> right = new ParallelScan<>(this, rows).compute();
+                return concat(left.join(), right);
+            }
+        }
+
+        List<R> result = new ArrayList<>();
+        int[] visited = new int[1];
+        Consumer<Object> visitor = value -> {
+            visited[0]++;
+            T row = (T) value;
+            if (query.matches(row) && remaining.getAndDecrement() > 0) {
+                result.add(projection.apply(row));
+            }
+        };
+        while (remaining.get() > 0 && rows.tryAdvance(visitor)) {
+            // El visitante ya ha procesado la fila
+        }
+        examined.add(visited[0]);
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void scanRange(int segment, LongObjectMap.Slots current, int from, int to, List<R> rows) {
+        int visited = table.scanPositions(segment, current, from, to, value -> {
+            T row = (T) value;
+            if (!query.matches(row)) {
+                return true;
+            }
+            if (remaining.getAndDecrement() <= 0) {
+                return false;
+            }
+            rows.add(projection.apply(row));
+            return remaining.get() > 0;
+        });
+        examined.add(visited);
+    }
+
+    private static <R> List<R> concat(List<R> left, List<R> right) {
+        if (left.isEmpty()) {
+            return right;
+        }
+        left.addAll(right);
+        return left;
+    }
+}
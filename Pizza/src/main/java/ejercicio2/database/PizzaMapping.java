@@ -0,0 +1,107 @@
+package ejercicio2.database;
+
+import ejercicio2.model.Pizza;
+import ejercicio2.model.Versioned;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Correspondencia de las pizzas con la tabla pizzas y sus ingredientes con la
+ * tabla hija pizza_toppings, que conserva el orden de la lista.
+ */
+final class PizzaMapping extends JdbcMapping<Pizza> {
+
+    private static final String SELECT_TOPPINGS =
+            "SELECT pizza_id, topping FROM pizza_toppings WHERE pizza_id = ANY(?) ORDER BY pizza_id, line";
+    private static final String DELETE_TOPPINGS = "DELETE FROM pizza_toppings WHERE pizza_id = ANY(?)";
+    private static final String INSERT_TOPPING = "INSERT INTO pizza_toppings (pizza_id, line, topping) VALUES (?, ?, ?)";
+
+    PizzaMapping() {
+        super(Pizza.class, "pizzas", "name", "pizza_size", "price");
+    }
+
+    @Override
+    List<String> schema() {
+        return List.of(
+                "CREATE TABLE IF NOT EXISTS pizzas ("
+                        + "id BIGINT PRIMARY KEY, version BIGINT NOT NULL, name VARCHAR(255), "
+                        + "pizza_size VARCHAR(64), price DOUBLE PRECISION NOT NULL)",
+                "CREATE TABLE IF NOT EXISTS pizza_toppings ("
+                        + "pizza_id BIGINT NOT NULL REFERENCES pizzas (id) ON DELETE CASCADE, "
+                        + "line INT NOT NULL, topping VARCHAR(255), PRIMARY KEY (pizza_id, line))");
+    }
+
+    @Override
+    Long getId(Pizza pizza) {
+        return pizza.getId();
+    }
+
+    @Override
+    void setId(Pizza pizza, long id) {
+        pizza.setId(id);
+    }
+
+    @Override
+    int bind(PreparedStatement statement, Pizza pizza) throws SQLException {
+        statement.setString(1, pizza.getName());
+        statement.setString(2, pizza.getSize());
+        statement.setDouble(3, pizza.getPrice());
+        return 4;
+    }
+
+    @Override
+    void writeChildren(PooledConnection connection, List<Pizza> pizzas, boolean inserted) throws SQLException {
+        if (pizzas.isEmpty()) {
+            return;
+        }
+        if (!inserted) {
+            deleteByIds(connection, DELETE_TOPPINGS, idsOf(pizzas));
+        }
+
+        PreparedStatement statement = connection.prepare(INSERT_TOPPING);
+        boolean pending = false;
+        for (Pizza pizza : pizzas) {
+            List<String> toppings = pizza.getToppings();
+            for (int line = 0; toppings != null && line < toppings.size(); line++) {
+                statement.setLong(1, pizza.getId());
+                statement.setInt(2, line);
+                statement.setString(3, toppings.get(line));
+                statement.addBatch();
+                pending = true;
+            }
+        }
+        if (pending) {
+            statement.executeBatch();
+        }
+    }
+
+    @Override
+    List<Versioned<Pizza>> readAll(PooledConnection connection, ResultSet rows) throws SQLException {
+        List<Versioned<Pizza>> pizzas = new ArrayList<>();
+        Map<Long, Pizza> byId = new HashMap<>();
+        try (rows) {
+            while (rows.next()) {
+                Pizza pizza = new Pizza(rows.getLong(1), rows.getString(3), rows.getString(4), new ArrayList<>(),
+                        rows.getDouble(5));
+                pizzas.add(new Versioned<>(pizza, rows.getLong(2)));
+                byId.put(pizza.getId(), pizza);
+            }
+        }
+        if (byId.isEmpty()) {
+            return pizzas;
+        }
+
+        // Los ingredientes de todas las pizzas leídas se cargan con una sola consulta
+        try (ResultSet toppings = queryByIds(connection, SELECT_TOPPINGS, byId.keySet().toArray(new Long[0]))) {
+            while (toppings.next()) {
+                byId.get(toppings.getLong(1)).getToppings().add(toppings.getString(2));
+            }
+        }
+        return pizzas;
+    }
+}
@@ -0,0 +1,125 @@
+package ejercicio2.database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Conexión JDBC del pool con su caché de sentencias preparadas. Las sentencias
+ * se preparan una vez por conexión y se reutilizan mientras la conexión vive,
+ * así que la base de datos no vuelve a analizar ni planificar el SQL en cada
+ * operación. La caché es LRU y cierra las sentencias que expulsa.
+ *
+ * Una conexión solo la usa el hilo que la ha tomado del pool.
+ */
+final class PooledConnection implements AutoCloseable {
+
+    private static final int STATEMENT_CACHE_SIZE = 64;
+
+    private final Connection connection;
+    private final Map<String, PreparedStatement> statements;
+
+    /**
+     * Constructor. Desactiva la confirmación automática: cada operación del
+     * gestor se confirma o se deshace de forma explícita.
+     *
+     * @param connection Conexión física, que se cierra si no se puede configurar
+     * @throws SQLException Si no se puede configurar la conexión
+     */
+    PooledConnection(Connection connection) throws SQLException {
+        this.connection = connection;
+        this.statements = new LinkedHashMap<>(STATEMENT_CACHE_SIZE, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                if (size() <= STATEMENT_CACHE_SIZE) {
+                    return false;
+                }
+                closeQuietly(eldest.getValue());
+                return true;
+            }
+        };
+        try {
+            connection.setAutoCommit(false);
+            connection.setTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+        } catch (SQLException | RuntimeException e) {
+            try {
+                connection.close();
+            } catch (SQLException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Obtiene la sentencia preparada para un SQL, preparándola la primera vez.
+     * La sentencia se devuelve sin parámetros ni lotes pendientes.
+     *
+     * @param sql Sentencia SQL
+     * @return Sentencia preparada
+     * @throws SQLException Si la sentencia no se puede preparar
+     */
+    PreparedStatement prepare(String sql) throws SQLException {
+        PreparedStatement statement = statements.get(sql);
+        if (statement == null) {
+            statement = connection.prepareStatement(sql);
+            statements.put(sql, statement);
+        } else {
+            // Una operación que falló a mitad de un lote lo deja pendiente
+            statement.clearBatch();
+            statement.clearParameters();
+        }
+        return statement;
+    }
+
+    Connection getConnection() {
+        return connection;
+    }
+
+    void commit() throws SQLException {
+        connection.commit();
+    }
+
+    void rollback() throws SQLException {
+        connection.rollback();
+    }
+
+    /**
+     * Comprueba si la conexión sigue siendo válida.
+     *
+     * @return true si se puede seguir usando, false si no
+     */
+    boolean isValid() {
+        try {
+            return connection.isValid(1);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Cierra las sentencias de la caché y la conexión física.
+     */
+    @Override
+    public void close() {
+        for (PreparedStatement statement : statements.values()) {
+            closeQuietly(statement);
+        }
+        statements.clear();
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            // La conexión se descarta de todos modos
+        }
+    }
+
+    private static void closeQuietly(PreparedStatement statement) {
+        try {
+            statement.close();
+        } catch (SQLException e) {
+            // La sentencia se descarta de todos modos
+        }
+    }
+}
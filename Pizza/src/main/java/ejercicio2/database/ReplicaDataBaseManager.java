@@ -0,0 +1,344 @@
+package ejercicio2.database;
+
+import ejercicio2.interfaces.IDataBaseManager;
+import ejercicio2.interfaces.ITransaction;
+import ejercicio2.model.Page;
+import ejercicio2.model.Query;
+import ejercicio2.model.QueryResult;
+import ejercicio2.model.Versioned;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Réplica de solo lectura de un DataBaseManager en el mismo proceso, para
+ * que las consultas de informes no compitan con las escrituras de pedidos.
+ *
+ * Al conectar se registra en la base de datos principal, copia sus filas y
+ * arranca un hilo que aplica, en orden, los registros del log que la
+ * principal le envía con cada confirmación. La principal no espera nunca a
+ * la réplica.
+ *
+ * Las lecturas tienen un retraso acotado: antes de leer se espera a que el
+ * registro pendiente más antiguo tenga como mucho la antigüedad máxima
+ * indicada, de modo que toda lectura ve las confirmaciones terminadas en la
+ * principal antes de ese margen. Las escrituras deben hacerse en la principal.
+ *
+ * Las versiones de las filas son propias de la réplica y no coinciden con las
+ * de la principal.
+ */
+public class ReplicaDataBaseManager implements IDataBaseManager {
+
+    private static final long READ_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(5);
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final DataBaseManager leader;
+    private final long maxStalenessNanos;
+    private final List<Consumer<DataBaseManager>> indexDeclarations;
+    private volatile DataBaseManager replica;
+    private volatile ReplicationChannel channel;
+    private volatile Thread applier;
+    private volatile Throwable failure;
+
+    /**
+     * Constructor.
+     *
+     * @param leader Base de datos principal
+     * @param maxStalenessMillis Retraso máximo de las lecturas respecto a la principal
+     */
+    public ReplicaDataBaseManager(DataBaseManager leader, long maxStalenessMillis) {
+        if (leader == null) {
+            throw new IllegalArgumentException("La base de datos principal no puede ser nula");
+        }
+        if (maxStalenessMillis < 0) {
+            throw new IllegalArgumentException("El retraso máximo no puede ser negativo");
+        }
+        this.leader = leader;
+        this.maxStalenessNanos = TimeUnit.MILLISECONDS.toNanos(maxStalenessMillis);
+        this.indexDeclarations = new CopyOnWriteArrayList<>();
+    }
+
+    /**
+     * Obtiene el retraso actual de la réplica: la antigüedad del registro más
+     * antiguo que aún no ha aplicado.
+     *
+     * @return Retraso en milisegundos, 0 si está al día o no está conectada
+     */
+    public long getReplicationLagMillis() {
+        ReplicationChannel current = channel;
+        return current != null ? TimeUnit.NANOSECONDS.toMillis(current.getLagNanos()) : 0;
+    }
+
+    /**
+     * Obtiene el número de registros recibidos que aún no se han aplicado.
+     *
+     * @return Registros pendientes, 0 si no está conectada
+     */
+    public long getPendingRecords() {
+        ReplicationChannel current = channel;
+        return current != null ? current.getShipped() - current.getApplied() : 0;
+    }
+
+    /**
+     * Obtiene el número de registros aplicados desde la última conexión.
+     *
+     * @return Registros aplicados, sin contar la copia inicial
+     */
+    public long getAppliedRecords() {
+        ReplicationChannel current = channel;
+        return current != null ? current.getApplied() : 0;
+    }
+
+    @Override
+    public <T> T save(T object) {
+        throw readOnly();
+    }
+
+    @Override
+    public <T> Optional<T> findById(Long id, Class<T> clazz) {
+        return awaitFresh().findById(id, clazz);
+    }
+
+    @Override
+    public <T> T update(T object) {
+        throw readOnly();
+    }
+
+    @Override
+    public <T> Optional<Versioned<T>> findVersionedById(Long id, Class<T> clazz) {
+        return awaitFresh().findVersionedById(id, clazz);
+    }
+
+    @Override
+    public <T> Versioned<T> compareAndUpdate(T object, long expectedVersion) {
+        throw readOnly();
+    }
+
+    @Override
+    public ITransaction beginTransaction() {
+        throw readOnly();
+    }
+
+    @Override
+    public <T> boolean delete(Long id, Class<T> clazz) {
+        throw readOnly();
+    }
+
+    @Override
+    public <T> List<T> findAll(Class<T> clazz) {
+        return awaitFresh().findAll(clazz);
+    }
+
+    @Override
+    public <T> List<T> saveAll(Collection<T> objects) {
+        throw readOnly();
+    }
+
+    @Override
+    public <T> List<T> updateAll(Collection<T> objects) {
+        throw readOnly();
+    }
+
+    @Override
+    public <T> List<T> findAllById(Collection<Long> ids, Class<T> clazz) {
+        return awaitFresh().findAllById(ids, clazz);
+    }
+
+    @Override
+    public <T> int deleteAll(Collection<Long> ids, Class<T> clazz) {
+        throw readOnly();
+    }
+
+    @Override
+    public <T> Stream<T> stream(Class<T> clazz) {
+        return awaitFresh().stream(clazz);
+    }
+
+    @Override
+    public <T> Page<T> findPage(Class<T> clazz, String cursor, int pageSize) {
+        return awaitFresh().findPage(clazz, cursor, pageSize);
+    }
+
+    @Override
+    public <T> void createIndex(String indexName, Class<T> clazz, Function<? super T, ?> keyExtractor) {
+        // Los índices son propios de la réplica y se vuelven a crear al reconectar
+        declareIndex(db -> db.createIndex(indexName, clazz, keyExtractor));
+    }
+
+    @Override
+    public <T> List<T> findBy(String indexName, Class<T> clazz, Object key) {
+        return awaitFresh().findBy(indexName, clazz, key);
+    }
+
+    @Override
+    public <T> int countBy(String indexName, Class<T> clazz, Object key) {
+        return awaitFresh().countBy(indexName, clazz, key);
+    }
+
+    @Override
+    public <T> void createSortedIndex(String indexName, Class<T> clazz,
+                                      Function<? super T, ? extends Comparable<?>> keyExtractor) {
+        declareIndex(db -> db.createSortedIndex(indexName, clazz, keyExtractor));
+    }
+
+    @Override
+    public <T> List<T> findRange(String indexName, Class<T> clazz, Comparable<?> from, Comparable<?> to) {
+        return awaitFresh().findRange(indexName, clazz, from, to);
+    }
+
+    @Override
+    public <T> List<T> findLatest(String indexName, Class<T> clazz, int limit) {
+        return awaitFresh().findLatest(indexName, clazz, limit);
+    }
+
+    @Override
+    public <T> List<T> findLatest(String indexName, Class<T> clazz, Comparable<?> from, Comparable<?> to,
+                                  int limit) {
+        return awaitFresh().findLatest(indexName, clazz, from, to, limit);
+    }
+
+    @Override
+    public <T, R> QueryResult<R> query(Query<T> query, Function<? super T, ? extends R> projection) {
+        return awaitFresh().query(query, projection);
+    }
+
+    /**
+     * Se registra en la principal, copia sus filas y empieza a aplicar sus
+     * registros. Cada conexión parte de una copia nueva.
+     *
+     * @return true si la réplica está conectada, false si la principal no lo está
+     */
+    @Override
+    public synchronized boolean connect() {
+        if (replica != null) {
+            return true;
+        }
+
+        DataBaseManager copy = new DataBaseManager();
+        copy.connect();
+        for (Consumer<DataBaseManager> declaration : indexDeclarations) {
+            declaration.accept(copy);
+        }
+
+        ReplicationChannel replication = new ReplicationChannel();
+        try {
+            for (byte[] record : leader.attachReplica(replication)) {
+                copy.applyReplicated(record);
+            }
+        } catch (IllegalStateException | IOException e) {
+            leader.detachReplica(replication);
+            return false;
+        }
+
+        Thread thread = new Thread(() -> apply(copy, replication), "db-replica");
+        thread.setDaemon(true);
+        failure = null;
+        channel = replication;
+        replica = copy;
+        applier = thread;
+        thread.start();
+        return true;
+    }
+
+    @Override
+    public synchronized void disconnect() {
+        DataBaseManager current = replica;
+        if (current == null) {
+            return;
+        }
+        replica = null;
+        leader.detachReplica(channel);
+
+        Thread thread = applier;
+        applier = null;
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel = null;
+        current.disconnect();
+    }
+
+    @Override
+    public boolean isConnected() {
+        return replica != null;
+    }
+
+    /**
+     * Bucle del hilo de replicación. Los registros se aplican de uno en uno y
+     * en el orden en que llegan; la principal no avisa, así que cuando no hay
+     * ninguno se espera con pausas crecientes.
+     */
+    private void apply(DataBaseManager copy, ReplicationChannel replication) {
+        Thread self = Thread.currentThread();
+        long park = 1_000;
+        while (applier == self) {
+            ReplicationChannel.Record record = replication.peek();
+            if (record == null) {
+                LockSupport.parkNanos(this, park);
+                park = Math.min(park << 1, MAX_PARK_NANOS);
+                continue;
+            }
+            park = 1_000;
+            try {
+                copy.applyReplicated(record.payload);
+            } catch (IOException | RuntimeException e) {
+                // La réplica ya no puede garantizar nada: las lecturas fallarán
+                failure = e;
+                return;
+            }
+            replication.remove();
+        }
+    }
+
+    /**
+     * Espera a que el retraso de la réplica esté dentro del margen.
+     *
+     * @return Copia local sobre la que leer
+     * @throws IllegalStateException Si no hay conexión, la réplica ha fallado o no se pone al día a tiempo
+     */
+    private DataBaseManager awaitFresh() {
+        DataBaseManager current = replica;
+        ReplicationChannel replication = channel;
+        if (current == null || replication == null) {
+            throw new IllegalStateException("No hay conexión con la base de datos");
+        }
+
+        long deadline = System.nanoTime() + READ_TIMEOUT_NANOS;
+        long park = 1_000;
+        long lag;
+        while ((lag = replication.getLagNanos()) > maxStalenessNanos) {
+            if (failure != null) {
+                throw new IllegalStateException("La réplica ha dejado de aplicar los cambios de la principal", failure);
+            }
+            if (System.nanoTime() - deadline > 0) {
+                throw new IllegalStateException("La réplica va con " + TimeUnit.NANOSECONDS.toMillis(lag)
+                        + " ms de retraso");
+            }
+            LockSupport.parkNanos(park);
+            park = Math.min(park << 1, MAX_PARK_NANOS);
+        }
+        return current;
+    }
+
+    private void declareIndex(Consumer<DataBaseManager> declaration) {
+        indexDeclarations.add(declaration);
+        DataBaseManager current = replica;
+        if (current != null) {
+            declaration.accept(current);
+        }
+    }
+
+    private static UnsupportedOperationException readOnly() {
+        return new UnsupportedOperationException("La réplica es de solo lectura: las escrituras van a la principal");
+    }
+}
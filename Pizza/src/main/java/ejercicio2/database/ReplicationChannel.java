@@ -0,0 +1,86 @@
+package ejercicio2.database;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Canal por el que una base de datos envía sus registros del log a una
+ * réplica. Enviar no bloquea nunca: el registro se encola y la réplica lo
+ * aplica a su ritmo. Cada registro lleva el instante en que se confirmó, de
+ * modo que el retraso de la réplica se mide como la antigüedad del registro
+ * más antiguo que aún no ha aplicado.
+ *
+ * Un único hilo consume el canal: lee el primer registro con peek, lo aplica
+ * y solo entonces lo quita con remove, así que mientras se aplica sigue
+ * contando como pendiente.
+ */
+final class ReplicationChannel {
+
+    private final ConcurrentLinkedQueue<Record> queue;
+    private final AtomicLong shipped;
+    private volatile long applied;
+
+    ReplicationChannel() {
+        this.queue = new ConcurrentLinkedQueue<>();
+        this.shipped = new AtomicLong();
+    }
+
+    /**
+     * Encola un registro.
+     *
+     * @param payload Registro en el formato del log
+     * @param commitNanos Instante de la confirmación según System.nanoTime
+     */
+    void ship(byte[] payload, long commitNanos) {
+        queue.offer(new Record(payload, commitNanos));
+        shipped.incrementAndGet();
+    }
+
+    /**
+     * Obtiene el registro pendiente más antiguo sin quitarlo.
+     *
+     * @return Registro o null si no hay ninguno pendiente
+     */
+    Record peek() {
+        return queue.peek();
+    }
+
+    /**
+     * Quita el registro pendiente más antiguo una vez aplicado.
+     */
+    void remove() {
+        queue.poll();
+        applied++;
+    }
+
+    /**
+     * Calcula el retraso de la réplica.
+     *
+     * @return Nanosegundos desde la confirmación del registro pendiente más antiguo, o 0 si no hay
+     */
+    long getLagNanos() {
+        Record oldest = queue.peek();
+        return oldest != null ? Math.max(0, System.nanoTime() - oldest.commitNanos) : 0;
+    }
+
+    long getShipped() {
+        return shipped.get();
+    }
+
+    long getApplied() {
+        return applied;
+    }
+
+    /**
+     * Registro enviado.
+     */
+    static final class Record {
+        final byte[] payload;
+        final long commitNanos;
+
+        Record(byte[] payload, long commitNanos) {
+            this.payload = payload;
+            this.commitNanos = commitNanos;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package ejercicio2.database;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Política de retención de una tabla de DataBaseManager: cuántas filas puede
+ * tener como máximo, cuánto tiempo se conserva cada fila según una fecha de
+ * la propia entidad, qué filas se pueden expulsar y adónde van las
+ * expulsadas. Sin destino, las filas expulsadas se descartan.
+ *
+ * Ejemplo: RetentionPolicy.of(Order.class).maxAge(Order::getOrderDate, Duration.ofDays(90))
+ *     .evictOnly(o -> "DELIVERED".equals(o.getStatus())).overflowTo(archive::save)
+ *
+ * La política no debe modificarse después de registrarla.
+ *
+ * @param <T> Tipo de las entidades de la tabla
+ */
+public final class RetentionPolicy<T> {
+
+    private final Class<T> entityClass;
+    private int maxEntries;
+    private Function<? super T, LocalDateTime> timestamp;
+    private Duration maxAge;
+    private Predicate<? super T> evictable;
+    private Consumer<? super T> overflow;
+
+    private RetentionPolicy(Class<T> entityClass) {
+        this.entityClass = entityClass;
+        this.maxEntries = Integer.MAX_VALUE;
+        this.evictable = row -> true;
+    }
+
+    /**
+     * Empieza una política sin límites para una clase.
+     *
+     * @param entityClass Clase de las entidades de la tabla
+     * @param <T> Tipo de las entidades
+     * @return Política que no expulsa nada
+     */
+    public static <T> RetentionPolicy<T> of(Class<T> entityClass) {
+        if (entityClass == null) {
+            throw new IllegalArgumentException("La clase de la política no puede ser nula");
+        }
+        return new RetentionPolicy<>(entityClass);
+    }
+
+    /**
+     * Limita el número de filas. Cuando se supera se expulsan primero las
+     * más antiguas según la fecha de maxAge, o las de ID más bajo si no la hay.
+     *
+     * @param maxEntries Número máximo de filas
+     * @return Esta política
+     */
+    public RetentionPolicy<T> maxEntries(int maxEntries) {
+        if (maxEntries < 0) {
+            throw new IllegalArgumentException("El número máximo de filas no puede ser negativo");
+        }
+        this.maxEntries = maxEntries;
+        return this;
+    }
+
+    /**
+     * Limita la antigüedad de las filas. Las filas sin fecha no caducan.
+     *
+     * @param timestamp Función que obtiene la fecha de una entidad
+     * @param maxAge Antigüedad máxima
+     * @return Esta política
+     */
+    public RetentionPolicy<T> maxAge(Function<? super T, LocalDateTime> timestamp, Duration maxAge) {
+        if (timestamp == null || maxAge == null || maxAge.isNegative()) {
+            throw new IllegalArgumentException("La antigüedad máxima necesita una fecha y una duración positiva");
+        }
+        this.timestamp = timestamp;
+        this.maxAge = maxAge;
+        return this;
+    }
+
+    /**
+     * Restringe qué filas se pueden expulsar; las demás se conservan aunque
+     * superen los límites.
+     *
+     * @param evictable Condición que deben cumplir las filas para expulsarlas
+     * @return Esta política
+     */
+    public RetentionPolicy<T> evictOnly(Predicate<? super T> evictable) {
+        if (evictable == null) {
+            throw new IllegalArgumentException("La condición no puede ser nula");
+        }
+        this.evictable = evictable;
+        return this;
+    }
+
+    /**
+     * Envía las filas expulsadas a otro almacén después de borrarlas. Si una
+     * fila cambia mientras se expulsa se conserva y no se envía. Si el envío
+     * de una fila falla, se reintenta en los siguientes pasos de la retención, que
+     * dejan de expulsar filas si se acumulan demasiadas sin enviar.
+     *
+     * @param overflow Función que guarda cada fila expulsada
+     * @return Esta política
+     */
+    public RetentionPolicy<T> overflowTo(Consumer<? super T> overflow) {
+        this.overflow = overflow;
+        return this;
+    }
+
+    // Getters
+
+    public Class<T> getEntityClass() {
+        return entityClass;
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public Duration getMaxAge() {
+        return maxAge;
+    }
+
+    Function<? super T, LocalDateTime> getTimestamp() {
+        return timestamp;
+    }
+
+    Predicate<? super T> getEvictable() {
+        return evictable;
+    }
+
+    Consumer<? super T> getOverflow() {
+        return overflow;
+    }
+}
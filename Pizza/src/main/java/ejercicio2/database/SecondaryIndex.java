@@ -0,0 +1,112 @@
+package ejercicio2.database;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+/**
+ * Índice secundario sobre un atributo de las entidades de una tabla.
+ * Guarda, además de los IDs por clave, la clave con la que se indexó cada fila,
+ * para poder mover la fila aunque el objeto se haya modificado antes de actualizarlo.
+ * La tabla lo mantiene siempre con el cerrojo de la franja de la fila tomado.
+ * Las subclases deciden la estructura de las claves: hash o ordenada.
+ */
+abstract class SecondaryIndex {
+
+    private final String name;
+    private final Function<Object, ?> keyExtractor;
+    private final ConcurrentMap<Object, Set<Long>> idsByKey;
+    private final ConcurrentHashMap<Long, Object> keysById;
+
+    /**
+     * Constructor.
+     *
+     * @param name Nombre del índice
+     * @param keyExtractor Función que obtiene la clave de una entidad; no debe lanzar excepciones
+     * @param idsByKey Mapa vacío de IDs por clave
+     */
+    SecondaryIndex(String name, Function<Object, ?> keyExtractor, ConcurrentMap<Object, Set<Long>> idsByKey) {
+        this.name = name;
+        this.keyExtractor = keyExtractor;
+        this.idsByKey = idsByKey;
+        this.keysById = new ConcurrentHashMap<>();
+    }
+
+    String getName() {
+        return name;
+    }
+
+    /**
+     * Obtiene la clave con la que se indexa una entidad.
+     *
+     * @param entity Entidad
+     * @return Clave o null si la entidad no se indexa
+     */
+    Object keyOf(Object entity) {
+        return keyExtractor.apply(entity);
+    }
+
+    /**
+     * Crea el conjunto vacío donde se guardan los IDs de una clave.
+     *
+     * @return Conjunto concurrente de IDs
+     */
+    abstract Set<Long> newIdSet();
+
+    /**
+     * Indexa una fila insertada o actualizada, moviéndola si su clave ha cambiado.
+     *
+     * @param id ID de la fila
+     * @param entity Nuevo contenido de la fila
+     */
+    void onPut(long id, Object entity) {
+        Object newKey = keyExtractor.apply(entity);
+        Object oldKey = newKey != null ? keysById.put(id, newKey) : keysById.remove(id);
+
+        if (oldKey != null && !oldKey.equals(newKey)) {
+            unlink(oldKey, id);
+        }
+        if (newKey != null && !newKey.equals(oldKey)) {
+            idsByKey.compute(newKey, (k, ids) -> {
+                Set<Long> result = ids != null ? ids : newIdSet();
+                result.add(id);
+                return result;
+            });
+        }
+    }
+
+    /**
+     * Elimina una fila del índice.
+     *
+     * @param id ID de la fila eliminada
+     */
+    void onRemove(long id) {
+        Object oldKey = keysById.remove(id);
+        if (oldKey != null) {
+            unlink(oldKey, id);
+        }
+    }
+
+    /**
+     * Obtiene los IDs de las filas indexadas con una clave.
+     *
+     * @param key Clave buscada
+     * @return Conjunto de IDs, vacío si no hay ninguno
+     */
+    Set<Long> lookup(Object key) {
+        if (key == null) {
+            return Collections.emptySet();
+        }
+        Set<Long> ids = idsByKey.get(key);
+        return ids != null ? ids : Collections.emptySet();
+    }
+
+    private void unlink(Object key, long id) {
+        idsByKey.computeIfPresent(key, (k, ids) -> {
+            ids.remove(id);
+            return ids.isEmpty() ? null : ids;
+        });
+    }
+}
@@ -0,0 +1,233 @@
+package ejercicio2.database;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Caché de tamaño acotado con claves long y expulsión LRU segmentada.
+ *
+ * Cada entrada nueva entra en el segmento de prueba; solo si se vuelve a leer
+ * pasa al segmento protegido, que ocupa el 80 % de la capacidad. Al llenarse
+ * se expulsa primero lo menos usado del segmento de prueba, así que un
+ * recorrido que lee muchas filas una sola vez no desplaza a las que se leen a
+ * menudo.
+ *
+ * Las entradas se reparten en franjas con su propio cerrojo. Cada franja lleva
+ * un contador de generación que sube con cada invalidación: quien va a cargar
+ * una entrada anota la generación antes de leerla del almacenamiento y solo la
+ * guarda si no ha cambiado, de modo que una lectura que ha empezado antes de
+ * una escritura nunca deja en la caché el valor anterior.
+ *
+ * @param <V> Tipo de los valores
+ */
+final class SegmentedLruCache<V> {
+
+    private static final int MAX_STRIPES = 16;
+    private static final int MIN_STRIPE_CAPACITY = 64;
+    private static final long SPREAD = 0x9E3779B97F4A7C15L;
+
+    private final Stripe<V>[] stripes;
+    private final int mask;
+    private final LongAdder hits;
+    private final LongAdder misses;
+    private final LongAdder evictions;
+
+    /**
+     * Constructor.
+     *
+     * @param capacity Número máximo de entradas
+     */
+    @SuppressWarnings("unchecked")
+    SegmentedLruCache(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("La capacidad de la caché debe ser positiva");
+        }
+        // Las franjas muy pequeñas no dejan sitio al segmento protegido
+        int count = Integer.highestOneBit(Math.max(1, Math.min(MAX_STRIPES, capacity / MIN_STRIPE_CAPACITY)));
+        this.stripes = (Stripe<V>[]) new Stripe<?>[count];
+        for (int i = 0; i < count; i++) {
+            // El resto de la división se reparte entre las primeras franjas
+            stripes[i] = new Stripe<>(capacity / count + (i < capacity % count ? 1 : 0));
+        }
+        this.mask = count - 1;
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+        this.evictions = new LongAdder();
+    }
+
+    /**
+     * Busca una entrada y cuenta el acierto o el fallo.
+     *
+     * @param key Clave
+     * @return Valor o null si no está en la caché
+     */
+    V get(long key) {
+        V value = stripeFor(key).get(key);
+        (value != null ? hits : misses).increment();
+        return value;
+    }
+
+    /**
+     * Obtiene la generación actual de la franja de una clave. Debe anotarse
+     * antes de leer el valor del almacenamiento.
+     *
+     * @param key Clave
+     * @return Generación de la franja
+     */
+    long generation(long key) {
+        return stripeFor(key).generation();
+    }
+
+    /**
+     * Guarda una entrada si nadie ha invalidado su franja desde que se anotó la generación.
+     *
+     * @param key Clave
+     * @param value Valor leído del almacenamiento
+     * @param generation Generación anotada antes de leer el valor
+     * @return true si se ha guardado, false si la franja ha cambiado
+     */
+    boolean putIfUnchanged(long key, V value, long generation) {
+        int evicted = stripeFor(key).putIfUnchanged(key, value, generation);
+        if (evicted < 0) {
+            return false;
+        }
+        evictions.add(evicted);
+        return true;
+    }
+
+    /**
+     * Elimina una entrada e invalida las cargas en curso de su franja.
+     *
+     * @param key Clave
+     */
+    void invalidate(long key) {
+        stripeFor(key).invalidate(key);
+    }
+
+    /**
+     * Elimina todas las entradas e invalida todas las cargas en curso.
+     */
+    void clear() {
+        for (Stripe<V> stripe : stripes) {
+            stripe.clear();
+        }
+    }
+
+    /**
+     * Obtiene el número de entradas.
+     *
+     * @return Número de entradas en la caché
+     */
+    int size() {
+        int size = 0;
+        for (Stripe<V> stripe : stripes) {
+            size += stripe.size();
+        }
+        return size;
+    }
+
+    long getHitCount() {
+        return hits.sum();
+    }
+
+    long getMissCount() {
+        return misses.sum();
+    }
+
+    long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    private Stripe<V> stripeFor(long key) {
+        return stripes[(int) ((key * SPREAD) >>> 32) & mask];
+    }
+
+    /**
+     * Franja de la caché, con sus dos segmentos en orden de acceso.
+     */
+    private static final class Stripe<V> {
+        private final int capacity;
+        private final int protectedCapacity;
+        private final LinkedHashMap<Long, V> probation;
+        private final LinkedHashMap<Long, V> protectedSegment;
+        private long generation;
+
+        Stripe(int capacity) {
+            this.capacity = capacity;
+            this.protectedCapacity = capacity * 4 / 5;
+            this.probation = new LinkedHashMap<>(16, 0.75f, true);
+            this.protectedSegment = new LinkedHashMap<>(16, 0.75f, true);
+        }
+
+        synchronized V get(long key) {
+            V value = protectedSegment.get(key);
+            if (value != null) {
+                return value;
+            }
+            value = probation.get(key);
+            if (value == null || protectedCapacity == 0) {
+                return value;
+            }
+
+            // Segundo acceso: pasa al segmento protegido, que devuelve su entrada menos usada a prueba
+            probation.remove(key);
+            protectedSegment.put(key, value);
+            if (protectedSegment.size() > protectedCapacity) {
+                Map.Entry<Long, V> eldest = removeEldest(protectedSegment);
+                probation.put(eldest.getKey(), eldest.getValue());
+            }
+            return value;
+        }
+
+        synchronized long generation() {
+            return generation;
+        }
+
+        /**
+         * @return Número de entradas expulsadas, o -1 si la franja ha cambiado y no se ha guardado
+         */
+        synchronized int putIfUnchanged(long key, V value, long expectedGeneration) {
+            if (generation != expectedGeneration) {
+                return -1;
+            }
+            if (protectedSegment.containsKey(key)) {
+                protectedSegment.put(key, value);
+                return 0;
+            }
+            probation.put(key, value);
+
+            int evicted = 0;
+            while (probation.size() + protectedSegment.size() > capacity) {
+                removeEldest(probation.isEmpty() ? protectedSegment : probation);
+                evicted++;
+            }
+            return evicted;
+        }
+
+        synchronized void invalidate(long key) {
+            generation++;
+            if (probation.remove(key) == null) {
+                protectedSegment.remove(key);
+            }
+        }
+
+        synchronized void clear() {
+            generation++;
+            probation.clear();
+            protectedSegment.clear();
+        }
+
+        synchronized int size() {
+            return probation.size() + protectedSegment.size();
+        }
+
+        private static <V> Map.Entry<Long, V> removeEldest(LinkedHashMap<Long, V> segment) {
+            Iterator<Map.Entry<Long, V>> entries = segment.entrySet().iterator();
+            Map.Entry<Long, V> eldest = entries.next();
+            entries.remove();
+            return eldest;
+        }
+    }
+}
@@ -0,0 +1,795 @@
+package ejercicio2.database;
+
+import ejercicio2.exceptions.VersionConflictException;
+import ejercicio2.interfaces.IDataBaseManager;
+import ejercicio2.interfaces.IEntityResolver;
+import ejercicio2.interfaces.IIdGenerator;
+import ejercicio2.interfaces.IReferencingEntity;
+import ejercicio2.interfaces.ITransaction;
+import ejercicio2.model.Page;
+import ejercicio2.model.Query;
+import ejercicio2.model.QueryResult;
+import ejercicio2.model.Versioned;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Fachada que reparte las entidades entre varios gestores de base de datos
+ * (fragmentos) según un hash de su ID. Cada fila vive en un único fragmento,
+ * así que las operaciones por ID van a un solo fragmento y no compiten con
+ * las de los demás por sus cerrojos ni por su memoria. Las consultas que
+ * recorren una tabla (findAll, findBy, findRange, findLatest) se lanzan en
+ * paralelo a todos los fragmentos y se combinan sus resultados, en orden de
+ * ID o de la clave del índice.
+ *
+ * Los IDs los asigna la fachada, para poder elegir el fragmento antes de
+ * guardar, así que los fragmentos deben empezar vacíos.
+ *
+ * Las escrituras en lote y las transacciones son atómicas dentro de cada
+ * fragmento. Las transacciones y las actualizaciones en lote que afectan a
+ * varios fragmentos los bloquean todos, en el orden de los fragmentos, para
+ * que ninguna otra escritura de la fachada los toque; con ellos bloqueados
+ * validan que las filas a actualizar existen y que las leídas no han cambiado,
+ * y solo entonces confirman cada fragmento, así que un conflicto nunca deja
+ * unos fragmentos confirmados y otros no. El resto de escrituras solo
+ * comparten el cerrojo de su fragmento, que está repartido en varias franjas
+ * para que los hilos que escriben en el mismo fragmento no compitan por una
+ * sola variable; el bloqueo exclusivo toma todas las franjas. Las lecturas
+ * no esperan y pueden ver un fragmento ya confirmado antes que los demás.
+ * Las escrituras que no pasan por la fachada, como la retención de cada
+ * fragmento, no se coordinan.
+ */
+public class ShardedDataBaseManager implements IDataBaseManager {
+
+    private static final long SPREAD = 0x9E3779B97F4A7C15L;
+    private static final int LOCK_STRIPES = 8; // Potencia de dos
+
+    private final List<IDataBaseManager> shards;
+    private final StampedLock[][] locks; // Por fragmento y franja. Compartido: escribir; exclusivo: confirmar en varios
+    private final Executor executor;
+    private final IIdGenerator idGenerator;
+    private final ConcurrentMap<Class<?>, ConcurrentMap<String, Function<Object, ?>>> sortedIndexes;
+    private final IEntityResolver references;
+
+    /**
+     * Constructor con fragmentos en memoria en este mismo proceso.
+     *
+     * @param shardCount Número de fragmentos
+     */
+    public ShardedDataBaseManager(int shardCount) {
+        this(localShards(shardCount), ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param shards Fragmentos, vacíos; su orden decide a cuál va cada ID
+     * @param executor Ejecutor en el que se consulta cada fragmento en paralelo
+     */
+    public ShardedDataBaseManager(List<? extends IDataBaseManager> shards, Executor executor) {
+        this(shards, executor, new BlockIdGenerator());
+    }
+
+    /**
+     * Constructor con otra estrategia de IDs.
+     *
+     * @param shards Fragmentos, vacíos; su orden decide a cuál va cada ID
+     * @param executor Ejecutor en el que se consulta cada fragmento en paralelo
+     * @param idGenerator Generador de los IDs de las entidades nuevas
+     */
+    public ShardedDataBaseManager(List<? extends IDataBaseManager> shards, Executor executor,
+                                  IIdGenerator idGenerator) {
+        if (shards == null || shards.isEmpty()) {
+            throw new IllegalArgumentException("Debe haber al menos un fragmento");
+        }
+        if (executor == null) {
+            throw new IllegalArgumentException("El ejecutor no puede ser nulo");
+        }
+        if (idGenerator == null) {
+            throw new IllegalArgumentException("El generador de IDs no puede ser nulo");
+        }
+        this.shards = List.copyOf(shards);
+        this.locks = new StampedLock[this.shards.size()][LOCK_STRIPES];
+        for (StampedLock[] stripes : locks) {
+            for (int i = 0; i < stripes.length; i++) {
+                stripes[i] = new StampedLock();
+            }
+        }
+        this.executor = executor;
+        this.idGenerator = idGenerator;
+        this.sortedIndexes = new ConcurrentHashMap<>();
+        this.references = new IEntityResolver() {
+            @Override
+            public Object resolve(Class<?> clazz, long id) {
+                return shardFor(id).findById(id, clazz).orElse(null);
+            }
+
+            @Override
+            public long getGeneration() {
+                return generation();
+            }
+        };
+    }
+
+    /**
+     * Suma las generaciones de los fragmentos, que solo conocen los
+     * DataBaseManager.
+     *
+     * @return Generación o IEntityResolver.NO_GENERATION si algún fragmento no la ofrece
+     */
+    private long generation() {
+        long sum = 0;
+        for (IDataBaseManager shard : shards) {
+            if (!(shard instanceof DataBaseManager)) {
+                return IEntityResolver.NO_GENERATION;
+            }
+            sum += ((DataBaseManager) shard).generation();
+        }
+        return sum;
+    }
+
+    /**
+     * Obtiene el número de fragmentos.
+     *
+     * @return Número de fragmentos
+     */
+    public int getShardCount() {
+        return shards.size();
+    }
+
+    @Override
+    public <T> T save(T object) {
+        ensureConnected();
+        assignId(object);
+        int index = shardIndex(object);
+        return writeTo(index, () -> shards.get(index).save(object));
+    }
+
+    @Override
+    public <T> Optional<T> findById(Long id, Class<T> clazz) {
+        return shardFor(id).findById(id, clazz);
+    }
+
+    @Override
+    public <T> T update(T object) {
+        int index = shardIndex(object);
+        return writeTo(index, () -> shards.get(index).update(object));
+    }
+
+    @Override
+    public <T> Optional<Versioned<T>> findVersionedById(Long id, Class<T> clazz) {
+        return shardFor(id).findVersionedById(id, clazz);
+    }
+
+    @Override
+    public <T> Versioned<T> compareAndUpdate(T object, long expectedVersion) {
+        int index = shardIndex(object);
+        return writeTo(index, () -> shards.get(index).compareAndUpdate(object, expectedVersion));
+    }
+
+    @Override
+    public ITransaction beginTransaction() {
+        ensureConnected();
+        return new ShardedTransaction();
+    }
+
+    @Override
+    public <T> boolean delete(Long id, Class<T> clazz) {
+        int index = shardIndex(id);
+        return writeTo(index, () -> shards.get(index).delete(id, clazz));
+    }
+
+    @Override
+    public <T> List<T> findAll(Class<T> clazz) {
+        List<T> all = new ArrayList<>();
+        for (List<T> rows : scatter(shard -> shard.findAll(clazz))) {
+            all.addAll(rows);
+        }
+        all.sort(Comparator.comparing(EntityMetadata.of(clazz)::getId));
+        return all;
+    }
+
+    @Override
+    public <T> List<T> saveAll(Collection<T> objects) {
+        ensureConnected();
+        List<T> saved = new ArrayList<>(objects);
+        int missing = 0;
+        for (T object : saved) {
+            if (EntityMetadata.of(object.getClass()).getId(object) == null) {
+                missing++;
+            }
+        }
+
+        // Los IDs de todo el lote se piden de una vez
+        long[] ids = missing > 0 ? idGenerator.nextIds(missing) : null;
+        int next = 0;
+        for (T object : saved) {
+            EntityMetadata metadata = EntityMetadata.of(object.getClass());
+            if (metadata.getId(object) == null) {
+                metadata.setId(object, ids[next++]);
+            }
+        }
+
+        for (Map.Entry<Integer, List<T>> batch : groupByShard(saved).entrySet()) {
+            writeTo(batch.getKey(), () -> shards.get(batch.getKey()).saveAll(batch.getValue()));
+        }
+        return saved;
+    }
+
+    @Override
+    public <T> List<T> updateAll(Collection<T> objects) {
+        ensureConnected();
+        List<T> updated = new ArrayList<>(objects);
+        Map<Integer, List<T>> batches = groupByShard(updated);
+
+        if (batches.size() == 1) {
+            int index = batches.keySet().iterator().next();
+            writeTo(index, () -> shards.get(index).updateAll(updated));
+            return updated;
+        }
+
+        // Si falta alguna fila no se escribe en ningún fragmento, y nadie puede
+        // borrarla entre la comprobación y la escritura
+        List<Lock> held = lockExclusively(batches.keySet());
+        try {
+            for (T object : updated) {
+                Long id = EntityMetadata.of(object.getClass()).getId(object);
+                if (id != null && shardFor(id).findVersionedById(id, object.getClass()).isEmpty()) {
+                    throw new IllegalArgumentException("El objeto con ID " + id + " no existe en la base de datos");
+                }
+            }
+            for (Map.Entry<Integer, List<T>> batch : batches.entrySet()) {
+                shards.get(batch.getKey()).updateAll(batch.getValue());
+            }
+        } finally {
+            unlock(held);
+        }
+        return updated;
+    }
+
+    @Override
+    public <T> List<T> findAllById(Collection<Long> ids, Class<T> clazz) {
+        ensureConnected();
+        Map<IDataBaseManager, List<Long>> batches = new LinkedHashMap<>();
+        for (Long id : ids) {
+            if (id != null) {
+                batches.computeIfAbsent(shardFor(id), s -> new ArrayList<>()).add(id);
+            }
+        }
+
+        Map<Long, T> found = new HashMap<>();
+        EntityMetadata metadata = EntityMetadata.of(clazz);
+        for (Map.Entry<IDataBaseManager, List<Long>> batch : batches.entrySet()) {
+            for (T object : batch.getKey().findAllById(batch.getValue(), clazz)) {
+                found.put(metadata.getId(object), object);
+            }
+        }
+
+        // Se conserva el orden de los IDs pedidos
+        List<T> result = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            T object = id != null ? found.get(id) : null;
+            if (object != null) {
+                result.add(object);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public <T> int deleteAll(Collection<Long> ids, Class<T> clazz) {
+        ensureConnected();
+        Map<Integer, List<Long>> batches = new LinkedHashMap<>();
+        for (Long id : ids) {
+            if (id != null) {
+                batches.computeIfAbsent(shardIndex(id), s -> new ArrayList<>()).add(id);
+            }
+        }
+
+        int removed = 0;
+        for (Map.Entry<Integer, List<Long>> batch : batches.entrySet()) {
+            removed += writeTo(batch.getKey(), () -> shards.get(batch.getKey()).deleteAll(batch.getValue(), clazz));
+        }
+        return removed;
+    }
+
+    @Override
+    public <T> Stream<T> stream(Class<T> clazz) {
+        ensureConnected();
+        // Cada fragmento se recorre a su vez, sin copiar las tablas
+        return shards.stream().flatMap(shard -> shard.stream(clazz));
+    }
+
+    @Override
+    public <T> Page<T> findPage(Class<T> clazz, String cursor, int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("El tamaño de página debe ser positivo");
+        }
+
+        // El cursor es el último ID de la página anterior, de modo que las filas
+        // insertadas o borradas mientras tanto no desplazan el recorrido
+        long afterId;
+        try {
+            afterId = cursor == null ? Long.MIN_VALUE : Long.parseLong(cursor);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Cursor no válido: " + cursor, e);
+        }
+
+        EntityMetadata metadata = EntityMetadata.of(clazz);
+        List<T> all = findAll(clazz);
+        int from = 0;
+        while (from < all.size() && metadata.getId(all.get(from)) <= afterId) {
+            from++;
+        }
+        int to = Math.min(all.size(), from + pageSize);
+        if (from >= to) {
+            return new Page<>(List.of(), null);
+        }
+        List<T> items = new ArrayList<>(all.subList(from, to));
+        return new Page<>(items, to < all.size() ? String.valueOf(metadata.getId(items.get(items.size() - 1))) : null);
+    }
+
+    @Override
+    public <T> void createIndex(String indexName, Class<T> clazz, Function<? super T, ?> keyExtractor) {
+        for (IDataBaseManager shard : shards) {
+            shard.createIndex(indexName, clazz, keyExtractor);
+        }
+    }
+
+    @Override
+    public <T> List<T> findBy(String indexName, Class<T> clazz, Object key) {
+        List<T> result = new ArrayList<>();
+        for (List<T> rows : scatter(shard -> shard.findBy(indexName, clazz, key))) {
+            result.addAll(rows);
+        }
+        return result;
+    }
+
+    @Override
+    public <T> int countBy(String indexName, Class<T> clazz, Object key) {
+        int count = 0;
+        for (Integer shardCount : scatter(shard -> shard.countBy(indexName, clazz, key))) {
+            count += shardCount;
+        }
+        return count;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> void createSortedIndex(String indexName, Class<T> clazz,
+                                      Function<? super T, ? extends Comparable<?>> keyExtractor) {
+        for (IDataBaseManager shard : shards) {
+            shard.createSortedIndex(indexName, clazz, keyExtractor);
+        }
+        // La fachada necesita la clave para combinar los resultados de los fragmentos
+        sortedIndexes.computeIfAbsent(clazz, c -> new ConcurrentHashMap<>())
+                .putIfAbsent(indexName, (Function<Object, ?>) keyExtractor);
+    }
+
+    @Override
+    public <T> List<T> findRange(String indexName, Class<T> clazz, Comparable<?> from, Comparable<?> to) {
+        List<T> result = new ArrayList<>();
+        for (List<T> rows : scatter(shard -> shard.findRange(indexName, clazz, from, to))) {
+            result.addAll(rows);
+        }
+        result.sort(sortedIndexOrder(indexName, clazz));
+        return result;
+    }
+
+    @Override
+    public <T> List<T> findLatest(String indexName, Class<T> clazz, int limit) {
+        return findLatest(indexName, clazz, null, null, limit);
+    }
+
+    @Override
+    public <T> List<T> findLatest(String indexName, Class<T> clazz, Comparable<?> from, Comparable<?> to,
+                                  int limit) {
+        // Los más recientes están entre los más recientes de cada fragmento
+        List<T> result = new ArrayList<>();
+        for (List<T> rows : scatter(shard -> shard.findLatest(indexName, clazz, from, to, limit))) {
+            result.addAll(rows);
+        }
+        result.sort(sortedIndexOrder(indexName, clazz).reversed());
+        return result.size() > limit ? new ArrayList<>(result.subList(0, limit)) : result;
+    }
+
+    /**
+     * Ejecuta la consulta en todos los fragmentos a la vez y combina sus
+     * resultados en orden de ID; el límite se aplica a cada fragmento y
+     * después al total. Si los fragmentos no usan un índice, el plan es
+     * PARALLEL_SCAN, porque ya se recorren en paralelo entre ellos.
+     */
+    @Override
+    public <T, R> QueryResult<R> query(Query<T> query, Function<? super T, ? extends R> projection) {
+        List<QueryResult<T>> results = scatter(shard -> shard.query(query));
+        List<T> rows = new ArrayList<>();
+        long examined = 0;
+        for (QueryResult<T> result : results) {
+            rows.addAll(result.getRows());
+            examined += result.getExaminedRows();
+        }
+        rows.sort(Comparator.comparing(EntityMetadata.of(query.getEntityClass())::getId));
+
+        List<R> projected = new ArrayList<>(Math.min(rows.size(), query.getLimit()));
+        for (int i = 0; i < rows.size() && i < query.getLimit(); i++) {
+            projected.add(projection.apply(rows.get(i)));
+        }
+        QueryResult<T> first = results.get(0);
+        QueryResult.Plan plan = first.getIndexName() != null ? first.getPlan() : QueryResult.Plan.PARALLEL_SCAN;
+        return new QueryResult<>(projected, plan, first.getIndexName(), examined);
+    }
+
+    @Override
+    public synchronized boolean connect() {
+        boolean connected = true;
+        for (IDataBaseManager shard : shards) {
+            connected &= shard.connect();
+        }
+        return connected;
+    }
+
+    @Override
+    public synchronized void disconnect() {
+        for (IDataBaseManager shard : shards) {
+            shard.disconnect();
+        }
+    }
+
+    @Override
+    public boolean isConnected() {
+        for (IDataBaseManager shard : shards) {
+            if (!shard.isConnected()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Elige la posición del fragmento de un ID. Los IDs se mezclan para que
+     * los consecutivos se repartan por igual. Los IDs nulos van al primero,
+     * que responde igual que cualquier otro.
+     */
+    private int shardIndex(Long id) {
+        if (id == null) {
+            return 0;
+        }
+        return (int) (((id * SPREAD) >>> 32) % shards.size());
+    }
+
+    /**
+     * Elige la posición del fragmento de una entidad que se va a escribir.
+     * Antes la enlaza con este gestor, porque las entidades que referencia
+     * pueden estar en otros fragmentos.
+     */
+    private int shardIndex(Object object) {
+        if (object instanceof IReferencingEntity) {
+            ((IReferencingEntity) object).attach(references);
+        }
+        return shardIndex(EntityMetadata.of(object.getClass()).getId(object));
+    }
+
+    private IDataBaseManager shardFor(Long id) {
+        return shards.get(shardIndex(id));
+    }
+
+    private void assignId(Object object) {
+        EntityMetadata metadata = EntityMetadata.of(object.getClass());
+        if (metadata.getId(object) == null) {
+            metadata.setId(object, idGenerator.nextId());
+        }
+    }
+
+    /**
+     * Escribe en un fragmento con su cerrojo compartido, para no colarse en
+     * la confirmación de una transacción que lo tiene bloqueado. Cada hilo
+     * usa la franja que le toca por su ID.
+     *
+     * @param index Posición del fragmento
+     */
+    private <R> R writeTo(int index, Supplier<R> write) {
+        StampedLock lock = locks[index][(int) Thread.currentThread().getId() & (LOCK_STRIPES - 1)];
+        long stamp = lock.readLock();
+        try {
+            return write.get();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Bloquea en exclusiva todas las franjas de varios fragmentos, siempre
+     * en el orden de la lista para que dos confirmaciones no se esperen
+     * mutuamente.
+     *
+     * @param involved Posiciones de los fragmentos
+     * @return Cerrojos tomados, en el orden en que se han tomado
+     */
+    private List<Lock> lockExclusively(Collection<Integer> involved) {
+        List<Lock> held = new ArrayList<>(involved.size() * LOCK_STRIPES);
+        for (int i = 0; i < shards.size(); i++) {
+            if (involved.contains(i)) {
+                for (StampedLock stripe : locks[i]) {
+                    Lock lock = stripe.asWriteLock();
+                    lock.lock();
+                    held.add(lock);
+                }
+            }
+        }
+        return held;
+    }
+
+    private static void unlock(List<Lock> held) {
+        for (int i = held.size() - 1; i >= 0; i--) {
+            held.get(i).unlock();
+        }
+    }
+
+    private <T> Map<Integer, List<T>> groupByShard(List<T> objects) {
+        Map<Integer, List<T>> batches = new LinkedHashMap<>();
+        for (T object : objects) {
+            batches.computeIfAbsent(shardIndex(object), s -> new ArrayList<>()).add(object);
+        }
+        return batches;
+    }
+
+    /**
+     * Ejecuta una consulta en todos los fragmentos en paralelo.
+     *
+     * @return Resultado de cada fragmento, en el orden de los fragmentos
+     */
+    private <R> List<R> scatter(Function<IDataBaseManager, R> query) {
+        ensureConnected();
+        if (shards.size() == 1) {
+            return List.of(query.apply(shards.get(0)));
+        }
+
+        List<CompletableFuture<R>> pending = new ArrayList<>(shards.size());
+        for (IDataBaseManager shard : shards) {
+            pending.add(CompletableFuture.supplyAsync(() -> query.apply(shard), executor));
+        }
+        List<R> results = new ArrayList<>(shards.size());
+        try {
+            for (CompletableFuture<R> result : pending) {
+                results.add(result.join());
+            }
+        } catch (CompletionException e) {
+            // Se propaga la excepción del fragmento tal como la lanzaría una consulta directa
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+        return results;
+    }
+
+    /**
+     * Orden ascendente de clave y, a igual clave, de ID, como en SortedIndex.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> Comparator<T> sortedIndexOrder(String indexName, Class<T> clazz) {
+        Map<String, Function<Object, ?>> indexes = sortedIndexes.get(clazz);
+        Function<Object, ?> keyExtractor = indexes != null ? indexes.get(indexName) : null;
+        if (keyExtractor == null) {
+            throw new IllegalArgumentException("No existe el índice ordenado " + indexName
+                    + " para " + clazz.getSimpleName());
+        }
+        EntityMetadata metadata = EntityMetadata.of(clazz);
+        Comparator<T> byKey = Comparator.comparing(object -> (Comparable<Object>) keyExtractor.apply(object));
+        return byKey.thenComparing(metadata::getId);
+    }
+
+    private void ensureConnected() {
+        if (!isConnected()) {
+            throw new IllegalStateException("No hay conexión con la base de datos");
+        }
+    }
+
+    private static List<IDataBaseManager> localShards(int shardCount) {
+        if (shardCount <= 0) {
+            throw new IllegalArgumentException("El número de fragmentos debe ser positivo");
+        }
+        List<IDataBaseManager> shards = new ArrayList<>(shardCount);
+        for (int i = 0; i < shardCount; i++) {
+            shards.add(new DataBaseManager());
+        }
+        return shards;
+    }
+
+    /**
+     * Transacción que abre una transacción en cada fragmento que toca. Las
+     * lecturas, también las que hacen update y delete, anotan la versión de
+     * la fila para validarlas todas, con los fragmentos bloqueados, antes de
+     * confirmar el primero.
+     */
+    private final class ShardedTransaction implements ITransaction {
+
+        private final Map<Integer, ITransaction> transactions; // Por posición del fragmento
+        private final Map<ReadKey, Long> reads;
+        private boolean active;
+
+        ShardedTransaction() {
+            this.transactions = new LinkedHashMap<>();
+            this.reads = new HashMap<>();
+            this.active = true;
+        }
+
+        @Override
+        public <T> T save(T object) {
+            ensureActive();
+            assignId(object);
+            return transactionFor(shardIndex(object)).save(object);
+        }
+
+        @Override
+        public <T> Optional<T> findById(Long id, Class<T> clazz) {
+            ensureActive();
+            if (id == null) {
+                return Optional.empty();
+            }
+
+            int index = shardIndex(id);
+            ReadKey key = new ReadKey(clazz, id);
+            if (!reads.containsKey(key)) {
+                // Se anota antes de leer: si la fila cambia entre ambas lecturas, la validación falla
+                reads.put(key, shards.get(index).findVersionedById(id, clazz).map(Versioned::getVersion).orElse(0L));
+            }
+            return transactionFor(index).findById(id, clazz);
+        }
+
+        @Override
+        public <T> T update(T object) {
+            ensureActive();
+            int index = shardIndex(object);
+            Long id = EntityMetadata.of(object.getClass()).getId(object);
+            if (id != null) {
+                // La transacción del fragmento lee la fila; la validación debe incluirla
+                findById(id, object.getClass());
+            }
+            return transactionFor(index).update(object);
+        }
+
+        @Override
+        public <T> boolean delete(Long id, Class<T> clazz) {
+            ensureActive();
+            if (id == null) {
+                return false;
+            }
+            findById(id, clazz);
+            return transactionFor(shardIndex(id)).delete(id, clazz);
+        }
+
+        @Override
+        public void commit() {
+            ensureActive();
+            active = false;
+
+            try {
+                if (transactions.size() == 1) {
+                    Map.Entry<Integer, ITransaction> only = transactions.entrySet().iterator().next();
+                    writeTo(only.getKey(), () -> {
+                        only.getValue().commit();
+                        return null;
+                    });
+                } else if (transactions.size() > 1) {
+                    commitAll();
+                }
+            } finally {
+                closeAll();
+            }
+        }
+
+        /**
+         * Confirma varios fragmentos. Con todos bloqueados, ninguna escritura de
+         * la fachada puede cambiar una fila leída entre la validación y la
+         * confirmación, así que, validadas las lecturas, las confirmaciones de
+         * los fragmentos ya no pueden fallar por un conflicto.
+         */
+        private void commitAll() {
+            List<Lock> held = lockExclusively(transactions.keySet());
+            try {
+                for (Map.Entry<ReadKey, Long> read : reads.entrySet()) {
+                    ReadKey key = read.getKey();
+                    long version = shardFor(key.id).findVersionedById(key.id, key.clazz)
+                            .map(Versioned::getVersion).orElse(0L);
+                    if (version != read.getValue()) {
+                        throw new VersionConflictException("El objeto con ID " + key.id
+                                + " ha sido modificado después de leerlo en la transacción");
+                    }
+                }
+                for (ITransaction transaction : transactions.values()) {
+                    transaction.commit();
+                }
+            } finally {
+                unlock(held);
+            }
+        }
+
+        @Override
+        public void rollback() {
+            ensureActive();
+            active = false;
+            closeAll();
+        }
+
+        @Override
+        public boolean isActive() {
+            return active;
+        }
+
+        @Override
+        public void close() {
+            if (active) {
+                rollback();
+            }
+        }
+
+        private ITransaction transactionFor(int index) {
+            return transactions.computeIfAbsent(index, i -> shards.get(i).beginTransaction());
+        }
+
+        /**
+         * Deshace las transacciones de los fragmentos que siguen abiertas.
+         */
+        private void closeAll() {
+            for (ITransaction transaction : transactions.values()) {
+                transaction.close();
+            }
+            transactions.clear();
+            reads.clear();
+        }
+
+        private void ensureActive() {
+            if (!active) {
+                throw new IllegalStateException("La transacción ya ha terminado");
+            }
+        }
+    }
+
+    /**
+     * Fila leída por una transacción, identificada por su clase y su ID.
+     */
+    private static final class ReadKey {
+        private final Class<?> clazz;
+        private final long id;
+
+        ReadKey(Class<?> clazz, long id) {
+            this.clazz = clazz;
+            this.id = id;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof ReadKey)) {
+                return false;
+            }
+            ReadKey other = (ReadKey) o;
+            return clazz == other.clazz && id == other.id;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * clazz.hashCode() + Long.hashCode(id);
+        }
+    }
+}
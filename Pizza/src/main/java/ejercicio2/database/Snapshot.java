@@ -0,0 +1,271 @@
+package ejercicio2.database;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+
+/**
+ * Instantánea binaria de todas las tablas, escrita y leída a través de un
+ * fichero proyectado en memoria por bloques.
+ *
+ * Formato: [magic][versión][lsn][siguiente ID][número de tablas] y, por cada
+ * tabla, el nombre de la clase, el número aproximado de filas (para reservar
+ * espacio al cargar) y sus filas ([1][id][entidad]) terminadas en un 0.
+ * La instantánea se escribe en un fichero temporal y se renombra de forma
+ * atómica al terminar, así que el fichero visible siempre está completo.
+ */
+final class Snapshot {
+
+    static final String FILE_NAME = "snapshot.dat";
+
+    private static final int MAGIC = 0x50495A53;
+    private static final int VERSION = 1;
+    private static final int CHUNK_SIZE = 64 * 1024 * 1024;
+    private static final byte ROW = 1;
+    private static final byte END = 0;
+
+    /**
+     * Procesa una fila leída de la instantánea.
+     */
+    interface RowReader {
+        /**
+         * Lee una fila. Debe consumir exactamente los datos de la entidad.
+         *
+         * @param clazz Clase de la entidad
+         * @param id ID de la fila
+         * @param in Entrada situada al principio de la entidad
+         * @throws IOException Si los datos no son válidos
+         */
+        void read(Class<?> clazz, long id, DataInputStream in) throws IOException;
+
+        /**
+         * Avisa del número aproximado de filas de una tabla antes de leerlas.
+         *
+         * @param clazz Clase de la entidad
+         * @param rows Número aproximado de filas
+         */
+        void expect(Class<?> clazz, int rows);
+    }
+
+    private final long lsn;
+    private final long nextId;
+
+    private Snapshot(long lsn, long nextId) {
+        this.lsn = lsn;
+        this.nextId = nextId;
+    }
+
+    /**
+     * Último lsn del registro incluido en la instantánea.
+     *
+     * @return lsn de la instantánea
+     */
+    long getLsn() {
+        return lsn;
+    }
+
+    /**
+     * Valor del generador de IDs al tomar la instantánea.
+     *
+     * @return Siguiente ID
+     */
+    long getNextId() {
+        return nextId;
+    }
+
+    /**
+     * Escribe una instantánea de las tablas.
+     *
+     * @param file Fichero de la instantánea
+     * @param lsn Último lsn del registro que refleja la instantánea
+     * @param nextId Valor del generador de IDs
+     * @param tables Tablas a guardar
+     * @throws IOException Si falla la escritura
+     */
+    static void write(Path file, long lsn, long nextId, Collection<Table> tables) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedOutputStream mapped = new MappedOutputStream(channel);
+            DataOutputStream out = new DataOutputStream(mapped);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(lsn);
+            out.writeLong(nextId);
+            out.writeInt(tables.size());
+
+            for (Table table : tables) {
+                out.writeUTF(table.getMetadata().getEntityClass().getName());
+                out.writeInt(table.size());
+                try {
+                    table.forEachCommitted((id, entity) -> {
+                        try {
+                            out.writeByte(ROW);
+                            out.writeLong(id);
+                            EntityCodec.encode(entity, out);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                }
+                out.writeByte(END);
+            }
+            out.flush();
+            mapped.finish();
+            channel.force(true);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Carga una instantánea si existe.
+     *
+     * @param file Fichero de la instantánea
+     * @param reader Función que aplica cada fila
+     * @return Datos de la instantánea o null si no hay ninguna
+     * @throws IOException Si falla la lectura o el fichero no es válido
+     */
+    static Snapshot load(Path file, RowReader reader) throws IOException {
+        if (!Files.exists(file)) {
+            return null;
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            DataInputStream in = new DataInputStream(new MappedInputStream(channel));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("El fichero " + file + " no es una instantánea válida");
+            }
+            long lsn = in.readLong();
+            long nextId = in.readLong();
+            int tableCount = in.readInt();
+
+            for (int t = 0; t < tableCount; t++) {
+                Class<?> clazz = EntityCodec.classForName(in.readUTF());
+                reader.expect(clazz, in.readInt());
+                byte marker;
+                while ((marker = in.readByte()) == ROW) {
+                    reader.read(clazz, in.readLong(), in);
+                }
+                if (marker != END) {
+                    throw new IOException("Marca de fila no válida en la instantánea: " + marker);
+                }
+            }
+            return new Snapshot(lsn, nextId);
+        }
+    }
+
+    /**
+     * Salida que escribe directamente en el fichero proyectando en memoria
+     * bloques consecutivos a medida que se llenan.
+     */
+    private static final class MappedOutputStream extends OutputStream {
+
+        private final FileChannel channel;
+        private MappedByteBuffer buffer;
+        private long base;
+
+        MappedOutputStream(FileChannel channel) throws IOException {
+            this.channel = channel;
+            this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, CHUNK_SIZE);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (!buffer.hasRemaining()) {
+                nextChunk();
+            }
+            buffer.put((byte) b);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            while (length > 0) {
+                if (!buffer.hasRemaining()) {
+                    nextChunk();
+                }
+                int count = Math.min(length, buffer.remaining());
+                buffer.put(bytes, offset, count);
+                offset += count;
+                length -= count;
+            }
+        }
+
+        /**
+         * Lleva a disco el último bloque y recorta el fichero a lo escrito.
+         */
+        void finish() throws IOException {
+            buffer.force();
+            channel.truncate(base + buffer.position());
+        }
+
+        private void nextChunk() throws IOException {
+            buffer.force();
+            base += buffer.capacity();
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, base, CHUNK_SIZE);
+        }
+    }
+
+    /**
+     * Entrada que lee el fichero proyectando en memoria bloques consecutivos.
+     */
+    private static final class MappedInputStream extends InputStream {
+
+        private final FileChannel channel;
+        private final long size;
+        private MappedByteBuffer buffer;
+        private long base;
+
+        MappedInputStream(FileChannel channel) throws IOException {
+            this.channel = channel;
+            this.size = channel.size();
+            this.buffer = map(0);
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!buffer.hasRemaining() && !nextChunk()) {
+                return -1;
+            }
+            return buffer.get() & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining() && !nextChunk()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+
+        private boolean nextChunk() throws IOException {
+            long next = base + buffer.capacity();
+            if (next >= size) {
+                return false;
+            }
+            base = next;
+            buffer = map(base);
+            return true;
+        }
+
+        private MappedByteBuffer map(long offset) throws IOException {
+            return channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(CHUNK_SIZE, size - offset));
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package ejercicio2.database;
+
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Índice secundario ordenado sobre un atributo comparable de las entidades,
+ * respaldado por una skip list concurrente. Además de las búsquedas por
+ * igualdad permite recorrer un rango de claves o las claves más altas, con un
+ * coste proporcional al número de filas recorridas y no al tamaño de la tabla.
+ */
+final class SortedIndex extends SecondaryIndex {
+
+    private final ConcurrentSkipListMap<Object, Set<Long>> sorted;
+
+    /**
+     * Constructor.
+     *
+     * @param name Nombre del índice
+     * @param keyExtractor Función que obtiene la clave comparable de una entidad; no debe lanzar excepciones
+     */
+    SortedIndex(String name, Function<Object, ?> keyExtractor) {
+        this(name, keyExtractor, new ConcurrentSkipListMap<>());
+    }
+
+    private SortedIndex(String name, Function<Object, ?> keyExtractor, ConcurrentSkipListMap<Object, Set<Long>> sorted) {
+        super(name, keyExtractor, sorted);
+        this.sorted = sorted;
+    }
+
+    @Override
+    Set<Long> newIdSet() {
+        return new ConcurrentSkipListSet<>();
+    }
+
+    /**
+     * Recorre de forma perezosa, en orden ascendente de clave y de ID, las filas
+     * con clave en [from, to). Un extremo nulo no limita el rango.
+     *
+     * @param from Clave mínima, incluida
+     * @param to Clave máxima, excluida
+     * @return IDs de las filas del rango
+     */
+    Stream<Long> range(Object from, Object to) {
+        return slice(from, to).values().stream().flatMap(Set::stream);
+    }
+
+    /**
+     * Recorre de forma perezosa las filas con clave en [from, to), de la clave
+     * más alta a la más baja. Un extremo nulo no limita el rango.
+     *
+     * @param from Clave mínima, incluida
+     * @param to Clave máxima, excluida
+     * @return IDs de las filas del rango en orden descendente de clave y de ID
+     */
+    Stream<Long> descending(Object from, Object to) {
+        return slice(from, to).descendingMap().values().stream()
+                .flatMap(ids -> ((NavigableSet<Long>) ids).descendingSet().stream());
+    }
+
+    private NavigableMap<Object, Set<Long>> slice(Object from, Object to) {
+        if (from != null && to != null) {
+            return sorted.subMap(from, true, to, false);
+        } else if (from != null) {
+            return sorted.tailMap(from, true);
+        } else if (to != null) {
+            return sorted.headMap(to, false);
+        }
+        return sorted;
+    }
+
+    /**
+     * Comprueba si una clave está dentro de un rango [from, to).
+     *
+     * @param key Clave a comprobar
+     * @param from Clave mínima, incluida, o null
+     * @param to Clave máxima, excluida, o null
+     * @return true si la clave está en el rango, false si no
+     */
+    static boolean inRange(Object key, Object from, Object to) {
+        if (key == null) {
+            return false;
+        }
+        return (from == null || compare(key, from) >= 0)
+                && (to == null || compare(key, to) < 0);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static int compare(Object a, Object b) {
+        return ((Comparable<Object>) a).compareTo(b);
+    }
+}
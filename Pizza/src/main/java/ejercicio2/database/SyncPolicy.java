@@ -0,0 +1,24 @@
+package ejercicio2.database;
+
+/**
+ * Política de sincronización del registro de escritura anticipada con el disco.
+ */
+public enum SyncPolicy {
+    /**
+     * Cada escritura espera a que su registro esté en disco. Las escrituras
+     * concurrentes comparten una misma sincronización (commit en grupo).
+     */
+    EVERY_WRITE,
+
+    /**
+     * El registro se sincroniza periódicamente cada cierto número de milisegundos;
+     * una caída puede perder las escrituras del último intervalo.
+     */
+    INTERVAL,
+
+    /**
+     * El sistema operativo decide cuándo llevar el registro a disco; solo se
+     * sincroniza al cerrar. Sobrevive a la caída del proceso, no a la del equipo.
+     */
+    OS_MANAGED
+}
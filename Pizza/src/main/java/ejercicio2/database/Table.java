@@ -0,0 +1,545 @@
+package ejercicio2.database;
+
+import ejercicio2.model.Versioned;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Tabla en memoria que almacena las entidades de una clase indexadas por ID.
+ * Está dividida en segmentos, cada uno con su propio cerrojo y su tabla hash
+ * de claves primitivas. Las lecturas no toman ningún cerrojo; las escrituras
+ * solo se serializan dentro de un segmento, de modo que escrituras sobre IDs
+ * de segmentos distintos avanzan en paralelo.
+ */
+class Table {
+
+    static final int SEGMENTS = 64; // Como máximo 64: los lotes usan una máscara de bits
+
+    private final int ordinal;
+    private final EntityMetadata metadata;
+    private final LongObjectMap[] segments;
+    private final ReentrantLock[] locks;
+    private final long[] clocks; // Última versión asignada en cada segmento, protegida por su cerrojo
+    private final List<SecondaryIndex> indexes;
+
+    /**
+     * Constructor.
+     *
+     * @param ordinal Número de orden de la tabla, que fija el orden de bloqueo entre tablas
+     * @param metadata Metadatos de la clase de las entidades almacenadas
+     */
+    Table(int ordinal, EntityMetadata metadata) {
+        this.ordinal = ordinal;
+        this.metadata = metadata;
+        this.segments = new LongObjectMap[SEGMENTS];
+        this.locks = new ReentrantLock[SEGMENTS];
+        this.clocks = new long[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new LongObjectMap();
+            locks[i] = new ReentrantLock();
+        }
+        this.indexes = new CopyOnWriteArrayList<>();
+    }
+
+    int getOrdinal() {
+        return ordinal;
+    }
+
+    EntityMetadata getMetadata() {
+        return metadata;
+    }
+
+    /**
+     * Obtiene la fila con el ID indicado sin bloquear.
+     *
+     * @param id ID de la fila
+     * @return Entidad almacenada o null si no existe
+     */
+    Object get(long id) {
+        return segments[segment(id)].get(id);
+    }
+
+    /**
+     * Obtiene una fila junto con su versión. Toma un instante el cerrojo del
+     * segmento para que la versión corresponda exactamente a la fila leída.
+     *
+     * @param id ID de la fila
+     * @return Fila y versión, o null si no existe
+     */
+    Versioned<Object> getVersioned(long id) {
+        int segment = segment(id);
+        locks[segment].lock();
+        try {
+            Object object = segments[segment].get(id);
+            return object != null ? new Versioned<>(object, segments[segment].version(id)) : null;
+        } finally {
+            locks[segment].unlock();
+        }
+    }
+
+    /**
+     * Obtiene la versión de una fila.
+     * El llamante debe tener bloqueado el segmento del ID.
+     *
+     * @param id ID de la fila
+     * @return Versión de la fila o 0 si no existe
+     */
+    long versionLocked(long id) {
+        return segments[segment(id)].version(id);
+    }
+
+    /**
+     * Calcula la máscara del segmento al que pertenece un ID, para combinarla
+     * con otras y bloquear de una vez todos los segmentos de una escritura.
+     *
+     * @param id ID de la fila
+     * @return Máscara con el bit del segmento
+     */
+    long segmentMask(long id) {
+        return 1L << segment(id);
+    }
+
+    /**
+     * Bloquea en orden ascendente los segmentos de una máscara, para que dos
+     * escrituras concurrentes no puedan interbloquearse.
+     *
+     * @param mask Máscara de segmentos
+     */
+    void lock(long mask) {
+        for (long pending = mask; pending != 0; pending &= pending - 1) {
+            locks[Long.numberOfTrailingZeros(pending)].lock();
+        }
+    }
+
+    /**
+     * Libera los segmentos de una máscara.
+     *
+     * @param mask Máscara de segmentos
+     */
+    void unlock(long mask) {
+        for (long pending = mask; pending != 0; pending &= pending - 1) {
+            locks[Long.numberOfTrailingZeros(pending)].unlock();
+        }
+    }
+
+    /**
+     * Prepara la forma en que se almacena una entidad. Se llama fuera de los
+     * cerrojos, de modo que una entidad que no se puede almacenar se rechaza
+     * antes de aplicar ningún cambio. Esta tabla guarda el propio objeto.
+     *
+     * @param object Entidad a almacenar
+     * @return Forma almacenada de la entidad
+     */
+    Object prepare(Object object) {
+        return object;
+    }
+
+    /**
+     * Inserta o sustituye una fila preparándola en el momento.
+     * El llamante debe tener bloqueado el segmento del ID.
+     *
+     * @param id ID de la fila
+     * @param object Entidad a almacenar
+     * @return Versión asignada a la fila
+     */
+    long putLocked(long id, Object object) {
+        return putLocked(id, object, prepare(object));
+    }
+
+    /**
+     * Inserta o sustituye una fila, le asigna una versión nueva y actualiza los índices.
+     * Las versiones crecen de forma monótona dentro de cada segmento, así que una
+     * fila borrada y vuelta a insertar nunca recupera una versión anterior.
+     * El llamante debe tener bloqueado el segmento del ID.
+     *
+     * @param id ID de la fila
+     * @param object Entidad a almacenar
+     * @param stored Forma almacenada de la entidad, obtenida con prepare
+     * @return Versión asignada a la fila
+     */
+    long putLocked(long id, Object object, Object stored) {
+        int segment = segment(id);
+        long version = ++clocks[segment];
+        indexPut(id, object);
+        segments[segment].put(id, stored, version);
+        return version;
+    }
+
+    /**
+     * Elimina una fila y la saca de los índices.
+     * El llamante debe tener bloqueado el segmento del ID.
+     *
+     * @param id ID de la fila
+     * @return true si la fila existía, false si no
+     */
+    boolean removeLocked(long id) {
+        if (segments[segment(id)].remove(id) == null) {
+            return false;
+        }
+        indexRemove(id);
+        return true;
+    }
+
+    /**
+     * Copia los valores actuales de la tabla en una nueva lista.
+     *
+     * @return Lista con las entidades almacenadas
+     */
+    List<Object> values() {
+        List<Object> values = new ArrayList<>(size());
+        for (LongObjectMap segment : segments) {
+            segment.forEach((id, value) -> values.add(value));
+        }
+        return values;
+    }
+
+    int size() {
+        int size = 0;
+        for (LongObjectMap segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    /**
+     * Reserva espacio para una carga masiva de filas repartidas por todos los segmentos.
+     *
+     * @param rows Número de filas previsto
+     */
+    void presize(int rows) {
+        // Holgura para el reparto desigual entre segmentos
+        int perSegment = rows / SEGMENTS + rows / (SEGMENTS * 8);
+        for (int segment = 0; segment < SEGMENTS; segment++) {
+            locks[segment].lock();
+            try {
+                segments[segment].ensureCapacity(perSegment);
+            } finally {
+                locks[segment].unlock();
+            }
+        }
+    }
+
+    /**
+     * Recorre las filas de la tabla para una instantánea. Antes de leer cada
+     * segmento se toma y se suelta su cerrojo, de modo que toda escritura que
+     * ya estuviera en curso en él se ha aplicado. Los escritores solo esperan
+     * ese instante; el recorrido en sí no bloquea.
+     *
+     * @param visitor Función que procesa cada fila
+     */
+    void forEachCommitted(LongObjectMap.EntryVisitor visitor) {
+        for (int segment = 0; segment < SEGMENTS; segment++) {
+            locks[segment].lock();
+            locks[segment].unlock();
+            segments[segment].forEach(visitor);
+        }
+    }
+
+    /**
+     * Recorre sin cerrojos las filas de un segmento. Las escrituras
+     * concurrentes en él pueden verse o no.
+     *
+     * @param segment Número de segmento
+     * @param visitor Función que procesa cada fila
+     */
+    void forEachInSegment(int segment, LongObjectMap.EntryVisitor visitor) {
+        segments[segment].forEach(visitor);
+    }
+
+    /**
+     * Crea un recorrido perezoso y sin cerrojos sobre las filas de la tabla.
+     * Se divide primero por segmentos y después por rangos de ranuras, de modo
+     * que un stream paralelo reparte la tabla entre varios hilos sin copiarla.
+     *
+     * @return Spliterator débilmente consistente sobre las entidades
+     */
+    Spliterator<Object> spliterator() {
+        return new TableSpliterator(segments, 0, SEGMENTS);
+    }
+
+    /**
+     * Lee una página de filas a partir de una posición del recorrido.
+     * La posición codifica el segmento en los 32 bits altos y la ranura del
+     * segmento en los bajos; el coste es proporcional al tamaño de la página.
+     * Si un segmento crece entre dos páginas, algunas de sus filas pueden
+     * repetirse u omitirse, igual que en cualquier recorrido concurrente.
+     *
+     * @param position Posición de inicio (0 para empezar por el principio)
+     * @param pageSize Número máximo de filas a leer
+     * @param out Lista donde se añaden las filas leídas
+     * @return Posición para continuar o -1 si se ha llegado al final
+     */
+    long scan(long position, int pageSize, List<Object> out) {
+        int segment = (int) (position >>> 32);
+        int slot = (int) position;
+
+        while (segment < SEGMENTS) {
+            LongObjectMap map = segments[segment];
+            LongObjectMap.Slots slots = map.slots();
+            int end = slots.capacity() + 1;
+
+            while (slot < end) {
+                Object value = valueAt(map, slots, slot++);
+                if (value != null) {
+                    out.add(value);
+                    if (out.size() == pageSize) {
+                        return slot < end ? ((long) segment << 32) | slot : ((long) (segment + 1) << 32);
+                    }
+                }
+            }
+            segment++;
+            slot = 0;
+        }
+        return -1;
+    }
+
+    /**
+     * Obtiene las ranuras actuales de un segmento. Un recorrido por rangos de
+     * posiciones debe usar las mismas ranuras en todos sus rangos.
+     *
+     * @param segment Número de segmento
+     * @return Ranuras; el segmento tiene capacity() + 1 posiciones
+     */
+    LongObjectMap.Slots slotsOf(int segment) {
+        return segments[segment].slots();
+    }
+
+    /**
+     * Recorre sin cerrojos las posiciones [from, to) de un segmento, con la
+     * misma numeración que scan. Se detiene si el visitante devuelve false.
+     *
+     * @param segment Número de segmento
+     * @param slots Ranuras obtenidas con slotsOf
+     * @param from Primera posición, incluida
+     * @param to Última posición, excluida
+     * @param visitor Función que procesa cada fila y dice si seguir
+     * @return Número de filas visitadas
+     */
+    int scanPositions(int segment, LongObjectMap.Slots slots, int from, int to, Predicate<Object> visitor) {
+        LongObjectMap map = segments[segment];
+        int visited = 0;
+        for (int position = from; position < to; position++) {
+            Object value = valueAt(map, slots, position);
+            if (value != null) {
+                visited++;
+                if (!visitor.test(value)) {
+                    break;
+                }
+            }
+        }
+        return visited;
+    }
+
+    /**
+     * Crea un índice secundario y lo rellena con las filas existentes.
+     * Si ya existe un índice con ese nombre se conserva el existente.
+     * El índice se registra antes de recorrer la tabla, de modo que las
+     * escrituras concurrentes con la creación también quedan indexadas.
+     *
+     * @param index Índice vacío a registrar
+     */
+    synchronized void createIndex(SecondaryIndex index) {
+        if (getIndex(index.getName()) != null) {
+            return;
+        }
+
+        indexes.add(index);
+
+        for (int segment = 0; segment < SEGMENTS; segment++) {
+            locks[segment].lock();
+            try {
+                forEachLocked(segment, index::onPut);
+            } finally {
+                locks[segment].unlock();
+            }
+        }
+    }
+
+    /**
+     * Recorre las filas de un segmento.
+     * El llamante debe tener bloqueado el segmento.
+     *
+     * @param segment Número de segmento
+     * @param visitor Función que procesa cada fila
+     */
+    void forEachLocked(int segment, LongObjectMap.EntryVisitor visitor) {
+        segments[segment].forEach(visitor);
+    }
+
+    /**
+     * Obtiene un índice secundario por su nombre.
+     *
+     * @param name Nombre del índice
+     * @return Índice o null si no existe
+     */
+    SecondaryIndex getIndex(String name) {
+        for (SecondaryIndex index : indexes) {
+            if (index.getName().equals(name)) {
+                return index;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Actualiza los índices con el nuevo valor de una fila.
+     * El llamante debe tener bloqueado el segmento del ID.
+     */
+    void indexPut(long id, Object object) {
+        for (SecondaryIndex index : indexes) {
+            index.onPut(id, object);
+        }
+    }
+
+    /**
+     * Saca una fila de los índices.
+     * El llamante debe tener bloqueado el segmento del ID.
+     */
+    void indexRemove(long id) {
+        for (SecondaryIndex index : indexes) {
+            index.onRemove(id);
+        }
+    }
+
+    /**
+     * Lee la entrada de una posición de recorrido: la posición 0 es la clave 0,
+     * que se guarda aparte, y la posición i + 1 es la ranura i.
+     */
+    private static Object valueAt(LongObjectMap map, LongObjectMap.Slots slots, int position) {
+        if (position == 0) {
+            return map.zeroValue();
+        }
+        int slot = position - 1;
+        return slots.keyAt(slot) != 0L ? slots.valueAt(slot) : null;
+    }
+
+    static int segment(long id) {
+        long h = id * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 58) & (SEGMENTS - 1);
+    }
+
+    /**
+     * Spliterator sobre un rango de segmentos, o sobre un rango de ranuras
+     * de un solo segmento cuando ya no quedan segmentos que repartir.
+     */
+    private static final class TableSpliterator implements Spliterator<Object> {
+
+        private static final int MIN_SPLIT_SLOTS = 1024;
+
+        private final LongObjectMap[] segments;
+        private int nextSegment;
+        private final int endSegment;
+        private LongObjectMap current;
+        private LongObjectMap.Slots slots;
+        private int position;
+        private int end;
+
+        TableSpliterator(LongObjectMap[] segments, int nextSegment, int endSegment) {
+            this.segments = segments;
+            this.nextSegment = nextSegment;
+            this.endSegment = endSegment;
+        }
+
+        private TableSpliterator(LongObjectMap[] segments, LongObjectMap current,
+                                 LongObjectMap.Slots slots, int position, int end) {
+            this(segments, 0, 0);
+            this.current = current;
+            this.slots = slots;
+            this.position = position;
+            this.end = end;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Object> action) {
+            while (true) {
+                if (current == null && !enterNextSegment()) {
+                    return false;
+                }
+                while (position < end) {
+                    Object value = valueAt(current, slots, position++);
+                    if (value != null) {
+                        action.accept(value);
+                        return true;
+                    }
+                }
+                current = null;
+            }
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super Object> action) {
+            while (current != null || enterNextSegment()) {
+                while (position < end) {
+                    Object value = valueAt(current, slots, position++);
+                    if (value != null) {
+                        action.accept(value);
+                    }
+                }
+                current = null;
+            }
+        }
+
+        @Override
+        public Spliterator<Object> trySplit() {
+            // Si hay un segmento empezado y quedan otros, se cede el empezado
+            if (current != null && nextSegment < endSegment) {
+                TableSpliterator started = new TableSpliterator(segments, current, slots, position, end);
+                current = null;
+                return started;
+            }
+
+            // Mientras queden varios segmentos sin empezar, se reparten por segmentos
+            if (endSegment - nextSegment > 1) {
+                int mid = (nextSegment + endSegment) >>> 1;
+                TableSpliterator prefix = new TableSpliterator(segments, nextSegment, mid);
+                nextSegment = mid;
+                return prefix;
+            }
+
+            // Con un único segmento, se reparten sus ranuras
+            if (current == null && !enterNextSegment()) {
+                return null;
+            }
+            if (end - position < MIN_SPLIT_SLOTS) {
+                return null;
+            }
+            int mid = (position + end) >>> 1;
+            TableSpliterator prefix = new TableSpliterator(segments, current, slots, position, mid);
+            position = mid;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            long estimate = 0;
+            if (current != null) {
+                estimate += (long) current.size() * (end - position) / (slots.capacity() + 1);
+            }
+            for (int i = nextSegment; i < endSegment; i++) {
+                estimate += segments[i].size();
+            }
+            return estimate;
+        }
+
+        @Override
+        public int characteristics() {
+            return CONCURRENT | NONNULL;
+        }
+
+        private boolean enterNextSegment() {
+            if (nextSegment >= endSegment) {
+                return false;
+            }
+            current = segments[nextSegment++];
+            slots = current.slots();
+            position = 0;
+            end = slots.capacity() + 1;
+            return true;
+        }
+    }
+}
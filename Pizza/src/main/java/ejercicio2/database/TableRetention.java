@@ -0,0 +1,250 @@
+package ejercicio2.database;
+
+import ejercicio2.exceptions.VersionConflictException;
+import ejercicio2.model.TableStats;
+import ejercicio2.model.Versioned;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Aplica la política de retención de una tabla de forma incremental: cada
+ * paso revisa un único segmento y expulsa como mucho un número acotado de
+ * filas, en lotes que solo bloquean ese segmento. Una vuelta completa son
+ * tantos pasos como segmentos.
+ *
+ * El exceso sobre el número máximo de filas se calcula al empezar cada
+ * vuelta y se reparte a partes iguales entre los segmentos, que ya reparten
+ * los IDs por igual; en cada segmento se expulsan las filas más antiguas.
+ *
+ * Las filas se eligen sin cerrojos y se borran con un commit que comprueba
+ * que no han cambiado desde que se volvieron a leer, así que una escritura
+ * concurrente nunca se pierde por una expulsión.
+ *
+ * Las filas borradas cuyo envío al destino de la política falla se guardan y
+ * se vuelven a enviar al empezar cada paso. Si se acumulan tantas como las que
+ * expulsa un paso no se expulsan más, así que un destino que sigue fallando
+ * detiene la retención en lugar de perder filas.
+ */
+final class TableRetention {
+
+    private static final int MAX_EVICTIONS_PER_STEP = 512;
+    private static final int EVICTION_BATCH_ROWS = 64;
+
+    private final Table table;
+    private final RetentionPolicy<Object> policy;
+    private final LongAdder expired;
+    private final LongAdder capacityEvictions;
+    private final LongAdder overflowed;
+    private int nextSegment; // Protegidos por this
+    private int segmentQuota;
+    private final List<Object> undelivered; // Filas borradas que no se han podido enviar, protegidas por this
+
+    @SuppressWarnings("unchecked")
+    TableRetention(Table table, RetentionPolicy<?> policy) {
+        this.table = table;
+        this.policy = (RetentionPolicy<Object>) policy;
+        this.expired = new LongAdder();
+        this.capacityEvictions = new LongAdder();
+        this.overflowed = new LongAdder();
+        this.undelivered = new ArrayList<>();
+    }
+
+    RetentionPolicy<?> getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Revisa el siguiente segmento de la vuelta.
+     *
+     * @param dbManager Base de datos por la que se confirman los borrados
+     * @return Número de filas expulsadas
+     */
+    synchronized int step(DataBaseManager dbManager) {
+        if (!undelivered.isEmpty()) {
+            List<Object> retry = new ArrayList<>(undelivered);
+            undelivered.clear();
+            sendToOverflow(policy.getOverflow(), retry);
+            if (undelivered.size() >= MAX_EVICTIONS_PER_STEP) {
+                return 0;
+            }
+        }
+        if (nextSegment == 0) {
+            long excess = (long) table.size() - policy.getMaxEntries();
+            long perSegment = (excess + Table.SEGMENTS - 1) / Table.SEGMENTS;
+            segmentQuota = excess > 0 ? (int) Math.min(MAX_EVICTIONS_PER_STEP, perSegment) : 0;
+        }
+        int segment = nextSegment;
+        nextSegment = (nextSegment + 1) % Table.SEGMENTS;
+
+        Predicate<? super Object> evictable = policy.getEvictable();
+        LocalDateTime cutoff = policy.getMaxAge() != null ? LocalDateTime.now().minus(policy.getMaxAge()) : null;
+        // El exceso puede haberse cubierto ya en esta vuelta: nunca se baja del máximo
+        int quota = (int) Math.min(segmentQuota, Math.max(0, (long) table.size() - policy.getMaxEntries()));
+        List<Long> stale = new ArrayList<>();
+        PriorityQueue<Candidate> oldest = new PriorityQueue<>(Comparator.<Candidate>naturalOrder().reversed());
+
+        table.forEachInSegment(segment, (id, row) -> {
+            if (!evictable.test(row)) {
+                return;
+            }
+            if (isExpired(row, cutoff)) {
+                if (stale.size() < MAX_EVICTIONS_PER_STEP) {
+                    stale.add(id);
+                }
+            } else if (quota > 0) {
+                oldest.add(new Candidate(id, timestampOf(row)));
+                if (oldest.size() > quota) {
+                    oldest.poll();
+                }
+            }
+        });
+
+        int evicted = evict(dbManager, stale, cutoff, expired);
+        if (quota > 0 && evicted < MAX_EVICTIONS_PER_STEP) {
+            // Las caducadas ya cuentan para el exceso
+            List<Long> surplus = new ArrayList<>();
+            for (Candidate candidate : oldest) {
+                surplus.add(candidate.id);
+            }
+            surplus.sort(null);
+            int room = Math.max(0, Math.min(quota - evicted, MAX_EVICTIONS_PER_STEP - evicted));
+            evicted += evict(dbManager, surplus.subList(0, Math.min(room, surplus.size())), null, capacityEvictions);
+        }
+        return evicted;
+    }
+
+    /**
+     * Da una vuelta completa desde el primer segmento, con el exceso calculado
+     * al empezarla, aunque el hilo en segundo plano esté a mitad de otra.
+     *
+     * @param dbManager Base de datos por la que se confirman los borrados
+     * @return Número de filas expulsadas
+     */
+    synchronized int sweep(DataBaseManager dbManager) {
+        nextSegment = 0;
+        int evicted = 0;
+        for (int i = 0; i < Table.SEGMENTS; i++) {
+            evicted += step(dbManager);
+        }
+        return evicted;
+    }
+
+    TableStats stats() {
+        return new TableStats(table.getMetadata().getEntityClass(), table.size(), expired.sum(),
+                capacityEvictions.sum(), overflowed.sum());
+    }
+
+    /**
+     * Expulsa filas en lotes. Cada fila se vuelve a leer con su versión y se
+     * vuelve a comprobar antes de incluirla en el lote.
+     *
+     * @param cutoff Fecha de caducidad que deben cumplir, o null si se expulsan por exceso
+     */
+    private int evict(DataBaseManager dbManager, List<Long> ids, LocalDateTime cutoff, LongAdder counter) {
+        Consumer<? super Object> overflow = policy.getOverflow();
+        int evicted = 0;
+        for (int from = 0; from < ids.size(); from += EVICTION_BATCH_ROWS) {
+            List<Mutation> mutations = new ArrayList<>();
+            List<Object> rows = new ArrayList<>();
+            for (Long id : ids.subList(from, Math.min(ids.size(), from + EVICTION_BATCH_ROWS))) {
+                Versioned<Object> current = table.getVersioned(id);
+                if (current == null || !policy.getEvictable().test(current.getEntity())
+                        || (cutoff != null && !isExpired(current.getEntity(), cutoff))) {
+                    continue;
+                }
+                mutations.add(Mutation.check(table, id, current.getVersion()));
+                mutations.add(Mutation.delete(table, id));
+                rows.add(current.getEntity());
+            }
+            if (rows.isEmpty()) {
+                continue;
+            }
+
+            // Los borrados se cuentan antes de entregar las filas
+            List<Object> deleted = new ArrayList<>(rows.size());
+            try {
+                dbManager.commit(mutations);
+                deleted.addAll(rows);
+            } catch (VersionConflictException e) {
+                // Alguna fila ha cambiado: se borran de una en una las que no
+                for (int i = 0; i < mutations.size(); i += 2) {
+                    try {
+                        if (dbManager.commit(mutations.subList(i, i + 2)) > 0) {
+                            deleted.add(rows.get(i / 2));
+                        }
+                    } catch (VersionConflictException changed) {
+                        // Se conserva; la siguiente vuelta la volverá a revisar
+                    }
+                }
+            } finally {
+                counter.add(deleted.size());
+            }
+            evicted += deleted.size();
+            sendToOverflow(overflow, deleted);
+        }
+        return evicted;
+    }
+
+    /**
+     * Entrega al destino de la política filas ya borradas. Solo se entregan
+     * después del borrado, así que una fila que sigue en la tabla nunca está
+     * también en el destino. Si el destino falla con una fila, se siguen
+     * entregando las demás y esa queda pendiente para el siguiente paso.
+     */
+    private void sendToOverflow(Consumer<? super Object> overflow, List<Object> removed) {
+        if (overflow == null) {
+            return;
+        }
+        for (Object row : removed) {
+            try {
+                overflow.accept(row);
+                overflowed.increment();
+            } catch (RuntimeException e) {
+                undelivered.add(row);
+            }
+        }
+    }
+
+    private boolean isExpired(Object row, LocalDateTime cutoff) {
+        if (cutoff == null) {
+            return false;
+        }
+        LocalDateTime timestamp = timestampOf(row);
+        return timestamp != null && timestamp.isBefore(cutoff);
+    }
+
+    private LocalDateTime timestampOf(Object row) {
+        Function<? super Object, LocalDateTime> timestamp = policy.getTimestamp();
+        return timestamp != null ? timestamp.apply(row) : null;
+    }
+
+    /**
+     * Fila candidata a expulsarse por exceso, ordenada de más antigua a más
+     * reciente: por fecha si la política la tiene (sin fecha, primero) y por ID.
+     */
+    private static final class Candidate implements Comparable<Candidate> {
+        private static final Comparator<Candidate> ORDER = Comparator
+                .comparing((Candidate c) -> c.timestamp, Comparator.nullsFirst(Comparator.<LocalDateTime>naturalOrder()))
+                .thenComparingLong(c -> c.id);
+
+        final long id;
+        final LocalDateTime timestamp;
+
+        Candidate(long id, LocalDateTime timestamp) {
+            this.id = id;
+            this.timestamp = timestamp;
+        }
+
+        @Override
+        public int compareTo(Candidate other) {
+            return ORDER.compare(this, other);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package ejercicio2.database;
+
+import ejercicio2.interfaces.IIdGenerator;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Generador de IDs ordenados por tiempo para varios nodos. Cada ID de 64 bits
+ * se compone de los milisegundos desde la época (41 bits, unos 69 años), el
+ * número de nodo (10 bits) y una secuencia dentro del milisegundo (12 bits),
+ * así que dos nodos distintos nunca entregan el mismo ID.
+ *
+ * El milisegundo y la secuencia se guardan juntos en un contador que avanza
+ * con compare-and-set: si se agotan los 4096 IDs de un milisegundo se toma
+ * prestado el siguiente, y si el reloj retrocede se sigue contando desde el
+ * último ID, de modo que los IDs de un nodo siempre crecen.
+ */
+public class TimeOrderedIdGenerator implements IIdGenerator {
+
+    /** Época por defecto: 1 de enero de 2024 UTC. */
+    public static final long DEFAULT_EPOCH_MILLIS = 1_704_067_200_000L;
+    /** Mayor número de nodo admitido. */
+    public static final int MAX_NODE_ID = (1 << 10) - 1;
+
+    private static final int SEQUENCE_BITS = 12;
+    private static final int NODE_BITS = 10;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+    private final long nodeBits;
+    private final long epochMillis;
+    private final LongSupplier clock;
+    private final AtomicLong lastTick; // Milisegundo y secuencia del último ID entregado
+
+    /**
+     * Constructor con la época por defecto.
+     *
+     * @param nodeId Número de nodo, entre 0 y MAX_NODE_ID
+     */
+    public TimeOrderedIdGenerator(int nodeId) {
+        this(nodeId, DEFAULT_EPOCH_MILLIS);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param nodeId Número de nodo, entre 0 y MAX_NODE_ID
+     * @param epochMillis Época en milisegundos desde 1970
+     */
+    public TimeOrderedIdGenerator(int nodeId, long epochMillis) {
+        this(nodeId, epochMillis, System::currentTimeMillis);
+    }
+
+    TimeOrderedIdGenerator(int nodeId, long epochMillis, LongSupplier clock) {
+        if (nodeId < 0 || nodeId > MAX_NODE_ID) {
+            throw new IllegalArgumentException("El número de nodo debe estar entre 0 y " + MAX_NODE_ID);
+        }
+        if (epochMillis < 0) {
+            throw new IllegalArgumentException("La época no puede ser negativa");
+        }
+        this.nodeBits = (long) nodeId << SEQUENCE_BITS;
+        this.epochMillis = epochMillis;
+        this.clock = clock;
+        this.lastTick = new AtomicLong(-1);
+    }
+
+    @Override
+    public long nextId() {
+        return toId(claim(1));
+    }
+
+    @Override
+    public long[] nextIds(int count) {
+        long tick = claim(count);
+        long[] ids = new long[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = toId(tick + i);
+        }
+        return ids;
+    }
+
+    @Override
+    public void observe(long id) {
+        if (id > 0) {
+            lastTick.accumulateAndGet(toTick(id), Math::max);
+        }
+    }
+
+    @Override
+    public long getHighWaterMark() {
+        long tick = lastTick.get();
+        return tick < 0 ? 0 : toId(tick) + 1;
+    }
+
+    /**
+     * Obtiene el número de nodo de un ID.
+     *
+     * @param id ID generado por esta clase
+     * @return Número de nodo
+     */
+    public static int nodeOf(long id) {
+        return (int) ((id >>> SEQUENCE_BITS) & MAX_NODE_ID);
+    }
+
+    /**
+     * Obtiene el instante en que se generó un ID.
+     *
+     * @param id ID generado por esta clase
+     * @return Milisegundos desde 1970
+     */
+    public long timestampOf(long id) {
+        return (id >>> (SEQUENCE_BITS + NODE_BITS)) + epochMillis;
+    }
+
+    /**
+     * Reserva count marcas consecutivas a partir del milisegundo actual o de
+     * la siguiente a la última entregada, la que sea mayor.
+     *
+     * @return Primera marca reservada
+     */
+    private long claim(int count) {
+        long now = (clock.getAsLong() - epochMillis) << SEQUENCE_BITS;
+        while (true) {
+            long last = lastTick.get();
+            long first = Math.max(now, last + 1);
+            if (lastTick.compareAndSet(last, first + count - 1)) {
+                return first;
+            }
+        }
+    }
+
+    private long toId(long tick) {
+        return ((tick >>> SEQUENCE_BITS) << (SEQUENCE_BITS + NODE_BITS)) | nodeBits | (tick & SEQUENCE_MASK);
+    }
+
+    private static long toTick(long id) {
+        return ((id >>> (SEQUENCE_BITS + NODE_BITS)) << SEQUENCE_BITS) | (id & SEQUENCE_MASK);
+    }
+}
@@ -0,0 +1,200 @@
+package ejercicio2.database;
+
+import ejercicio2.interfaces.ITransaction;
+import ejercicio2.model.Versioned;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Transacción optimista sobre DataBaseManager. No bloquea nada mientras está
+ * abierta: acumula las escrituras y las versiones de las filas leídas, y al
+ * confirmar lo entrega todo como un único lote de mutaciones, que se valida y
+ * se aplica con los segmentos implicados bloqueados.
+ */
+final class Transaction implements ITransaction {
+
+    private static final Versioned<Object> MISSING = new Versioned<>(null, 0);
+
+    private final DataBaseManager dbManager;
+    private final Map<RowKey, Mutation> writes;
+    private final Map<RowKey, Versioned<Object>> reads;
+    private boolean active;
+
+    /**
+     * Constructor.
+     *
+     * @param dbManager Base de datos sobre la que se confirma la transacción
+     */
+    Transaction(DataBaseManager dbManager) {
+        this.dbManager = dbManager;
+        this.writes = new LinkedHashMap<>();
+        this.reads = new HashMap<>();
+        this.active = true;
+    }
+
+    @Override
+    public <T> T save(T object) {
+        ensureActive();
+
+        Table table = dbManager.tableFor(object.getClass());
+        EntityMetadata metadata = table.getMetadata();
+        Long id = metadata.getId(object);
+        if (id == null) {
+            id = dbManager.nextId();
+            metadata.setId(object, id);
+        }
+        writes.put(new RowKey(table, id), Mutation.put(table, id, object));
+
+        return object;
+    }
+
+    @Override
+    public <T> Optional<T> findById(Long id, Class<T> clazz) {
+        ensureActive();
+
+        if (id == null) {
+            return Optional.empty();
+        }
+
+        Table table = dbManager.tableFor(clazz);
+        RowKey key = new RowKey(table, id);
+
+        // Las escrituras propias tienen prioridad sobre lo guardado
+        Mutation write = writes.get(key);
+        if (write != null) {
+            return write.type == Mutation.Type.DELETE ? Optional.empty() : Optional.of(clazz.cast(write.entity));
+        }
+
+        Versioned<Object> read = reads.get(key);
+        if (read == null) {
+            read = table.getVersioned(id);
+            if (read == null) {
+                read = MISSING;
+            }
+            reads.put(key, read);
+        }
+        return Optional.ofNullable(clazz.cast(read.getEntity()));
+    }
+
+    @Override
+    public <T> T update(T object) {
+        ensureActive();
+
+        Table table = dbManager.tableFor(object.getClass());
+        Long id = table.getMetadata().getId(object);
+        if (id == null) {
+            throw new IllegalArgumentException("No se puede actualizar un objeto sin ID");
+        }
+
+        RowKey key = new RowKey(table, id);
+        Mutation write = writes.get(key);
+        Versioned<Object> read = reads.get(key);
+        if ((write != null && write.type == Mutation.Type.DELETE) || (write == null && read == MISSING)) {
+            throw new IllegalArgumentException("El objeto con ID " + id + " no existe en la base de datos");
+        }
+
+        if (write != null && write.type == Mutation.Type.PUT) {
+            // Sigue siendo una inserción de esta misma transacción
+            writes.put(key, Mutation.put(table, id, object));
+        } else {
+            // Si la fila se ha leído, solo se actualiza si nadie la ha cambiado desde entonces
+            long expectedVersion = read != null ? read.getVersion() : Mutation.ANY_VERSION;
+            writes.put(key, Mutation.update(table, id, object, expectedVersion));
+        }
+
+        return object;
+    }
+
+    @Override
+    public <T> boolean delete(Long id, Class<T> clazz) {
+        if (findById(id, clazz).isEmpty()) {
+            return false;
+        }
+
+        Table table = dbManager.tableFor(clazz);
+        writes.put(new RowKey(table, id), Mutation.delete(table, id));
+        return true;
+    }
+
+    @Override
+    public void commit() {
+        ensureActive();
+        active = false;
+
+        List<Mutation> mutations = new ArrayList<>(writes.size() + reads.size());
+        mutations.addAll(writes.values());
+        for (Map.Entry<RowKey, Versioned<Object>> read : reads.entrySet()) {
+            // Las actualizaciones ya comprueban la versión leída
+            Mutation write = writes.get(read.getKey());
+            if (write == null || write.type != Mutation.Type.UPDATE) {
+                RowKey key = read.getKey();
+                mutations.add(Mutation.check(key.table, key.id, read.getValue().getVersion()));
+            }
+        }
+
+        if (!dbManager.isConnected()) {
+            throw new IllegalStateException("No hay conexión con la base de datos");
+        }
+        dbManager.commit(mutations);
+    }
+
+    @Override
+    public void rollback() {
+        ensureActive();
+        active = false;
+        writes.clear();
+        reads.clear();
+    }
+
+    @Override
+    public boolean isActive() {
+        return active;
+    }
+
+    @Override
+    public void close() {
+        if (active) {
+            rollback();
+        }
+    }
+
+    private void ensureActive() {
+        if (!active) {
+            throw new IllegalStateException("La transacción ya ha terminado");
+        }
+    }
+
+    /**
+     * Fila identificada por su tabla y su ID.
+     */
+    private static final class RowKey {
+        private final Table table;
+        private final long id;
+
+        RowKey(Table table, long id) {
+            this.table = table;
+            this.id = id;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof RowKey)) {
+                return false;
+            }
+            RowKey other = (RowKey) o;
+            return table == other.table && id == other.id;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * table.getOrdinal() + Long.hashCode(id);
+        }
+    }
+}
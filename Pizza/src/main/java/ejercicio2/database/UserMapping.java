@@ -0,0 +1,59 @@
+package ejercicio2.database;
+
+import ejercicio2.model.User;
+import ejercicio2.model.Versioned;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Correspondencia de los usuarios con la tabla users.
+ */
+final class UserMapping extends JdbcMapping<User> {
+
+    UserMapping() {
+        super(User.class, "users", "username", "password", "email", "address", "phone_number");
+    }
+
+    @Override
+    List<String> schema() {
+        return List.of("CREATE TABLE IF NOT EXISTS users ("
+                + "id BIGINT PRIMARY KEY, version BIGINT NOT NULL, username VARCHAR(255), password VARCHAR(255), "
+                + "email VARCHAR(255), address VARCHAR(1024), phone_number VARCHAR(64))");
+    }
+
+    @Override
+    Long getId(User user) {
+        return user.getId();
+    }
+
+    @Override
+    void setId(User user, long id) {
+        user.setId(id);
+    }
+
+    @Override
+    int bind(PreparedStatement statement, User user) throws SQLException {
+        statement.setString(1, user.getUsername());
+        statement.setString(2, user.getPassword());
+        statement.setString(3, user.getEmail());
+        statement.setString(4, user.getAddress());
+        statement.setString(5, user.getPhoneNumber());
+        return 6;
+    }
+
+    @Override
+    List<Versioned<User>> readAll(PooledConnection connection, ResultSet rows) throws SQLException {
+        List<Versioned<User>> users = new ArrayList<>();
+        try (rows) {
+            while (rows.next()) {
+                User user = new User(rows.getLong(1), rows.getString(3), rows.getString(4), rows.getString(5),
+                        rows.getString(6), rows.getString(7));
+                users.add(new Versioned<>(user, rows.getLong(2)));
+            }
+        }
+        return users;
+    }
+}
@@ -0,0 +1,415 @@
+package ejercicio2.database;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * Registro de escritura anticipada sobre un FileChannel.
+ *
+ * Cada registro se escribe como [longitud][crc32][lsn][datos]. Los registros se
+ * añaden en orden con un cerrojo propio y la sincronización con el disco se hace
+ * en grupo: el primer escritor que necesita sincronizar lo hace por todos los
+ * registros escritos hasta ese momento y los demás esperan a que termine.
+ *
+ * El registro se reparte en ficheros de segmento con nombre wal-[primer lsn].log.
+ * Al rotar se empieza un segmento nuevo, de modo que tras una instantánea se
+ * pueden borrar enteros los segmentos que ya contiene.
+ */
+final class WriteAheadLog implements Closeable {
+
+    private static final int HEADER_SIZE = Integer.BYTES + Integer.BYTES + Long.BYTES;
+    private static final String PREFIX = "wal-";
+    private static final String SUFFIX = ".log";
+
+    /**
+     * Procesa un registro durante la recuperación.
+     */
+    interface RecordHandler {
+        /**
+         * Procesa un registro leído del fichero.
+         *
+         * @param lsn Número de secuencia del registro
+         * @param payload Datos del registro
+         * @throws IOException Si los datos no son válidos
+         */
+        void handle(long lsn, ByteBuffer payload) throws IOException;
+    }
+
+    private final Path directory;
+    private final SyncPolicy policy;
+    private final long syncIntervalMillis;
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private final Object syncMonitor = new Object();
+
+    // Segmentos cerrados a la escritura, por su primer lsn. Protegido por appendLock
+    private final TreeMap<Long, FileChannel> retired = new TreeMap<>();
+    private volatile FileChannel channel;
+    private long segmentStart;         // Primer lsn del segmento actual. Protegido por appendLock
+    private ScheduledExecutorService syncScheduler;
+    private long lastLsn;              // Protegido por appendLock
+    private volatile long writtenLsn;
+    private volatile long segmentBytes; // Escrito solo con appendLock
+    private long syncedLsn;            // Protegido por syncMonitor
+    private boolean syncing;           // Protegido por syncMonitor
+
+    /**
+     * Constructor.
+     *
+     * @param directory Directorio de los ficheros de segmento
+     * @param policy Política de sincronización
+     * @param syncIntervalMillis Intervalo de sincronización para SyncPolicy.INTERVAL
+     */
+    WriteAheadLog(Path directory, SyncPolicy policy, long syncIntervalMillis) {
+        this.directory = directory;
+        this.policy = policy;
+        this.syncIntervalMillis = syncIntervalMillis;
+    }
+
+    /**
+     * Abre el registro y reproduce los registros válidos posteriores a un lsn.
+     * Si el final del registro está incompleto o corrupto (por ejemplo, por una
+     * caída a mitad de una escritura), se trunca a partir del último registro
+     * válido y se descartan los segmentos siguientes.
+     *
+     * @param afterLsn Último lsn ya aplicado (el de la instantánea cargada, o 0)
+     * @param handler Función que aplica cada registro recuperado
+     * @throws IOException Si falla la lectura o un registro no se puede aplicar
+     */
+    void open(long afterLsn, RecordHandler handler) throws IOException {
+        Files.createDirectories(directory);
+        TreeMap<Long, Path> segments = listSegments();
+        lastLsn = afterLsn;
+
+        Iterator<Map.Entry<Long, Path>> it = segments.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Long, Path> segment = it.next();
+            // Un segmento vacío también fija el lsn por el que continúa el registro
+            lastLsn = Math.max(lastLsn, segment.getKey() - 1);
+            FileChannel file = FileChannel.open(segment.getValue(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+            long validEnd = replay(file, afterLsn, handler);
+            boolean torn = validEnd < file.size();
+            if (torn) {
+                file.truncate(validEnd);
+            }
+
+            if (!it.hasNext() || torn) {
+                file.position(validEnd);
+                segmentBytes = validEnd;
+                channel = file;
+                segmentStart = segment.getKey();
+                while (it.hasNext()) {
+                    Files.delete(it.next().getValue());
+                }
+            } else {
+                retired.put(segment.getKey(), file);
+            }
+        }
+        if (channel == null) {
+            segmentStart = lastLsn + 1;
+            channel = createSegment(segmentStart);
+        }
+        writtenLsn = lastLsn;
+        syncedLsn = lastLsn;
+
+        if (policy == SyncPolicy.INTERVAL) {
+            syncScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "wal-sync");
+                thread.setDaemon(true);
+                return thread;
+            });
+            syncScheduler.scheduleWithFixedDelay(this::syncQuietly,
+                    syncIntervalMillis, syncIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Añade un registro al final del fichero. No espera a que llegue a disco;
+     * para eso hay que llamar después a awaitDurable fuera de cualquier cerrojo.
+     *
+     * @param payload Datos del registro
+     * @return Número de secuencia asignado al registro
+     * @throws IOException Si falla la escritura
+     */
+    long append(byte[] payload) throws IOException {
+        appendLock.lock();
+        try {
+            long lsn = lastLsn + 1;
+            ByteBuffer frame = ByteBuffer.allocate(HEADER_SIZE + payload.length);
+            frame.putInt(payload.length);
+            frame.putInt(checksum(lsn, payload, 0, payload.length));
+            frame.putLong(lsn);
+            frame.put(payload);
+            frame.flip();
+            while (frame.hasRemaining()) {
+                channel.write(frame);
+            }
+            lastLsn = lsn;
+            segmentBytes += HEADER_SIZE + payload.length;
+            writtenLsn = lsn;
+            return lsn;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Espera, según la política, a que un registro esté en disco. Con
+     * SyncPolicy.EVERY_WRITE, si nadie está sincronizando, este hilo sincroniza
+     * todo lo escrito hasta ahora; si no, espera a la sincronización en curso.
+     *
+     * @param lsn Número de secuencia del registro
+     * @throws IOException Si falla la sincronización
+     */
+    void awaitDurable(long lsn) throws IOException {
+        if (policy != SyncPolicy.EVERY_WRITE) {
+            return;
+        }
+
+        synchronized (syncMonitor) {
+            while (syncedLsn < lsn) {
+                if (!syncing) {
+                    syncing = true;
+                    break;
+                }
+                try {
+                    syncMonitor.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrumpido esperando la sincronización del registro");
+                }
+            }
+            if (syncedLsn >= lsn) {
+                return;
+            }
+        }
+
+        forceAsLeader();
+    }
+
+    /**
+     * Lleva a disco todo lo escrito hasta ahora. Solo la llama el hilo que ha
+     * marcado la sincronización en curso, y al terminar despierta a los demás.
+     *
+     * @throws IOException Si falla la sincronización
+     */
+    private void forceAsLeader() throws IOException {
+        // Se lee el lsn antes que el segmento: si se rota entre medias, rotate ya ha sincronizado el anterior
+        long target = writtenLsn;
+        FileChannel current = channel;
+        boolean forced = false;
+        try {
+            current.force(false);
+            forced = true;
+        } catch (ClosedChannelException e) {
+            // Un segmento retirado y ya borrado estaba sincronizado desde que se rotó
+            if (current == channel) {
+                throw e;
+            }
+            forced = true;
+        } finally {
+            synchronized (syncMonitor) {
+                if (forced) {
+                    syncedLsn = Math.max(syncedLsn, target);
+                }
+                syncing = false;
+                syncMonitor.notifyAll();
+            }
+        }
+    }
+
+    long getLastLsn() {
+        return writtenLsn;
+    }
+
+    /**
+     * Cierra el segmento actual a la escritura y empieza uno nuevo. Todos los
+     * registros anteriores quedan en disco antes de volver.
+     *
+     * @return Último lsn del segmento cerrado
+     * @throws IOException Si falla la sincronización o la creación del segmento
+     */
+    long rotate() throws IOException {
+        appendLock.lock();
+        try {
+            FileChannel current = channel;
+            current.force(false);
+            FileChannel next = createSegment(lastLsn + 1);
+            retired.put(segmentStart, current);
+            segmentStart = lastLsn + 1;
+            segmentBytes = 0;
+            // El segmento anterior no se cierra: una sincronización en curso puede estar usándolo
+            channel = next;
+            return lastLsn;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Tamaño del segmento actual, para decidir cuándo conviene una instantánea.
+     *
+     * @return Bytes escritos en el segmento actual
+     */
+    long getSegmentBytes() {
+        return segmentBytes;
+    }
+
+    /**
+     * Borra los segmentos cerrados cuyos registros son todos anteriores o
+     * iguales a un lsn, normalmente el de una instantánea ya guardada.
+     *
+     * @param lsn Último lsn que ya no hace falta reproducir
+     * @throws IOException Si falla el borrado
+     */
+    void deleteUpTo(long lsn) throws IOException {
+        List<Map.Entry<Long, FileChannel>> deletable = new ArrayList<>();
+        appendLock.lock();
+        try {
+            for (Map.Entry<Long, FileChannel> segment : retired.entrySet()) {
+                Long nextStart = retired.higherKey(segment.getKey());
+                long end = (nextStart != null ? nextStart : segmentStart) - 1;
+                if (end > lsn) {
+                    break;
+                }
+                deletable.add(segment);
+            }
+            for (Map.Entry<Long, FileChannel> segment : deletable) {
+                retired.remove(segment.getKey());
+            }
+        } finally {
+            appendLock.unlock();
+        }
+
+        for (Map.Entry<Long, FileChannel> segment : deletable) {
+            segment.getValue().close();
+            Files.deleteIfExists(segmentPath(segment.getKey()));
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (syncScheduler != null) {
+            syncScheduler.shutdownNow();
+            syncScheduler = null;
+        }
+        appendLock.lock();
+        try {
+            for (FileChannel file : retired.values()) {
+                file.close();
+            }
+            retired.clear();
+            if (channel != null && channel.isOpen()) {
+                channel.force(false);
+                channel.close();
+            }
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    private void syncQuietly() {
+        synchronized (syncMonitor) {
+            if (syncing || syncedLsn >= writtenLsn) {
+                return;
+            }
+            syncing = true;
+        }
+        try {
+            forceAsLeader();
+        } catch (IOException e) {
+            // Se reintentará en el siguiente intervalo
+        }
+    }
+
+    private TreeMap<Long, Path> listSegments() throws IOException {
+        TreeMap<Long, Path> segments = new TreeMap<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    segments.put(Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length())), file);
+                } catch (NumberFormatException e) {
+                    // No es un segmento del registro
+                }
+            }
+        }
+        return segments;
+    }
+
+    private Path segmentPath(long firstLsn) {
+        return directory.resolve(String.format("%s%020d%s", PREFIX, firstLsn, SUFFIX));
+    }
+
+    private FileChannel createSegment(long firstLsn) throws IOException {
+        return FileChannel.open(segmentPath(firstLsn), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+    }
+
+    private long replay(FileChannel file, long afterLsn, RecordHandler handler) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        long position = 0;
+        long size = file.size();
+
+        while (position + HEADER_SIZE <= size) {
+            header.clear();
+            readFully(file, header, position);
+            header.flip();
+            int length = header.getInt();
+            int crc = header.getInt();
+            long lsn = header.getLong();
+
+            if (length < 0 || position + HEADER_SIZE + length > size) {
+                break;
+            }
+            ByteBuffer payload = ByteBuffer.allocate(length);
+            readFully(file, payload, position + HEADER_SIZE);
+            if (checksum(lsn, payload.array(), 0, length) != crc) {
+                break;
+            }
+
+            if (lsn > afterLsn) {
+                payload.flip();
+                handler.handle(lsn, payload);
+            }
+            lastLsn = Math.max(lastLsn, lsn);
+            position += HEADER_SIZE + length;
+        }
+        return position;
+    }
+
+    private static void readFully(FileChannel file, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = file.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("Fin inesperado del registro");
+            }
+        }
+    }
+
+    private static int checksum(long lsn, byte[] data, int offset, int length) {
+        CRC32 crc = new CRC32();
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            crc.update((int) (lsn >>> shift));
+        }
+        crc.update(data, offset, length);
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,35 @@
+package ejercicio2.exceptions;
+
+/**
+ * Excepción lanzada cuando un suscriptor del flujo de cambios se ha quedado
+ * tan atrás que los cambios que le faltaban ya se han descartado.
+ * El suscriptor debe volver a leer el estado completo y suscribirse de nuevo.
+ */
+public class ChangeFeedOverrunException extends RuntimeException {
+
+    /**
+     * Constructor por defecto.
+     */
+    public ChangeFeedOverrunException() {
+        super("Los cambios pendientes del suscriptor se han descartado");
+    }
+
+    /**
+     * Constructor con mensaje personalizado.
+     *
+     * @param message Mensaje descriptivo del error
+     */
+    public ChangeFeedOverrunException(String message) {
+        super(message);
+    }
+
+    /**
+     * Constructor con mensaje y causa.
+     *
+     * @param message Mensaje descriptivo del error
+     * @param cause Causa original del error
+     */
+    public ChangeFeedOverrunException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,34 @@
+package ejercicio2.exceptions;
+
+/**
+ * Excepción lanzada cuando falla el acceso a una base de datos externa,
+ * por ejemplo porque la conexión se ha perdido o una sentencia SQL falla.
+ */
+public class DataAccessException extends RuntimeException {
+
+    /**
+     * Constructor por defecto.
+     */
+    public DataAccessException() {
+        super("Error al acceder a la base de datos");
+    }
+
+    /**
+     * Constructor con mensaje personalizado.
+     *
+     * @param message Mensaje descriptivo del error
+     */
+    public DataAccessException(String message) {
+        super(message);
+    }
+
+    /**
+     * Constructor con mensaje y causa.
+     *
+     * @param message Mensaje descriptivo del error
+     * @param cause Causa original del error
+     */
+    public DataAccessException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,34 @@
+package ejercicio2.exceptions;
+
+/**
+ * Excepción lanzada cuando se intenta actualizar una entidad que otra
+ * operación ha modificado desde que se leyó.
+ */
+public class VersionConflictException extends RuntimeException {
+
+    /**
+     * Constructor por defecto.
+     */
+    public VersionConflictException() {
+        super("La entidad ha sido modificada por otra operación");
+    }
+
+    /**
+     * Constructor con mensaje personalizado.
+     *
+     * @param message Mensaje descriptivo del error
+     */
+    public VersionConflictException(String message) {
+        super(message);
+    }
+
+    /**
+     * Constructor con mensaje y causa.
+     *
+     * @param message Mensaje descriptivo del error
+     * @param cause Causa original del error
+     */
+    public VersionConflictException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,131 @@
+package ejercicio2.interfaces;
+
+import ejercicio2.model.Versioned;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Interfaz asíncrona para las operaciones con la base de datos.
+ * Cada método devuelve al momento un CompletableFuture que se completa con
+ * el resultado de la operación, o de forma excepcional con la misma excepción
+ * que lanzaría la operación síncrona, sin envolver.
+ */
+public interface IAsyncDataBaseManager {
+    /**
+     * Trabajo a realizar dentro de una transacción.
+     *
+     * @param <R> Tipo del resultado
+     */
+    @FunctionalInterface
+    interface TransactionWork<R> {
+        /**
+         * Realiza las operaciones de la transacción, sin confirmarla.
+         *
+         * @param transaction Transacción abierta
+         * @return Resultado del trabajo
+         * @throws Exception Si el trabajo falla; la transacción se deshace
+         */
+        R execute(ITransaction transaction) throws Exception;
+    }
+
+    /**
+     * Guarda un objeto en la base de datos.
+     *
+     * @param <T> Tipo del objeto a guardar
+     * @param object Objeto a guardar
+     * @return Futuro con el objeto guardado con su ID asignado
+     */
+    <T> CompletableFuture<T> saveAsync(T object);
+
+    /**
+     * Busca un objeto por su ID.
+     *
+     * @param <T> Tipo del objeto a buscar
+     * @param id ID del objeto
+     * @param clazz Clase del objeto
+     * @return Futuro con el Optional del objeto encontrado o vacío si no existe
+     */
+    <T> CompletableFuture<Optional<T>> findByIdAsync(Long id, Class<T> clazz);
+
+    /**
+     * Actualiza un objeto existente en la base de datos.
+     *
+     * @param <T> Tipo del objeto a actualizar
+     * @param object Objeto con los datos actualizados
+     * @return Futuro con el objeto actualizado
+     */
+    <T> CompletableFuture<T> updateAsync(T object);
+
+    /**
+     * Busca un objeto por su ID junto con la versión actual de su fila.
+     *
+     * @param <T> Tipo del objeto a buscar
+     * @param id ID del objeto
+     * @param clazz Clase del objeto
+     * @return Futuro con el Optional del objeto y su versión, o vacío si no existe
+     */
+    <T> CompletableFuture<Optional<Versioned<T>>> findVersionedByIdAsync(Long id, Class<T> clazz);
+
+    /**
+     * Actualiza un objeto solo si su fila sigue en la versión indicada.
+     *
+     * @param <T> Tipo del objeto a actualizar
+     * @param object Objeto con los datos actualizados
+     * @param expectedVersion Versión leída con findVersionedByIdAsync
+     * @return Futuro con el objeto actualizado y la nueva versión de su fila,
+     *         que falla con VersionConflictException si la fila ha cambiado
+     */
+    <T> CompletableFuture<Versioned<T>> compareAndUpdateAsync(T object, long expectedVersion);
+
+    /**
+     * Elimina un objeto de la base de datos.
+     *
+     * @param <T> Tipo del objeto a eliminar
+     * @param id ID del objeto a eliminar
+     * @param clazz Clase del objeto
+     * @return Futuro con true si se eliminó, false si no existía
+     */
+    <T> CompletableFuture<Boolean> deleteAsync(Long id, Class<T> clazz);
+
+    /**
+     * Busca todos los objetos de un tipo específico.
+     *
+     * @param <T> Tipo de objetos a buscar
+     * @param clazz Clase de los objetos
+     * @return Futuro con la lista de todos los objetos encontrados
+     */
+    <T> CompletableFuture<List<T>> findAllAsync(Class<T> clazz);
+
+    /**
+     * Guarda un lote de objetos en la base de datos.
+     *
+     * @param <T> Tipo de los objetos a guardar
+     * @param objects Objetos a guardar
+     * @return Futuro con los objetos guardados con su ID asignado
+     */
+    <T> CompletableFuture<List<T>> saveAllAsync(Collection<T> objects);
+
+    /**
+     * Busca los objetos con una clave en un índice secundario.
+     *
+     * @param <T> Tipo de los objetos a buscar
+     * @param indexName Nombre del índice
+     * @param clazz Clase de los objetos
+     * @param key Clave a buscar
+     * @return Futuro con la lista de objetos con esa clave
+     */
+    <T> CompletableFuture<List<T>> findByAsync(String indexName, Class<T> clazz, Object key);
+
+    /**
+     * Realiza un trabajo dentro de una transacción y la confirma. Si el
+     * trabajo lanza una excepción o la confirmación falla, la transacción se
+     * deshace y el futuro falla con esa excepción.
+     *
+     * @param <R> Tipo del resultado
+     * @param work Trabajo a realizar
+     * @return Futuro con el resultado del trabajo una vez confirmada la transacción
+     */
+    <R> CompletableFuture<R> inTransactionAsync(TransactionWork<R> work);
+}
@@ -13,10 +13,11 @@ public interface IAuthenticator {
      *
      * @param username Nombre de usuario
      * @param password Contraseña
+     * @param email Correo electrónico
      * @return Usuario creado
      * @throws AuthenticationException Si hay un error en el registro
      */
-    User register(String username, String password) throws AuthenticationException;
+    User register(String username, String password, String email) throws AuthenticationException;
 
     /**
      * Autentica un usuario con sus credenciales.
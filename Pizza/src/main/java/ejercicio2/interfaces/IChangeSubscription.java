@@ -0,0 +1,59 @@
+package ejercicio2.interfaces;
+
+import ejercicio2.exceptions.ChangeFeedOverrunException;
+import ejercicio2.model.ChangeEvent;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Interfaz para una suscripción al flujo de cambios de la base de datos.
+ *
+ * Los cambios se leen en lotes, en orden de secuencia. Los escritores nunca
+ * esperan a los suscriptores: los cambios se guardan en un buffer circular
+ * acotado y, si un suscriptor se queda atrás más de lo que cabe en él, la
+ * siguiente lectura falla con ChangeFeedOverrunException en lugar de
+ * saltarse cambios en silencio.
+ *
+ * Una suscripción solo debe usarse desde un hilo.
+ */
+public interface IChangeSubscription extends AutoCloseable {
+    /**
+     * Lee sin esperar los cambios disponibles.
+     *
+     * @param out Lista donde se añaden los cambios leídos
+     * @param maxEvents Número máximo de cambios a leer
+     * @return Número de cambios leídos
+     * @throws ChangeFeedOverrunException Si se han descartado cambios que el suscriptor no había leído
+     * @throws IllegalStateException Si la suscripción está cerrada
+     */
+    int drain(List<? super ChangeEvent> out, int maxEvents);
+
+    /**
+     * Lee los cambios disponibles, esperando hasta que haya al menos uno
+     * o venza el tiempo indicado.
+     *
+     * @param out Lista donde se añaden los cambios leídos
+     * @param maxEvents Número máximo de cambios a leer
+     * @param timeout Tiempo máximo de espera
+     * @param unit Unidad del tiempo de espera
+     * @return Número de cambios leídos (0 si vence el tiempo)
+     * @throws InterruptedException Si se interrumpe la espera
+     * @throws ChangeFeedOverrunException Si se han descartado cambios que el suscriptor no había leído
+     * @throws IllegalStateException Si la suscripción está cerrada
+     */
+    int drain(List<? super ChangeEvent> out, int maxEvents, long timeout, TimeUnit unit) throws InterruptedException;
+
+    /**
+     * Obtiene la secuencia del siguiente cambio que se leerá, con la que se
+     * puede retomar el flujo en otra suscripción.
+     *
+     * @return Número de secuencia
+     */
+    long getNextSequence();
+
+    /**
+     * Cierra la suscripción.
+     */
+    @Override
+    void close();
+}
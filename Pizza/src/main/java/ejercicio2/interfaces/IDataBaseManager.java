@@ -1,7 +1,16 @@
 package ejercicio2.interfaces;
 
+import ejercicio2.model.Page;
+import ejercicio2.model.Query;
+import ejercicio2.model.QueryResult;
+import ejercicio2.model.Versioned;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
 /**
  * Interfaz para la gestión de operaciones con la base de datos.
@@ -27,6 +36,18 @@ public interface IDataBaseManager {
      */
     <T> Optional<T> findById(Long id, Class<T> clazz);
 
+    /**
+     * Busca un objeto por su ID sin necesidad de encapsular el ID en un Long.
+     *
+     * @param <T> Tipo del objeto a buscar
+     * @param id ID del objeto
+     * @param clazz Clase del objeto
+     * @return Optional con el objeto encontrado o vacío si no existe
+     */
+    default <T> Optional<T> findById(long id, Class<T> clazz) {
+        return findById(Long.valueOf(id), clazz);
+    }
+
     /**
      * Actualiza un objeto existente en la base de datos.
      *
@@ -36,6 +57,39 @@ public interface IDataBaseManager {
      */
     <T> T update(T object);
 
+    /**
+     * Busca un objeto por su ID junto con la versión actual de su fila.
+     *
+     * @param <T> Tipo del objeto a buscar
+     * @param id ID del objeto
+     * @param clazz Clase del objeto
+     * @return Optional con el objeto y su versión, o vacío si no existe
+     */
+    <T> Optional<Versioned<T>> findVersionedById(Long id, Class<T> clazz);
+
+    /**
+     * Actualiza un objeto solo si su fila sigue en la versión indicada
+     * (compare-and-set). Permite actualizar sin bloqueos: el llamante lee el
+     * objeto con su versión, prepara una copia modificada y, si hay conflicto,
+     * vuelve a leer y lo reintenta.
+     *
+     * @param <T> Tipo del objeto a actualizar
+     * @param object Objeto con los datos actualizados
+     * @param expectedVersion Versión leída con findVersionedById
+     * @return El objeto actualizado con la nueva versión de su fila
+     * @throws ejercicio2.exceptions.VersionConflictException Si la fila ha cambiado desde esa versión
+     */
+    <T> Versioned<T> compareAndUpdate(T object, long expectedVersion);
+
+    /**
+     * Empieza una transacción. Las transacciones no toman ningún cerrojo
+     * global: solo al confirmar se bloquean, brevemente, las filas que tocan,
+     * así que transacciones sobre filas distintas se confirman en paralelo.
+     *
+     * @return Nueva transacción
+     */
+    ITransaction beginTransaction();
+
     /**
      * Elimina un objeto de la base de datos.
      *
@@ -55,6 +109,270 @@ public interface IDataBaseManager {
      */
     <T> List<T> findAll(Class<T> clazz);
 
+    /**
+     * Guarda un lote de objetos en la base de datos.
+     * La implementación por defecto llama a save para cada objeto.
+     *
+     * @param <T> Tipo de los objetos a guardar
+     * @param objects Objetos a guardar
+     * @return Los objetos guardados con su ID asignado, en el mismo orden
+     */
+    default <T> List<T> saveAll(Collection<T> objects) {
+        List<T> saved = new ArrayList<>(objects.size());
+        for (T object : objects) {
+            saved.add(save(object));
+        }
+        return saved;
+    }
+
+    /**
+     * Actualiza un lote de objetos existentes en la base de datos.
+     * La implementación por defecto llama a update para cada objeto.
+     *
+     * @param <T> Tipo de los objetos a actualizar
+     * @param objects Objetos con los datos actualizados
+     * @return Los objetos actualizados, en el mismo orden
+     */
+    default <T> List<T> updateAll(Collection<T> objects) {
+        List<T> updated = new ArrayList<>(objects.size());
+        for (T object : objects) {
+            updated.add(update(object));
+        }
+        return updated;
+    }
+
+    /**
+     * Busca un lote de objetos por sus IDs. Los IDs que no existen se omiten.
+     * La implementación por defecto llama a findById para cada ID.
+     *
+     * @param <T> Tipo de los objetos a buscar
+     * @param ids IDs de los objetos
+     * @param clazz Clase de los objetos
+     * @return Lista con los objetos encontrados, en el orden de los IDs
+     */
+    default <T> List<T> findAllById(Collection<Long> ids, Class<T> clazz) {
+        List<T> found = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            findById(id, clazz).ifPresent(found::add);
+        }
+        return found;
+    }
+
+    /**
+     * Elimina un lote de objetos por sus IDs.
+     * La implementación por defecto llama a delete para cada ID.
+     *
+     * @param <T> Tipo de los objetos a eliminar
+     * @param ids IDs de los objetos
+     * @param clazz Clase de los objetos
+     * @return Número de objetos eliminados
+     */
+    default <T> int deleteAll(Collection<Long> ids, Class<T> clazz) {
+        int deleted = 0;
+        for (Long id : ids) {
+            if (delete(id, clazz)) {
+                deleted++;
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * Recorre de forma perezosa todos los objetos de un tipo específico.
+     * La implementación por defecto se apoya en findAll; las implementaciones
+     * que puedan recorrer la tabla sin copiarla deben sobrescribirlo.
+     *
+     * @param <T> Tipo de objetos a recorrer
+     * @param clazz Clase de los objetos
+     * @return Stream con los objetos de la tabla
+     */
+    default <T> Stream<T> stream(Class<T> clazz) {
+        return findAll(clazz).stream();
+    }
+
+    /**
+     * Obtiene una página de objetos de un tipo específico, continuando el
+     * recorrido desde el cursor devuelto por la página anterior.
+     * La implementación por defecto se apoya en findAll y usa como cursor
+     * la posición del siguiente elemento.
+     *
+     * @param <T> Tipo de objetos a buscar
+     * @param clazz Clase de los objetos
+     * @param cursor Cursor de la página anterior o null para empezar
+     * @param pageSize Número máximo de objetos de la página
+     * @return Página con los objetos y el cursor de la siguiente
+     * @throws IllegalArgumentException Si el cursor o el tamaño de página no son válidos
+     */
+    default <T> Page<T> findPage(Class<T> clazz, String cursor, int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("El tamaño de página debe ser positivo");
+        }
+
+        int from;
+        try {
+            from = cursor == null ? 0 : Integer.parseInt(cursor);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Cursor no válido: " + cursor, e);
+        }
+
+        List<T> all = findAll(clazz);
+        int to = Math.min(all.size(), from + pageSize);
+        if (from >= to) {
+            return new Page<>(List.of(), null);
+        }
+        return new Page<>(all.subList(from, to), to < all.size() ? String.valueOf(to) : null);
+    }
+
+    /**
+     * Declara un índice secundario sobre un atributo de un tipo de objeto.
+     * El índice se mantiene al guardar, actualizar y eliminar objetos.
+     * Si ya existe un índice con ese nombre para la clase, no se hace nada.
+     * Puede declararse antes de establecer la conexión.
+     *
+     * @param <T> Tipo de los objetos indexados
+     * @param indexName Nombre del índice
+     * @param clazz Clase de los objetos
+     * @param keyExtractor Función que obtiene la clave de un objeto (null si no se indexa)
+     */
+    <T> void createIndex(String indexName, Class<T> clazz, Function<? super T, ?> keyExtractor);
+
+    /**
+     * Busca los objetos cuya clave en un índice secundario es la indicada.
+     *
+     * @param <T> Tipo de los objetos a buscar
+     * @param indexName Nombre del índice
+     * @param clazz Clase de los objetos
+     * @param key Clave buscada
+     * @return Lista con los objetos encontrados
+     * @throws IllegalArgumentException Si el índice no existe
+     */
+    <T> List<T> findBy(String indexName, Class<T> clazz, Object key);
+
+    /**
+     * Cuenta los objetos cuya clave en un índice secundario es la indicada.
+     * La implementación por defecto se apoya en findBy.
+     *
+     * @param <T> Tipo de los objetos a contar
+     * @param indexName Nombre del índice
+     * @param clazz Clase de los objetos
+     * @param key Clave buscada
+     * @return Número de objetos con esa clave
+     * @throws IllegalArgumentException Si el índice no existe
+     */
+    default <T> int countBy(String indexName, Class<T> clazz, Object key) {
+        return findBy(indexName, clazz, key).size();
+    }
+
+    /**
+     * Declara un índice secundario ordenado sobre un atributo comparable de un
+     * tipo de objeto, que además de búsquedas por igualdad admite consultas por
+     * rango y de los últimos valores. Se mantiene y declara igual que createIndex.
+     *
+     * @param <T> Tipo de los objetos indexados
+     * @param indexName Nombre del índice
+     * @param clazz Clase de los objetos
+     * @param keyExtractor Función que obtiene la clave de un objeto (null si no se indexa)
+     */
+    <T> void createSortedIndex(String indexName, Class<T> clazz,
+                               Function<? super T, ? extends Comparable<?>> keyExtractor);
+
+    /**
+     * Busca los objetos cuya clave en un índice ordenado está en el rango [from, to),
+     * en orden ascendente de clave. Un extremo nulo no limita el rango.
+     * El coste es proporcional al número de objetos del rango, no al de la tabla.
+     *
+     * @param <T> Tipo de los objetos a buscar
+     * @param indexName Nombre del índice ordenado
+     * @param clazz Clase de los objetos
+     * @param from Clave mínima, incluida
+     * @param to Clave máxima, excluida
+     * @return Lista con los objetos encontrados
+     * @throws IllegalArgumentException Si el índice no existe o no es ordenado
+     */
+    <T> List<T> findRange(String indexName, Class<T> clazz, Comparable<?> from, Comparable<?> to);
+
+    /**
+     * Busca los objetos con las claves más altas de un índice ordenado,
+     * en orden descendente de clave.
+     *
+     * @param <T> Tipo de los objetos a buscar
+     * @param indexName Nombre del índice ordenado
+     * @param clazz Clase de los objetos
+     * @param limit Número máximo de objetos
+     * @return Lista con los objetos encontrados
+     * @throws IllegalArgumentException Si el índice no existe o no es ordenado, o el límite es negativo
+     */
+    <T> List<T> findLatest(String indexName, Class<T> clazz, int limit);
+
+    /**
+     * Busca los objetos con las claves más altas dentro de un rango [from, to)
+     * de un índice ordenado, en orden descendente de clave. Un extremo nulo no
+     * limita el rango. Pasando como extremo superior la clave del último objeto
+     * de una página se obtiene la siguiente.
+     * La implementación por defecto se apoya en findRange.
+     *
+     * @param <T> Tipo de los objetos a buscar
+     * @param indexName Nombre del índice ordenado
+     * @param clazz Clase de los objetos
+     * @param from Clave mínima, incluida
+     * @param to Clave máxima, excluida
+     * @param limit Número máximo de objetos
+     * @return Lista con los objetos encontrados
+     * @throws IllegalArgumentException Si el índice no existe o no es ordenado, o el límite es negativo
+     */
+    default <T> List<T> findLatest(String indexName, Class<T> clazz, Comparable<?> from, Comparable<?> to,
+                                   int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("El límite no puede ser negativo");
+        }
+
+        List<T> range = findRange(indexName, clazz, from, to);
+        List<T> result = new ArrayList<>(Math.min(limit, range.size()));
+        for (int i = range.size() - 1; i >= 0 && result.size() < limit; i--) {
+            result.add(range.get(i));
+        }
+        return result;
+    }
+
+    /**
+     * Ejecuta una consulta y devuelve las entidades que la cumplen.
+     *
+     * @param <T> Tipo de las entidades
+     * @param query Consulta
+     * @return Resultados y plan con el que se han obtenido
+     */
+    default <T> QueryResult<T> query(Query<T> query) {
+        return query(query, Function.identity());
+    }
+
+    /**
+     * Ejecuta una consulta y transforma cada entidad que la cumple.
+     * La implementación por defecto recorre secuencialmente todas las
+     * filas con stream; las implementaciones con índices o tablas por
+     * segmentos deben sobrescribirlo.
+     *
+     * @param <T> Tipo de las entidades
+     * @param <R> Tipo de los resultados
+     * @param query Consulta
+     * @param projection Función que obtiene el resultado de cada entidad
+     * @return Resultados y plan con el que se han obtenido
+     */
+    default <T, R> QueryResult<R> query(Query<T> query, Function<? super T, ? extends R> projection) {
+        List<R> rows = new ArrayList<>();
+        long examined = 0;
+        if (query.getLimit() > 0) {
+            Iterator<T> all = stream(query.getEntityClass()).iterator();
+            while (all.hasNext() && rows.size() < query.getLimit()) {
+                T row = all.next();
+                examined++;
+                if (query.matches(row)) {
+                    rows.add(projection.apply(row));
+                }
+            }
+        }
+        return new QueryResult<>(rows, QueryResult.Plan.FULL_SCAN, null, examined);
+    }
+
     /**
      * Establece conexión con la base de datos.
      *
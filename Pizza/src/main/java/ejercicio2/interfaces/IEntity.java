@@ -0,0 +1,21 @@
+package ejercicio2.interfaces;
+
+/**
+ * Interfaz para las entidades persistentes del sistema.
+ * Permite a la base de datos leer y asignar el ID sin usar reflexión.
+ */
+public interface IEntity {
+    /**
+     * Obtiene el identificador único de la entidad.
+     *
+     * @return ID de la entidad o null si todavía no se ha guardado
+     */
+    Long getId();
+
+    /**
+     * Asigna el identificador único de la entidad.
+     *
+     * @param id ID de la entidad
+     */
+    void setId(Long id);
+}
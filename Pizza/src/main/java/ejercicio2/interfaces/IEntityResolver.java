@@ -0,0 +1,32 @@
+package ejercicio2.interfaces;
+
+/**
+ * Interfaz para resolver una referencia a otra entidad a partir de su clase
+ * y su ID, normalmente buscándola en la base de datos que la guarda.
+ */
+public interface IEntityResolver {
+    /**
+     * Generación de una base de datos que no avisa de sus cambios.
+     */
+    long NO_GENERATION = -1;
+
+    /**
+     * Obtiene la entidad referenciada.
+     *
+     * @param clazz Clase de la entidad
+     * @param id ID de la entidad
+     * @return Entidad o null si no existe
+     */
+    Object resolve(Class<?> clazz, long id);
+
+    /**
+     * Obtiene la generación de la base de datos, que cambia con cada escritura.
+     * Mientras no cambia, una entidad ya resuelta sigue siendo la actual.
+     * Por defecto no se ofrece, y cada resolución vuelve a buscar.
+     *
+     * @return Generación actual o NO_GENERATION si no se conoce
+     */
+    default long getGeneration() {
+        return NO_GENERATION;
+    }
+}
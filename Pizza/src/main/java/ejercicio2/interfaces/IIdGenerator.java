@@ -0,0 +1,46 @@
+package ejercicio2.interfaces;
+
+/**
+ * Interfaz para la estrategia con la que la base de datos asigna IDs a las
+ * entidades nuevas.
+ *
+ * Los IDs deben ser únicos y crecer aproximadamente con el tiempo, para que
+ * los índices ordenados por ID inserten casi siempre al final.
+ */
+public interface IIdGenerator {
+    /**
+     * Obtiene un ID nuevo.
+     *
+     * @return ID sin usar
+     */
+    long nextId();
+
+    /**
+     * Obtiene varios IDs nuevos de una vez.
+     *
+     * @param count Número de IDs
+     * @return IDs sin usar, en orden creciente
+     */
+    default long[] nextIds(int count) {
+        long[] ids = new long[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = nextId();
+        }
+        return ids;
+    }
+
+    /**
+     * Avisa de que un ID ya está en uso, por ejemplo al recuperar los datos
+     * del disco, para que no se vuelva a entregar.
+     *
+     * @param id ID en uso
+     */
+    void observe(long id);
+
+    /**
+     * Obtiene una cota de los IDs entregados: todos son menores que ella.
+     *
+     * @return Cota superior exclusiva
+     */
+    long getHighWaterMark();
+}
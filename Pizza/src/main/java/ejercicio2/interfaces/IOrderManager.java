@@ -1,8 +1,13 @@
 package ejercicio2.interfaces;
 
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import ejercicio2.exceptions.OrderException;
 import ejercicio2.model.Order;
+import ejercicio2.model.OrderStatus;
+import ejercicio2.model.Page;
 import ejercicio2.model.Pizza;
 import ejercicio2.model.User;
 
@@ -21,6 +26,15 @@ public interface IOrderManager {
      */
     Order createOrder(User user, List<Pizza> pizzas) throws OrderException;
 
+    /**
+     * Crea un nuevo pedido para un usuario sin bloquear el hilo que lo pide.
+     *
+     * @param user Usuario que realiza el pedido
+     * @param pizzas Lista de pizzas que contiene el pedido
+     * @return Futuro con el pedido creado, que falla con OrderException si los datos no son válidos
+     */
+    CompletableFuture<Order> createOrderAsync(User user, List<Pizza> pizzas);
+
     /**
      * Obtiene un pedido por su ID.
      *
@@ -39,12 +53,44 @@ public interface IOrderManager {
     List<Order> getUserOrders(User user);
 
     /**
-     * Actualiza el estado de un pedido.
+     * Obtiene una página de los pedidos de un usuario, del más reciente al más
+     * antiguo. El coste de cada página depende de su tamaño y no del número
+     * de pedidos del usuario ni del total.
+     *
+     * @param user Usuario del que se quieren obtener los pedidos
+     * @param cursor Cursor de la página anterior o null para empezar
+     * @param pageSize Número máximo de pedidos de la página
+     * @return Página con los pedidos y el cursor de la siguiente
+     * @throws OrderException Si el cursor o el tamaño de página no son válidos
+     */
+    Page<Order> getUserOrders(User user, String cursor, int pageSize) throws OrderException;
+
+    /**
+     * Obtiene los pedidos realizados en un intervalo de fechas, del más antiguo al más reciente.
+     *
+     * @param from Fecha inicial, incluida (null para no limitar)
+     * @param to Fecha final, excluida (null para no limitar)
+     * @return Lista de pedidos del intervalo
+     */
+    List<Order> getOrdersBetween(LocalDateTime from, LocalDateTime to);
+
+    /**
+     * Obtiene los pedidos más recientes, del más reciente al más antiguo.
+     *
+     * @param limit Número máximo de pedidos
+     * @return Lista de pedidos
+     * @throws OrderException Si el límite es negativo
+     */
+    List<Order> getLatestOrders(int limit) throws OrderException;
+
+    /**
+     * Actualiza el estado de un pedido si la transición desde su estado
+     * actual está permitida.
      *
      * @param orderId ID del pedido
      * @param status Nuevo estado del pedido
      * @return Pedido actualizado
-     * @throws OrderException Si hay un error al actualizar el pedido
+     * @throws OrderException Si el pedido no existe, el estado no es válido o la transición no está permitida
      */
     Order updateOrderStatus(Long orderId, String status) throws OrderException;
 
@@ -57,6 +103,26 @@ public interface IOrderManager {
      */
     boolean cancelOrder(Long orderId) throws OrderException;
 
+    /**
+     * Cambia el estado de un pedido si está en el estado esperado y la
+     * transición está permitida. Entre varios cambios concurrentes desde el
+     * mismo estado, solo uno se aplica y los demás fallan.
+     *
+     * @param orderId ID del pedido
+     * @param expected Estado en el que debe estar el pedido
+     * @param target Nuevo estado del pedido
+     * @return Pedido actualizado
+     * @throws OrderException Si el pedido no existe, no está en el estado esperado o la transición no está permitida
+     */
+    Order transitionStatus(Long orderId, OrderStatus expected, OrderStatus target) throws OrderException;
+
+    /**
+     * Obtiene el número de pedidos en cada estado.
+     *
+     * @return Número de pedidos por estado, con todos los estados
+     */
+    Map<OrderStatus, Integer> getStatusCounts();
+
     /**
      * Calcula el precio total de un pedido.
      *
@@ -2,6 +2,7 @@ package ejercicio2.interfaces;
 
 import ejercicio2.exceptions.PaymentException;
 import ejercicio2.model.Order;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Interfaz para el procesamiento de pagos.
@@ -9,7 +10,7 @@ import ejercicio2.model.Order;
  */
 public interface IPaymentProcessor {
     /**
-     * Procesa el pago de un pedido.
+     * Procesa el pago de un pedido, que pasa de PENDING a PROCESSING.
      *
      * @param order Pedido a pagar
      * @param cardNumber Número de tarjeta
@@ -20,6 +21,17 @@ public interface IPaymentProcessor {
      */
     String processPayment(Order order, String cardNumber, String expiryDate, String cvv) throws PaymentException;
 
+    /**
+     * Procesa el pago de un pedido sin bloquear el hilo que lo pide.
+     *
+     * @param order Pedido a pagar
+     * @param cardNumber Número de tarjeta
+     * @param expiryDate Fecha de expiración
+     * @param cvv Código de seguridad
+     * @return Futuro con el ID de la transacción, que falla con PaymentException si hay un error en el pago
+     */
+    CompletableFuture<String> processPaymentAsync(Order order, String cardNumber, String expiryDate, String cvv);
+
     /**
      * Verifica el estado de un pago.
      *
@@ -30,7 +42,7 @@ public interface IPaymentProcessor {
     String verifyPayment(String transactionId) throws PaymentException;
 
     /**
-     * Reembolsa un pago.
+     * Reembolsa un pago y cancela su pedido, que debe poder cancelarse.
      *
      * @param transactionId ID de la transacción a reembolsar
      * @return true si el reembolso fue exitoso, false si no
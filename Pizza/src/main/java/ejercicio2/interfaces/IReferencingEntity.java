@@ -0,0 +1,19 @@
+package ejercicio2.interfaces;
+
+/**
+ * Interfaz para las entidades que guardan sus referencias a otras entidades
+ * por ID y las resuelven al leerlas. La base de datos las enlaza al guardarlas
+ * o al cargarlas, de modo que una fila no retiene las entidades que referencia.
+ */
+public interface IReferencingEntity {
+    /**
+     * Enlaza la entidad con la base de datos por la que resolverá sus
+     * referencias y sustituye por su ID las instancias referenciadas que ya
+     * estén guardadas. Una entidad ya enlazada sigue resolviendo por la
+     * primera base de datos.
+     *
+     * @param resolver Resolución de referencias de la base de datos
+     * @return true si todas las referencias quedan guardadas por ID, false si alguna entidad referenciada no tiene ID
+     */
+    boolean attach(IEntityResolver resolver);
+}
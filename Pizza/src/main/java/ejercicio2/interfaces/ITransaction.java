@@ -0,0 +1,85 @@
+package ejercicio2.interfaces;
+
+import java.util.Optional;
+
+/**
+ * Interfaz para una transacción sobre la base de datos.
+ *
+ * Las escrituras se acumulan y se aplican todas a la vez al confirmar, de modo
+ * que ningún lector ve la transacción a medias. Las lecturas recuerdan la
+ * versión de cada fila leída y se validan al confirmar: si alguna ha cambiado,
+ * la confirmación falla y no se aplica nada. Una transacción confirmada ha
+ * visto, por tanto, un estado consistente de la base de datos.
+ *
+ * Una transacción solo debe usarse desde un hilo. Al cerrarla sin confirmar
+ * se deshace.
+ */
+public interface ITransaction extends AutoCloseable {
+    /**
+     * Guarda un objeto al confirmar la transacción. El ID se asigna en el momento.
+     *
+     * @param <T> Tipo del objeto a guardar
+     * @param object Objeto a guardar
+     * @return El objeto con su ID asignado
+     */
+    <T> T save(T object);
+
+    /**
+     * Busca un objeto por su ID. Devuelve la escritura pendiente de la propia
+     * transacción si la hay y, si no, la fila guardada, cuya versión se recuerda
+     * para validarla al confirmar. Repetir la lectura devuelve el mismo objeto.
+     * Los objetos devueltos son los guardados: para modificarlos hay que hacerlo
+     * sobre una copia y pasarla a update.
+     *
+     * @param <T> Tipo del objeto a buscar
+     * @param id ID del objeto
+     * @param clazz Clase del objeto
+     * @return Optional con el objeto encontrado o vacío si no existe
+     */
+    <T> Optional<T> findById(Long id, Class<T> clazz);
+
+    /**
+     * Actualiza un objeto existente al confirmar la transacción.
+     *
+     * @param <T> Tipo del objeto a actualizar
+     * @param object Objeto con los datos actualizados
+     * @return El objeto actualizado
+     */
+    <T> T update(T object);
+
+    /**
+     * Elimina un objeto al confirmar la transacción.
+     *
+     * @param <T> Tipo del objeto a eliminar
+     * @param id ID del objeto a eliminar
+     * @param clazz Clase del objeto
+     * @return true si el objeto existía para la transacción, false si no
+     */
+    <T> boolean delete(Long id, Class<T> clazz);
+
+    /**
+     * Aplica de forma atómica todas las escrituras de la transacción.
+     *
+     * @throws ejercicio2.exceptions.VersionConflictException Si alguna fila leída o actualizada ha cambiado
+     * @throws IllegalArgumentException Si alguna fila a actualizar ya no existe
+     */
+    void commit();
+
+    /**
+     * Descarta las escrituras de la transacción.
+     */
+    void rollback();
+
+    /**
+     * Indica si la transacción sigue abierta.
+     *
+     * @return true si no se ha confirmado ni deshecho, false si no
+     */
+    boolean isActive();
+
+    /**
+     * Deshace la transacción si sigue abierta.
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,64 @@
+package ejercicio2.model;
+
+/**
+ * Clase que representa los contadores de una caché en un momento dado.
+ */
+public class CacheStats {
+    private final long hitCount;
+    private final long missCount;
+    private final long evictionCount;
+    private final long size;
+
+    /**
+     * Constructor completo.
+     *
+     * @param hitCount Lecturas servidas desde la caché
+     * @param missCount Lecturas que han tenido que ir al almacenamiento
+     * @param evictionCount Entradas expulsadas por falta de espacio
+     * @param size Entradas en la caché
+     */
+    public CacheStats(long hitCount, long missCount, long evictionCount, long size) {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.evictionCount = evictionCount;
+        this.size = size;
+    }
+
+    /**
+     * Calcula la proporción de lecturas servidas desde la caché.
+     *
+     * @return Proporción entre 0 y 1, o 0 si no ha habido lecturas
+     */
+    public double getHitRate() {
+        long requests = hitCount + missCount;
+        return requests == 0 ? 0 : (double) hitCount / requests;
+    }
+
+    // Getters
+
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    public long getMissCount() {
+        return missCount;
+    }
+
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStats{" +
+                "hitCount=" + hitCount +
+                ", missCount=" + missCount +
+                ", evictionCount=" + evictionCount +
+                ", size=" + size +
+                '}';
+    }
+}
@@ -0,0 +1,66 @@
+package ejercicio2.model;
+
+/**
+ * Clase que representa un cambio confirmado sobre una fila de la base de datos.
+ * Los cambios se numeran con una secuencia global creciente, que permite a un
+ * suscriptor retomar el flujo de cambios donde lo dejó.
+ */
+public class ChangeEvent {
+
+    /**
+     * Tipo de cambio.
+     */
+    public enum Operation {
+        INSERT,
+        UPDATE,
+        DELETE
+    }
+
+    private final long sequence;
+    private final Class<?> table;
+    private final long id;
+    private final Operation operation;
+
+    /**
+     * Constructor completo.
+     *
+     * @param sequence Número de secuencia del cambio
+     * @param table Clase de las entidades de la tabla modificada
+     * @param id ID de la fila modificada
+     * @param operation Tipo de cambio
+     */
+    public ChangeEvent(long sequence, Class<?> table, long id, Operation operation) {
+        this.sequence = sequence;
+        this.table = table;
+        this.id = id;
+        this.operation = operation;
+    }
+
+    // Getters
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public Class<?> getTable() {
+        return table;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public Operation getOperation() {
+        return operation;
+    }
+
+    @Override
+    public String toString() {
+        return "ChangeEvent{" +
+                "sequence=" + sequence +
+                ", table=" + table.getSimpleName() +
+                ", id=" + id +
+                ", operation=" + operation +
+                '}';
+    }
+}
@@ -1,28 +1,49 @@
 package ejercicio2.model;
 
+import ejercicio2.interfaces.IEntity;
+import ejercicio2.interfaces.IEntityResolver;
+import ejercicio2.interfaces.IReferencingEntity;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Clase que representa un pedido en el sistema.
+ *
+ * El pedido guarda su usuario y sus pizzas por ID. Mientras no se ha guardado
+ * conserva las instancias que se le asignan; al guardarlo, la base de datos lo
+ * enlaza y desde entonces getUser() y getPizzas() las buscan en ella. Lo que
+ * encuentran se guarda en el pedido junto con la generación de la base de
+ * datos, y se vuelve a buscar cuando esta cambia, de modo que la fila nunca
+ * devuelve versiones antiguas de las entidades que referencia. Las pizzas que
+ * ya no existen se omiten, igual que al leer un pedido por JDBC.
  */
-public class Order {
+public class Order implements IEntity, IReferencingEntity {
+    private static final long[] NO_PIZZAS = new long[0];
+
     private Long id;
-    private User user;
-    private List<Pizza> pizzas;
+    private Long userId;
+    private long[] pizzaIds; // Nunca se modifica: las copias lo comparten
     private LocalDateTime orderDate;
-    private String status; // PENDING, PROCESSING, DELIVERED, CANCELLED
+    private OrderStatus status;
     private double totalPrice;
     private String paymentTransactionId;
+    private transient User user; // Instancias asignadas que aún no se han sustituido por su ID
+    private transient List<Pizza> pizzas;
+    private transient volatile IEntityResolver resolver;
+    private transient volatile Resolved<User> resolvedUser; // Referencias ya buscadas, con su generación
+    private transient volatile Resolved<List<Pizza>> resolvedPizzas;
 
     /**
      * Constructor por defecto.
      */
     public Order() {
-        this.pizzas = new ArrayList<>();
+        this.pizzaIds = NO_PIZZAS;
         this.orderDate = LocalDateTime.now();
-        this.status = "PENDING";
+        this.status = OrderStatus.PENDING;
     }
 
     /**
@@ -33,9 +54,10 @@ public class Order {
      */
     public Order(User user, List<Pizza> pizzas) {
         this.user = user;
+        this.pizzaIds = NO_PIZZAS;
         this.pizzas = pizzas != null ? pizzas : new ArrayList<>();
         this.orderDate = LocalDateTime.now();
-        this.status = "PENDING";
+        this.status = OrderStatus.PENDING;
         calculateTotalPrice();
     }
 
@@ -46,28 +68,32 @@ public class Order {
      * @param user Usuario que realiza el pedido
      * @param pizzas Lista de pizzas en el pedido
      * @param orderDate Fecha y hora del pedido
-     * @param status Estado del pedido
+     * @param status Nombre del estado del pedido
      * @param totalPrice Precio total del pedido
      * @param paymentTransactionId ID de la transacción de pago
+     * @throws IllegalArgumentException Si el estado no es un OrderStatus
      */
     public Order(Long id, User user, List<Pizza> pizzas, LocalDateTime orderDate,
                  String status, double totalPrice, String paymentTransactionId) {
         this.id = id;
         this.user = user;
+        this.pizzaIds = NO_PIZZAS;
         this.pizzas = pizzas != null ? pizzas : new ArrayList<>();
         this.orderDate = orderDate != null ? orderDate : LocalDateTime.now();
-        this.status = status;
+        this.status = parseStatus(status);
         this.totalPrice = totalPrice;
         this.paymentTransactionId = paymentTransactionId;
     }
 
     /**
-     * Calcula el precio total del pedido.
+     * Calcula el precio total del pedido. Las pizzas que ya no existen no cuentan.
      */
     public void calculateTotalPrice() {
         this.totalPrice = 0;
-        for (Pizza pizza : pizzas) {
-            this.totalPrice += pizza.getPrice();
+        for (Pizza pizza : getPizzas()) {
+            if (pizza != null) {
+                this.totalPrice += pizza.getPrice();
+            }
         }
     }
 
@@ -79,40 +105,227 @@ public class Order {
      */
     public Order addPizza(Pizza pizza) {
         if (pizzas == null) {
-            pizzas = new ArrayList<>();
+            pizzas = resolvePizzas();
         }
         pizzas.add(pizza);
         calculateTotalPrice();
         return this;
     }
 
+    /**
+     * Crea una copia del pedido, para modificarla sin afectar a la instancia
+     * guardada en la base de datos. La copia comparte los IDs referenciados y
+     * resuelve por la misma base de datos, así que copiar no recorre las pizzas.
+     *
+     * @return Copia del pedido
+     */
+    public Order copy() {
+        Order copy = new Order();
+        copy.id = id;
+        copy.userId = userId;
+        copy.pizzaIds = pizzaIds;
+        copy.orderDate = orderDate;
+        copy.status = status;
+        copy.totalPrice = totalPrice;
+        copy.paymentTransactionId = paymentTransactionId;
+        copy.user = user;
+        copy.pizzas = pizzas != null ? new ArrayList<>(pizzas) : null;
+        copy.resolver = resolver;
+        copy.resolvedUser = resolvedUser;
+        copy.resolvedPizzas = resolvedPizzas;
+        return copy;
+    }
+
+    @Override
+    public boolean attach(IEntityResolver resolver) {
+        boolean userComplete = true;
+        User assignedUser = user;
+        if (assignedUser != null) {
+            userId = assignedUser.getId();
+            userComplete = userId != null;
+            if (userComplete) {
+                user = null;
+            }
+        }
+
+        boolean pizzasComplete = true;
+        List<Pizza> assignedPizzas = pizzas;
+        if (assignedPizzas != null) {
+            long[] ids = new long[assignedPizzas.size()];
+            for (int i = 0; i < ids.length && pizzasComplete; i++) {
+                Pizza pizza = assignedPizzas.get(i);
+                pizzasComplete = pizza != null && pizza.getId() != null;
+                if (pizzasComplete) {
+                    ids[i] = pizza.getId();
+                }
+            }
+            if (pizzasComplete) {
+                pizzaIds = ids.length > 0 ? ids : NO_PIZZAS;
+                pizzas = null;
+            }
+        }
+
+        if (this.resolver == null) {
+            this.resolver = resolver;
+        }
+        resolvedUser = null;
+        resolvedPizzas = null;
+        return userComplete && pizzasComplete;
+    }
+
+    /**
+     * Resuelve las pizzas guardadas por ID. Las pizzas repetidas se buscan
+     * una sola vez por llamada.
+     *
+     * @return Nueva lista con las pizzas, sin las que ya no existen
+     */
+    private List<Pizza> resolvePizzas() {
+        long[] ids = pizzaIds;
+        List<Pizza> resolved = new ArrayList<>(ids.length);
+        IEntityResolver current = resolver;
+        if (ids.length == 0 || current == null) {
+            return resolved;
+        }
+        Map<Long, Pizza> seen = new HashMap<>();
+        for (long pizzaId : ids) {
+            Pizza pizza = seen.get(pizzaId);
+            if (pizza == null && !seen.containsKey(pizzaId)) {
+                pizza = (Pizza) current.resolve(Pizza.class, pizzaId);
+                seen.put(pizzaId, pizza);
+            }
+            if (pizza != null) {
+                resolved.add(pizza);
+            }
+        }
+        return resolved;
+    }
+
     // Getters y setters
 
+    @Override
     public Long getId() {
         return id;
     }
 
+    @Override
     public void setId(Long id) {
         this.id = id;
     }
 
+    /**
+     * Obtiene el usuario del pedido. Si el pedido está enlazado, se busca en
+     * la base de datos la primera vez y de nuevo solo si esta ha cambiado.
+     *
+     * @return Usuario o null si no tiene o ya no existe
+     */
     public User getUser() {
-        return user;
+        User assigned = user;
+        if (assigned != null) {
+            return assigned;
+        }
+        Long reference = userId;
+        IEntityResolver current = resolver;
+        if (reference == null || current == null) {
+            return null;
+        }
+        // La generación se lee antes de buscar: si cambia mientras tanto, la siguiente llamada vuelve a buscar
+        long generation = current.getGeneration();
+        Resolved<User> cached = resolvedUser;
+        if (cached != null && cached.isCurrent(generation)) {
+            return cached.value;
+        }
+        User found = (User) current.resolve(User.class, reference);
+        resolvedUser = new Resolved<>(generation, found);
+        return found;
     }
 
     public void setUser(User user) {
         this.user = user;
+        this.userId = user != null ? user.getId() : null;
+        this.resolvedUser = null;
     }
 
+    public Long getUserId() {
+        User assigned = user;
+        return assigned != null ? assigned.getId() : userId;
+    }
+
+    public void setUserId(Long userId) {
+        this.user = null;
+        this.userId = userId;
+        this.resolvedUser = null;
+    }
+
+    /**
+     * Obtiene las pizzas del pedido. Si el pedido está enlazado, se buscan en
+     * la base de datos la primera vez y de nuevo solo si esta ha cambiado, y
+     * la lista no se puede modificar; para cambiarlas hay que usar addPizza o
+     * setPizzas.
+     *
+     * @return Lista de pizzas
+     */
     public List<Pizza> getPizzas() {
-        return pizzas;
+        List<Pizza> assigned = pizzas;
+        if (assigned != null) {
+            return assigned;
+        }
+        IEntityResolver current = resolver;
+        if (current == null) {
+            // Sin enlazar la lista es la del pedido, como al construirlo
+            pizzas = resolvePizzas();
+            return pizzas;
+        }
+        long generation = current.getGeneration();
+        Resolved<List<Pizza>> cached = resolvedPizzas;
+        if (cached != null && cached.isCurrent(generation)) {
+            return cached.value;
+        }
+        List<Pizza> found = Collections.unmodifiableList(resolvePizzas());
+        resolvedPizzas = new Resolved<>(generation, found);
+        return found;
     }
 
     public void setPizzas(List<Pizza> pizzas) {
-        this.pizzas = pizzas;
+        this.pizzas = pizzas != null ? pizzas : new ArrayList<>();
+        this.resolvedPizzas = null;
         calculateTotalPrice();
     }
 
+    /**
+     * Obtiene los IDs de las pizzas del pedido, en orden.
+     *
+     * @return Lista inmutable de IDs, con null en las pizzas que no están guardadas
+     */
+    public List<Long> getPizzaIds() {
+        List<Pizza> assigned = pizzas;
+        List<Long> ids = new ArrayList<>();
+        if (assigned != null) {
+            for (Pizza pizza : assigned) {
+                ids.add(pizza != null ? pizza.getId() : null);
+            }
+        } else {
+            for (long pizzaId : pizzaIds) {
+                ids.add(pizzaId);
+            }
+        }
+        return Collections.unmodifiableList(ids);
+    }
+
+    /**
+     * Sustituye las pizzas del pedido por sus IDs. No recalcula el precio.
+     *
+     * @param pizzaIds IDs de las pizzas, en orden
+     */
+    public void setPizzaIds(List<Long> pizzaIds) {
+        long[] ids = new long[pizzaIds != null ? pizzaIds.size() : 0];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = pizzaIds.get(i);
+        }
+        this.pizzas = null;
+        this.pizzaIds = ids.length > 0 ? ids : NO_PIZZAS;
+        this.resolvedPizzas = null;
+    }
+
     public LocalDateTime getOrderDate() {
         return orderDate;
     }
@@ -121,14 +334,44 @@ public class Order {
         this.orderDate = orderDate;
     }
 
+    /**
+     * Obtiene el nombre del estado del pedido.
+     *
+     * @return Nombre del estado o null si no tiene
+     */
     public String getStatus() {
-        return status;
+        return status != null ? status.name() : null;
     }
 
+    /**
+     * Establece el estado del pedido por su nombre.
+     *
+     * @param status Nombre del estado
+     * @throws IllegalArgumentException Si el nombre no es un OrderStatus
+     */
     public void setStatus(String status) {
+        this.status = parseStatus(status);
+    }
+
+    public OrderStatus getOrderStatus() {
+        return status;
+    }
+
+    public void setOrderStatus(OrderStatus status) {
         this.status = status;
     }
 
+    private static OrderStatus parseStatus(String name) {
+        if (name == null) {
+            return null;
+        }
+        OrderStatus parsed = OrderStatus.fromName(name);
+        if (parsed == null) {
+            throw new IllegalArgumentException("Estado no válido: " + name);
+        }
+        return parsed;
+    }
+
     public double getTotalPrice() {
         return totalPrice;
     }
@@ -149,12 +392,30 @@ public class Order {
     public String toString() {
         return "Order{" +
                 "id=" + id +
-                ", user=" + user +
-                ", pizzas=" + pizzas +
+                ", userId=" + getUserId() +
+                ", pizzaIds=" + getPizzaIds() +
                 ", orderDate=" + orderDate +
                 ", status='" + status + '\'' +
                 ", totalPrice=" + totalPrice +
                 ", paymentTransactionId='" + paymentTransactionId + '\'' +
                 '}';
     }
-}
\ No newline at end of file
+
+    /**
+     * Referencia resuelta junto con la generación de la base de datos en la
+     * que se buscó.
+     */
+    private static final class Resolved<V> {
+        private final long generation;
+        private final V value;
+
+        Resolved(long generation, V value) {
+            this.generation = generation;
+            this.value = value;
+        }
+
+        boolean isCurrent(long current) {
+            return generation != IEntityResolver.NO_GENERATION && generation == current;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package ejercicio2.model;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Estados de un pedido y transiciones permitidas entre ellos:
+ * PENDING pasa a PROCESSING o CANCELLED, PROCESSING pasa a DELIVERED o
+ * CANCELLED, y DELIVERED y CANCELLED son finales.
+ */
+public enum OrderStatus {
+    PENDING,
+    PROCESSING,
+    DELIVERED,
+    CANCELLED;
+
+    private static final Map<OrderStatus, Set<OrderStatus>> TRANSITIONS = new EnumMap<>(OrderStatus.class);
+
+    static {
+        TRANSITIONS.put(PENDING, Collections.unmodifiableSet(EnumSet.of(PROCESSING, CANCELLED)));
+        TRANSITIONS.put(PROCESSING, Collections.unmodifiableSet(EnumSet.of(DELIVERED, CANCELLED)));
+        TRANSITIONS.put(DELIVERED, Collections.unmodifiableSet(EnumSet.noneOf(OrderStatus.class)));
+        TRANSITIONS.put(CANCELLED, Collections.unmodifiableSet(EnumSet.noneOf(OrderStatus.class)));
+    }
+
+    /**
+     * Comprueba si un pedido en este estado puede pasar a otro.
+     *
+     * @param target Estado destino
+     * @return true si la transición está permitida, false si no
+     */
+    public boolean canTransitionTo(OrderStatus target) {
+        return target != null && TRANSITIONS.get(this).contains(target);
+    }
+
+    /**
+     * Obtiene los estados a los que puede pasar un pedido en este estado.
+     *
+     * @return Conjunto inmutable de estados, vacío si el estado es final
+     */
+    public Set<OrderStatus> getTransitions() {
+        return TRANSITIONS.get(this);
+    }
+
+    public boolean isFinal() {
+        return TRANSITIONS.get(this).isEmpty();
+    }
+
+    /**
+     * Obtiene el estado con un nombre.
+     *
+     * @param name Nombre del estado
+     * @return Estado o null si el nombre es nulo o no corresponde a ningún estado
+     */
+    public static OrderStatus fromName(String name) {
+        if (name == null) {
+            return null;
+        }
+        try {
+            return valueOf(name);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package ejercicio2.model;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Clase que representa una página de resultados de un recorrido por cursor.
+ *
+ * @param <T> Tipo de los elementos de la página
+ */
+public class Page<T> {
+    private final List<T> items;
+    private final String nextCursor;
+
+    /**
+     * Constructor completo.
+     *
+     * @param items Elementos de la página
+     * @param nextCursor Cursor para pedir la página siguiente o null si es la última
+     */
+    public Page(List<T> items, String nextCursor) {
+        this.items = items != null ? Collections.unmodifiableList(items) : Collections.emptyList();
+        this.nextCursor = nextCursor;
+    }
+
+    /**
+     * Indica si hay más páginas después de esta.
+     *
+     * @return true si hay página siguiente, false si no
+     */
+    public boolean hasNext() {
+        return nextCursor != null;
+    }
+
+    // Getters
+
+    public List<T> getItems() {
+        return items;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    @Override
+    public String toString() {
+        return "Page{" +
+                "items=" + items +
+                ", nextCursor='" + nextCursor + '\'' +
+                '}';
+    }
+}
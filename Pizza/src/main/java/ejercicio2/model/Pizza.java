@@ -1,12 +1,13 @@
 package ejercicio2.model;
 
+import ejercicio2.interfaces.IEntity;
 import java.util.ArrayList;
 import java.util.List;
 
 /**
  * Clase que representa una pizza en el sistema de pedidos.
  */
-public class Pizza {
+public class Pizza implements IEntity {
     private Long id;
     private String name;
     private String size;
@@ -67,10 +68,12 @@ public class Pizza {
 
     // Getters y setters
 
+    @Override
     public Long getId() {
         return id;
     }
 
+    @Override
     public void setId(Long id) {
         this.id = id;
     }
@@ -0,0 +1,222 @@
+package ejercicio2.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Clase que representa una consulta sobre las entidades de una clase:
+ * condiciones sobre atributos con nombre, un filtro libre y un límite.
+ *
+ * Las condiciones llevan el nombre del atributo para que la base de datos
+ * pueda usar un índice con ese nombre si existe; el índice debe haberse
+ * creado con la misma función que la condición. El filtro libre siempre se
+ * evalúa fila a fila.
+ *
+ * Ejemplo: Query.from(Order.class).whereEquals("status", Order::getStatus, "PROCESSING")
+ *     .filter(o -> o.getTotalPrice() > 50).limit(100)
+ *
+ * @param <T> Tipo de las entidades consultadas
+ */
+public class Query<T> {
+
+    private final Class<T> entityClass;
+    private final List<Condition<T>> conditions;
+    private Predicate<? super T> filter;
+    private int limit;
+
+    private Query(Class<T> entityClass) {
+        this.entityClass = entityClass;
+        this.conditions = new ArrayList<>();
+        this.limit = Integer.MAX_VALUE;
+    }
+
+    /**
+     * Empieza una consulta sobre una clase.
+     *
+     * @param entityClass Clase de las entidades
+     * @param <T> Tipo de las entidades
+     * @return Consulta sin condiciones
+     */
+    public static <T> Query<T> from(Class<T> entityClass) {
+        if (entityClass == null) {
+            throw new IllegalArgumentException("La clase de la consulta no puede ser nula");
+        }
+        return new Query<>(entityClass);
+    }
+
+    /**
+     * Añade una condición de igualdad sobre un atributo.
+     *
+     * @param attribute Nombre del atributo, que coincide con el del índice si lo hay
+     * @param extractor Función que obtiene el atributo de una entidad
+     * @param value Valor buscado
+     * @return Esta consulta
+     */
+    public Query<T> whereEquals(String attribute, Function<? super T, ?> extractor, Object value) {
+        conditions.add(new Condition<>(attribute, extractor, value, null, null, false));
+        return this;
+    }
+
+    /**
+     * Añade una condición de rango [from, to) sobre un atributo ordenable.
+     * Un extremo nulo no limita el rango.
+     *
+     * @param attribute Nombre del atributo, que coincide con el del índice ordenado si lo hay
+     * @param extractor Función que obtiene el atributo de una entidad
+     * @param from Valor mínimo, incluido
+     * @param to Valor máximo, excluido
+     * @return Esta consulta
+     */
+    public Query<T> whereBetween(String attribute, Function<? super T, ? extends Comparable<?>> extractor,
+                                 Comparable<?> from, Comparable<?> to) {
+        conditions.add(new Condition<>(attribute, extractor, null, from, to, true));
+        return this;
+    }
+
+    /**
+     * Añade un filtro libre, que se combina con los anteriores.
+     *
+     * @param predicate Condición que deben cumplir las entidades
+     * @return Esta consulta
+     */
+    public Query<T> filter(Predicate<? super T> predicate) {
+        if (predicate == null) {
+            throw new IllegalArgumentException("El filtro no puede ser nulo");
+        }
+        Predicate<? super T> previous = filter;
+        this.filter = previous == null ? predicate : row -> previous.test(row) && predicate.test(row);
+        return this;
+    }
+
+    /**
+     * Limita el número de resultados. Sin un orden, cuáles se devuelven
+     * depende de cómo se recorra la tabla.
+     *
+     * @param limit Número máximo de resultados
+     * @return Esta consulta
+     */
+    public Query<T> limit(int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("El límite no puede ser negativo");
+        }
+        this.limit = limit;
+        return this;
+    }
+
+    /**
+     * Comprueba si una entidad cumple todas las condiciones y el filtro.
+     *
+     * @param row Entidad
+     * @return true si la cumple, false si no
+     */
+    public boolean matches(T row) {
+        for (Condition<T> condition : conditions) {
+            if (!condition.matches(row)) {
+                return false;
+            }
+        }
+        return filter == null || filter.test(row);
+    }
+
+    // Getters
+
+    public Class<T> getEntityClass() {
+        return entityClass;
+    }
+
+    public List<Condition<T>> getConditions() {
+        return Collections.unmodifiableList(conditions);
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    @Override
+    public String toString() {
+        return "Query{" +
+                "entityClass=" + entityClass.getSimpleName() +
+                ", conditions=" + conditions +
+                ", filter=" + (filter != null) +
+                ", limit=" + limit +
+                '}';
+    }
+
+    /**
+     * Condición sobre un atributo con nombre: igualdad o rango.
+     *
+     * @param <T> Tipo de las entidades
+     */
+    public static final class Condition<T> {
+        private final String attribute;
+        private final Function<? super T, ?> extractor;
+        private final Object value;
+        private final Comparable<?> from;
+        private final Comparable<?> to;
+        private final boolean range;
+
+        private Condition(String attribute, Function<? super T, ?> extractor, Object value,
+                          Comparable<?> from, Comparable<?> to, boolean range) {
+            if (attribute == null || extractor == null) {
+                throw new IllegalArgumentException("La condición necesita un atributo y una función");
+            }
+            this.attribute = attribute;
+            this.extractor = extractor;
+            this.value = value;
+            this.from = from;
+            this.to = to;
+            this.range = range;
+        }
+
+        /**
+         * Comprueba si una entidad cumple la condición.
+         *
+         * @param row Entidad
+         * @return true si la cumple, false si no
+         */
+        @SuppressWarnings("unchecked")
+        public boolean matches(T row) {
+            Object key = extractor.apply(row);
+            if (!range) {
+                return Objects.equals(key, value);
+            }
+            if (key == null) {
+                return false;
+            }
+            Comparable<Object> comparable = (Comparable<Object>) key;
+            return (from == null || comparable.compareTo(from) >= 0)
+                    && (to == null || comparable.compareTo(to) < 0);
+        }
+
+        // Getters
+
+        public String getAttribute() {
+            return attribute;
+        }
+
+        public boolean isRange() {
+            return range;
+        }
+
+        public Object getValue() {
+            return value;
+        }
+
+        public Comparable<?> getFrom() {
+            return from;
+        }
+
+        public Comparable<?> getTo() {
+            return to;
+        }
+
+        @Override
+        public String toString() {
+            return range ? attribute + " en [" + from + ", " + to + ")" : attribute + " = " + value;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package ejercicio2.model;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Clase que representa el resultado de una consulta junto con el plan con
+ * el que se ha ejecutado.
+ *
+ * @param <R> Tipo de los resultados
+ */
+public class QueryResult<R> {
+
+    /**
+     * Forma en que se han encontrado las filas.
+     */
+    public enum Plan {
+        /** Búsqueda por clave en un índice. */
+        INDEX_LOOKUP,
+        /** Recorrido de un rango de un índice ordenado. */
+        INDEX_RANGE,
+        /** Recorrido paralelo de todos los segmentos de la tabla. */
+        PARALLEL_SCAN,
+        /** Recorrido secuencial de todas las filas. */
+        FULL_SCAN
+    }
+
+    private final List<R> rows;
+    private final Plan plan;
+    private final String indexName;
+    private final long examinedRows;
+
+    /**
+     * Constructor completo.
+     *
+     * @param rows Resultados
+     * @param plan Plan elegido
+     * @param indexName Índice usado o null si no se ha usado ninguno
+     * @param examinedRows Filas comprobadas para obtener los resultados
+     */
+    public QueryResult(List<R> rows, Plan plan, String indexName, long examinedRows) {
+        this.rows = rows != null ? Collections.unmodifiableList(rows) : Collections.emptyList();
+        this.plan = plan;
+        this.indexName = indexName;
+        this.examinedRows = examinedRows;
+    }
+
+    /**
+     * Describe el plan en una línea, para registros y diagnósticos.
+     *
+     * @return Descripción del plan
+     */
+    public String describePlan() {
+        return (indexName != null ? plan + "(" + indexName + ")" : plan.toString())
+                + ": " + examinedRows + " filas examinadas, " + rows.size() + " resultados";
+    }
+
+    // Getters
+
+    public List<R> getRows() {
+        return rows;
+    }
+
+    public Plan getPlan() {
+        return plan;
+    }
+
+    public String getIndexName() {
+        return indexName;
+    }
+
+    public long getExaminedRows() {
+        return examinedRows;
+    }
+
+    @Override
+    public String toString() {
+        return "QueryResult{" +
+                "rows=" + rows +
+                ", plan=" + describePlan() +
+                '}';
+    }
+}
@@ -0,0 +1,73 @@
+package ejercicio2.model;
+
+/**
+ * Clase que representa el tamaño de una tabla y las filas que ha expulsado
+ * su política de retención en un momento dado.
+ */
+public class TableStats {
+    private final Class<?> entityClass;
+    private final long size;
+    private final long expiredCount;
+    private final long capacityEvictionCount;
+    private final long overflowCount;
+
+    /**
+     * Constructor completo.
+     *
+     * @param entityClass Clase de las entidades de la tabla
+     * @param size Filas en la tabla
+     * @param expiredCount Filas expulsadas por antigüedad
+     * @param capacityEvictionCount Filas expulsadas por superar el número máximo
+     * @param overflowCount Filas enviadas al almacén de desbordamiento
+     */
+    public TableStats(Class<?> entityClass, long size, long expiredCount, long capacityEvictionCount,
+                      long overflowCount) {
+        this.entityClass = entityClass;
+        this.size = size;
+        this.expiredCount = expiredCount;
+        this.capacityEvictionCount = capacityEvictionCount;
+        this.overflowCount = overflowCount;
+    }
+
+    /**
+     * Obtiene el total de filas expulsadas.
+     *
+     * @return Filas expulsadas por cualquier motivo
+     */
+    public long getEvictionCount() {
+        return expiredCount + capacityEvictionCount;
+    }
+
+    // Getters
+
+    public Class<?> getEntityClass() {
+        return entityClass;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getExpiredCount() {
+        return expiredCount;
+    }
+
+    public long getCapacityEvictionCount() {
+        return capacityEvictionCount;
+    }
+
+    public long getOverflowCount() {
+        return overflowCount;
+    }
+
+    @Override
+    public String toString() {
+        return "TableStats{" +
+                "entityClass=" + entityClass.getSimpleName() +
+                ", size=" + size +
+                ", expiredCount=" + expiredCount +
+                ", capacityEvictionCount=" + capacityEvictionCount +
+                ", overflowCount=" + overflowCount +
+                '}';
+    }
+}
@@ -1,9 +1,11 @@
 package ejercicio2.model;
 
+import ejercicio2.interfaces.IEntity;
+
 /**
  * Clase que representa a un usuario del sistema de pedidos.
  */
-public class User {
+public class User implements IEntity {
     private Long id;
     private String username;
     private String password; // En una aplicación real se guardaría encriptada
@@ -51,10 +53,12 @@ public class User {
 
     // Getters y setters
 
+    @Override
     public Long getId() {
         return id;
     }
 
+    @Override
     public void setId(Long id) {
         this.id = id;
     }
@@ -0,0 +1,42 @@
+package ejercicio2.model;
+
+/**
+ * Clase que representa una entidad leída junto con la versión de su fila.
+ * La versión permite actualizar después la entidad solo si nadie la ha
+ * modificado entretanto.
+ *
+ * @param <T> Tipo de la entidad
+ */
+public class Versioned<T> {
+    private final T entity;
+    private final long version;
+
+    /**
+     * Constructor completo.
+     *
+     * @param entity Entidad leída
+     * @param version Versión de la fila
+     */
+    public Versioned(T entity, long version) {
+        this.entity = entity;
+        this.version = version;
+    }
+
+    // Getters
+
+    public T getEntity() {
+        return entity;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    @Override
+    public String toString() {
+        return "Versioned{" +
+                "entity=" + entity +
+                ", version=" + version +
+                '}';
+    }
+}
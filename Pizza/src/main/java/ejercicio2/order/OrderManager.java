@@ -1,53 +1,92 @@
 package ejercicio2.order;
 
+import ejercicio2.database.AsyncDataBaseManager;
 import ejercicio2.exceptions.OrderException;
+import ejercicio2.exceptions.VersionConflictException;
+import ejercicio2.interfaces.IAsyncDataBaseManager;
 import ejercicio2.interfaces.IDataBaseManager;
 import ejercicio2.interfaces.IOrderManager;
+import ejercicio2.interfaces.ITransaction;
 import ejercicio2.model.Order;
+import ejercicio2.model.OrderStatus;
+import ejercicio2.model.Page;
 import ejercicio2.model.Pizza;
 import ejercicio2.model.User;
+import ejercicio2.model.Versioned;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Implementación de IOrderManager para manejar los pedidos.
  */
 public class OrderManager implements IOrderManager {
 
+    private static final String USER_INDEX = "userId";
+    private static final String DATE_INDEX = "orderDate";
+    private static final String USER_HISTORY_INDEX = "userOrderDate";
+    private static final String STATUS_INDEX = "orderStatus";
+
     private final IDataBaseManager dbManager;
+    private final IAsyncDataBaseManager asyncDbManager;
 
     /**
-     * Constructor con inyección de dependencia.
+     * Constructor con inyección de dependencia. Las operaciones asíncronas
+     * se ejecutan en el pool común de ForkJoin.
      *
      * @param dbManager Gestor de base de datos
      */
     public OrderManager(IDataBaseManager dbManager) {
+        this(dbManager, new AsyncDataBaseManager(dbManager, ForkJoinPool.commonPool()));
+    }
+
+    /**
+     * Constructor con inyección de dependencia.
+     * Declara el índice de pedidos por usuario que usa getUserOrders, el
+     * índice ordenado por usuario y fecha de su versión paginada y el índice
+     * ordenado por fecha de las consultas por intervalo, y el índice por
+     * estado del que salen los contadores de getStatusCounts.
+     *
+     * @param dbManager Gestor de base de datos
+     * @param asyncDbManager Gestor asíncrono sobre la misma base de datos, para las operaciones asíncronas
+     */
+    public OrderManager(IDataBaseManager dbManager, IAsyncDataBaseManager asyncDbManager) {
         this.dbManager = dbManager;
+        this.asyncDbManager = asyncDbManager;
+        this.dbManager.createIndex(USER_INDEX, Order.class, Order::getUserId);
+        this.dbManager.createSortedIndex(DATE_INDEX, Order.class, Order::getOrderDate);
+        this.dbManager.createSortedIndex(USER_HISTORY_INDEX, Order.class, UserOrderKey::of);
+        this.dbManager.createIndex(STATUS_INDEX, Order.class, Order::getOrderStatus);
     }
 
     @Override
     public Order createOrder(User user, List<Pizza> pizzas) throws OrderException {
-        if (user == null) {
-            throw new OrderException("El usuario no puede ser nulo");
-        }
+        validateNewOrder(user, pizzas);
 
-        if (pizzas == null || pizzas.isEmpty()) {
-            throw new OrderException("El pedido debe contener al menos una pizza");
+        // Las pizzas y el pedido se guardan juntos: o se ven todos o ninguno
+        try (ITransaction transaction = dbManager.beginTransaction()) {
+            Order order = saveOrder(transaction, user, pizzas);
+            transaction.commit();
+            return order;
         }
+    }
 
-        // Guardar las pizzas si no están guardadas
-        List<Pizza> savedPizzas = new ArrayList<>();
-        for (Pizza pizza : pizzas) {
-            savedPizzas.add(dbManager.save(pizza));
+    @Override
+    public CompletableFuture<Order> createOrderAsync(User user, List<Pizza> pizzas) {
+        try {
+            validateNewOrder(user, pizzas);
+        } catch (OrderException e) {
+            return CompletableFuture.failedFuture(e);
         }
 
-        // Crear y guardar el pedido
-        Order order = new Order(user, savedPizzas);
-        order.calculateTotalPrice();
-
-        return dbManager.save(order);
+        return asyncDbManager.inTransactionAsync(transaction -> saveOrder(transaction, user, pizzas));
     }
 
     @Override
@@ -67,11 +106,49 @@ public class OrderManager implements IOrderManager {
             return new ArrayList<>();
         }
 
-        // En una implementación real se haría una consulta específica
-        // Aquí simulamos filtrando todos los pedidos
-        return dbManager.findAll(Order.class).stream()
-                .filter(order -> order.getUser().getId().equals(user.getId()))
-                .collect(Collectors.toList());
+        return dbManager.findBy(USER_INDEX, Order.class, user.getId());
+    }
+
+    /**
+     * Recorre el índice por usuario y fecha hacia atrás desde el cursor, que
+     * es la clave del último pedido de la página anterior: los pedidos que se
+     * crean o borran entre dos páginas no desplazan el recorrido.
+     */
+    @Override
+    public Page<Order> getUserOrders(User user, String cursor, int pageSize) throws OrderException {
+        if (pageSize <= 0) {
+            throw new OrderException("El tamaño de página debe ser positivo");
+        }
+        if (user == null || user.getId() == null) {
+            return new Page<>(new ArrayList<>(), null);
+        }
+
+        UserOrderKey from = new UserOrderKey(user.getId(), LocalDateTime.MIN, Long.MIN_VALUE);
+        UserOrderKey to = cursor == null
+                ? new UserOrderKey(user.getId(), LocalDateTime.MAX, Long.MAX_VALUE)
+                : UserOrderKey.parse(user.getId(), cursor);
+
+        // Se lee un pedido de más para saber si hay página siguiente
+        List<Order> orders = dbManager.findLatest(USER_HISTORY_INDEX, Order.class, from, to, pageSize + 1);
+        if (orders.size() <= pageSize) {
+            return new Page<>(orders, null);
+        }
+        List<Order> items = new ArrayList<>(orders.subList(0, pageSize));
+        return new Page<>(items, UserOrderKey.of(items.get(pageSize - 1)).toCursor());
+    }
+
+    @Override
+    public List<Order> getOrdersBetween(LocalDateTime from, LocalDateTime to) {
+        return dbManager.findRange(DATE_INDEX, Order.class, from, to);
+    }
+
+    @Override
+    public List<Order> getLatestOrders(int limit) throws OrderException {
+        if (limit < 0) {
+            throw new OrderException("El límite no puede ser negativo");
+        }
+
+        return dbManager.findLatest(DATE_INDEX, Order.class, limit);
     }
 
     @Override
@@ -85,14 +162,19 @@ public class OrderManager implements IOrderManager {
         }
 
         // Validar que el estado sea válido
-        if (!isValidStatus(status)) {
+        OrderStatus target = OrderStatus.fromName(status);
+        if (target == null) {
             throw new OrderException("Estado no válido: " + status);
         }
 
-        Order order = getOrderById(orderId);
-        order.setStatus(status);
-
-        return dbManager.update(order);
+        // La transición se comprueba sobre la versión que se sustituye
+        return updateOrder(orderId, order -> {
+            OrderStatus current = order.getOrderStatus();
+            if (current == null || !current.canTransitionTo(target)) {
+                throw new OrderException("Transición no permitida: " + current + " -> " + target);
+            }
+            order.setOrderStatus(target);
+        });
     }
 
     @Override
@@ -101,17 +183,58 @@ public class OrderManager implements IOrderManager {
             throw new OrderException("El ID del pedido no puede ser nulo");
         }
 
-        Order order = getOrderById(orderId);
+        updateOrder(orderId, order -> {
+            // Verificar si se puede cancelar
+            OrderStatus current = order.getOrderStatus();
+            if (current == null || !current.canTransitionTo(OrderStatus.CANCELLED)) {
+                throw new OrderException("No se puede cancelar un pedido con estado: " + order.getStatus());
+            }
+            order.setOrderStatus(OrderStatus.CANCELLED);
+        });
+
+        return true;
+    }
 
-        // Verificar si se puede cancelar
-        if (!"PENDING".equals(order.getStatus()) && !"PROCESSING".equals(order.getStatus())) {
-            throw new OrderException("No se puede cancelar un pedido con estado: " + order.getStatus());
+    /**
+     * El estado se comprueba sobre la versión leída y el cambio solo se guarda
+     * si esa versión sigue siendo la actual; si no, se vuelve a leer y a
+     * comprobar. Así, de varios cambios concurrentes desde el mismo estado,
+     * el primero en guardarse gana y los demás encuentran el estado nuevo.
+     */
+    @Override
+    public Order transitionStatus(Long orderId, OrderStatus expected, OrderStatus target) throws OrderException {
+        if (orderId == null) {
+            throw new OrderException("El ID del pedido no puede ser nulo");
+        }
+
+        if (expected == null || target == null) {
+            throw new OrderException("Los estados no pueden ser nulos");
         }
 
-        order.setStatus("CANCELLED");
-        dbManager.update(order);
+        if (!expected.canTransitionTo(target)) {
+            throw new OrderException("Transición no permitida: " + expected + " -> " + target);
+        }
 
-        return true;
+        return updateOrder(orderId, order -> {
+            if (order.getOrderStatus() != expected) {
+                throw new OrderException("El pedido " + orderId + " no está en estado " + expected
+                        + ": está en " + order.getStatus());
+            }
+            order.setOrderStatus(target);
+        });
+    }
+
+    /**
+     * Los contadores son el tamaño de cada clave del índice por estado, que la
+     * base de datos mantiene en cada escritura, así que no se recorren los pedidos.
+     */
+    @Override
+    public Map<OrderStatus, Integer> getStatusCounts() {
+        Map<OrderStatus, Integer> counts = new EnumMap<>(OrderStatus.class);
+        for (OrderStatus status : OrderStatus.values()) {
+            counts.put(status, dbManager.countBy(STATUS_INDEX, Order.class, status));
+        }
+        return counts;
     }
 
     @Override
@@ -122,22 +245,161 @@ public class OrderManager implements IOrderManager {
 
         double total = 0;
         for (Pizza pizza : order.getPizzas()) {
-            total += pizza.getPrice();
+            // Una lista asignada a mano puede tener huecos
+            if (pizza != null) {
+                total += pizza.getPrice();
+            }
         }
 
         return total;
     }
 
     /**
-     * Valida si un estado es válido.
+     * Valida los datos de un pedido nuevo.
      *
-     * @param status Estado a validar
-     * @return true si el estado es válido, false si no
+     * @param user Usuario que realiza el pedido
+     * @param pizzas Lista de pizzas del pedido
+     * @throws OrderException Si el usuario es nulo o no hay pizzas
      */
-    private boolean isValidStatus(String status) {
-        return "PENDING".equals(status) ||
-                "PROCESSING".equals(status) ||
-                "DELIVERED".equals(status) ||
-                "CANCELLED".equals(status);
+    private void validateNewOrder(User user, List<Pizza> pizzas) throws OrderException {
+        if (user == null) {
+            throw new OrderException("El usuario no puede ser nulo");
+        }
+
+        if (pizzas == null || pizzas.isEmpty()) {
+            throw new OrderException("El pedido debe contener al menos una pizza");
+        }
+    }
+
+    /**
+     * Guarda las pizzas y el pedido en una transacción, sin confirmarla.
+     *
+     * @param transaction Transacción abierta
+     * @param user Usuario que realiza el pedido
+     * @param pizzas Lista de pizzas del pedido
+     * @return Pedido creado
+     */
+    private Order saveOrder(ITransaction transaction, User user, List<Pizza> pizzas) {
+        List<Pizza> savedPizzas = new ArrayList<>(pizzas.size());
+        for (Pizza pizza : pizzas) {
+            savedPizzas.add(transaction.save(pizza));
+        }
+
+        // Crear y guardar el pedido
+        Order order = new Order(user, savedPizzas);
+        order.calculateTotalPrice();
+        transaction.save(order);
+        return order;
+    }
+
+    /**
+     * Modifica un pedido sin bloqueos: aplica el cambio sobre una copia de la
+     * versión leída y la guarda solo si nadie ha modificado el pedido entretanto.
+     * Si hay conflicto se vuelve a leer el pedido y se repite el cambio.
+     *
+     * @param orderId ID del pedido
+     * @param change Cambio a aplicar sobre la copia
+     * @return Pedido actualizado
+     * @throws OrderException Si el pedido no existe o el cambio no es válido
+     */
+    private Order updateOrder(Long orderId, OrderChange change) throws OrderException {
+        while (true) {
+            Versioned<Order> current = dbManager.findVersionedById(orderId, Order.class)
+                    .orElseThrow(() -> new OrderException("Pedido no encontrado con ID: " + orderId));
+
+            Order order = current.getEntity().copy();
+            change.apply(order);
+            try {
+                return dbManager.compareAndUpdate(order, current.getVersion()).getEntity();
+            } catch (VersionConflictException e) {
+                // Otro hilo ha modificado el pedido: se reintenta sobre la versión nueva
+            }
+        }
+    }
+
+    /**
+     * Cambio sobre la copia de un pedido.
+     */
+    private interface OrderChange {
+        void apply(Order order) throws OrderException;
+    }
+
+    /**
+     * Clave del índice de pedidos por usuario: usuario, fecha e ID, de modo
+     * que los pedidos de un usuario quedan juntos y ordenados por fecha, y
+     * cada pedido tiene una clave única que sirve de cursor.
+     */
+    private static final class UserOrderKey implements Comparable<UserOrderKey> {
+        private final long userId;
+        private final LocalDateTime orderDate;
+        private final long orderId;
+
+        UserOrderKey(long userId, LocalDateTime orderDate, long orderId) {
+            this.userId = userId;
+            this.orderDate = orderDate;
+            this.orderId = orderId;
+        }
+
+        /**
+         * Obtiene la clave de un pedido.
+         *
+         * @param order Pedido
+         * @return Clave o null si al pedido le falta el usuario, la fecha o el ID
+         */
+        static UserOrderKey of(Order order) {
+            Long userId = order.getUserId();
+            if (userId == null || order.getOrderDate() == null || order.getId() == null) {
+                return null;
+            }
+            return new UserOrderKey(userId, order.getOrderDate(), order.getId());
+        }
+
+        /**
+         * Lee la clave de un cursor con el formato de toCursor.
+         *
+         * @param userId ID del usuario
+         * @param cursor Cursor
+         * @return Clave
+         * @throws OrderException Si el cursor no es válido
+         */
+        static UserOrderKey parse(long userId, String cursor) throws OrderException {
+            int separator = cursor.lastIndexOf('/');
+            try {
+                return new UserOrderKey(userId, LocalDateTime.parse(cursor.substring(0, Math.max(separator, 0))),
+                        Long.parseLong(cursor.substring(separator + 1)));
+            } catch (DateTimeParseException | NumberFormatException e) {
+                throw new OrderException("Cursor no válido: " + cursor, e);
+            }
+        }
+
+        String toCursor() {
+            return orderDate + "/" + orderId;
+        }
+
+        @Override
+        public int compareTo(UserOrderKey other) {
+            int result = Long.compare(userId, other.userId);
+            if (result == 0) {
+                result = orderDate.compareTo(other.orderDate);
+            }
+            return result != 0 ? result : Long.compare(orderId, other.orderId);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof UserOrderKey)) {
+                return false;
+            }
+            UserOrderKey other = (UserOrderKey) o;
+            return userId == other.userId && orderId == other.orderId && orderDate.equals(other.orderDate);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(userId, orderDate, orderId);
+        }
     }
-}
\ No newline at end of file
+}
@@ -1,12 +1,22 @@
 package ejercicio2.payment;
 
+import ejercicio2.database.AsyncDataBaseManager;
 import ejercicio2.exceptions.PaymentException;
+import ejercicio2.exceptions.VersionConflictException;
+import ejercicio2.interfaces.IAsyncDataBaseManager;
 import ejercicio2.interfaces.IDataBaseManager;
 import ejercicio2.interfaces.IPaymentProcessor;
+import ejercicio2.interfaces.ITransaction;
 import ejercicio2.model.Order;
-import java.util.HashMap;
+import ejercicio2.model.OrderStatus;
+import ejercicio2.model.Versioned;
+import java.time.YearMonth;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
 
 /**
  * Implementación de IPaymentProcessor para procesar pagos.
@@ -14,20 +24,80 @@ import java.util.UUID;
 public class PaymentProcessor implements IPaymentProcessor {
 
     private final IDataBaseManager dbManager;
+    private final IAsyncDataBaseManager asyncDbManager;
     private final Map<String, Map<String, Object>> payments; // transactionId -> payment info
 
     /**
-     * Constructor con inyección de dependencia.
+     * Constructor con inyección de dependencia. Las operaciones asíncronas
+     * se ejecutan en el pool común de ForkJoin.
      *
      * @param dbManager Gestor de base de datos
      */
     public PaymentProcessor(IDataBaseManager dbManager) {
+        this(dbManager, new AsyncDataBaseManager(dbManager, ForkJoinPool.commonPool()));
+    }
+
+    /**
+     * Constructor con inyección de dependencia.
+     *
+     * @param dbManager Gestor de base de datos
+     * @param asyncDbManager Gestor asíncrono sobre la misma base de datos, para las operaciones asíncronas
+     */
+    public PaymentProcessor(IDataBaseManager dbManager, IAsyncDataBaseManager asyncDbManager) {
         this.dbManager = dbManager;
-        this.payments = new HashMap<>();
+        this.asyncDbManager = asyncDbManager;
+        // Los pagos asíncronos se registran desde los hilos del ejecutor
+        this.payments = new ConcurrentHashMap<>();
     }
 
     @Override
     public String processPayment(Order order, String cardNumber, String expiryDate, String cvv) throws PaymentException {
+        validatePayment(order, cardNumber, expiryDate, cvv);
+
+        // Simular el procesamiento del pago
+        String transactionId = UUID.randomUUID().toString();
+
+        // Actualizar el pedido con el ID de la transacción. Se hace en una transacción
+        // sobre una copia del pedido guardado y se reintenta si otro hilo lo modifica a la vez
+        while (true) {
+            try (ITransaction transaction = dbManager.beginTransaction()) {
+                markPaid(transaction, order, transactionId);
+                transaction.commit();
+                break;
+            } catch (VersionConflictException e) {
+                // Otro hilo ha modificado el pedido: se reintenta sobre la versión nueva
+            }
+        }
+
+        recordPayment(order, cardNumber, transactionId);
+        return transactionId;
+    }
+
+    @Override
+    public CompletableFuture<String> processPaymentAsync(Order order, String cardNumber, String expiryDate, String cvv) {
+        try {
+            validatePayment(order, cardNumber, expiryDate, cvv);
+        } catch (PaymentException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        String transactionId = UUID.randomUUID().toString();
+        return markPaidAsync(order, transactionId).thenApply(ignored -> {
+            recordPayment(order, cardNumber, transactionId);
+            return transactionId;
+        });
+    }
+
+    /**
+     * Valida los datos de un pago.
+     *
+     * @param order Pedido a pagar
+     * @param cardNumber Número de tarjeta
+     * @param expiryDate Fecha de expiración
+     * @param cvv Código de seguridad
+     * @throws PaymentException Si falta algún dato o no es válido
+     */
+    private void validatePayment(Order order, String cardNumber, String expiryDate, String cvv) throws PaymentException {
         // Validar datos de entrada
         if (order == null) {
             throw new PaymentException("El pedido no puede ser nulo");
@@ -48,15 +118,73 @@ public class PaymentProcessor implements IPaymentProcessor {
             throw new PaymentException("Fecha de expiración inválida");
         }
 
+        if (isExpired(expiryDate)) {
+            throw new PaymentException("La tarjeta ha caducado");
+        }
+
         if (!isValidCVV(cvv)) {
             throw new PaymentException("CVV inválido");
         }
 
-        // Simular el procesamiento del pago
-        String transactionId = UUID.randomUUID().toString();
+        if (order.getTotalPrice() <= 0) {
+            throw new PaymentException("El importe del pedido debe ser positivo");
+        }
+    }
+
+    /**
+     * Marca como pagado el pedido guardado, sobre una copia, dentro de una transacción.
+     *
+     * @param transaction Transacción abierta
+     * @param order Pedido pagado
+     * @param transactionId ID de la transacción del pago
+     * @throws PaymentException Si el pedido no existe o no está pendiente de pago
+     */
+    private void markPaid(ITransaction transaction, Order order, String transactionId) throws PaymentException {
+        Order stored = transaction.findById(order.getId(), Order.class)
+                .orElseThrow(() -> new PaymentException("Pedido no encontrado: " + order.getId()));
+        // La transacción solo se confirma si el pedido sigue en la versión comprobada
+        OrderStatus current = stored.getOrderStatus();
+        if (current == null || !current.canTransitionTo(OrderStatus.PROCESSING)) {
+            throw new PaymentException("No se puede pagar un pedido con estado: " + current);
+        }
+
+        Order updated = stored.copy();
+        updated.setPaymentTransactionId(transactionId);
+        updated.setOrderStatus(OrderStatus.PROCESSING);
+        transaction.update(updated);
+    }
 
-        // Guardar la información del pago
-        Map<String, Object> paymentInfo = new HashMap<>();
+    /**
+     * Marca como pagado el pedido guardado sin bloquear. Si otro hilo modifica
+     * el pedido a la vez se encadena un nuevo intento en lugar de esperar.
+     *
+     * @param order Pedido pagado
+     * @param transactionId ID de la transacción del pago
+     * @return Futuro que se completa cuando el pedido queda marcado como pagado
+     */
+    private CompletableFuture<Void> markPaidAsync(Order order, String transactionId) {
+        return asyncDbManager.<Void>inTransactionAsync(transaction -> {
+            markPaid(transaction, order, transactionId);
+            return null;
+        }).handle((ignored, e) -> {
+            if (e instanceof VersionConflictException) {
+                return markPaidAsync(order, transactionId);
+            }
+            return e != null ? CompletableFuture.<Void>failedFuture(e) : CompletableFuture.<Void>completedFuture(null);
+        }).thenCompose(Function.identity());
+    }
+
+    /**
+     * Registra la información de un pago confirmado y la refleja en el pedido recibido.
+     *
+     * @param order Pedido pagado
+     * @param cardNumber Número de tarjeta
+     * @param transactionId ID de la transacción del pago
+     */
+    private void recordPayment(Order order, String cardNumber, String transactionId) {
+        // Guardar la información del pago una vez confirmado el pedido; el reembolso
+        // la modifica mientras otros hilos pueden estar leyéndola
+        Map<String, Object> paymentInfo = new ConcurrentHashMap<>();
         paymentInfo.put("orderId", order.getId());
         paymentInfo.put("amount", order.getTotalPrice());
         paymentInfo.put("cardNumber", maskCardNumber(cardNumber));
@@ -65,12 +193,9 @@ public class PaymentProcessor implements IPaymentProcessor {
 
         payments.put(transactionId, paymentInfo);
 
-        // Actualizar el pedido con el ID de la transacción
+        // El pedido recibido refleja también el pago
         order.setPaymentTransactionId(transactionId);
-        order.setStatus("PROCESSING");
-        dbManager.update(order);
-
-        return transactionId;
+        order.setOrderStatus(OrderStatus.PROCESSING);
     }
 
     @Override
@@ -103,22 +228,36 @@ public class PaymentProcessor implements IPaymentProcessor {
             throw new PaymentException("La transacción ya ha sido reembolsada");
         }
 
-        // Actualizar el estado del pago
-        paymentInfo.put("status", "REFUNDED");
-        paymentInfo.put("refundTimestamp", System.currentTimeMillis());
-
-        // Actualizar el pedido
+        // Cancelar el pedido antes de dar el pago por reembolsado
         Long orderId = (Long) paymentInfo.get("orderId");
         try {
-            Order order = dbManager.findById(orderId, Order.class)
-                    .orElseThrow(() -> new PaymentException("Pedido no encontrado: " + orderId));
-
-            order.setStatus("CANCELLED");
-            dbManager.update(order);
+            // Se modifica una copia y se guarda solo si el pedido no ha cambiado; si no, se reintenta
+            while (true) {
+                Versioned<Order> current = dbManager.findVersionedById(orderId, Order.class)
+                        .orElseThrow(() -> new PaymentException("Pedido no encontrado: " + orderId));
+
+                OrderStatus status = current.getEntity().getOrderStatus();
+                if (status == null || !status.canTransitionTo(OrderStatus.CANCELLED)) {
+                    throw new PaymentException("No se puede reembolsar un pedido con estado: " + status);
+                }
+                Order order = current.getEntity().copy();
+                order.setOrderStatus(OrderStatus.CANCELLED);
+                try {
+                    dbManager.compareAndUpdate(order, current.getVersion());
+                    break;
+                } catch (VersionConflictException e) {
+                    // Otro hilo ha modificado el pedido: se reintenta sobre la versión nueva
+                }
+            }
+        } catch (PaymentException e) {
+            throw e;
         } catch (Exception e) {
             throw new PaymentException("Error al actualizar el pedido: " + e.getMessage(), e);
         }
 
+        // Actualizar el estado del pago; la fecha va antes para que quien vea REFUNDED la encuentre
+        paymentInfo.put("refundTimestamp", System.currentTimeMillis());
+        paymentInfo.put("status", "REFUNDED");
         return true;
     }
 
@@ -128,6 +267,10 @@ public class PaymentProcessor implements IPaymentProcessor {
             throw new PaymentException("El ID del pedido no puede ser nulo");
         }
 
+        if (dbManager.findById(orderId, Order.class).isEmpty()) {
+            throw new PaymentException("Pedido no encontrado: " + orderId);
+        }
+
         // Buscar todas las transacciones relacionadas con el pedido
         StringBuilder history = new StringBuilder();
 
@@ -169,7 +312,24 @@ public class PaymentProcessor implements IPaymentProcessor {
      */
     private boolean isValidExpiryDate(String expiryDate) {
         // Simulación de validación
-        return expiryDate.matches("\\d{2}/\\d{2}");
+        if (!expiryDate.matches("\\d{2}/\\d{2}")) {
+            return false;
+        }
+        int month = Integer.parseInt(expiryDate.substring(0, 2));
+        return month >= 1 && month <= 12;
+    }
+
+    /**
+     * Comprueba si una fecha de expiración válida ya ha pasado. La tarjeta
+     * sirve hasta el final del mes indicado.
+     *
+     * @param expiryDate Fecha de expiración con formato MM/AA
+     * @return true si la tarjeta ha caducado, false si no
+     */
+    private boolean isExpired(String expiryDate) {
+        YearMonth expiry = YearMonth.of(2000 + Integer.parseInt(expiryDate.substring(3)),
+                Integer.parseInt(expiryDate.substring(0, 2)));
+        return expiry.isBefore(YearMonth.now());
     }
 
     /**
@@ -70,6 +70,11 @@ public class AuthenticatorTest {
         assertThrows(AuthenticationException.class, () -> {
             authenticator.login("testUser", "");
         });
+
+        // Usuario no registrado
+        assertThrows(AuthenticationException.class, () -> {
+            authenticator.login("unknownUser", "password123");
+        });
     }
 
     @Test
@@ -0,0 +1,633 @@
+package ejercicio2.database;
+
+import ejercicio2.exceptions.VersionConflictException;
+import ejercicio2.interfaces.IDataBaseManager;
+import ejercicio2.interfaces.IEntity;
+import ejercicio2.interfaces.ITransaction;
+import ejercicio2.model.User;
+import ejercicio2.model.Order;
+import ejercicio2.model.Page;
+import ejercicio2.model.Pizza;
+import ejercicio2.model.Query;
+import ejercicio2.model.QueryResult;
+import ejercicio2.model.Versioned;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pruebas comunes a todas las implementaciones de IDataBaseManager. Cada
+ * implementación las hereda y proporciona una base de datos vacía y conectada.
+ */
+public abstract class AbstractDataBaseManagerTest<M extends IDataBaseManager> {
+
+    protected M dbManager;
+
+    @BeforeEach
+    public void setUp() {
+        dbManager = createDataBaseManager();
+        dbManager.connect();
+    }
+
+    /**
+     * Crea la base de datos a probar, vacía y sin conectar.
+     */
+    protected abstract M createDataBaseManager();
+
+    /**
+     * Comprueba que una lectura devuelve el objeto guardado. Por defecto basta
+     * con que sea de la misma clase y tenga el mismo ID, porque las
+     * implementaciones que leen de un almacenamiento externo devuelven copias.
+     */
+    protected void assertStoredEntity(Object expected, Object actual) {
+        assertEquals(expected.getClass(), actual.getClass());
+        assertEquals(((IEntity) expected).getId(), ((IEntity) actual).getId());
+    }
+
+    @Test
+    public void testConnection() {
+        assertTrue(dbManager.isConnected());
+
+        dbManager.disconnect();
+        assertFalse(dbManager.isConnected());
+
+        assertTrue(dbManager.connect());
+        assertTrue(dbManager.isConnected());
+    }
+
+    @Test
+    public void testSaveAndFindById() {
+        // Crear y guardar un usuario
+        User user = new User("testuser", "password", "test@example.com");
+        user = dbManager.save(user);
+
+        // Verificar que se ha asignado un ID
+        assertNotNull(user.getId());
+
+        // Buscar el usuario por ID
+        Optional<User> foundUser = dbManager.findById(user.getId(), User.class);
+
+        // Verificar que se ha encontrado
+        assertTrue(foundUser.isPresent());
+        assertEquals("testuser", foundUser.get().getUsername());
+    }
+
+    @Test
+    public void testUpdate() {
+        // Crear y guardar un usuario
+        User user = new User("originaluser", "password", "original@example.com");
+        user = dbManager.save(user);
+        Long userId = user.getId();
+
+        // Modificar el usuario
+        user.setUsername("updateduser");
+        user.setEmail("updated@example.com");
+
+        // Actualizar en la base de datos
+        dbManager.update(user);
+
+        // Buscar el usuario actualizado
+        Optional<User> updatedUser = dbManager.findById(userId, User.class);
+
+        // Verificar que se ha actualizado
+        assertTrue(updatedUser.isPresent());
+        assertEquals("updateduser", updatedUser.get().getUsername());
+        assertEquals("updated@example.com", updatedUser.get().getEmail());
+    }
+
+    @Test
+    public void testDelete() {
+        // Crear y guardar un usuario
+        User user = new User("userToDelete", "password", "delete@example.com");
+        user = dbManager.save(user);
+        Long userId = user.getId();
+
+        // Verificar que existe
+        assertTrue(dbManager.findById(userId, User.class).isPresent());
+
+        // Eliminar el usuario
+        boolean deleted = dbManager.delete(userId, User.class);
+
+        // Verificar que se ha eliminado
+        assertTrue(deleted);
+        assertFalse(dbManager.findById(userId, User.class).isPresent());
+    }
+
+    @Test
+    public void testFindAll() {
+        // Limpiar registros previos
+        List<User> initialUsers = dbManager.findAll(User.class);
+        for (User user : initialUsers) {
+            dbManager.delete(user.getId(), User.class);
+        }
+
+        // Crear y guardar varios usuarios
+        User user1 = new User("user1", "pass1", "user1@example.com");
+        User user2 = new User("user2", "pass2", "user2@example.com");
+        User user3 = new User("user3", "pass3", "user3@example.com");
+
+        dbManager.save(user1);
+        dbManager.save(user2);
+        dbManager.save(user3);
+
+        // Buscar todos los usuarios
+        List<User> allUsers = dbManager.findAll(User.class);
+
+        // Verificar que se han encontrado todos
+        assertEquals(3, allUsers.size());
+    }
+
+    @Test
+    public void testMultipleEntityTypes() {
+        // Crear y guardar un usuario
+        User user = new User("testuser", "password", "test@example.com");
+        user = dbManager.save(user);
+
+        // Crear y guardar una pizza
+        Pizza pizza = new Pizza("Margherita", "Medium", 9.99);
+        pizza = dbManager.save(pizza);
+
+        // Crear y guardar un pedido
+        List<Pizza> pizzas = new ArrayList<>();
+        pizzas.add(pizza);
+        Order order = new Order(user, pizzas);
+        order = dbManager.save(order);
+
+        // Verificar que todos se han guardado correctamente
+        assertTrue(dbManager.findById(user.getId(), User.class).isPresent());
+        assertTrue(dbManager.findById(pizza.getId(), Pizza.class).isPresent());
+        assertTrue(dbManager.findById(order.getId(), Order.class).isPresent());
+
+        // Verificar que los IDs son distintos para cada tipo
+        assertNotEquals(user.getId(), pizza.getId());
+        assertNotEquals(user.getId(), order.getId());
+        assertNotEquals(pizza.getId(), order.getId());
+    }
+
+    @Test
+    public void testOperationsWhenDisconnected() {
+        dbManager.disconnect();
+
+        User user = new User("testuser", "password", "test@example.com");
+
+        assertThrows(IllegalStateException.class, () -> {
+            dbManager.save(user);
+        });
+
+        assertThrows(IllegalStateException.class, () -> {
+            dbManager.findById(1L, User.class);
+        });
+
+        assertThrows(IllegalStateException.class, () -> {
+            dbManager.update(user);
+        });
+
+        assertThrows(IllegalStateException.class, () -> {
+            dbManager.delete(1L, User.class);
+        });
+
+        assertThrows(IllegalStateException.class, () -> {
+            dbManager.findAll(User.class);
+        });
+    }
+
+    @Test
+    public void testConcurrentWritesUnderContention() throws Exception {
+        int threads = 8;
+        int usersPerThread = 2000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+
+        try {
+            // Cada hilo guarda sus usuarios, los actualiza y borra la mitad
+            List<Future<List<Long>>> results = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                results.add(executor.submit(() -> {
+                    start.await();
+                    List<Long> kept = new ArrayList<>();
+                    for (int i = 0; i < usersPerThread; i++) {
+                        User user = dbManager.save(new User("u" + thread + "_" + i, "pass", null));
+                        user.setEmail(user.getUsername() + "@example.com");
+                        dbManager.update(user);
+                        if (i % 2 == 0) {
+                            assertTrue(dbManager.delete(user.getId(), User.class));
+                        } else {
+                            kept.add(user.getId());
+                        }
+                        assertEquals(i % 2 != 0, dbManager.findById(user.getId(), User.class).isPresent());
+                    }
+                    return kept;
+                }));
+            }
+            start.countDown();
+
+            // Verificar que no hay IDs duplicados ni escrituras perdidas
+            Set<Long> keptIds = new HashSet<>();
+            for (Future<List<Long>> result : results) {
+                for (Long id : result.get(60, TimeUnit.SECONDS)) {
+                    assertTrue(keptIds.add(id), "ID duplicado: " + id);
+                }
+            }
+
+            List<User> allUsers = dbManager.findAll(User.class);
+            assertEquals(threads * usersPerThread / 2, keptIds.size());
+            assertEquals(keptIds.size(), allUsers.size());
+            for (User user : allUsers) {
+                assertTrue(keptIds.contains(user.getId()));
+                assertEquals(user.getUsername() + "@example.com",
+                        dbManager.findById(user.getId(), User.class).orElseThrow().getEmail());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testConcurrentReadModifyWriteOnSharedRow() throws Exception {
+        int threads = 8;
+        int incrementsPerThread = 250;
+        Pizza shared = dbManager.save(new Pizza("Shared", "Large", 0));
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+
+        try {
+            // Todos los hilos incrementan el precio de la misma fila
+            List<Future<?>> results = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < incrementsPerThread; i++) {
+                        while (true) {
+                            Versioned<Pizza> current = dbManager.findVersionedById(shared.getId(), Pizza.class)
+                                    .orElseThrow();
+                            Pizza read = current.getEntity();
+                            Pizza incremented = new Pizza(read.getId(), read.getName(), read.getSize(),
+                                    read.getToppings(), read.getPrice() + 1);
+                            try {
+                                dbManager.compareAndUpdate(incremented, current.getVersion());
+                                break;
+                            } catch (VersionConflictException e) {
+                                // Otro hilo ha escrito entretanto: se vuelve a leer
+                            }
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> result : results) {
+                result.get(60, TimeUnit.SECONDS);
+            }
+
+            // Ningún incremento se ha perdido
+            assertEquals(threads * incrementsPerThread,
+                    dbManager.findById(shared.getId(), Pizza.class).orElseThrow().getPrice(), 0.0);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testQueryWithConditionsProjectionAndLimit() {
+        User withAddress = dbManager.save(new User(null, "withAddress", "password", null, "Calle Mayor 1", null));
+        User withoutAddress = dbManager.save(new User("withoutAddress", "password", null));
+        for (int i = 0; i < 20; i++) {
+            Order order = new Order(i % 2 == 0 ? withAddress : withoutAddress, new ArrayList<>());
+            order.setStatus(i < 10 ? "PROCESSING" : "DELIVERED");
+            order.setTotalPrice(i * 10.0);
+            dbManager.save(order);
+        }
+
+        // Pedidos en proceso de más de 50 EUR: i = 6..9
+        Query<Order> expensive = Query.from(Order.class)
+                .whereEquals("status", Order::getStatus, "PROCESSING")
+                .filter(o -> o.getTotalPrice() > 50);
+        QueryResult<Order> result = dbManager.query(expensive);
+        assertEquals(4, result.getRows().size());
+        assertTrue(result.getRows().stream().allMatch(o -> "PROCESSING".equals(o.getStatus())));
+        assertNotNull(result.getPlan());
+
+        // Proyección y límite
+        QueryResult<Long> ids = dbManager.query(Query.from(Order.class)
+                .whereEquals("status", Order::getStatus, "DELIVERED").limit(3), Order::getId);
+        assertEquals(3, ids.getRows().size());
+
+        // Usuarios sin dirección
+        QueryResult<String> names = dbManager.query(Query.from(User.class)
+                .whereEquals("address", User::getAddress, null), User::getUsername);
+        assertEquals(List.of("withoutAddress"), names.getRows());
+
+        assertTrue(dbManager.query(Query.from(Pizza.class)).getRows().isEmpty());
+        assertTrue(dbManager.query(Query.from(Order.class).limit(0)).getRows().isEmpty());
+    }
+
+    @Test
+    public void testSecondaryIndex() {
+        dbManager.createIndex("status", Order.class, Order::getStatus);
+
+        User user = dbManager.save(new User("indexUser", "password", "index@example.com"));
+        Order order1 = dbManager.save(new Order(user, new ArrayList<>()));
+        Order order2 = dbManager.save(new Order(user, new ArrayList<>()));
+
+        assertEquals(2, dbManager.findBy("status", Order.class, "PENDING").size());
+
+        // Al cambiar el atributo indexado, la fila se mueve de clave
+        order1.setStatus("DELIVERED");
+        dbManager.update(order1);
+        assertEquals(1, dbManager.findBy("status", Order.class, "PENDING").size());
+        assertEquals(order1.getId(), dbManager.findBy("status", Order.class, "DELIVERED").get(0).getId());
+        assertEquals(1, dbManager.countBy("status", Order.class, "PENDING"));
+        assertEquals(0, dbManager.countBy("status", Order.class, "CANCELLED"));
+
+        // Al eliminar, la fila desaparece del índice
+        dbManager.delete(order2.getId(), Order.class);
+        assertTrue(dbManager.findBy("status", Order.class, "PENDING").isEmpty());
+    }
+
+    @Test
+    public void testSecondaryIndexOnExistingRows() {
+        dbManager.save(new User("existing1", "password", "same@example.com"));
+        dbManager.save(new User("existing2", "password", "same@example.com"));
+
+        // El índice creado después incluye las filas existentes
+        dbManager.createIndex("email", User.class, User::getEmail);
+        assertEquals(2, dbManager.findBy("email", User.class, "same@example.com").size());
+
+        assertThrows(IllegalArgumentException.class, () -> {
+            dbManager.findBy("phone", User.class, "123");
+        });
+        assertThrows(IllegalArgumentException.class, () -> {
+            dbManager.countBy("phone", User.class, "123");
+        });
+    }
+
+    @Test
+    public void testSortedIndexRangeAndLatest() {
+        dbManager.createSortedIndex("orderDate", Order.class, Order::getOrderDate);
+
+        User user = dbManager.save(new User("rangeUser", "password", "range@example.com"));
+        LocalDateTime base = LocalDateTime.of(2024, 1, 1, 12, 0);
+        List<Order> orders = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            Order order = new Order(user, new ArrayList<>());
+            order.setOrderDate(base.plusMinutes(i));
+            orders.add(dbManager.save(order));
+        }
+
+        // Rango semiabierto [desde, hasta), en orden ascendente
+        List<Order> range = dbManager.findRange("orderDate", Order.class, base.plusMinutes(3), base.plusMinutes(6));
+        assertEquals(3, range.size());
+        assertEquals(orders.get(3).getId(), range.get(0).getId());
+        assertEquals(orders.get(5).getId(), range.get(2).getId());
+        assertEquals(7, dbManager.findRange("orderDate", Order.class, base.plusMinutes(3), null).size());
+        assertEquals(10, dbManager.findRange("orderDate", Order.class, null, null).size());
+
+        // Los más recientes, en orden descendente
+        List<Order> latest = dbManager.findLatest("orderDate", Order.class, 3);
+        assertEquals(3, latest.size());
+        assertEquals(orders.get(9).getId(), latest.get(0).getId());
+        assertEquals(orders.get(7).getId(), latest.get(2).getId());
+
+        // Los más recientes de un rango, que sirven para paginar hacia atrás
+        latest = dbManager.findLatest("orderDate", Order.class, base.plusMinutes(2), base.plusMinutes(6), 2);
+        assertEquals(2, latest.size());
+        assertEquals(orders.get(5).getId(), latest.get(0).getId());
+        assertEquals(orders.get(4).getId(), latest.get(1).getId());
+        assertEquals(4, dbManager.findLatest("orderDate", Order.class, base.plusMinutes(2), base.plusMinutes(6), 10).size());
+
+        // Al cambiar la fecha la fila se mueve, y al eliminarla desaparece
+        orders.get(0).setOrderDate(base.plusHours(1));
+        dbManager.update(orders.get(0));
+        dbManager.delete(orders.get(9).getId(), Order.class);
+        latest = dbManager.findLatest("orderDate", Order.class, 2);
+        assertEquals(orders.get(0).getId(), latest.get(0).getId());
+        assertEquals(orders.get(8).getId(), latest.get(1).getId());
+        assertTrue(dbManager.findRange("orderDate", Order.class, base, base.plusMinutes(1)).isEmpty());
+
+        // Un índice hash no admite consultas por rango
+        dbManager.createIndex("status", Order.class, Order::getStatus);
+        assertThrows(IllegalArgumentException.class, () -> {
+            dbManager.findLatest("status", Order.class, 1);
+        });
+        assertThrows(IllegalArgumentException.class, () -> {
+            dbManager.findLatest("orderDate", Order.class, -1);
+        });
+    }
+
+    @Test
+    public void testStream() {
+        for (int i = 0; i < 10_000; i++) {
+            dbManager.save(new Pizza("Pizza " + i, "Medium", i));
+        }
+
+        assertEquals(10_000, dbManager.stream(Pizza.class).count());
+
+        // El recorrido paralelo reparte la tabla y no pierde ni repite filas
+        Set<Long> ids = dbManager.stream(Pizza.class).parallel()
+                .map(Pizza::getId)
+                .collect(Collectors.toSet());
+        assertEquals(10_000, ids.size());
+        assertEquals(49_995_000.0, dbManager.stream(Pizza.class).parallel().mapToDouble(Pizza::getPrice).sum(), 0.01);
+
+        assertEquals(0, dbManager.stream(Order.class).count());
+    }
+
+    @Test
+    public void testFindPage() {
+        for (int i = 0; i < 1_000; i++) {
+            dbManager.save(new User("pageUser" + i, "password", null));
+        }
+
+        // Recorrer la tabla página a página con el cursor
+        Set<Long> ids = new HashSet<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            Page<User> page = dbManager.findPage(User.class, cursor, 64);
+            assertTrue(page.getItems().size() <= 64);
+            for (User user : page.getItems()) {
+                assertTrue(ids.add(user.getId()), "Usuario repetido: " + user.getId());
+            }
+            cursor = page.getNextCursor();
+            pages++;
+        } while (cursor != null);
+
+        assertEquals(1_000, ids.size());
+        assertTrue(pages >= 16);
+
+        assertThrows(IllegalArgumentException.class, () -> {
+            dbManager.findPage(User.class, "no-es-un-cursor", 10);
+        });
+        assertThrows(IllegalArgumentException.class, () -> {
+            dbManager.findPage(User.class, null, 0);
+        });
+    }
+
+    @Test
+    public void testBatchOperations() {
+        List<Pizza> pizzas = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            pizzas.add(new Pizza("Pizza " + i, "Small", 5.0));
+        }
+
+        // Guardar en lote asigna IDs consecutivos y conserva el orden
+        List<Pizza> saved = dbManager.saveAll(pizzas);
+        assertEquals(100, saved.size());
+        for (int i = 1; i < saved.size(); i++) {
+            assertEquals(saved.get(i - 1).getId() + 1, saved.get(i).getId());
+        }
+
+        // Actualizar en lote
+        for (Pizza pizza : saved) {
+            pizza.setSize("Large");
+        }
+        dbManager.updateAll(saved);
+        assertTrue(dbManager.stream(Pizza.class).allMatch(p -> "Large".equals(p.getSize())));
+
+        // Buscar en lote omite los IDs que no existen
+        List<Long> ids = Arrays.asList(saved.get(3).getId(), 99_999L, saved.get(1).getId());
+        List<Pizza> found = dbManager.findAllById(ids, Pizza.class);
+        assertEquals(2, found.size());
+        assertEquals(saved.get(3).getId(), found.get(0).getId());
+        assertEquals(saved.get(1).getId(), found.get(1).getId());
+
+        // Eliminar en lote
+        assertEquals(2, dbManager.deleteAll(ids, Pizza.class));
+        assertEquals(98, dbManager.findAll(Pizza.class).size());
+    }
+
+    @Test
+    public void testUpdateAllIsAllOrNothing() {
+        Pizza existing = dbManager.save(new Pizza("Existing", "Small", 5.0));
+        // Se modifica una copia para que la fila guardada solo cambie si se aplica el lote
+        Pizza changed = new Pizza(existing.getId(), "Changed", "Small", null, 5.0);
+        Pizza missing = new Pizza(12_345L, "Missing", "Small", null, 5.0);
+
+        assertThrows(IllegalArgumentException.class, () -> {
+            dbManager.updateAll(Arrays.asList(changed, missing));
+        });
+        assertFalse(dbManager.findById(12_345L, Pizza.class).isPresent());
+        assertEquals("Existing", dbManager.findById(existing.getId(), Pizza.class).orElseThrow().getName());
+    }
+
+    @Test
+    public void testCompareAndUpdate() {
+        User user = dbManager.save(new User("cas", "password", "cas@example.com"));
+
+        Versioned<User> read = dbManager.findVersionedById(user.getId(), User.class).orElseThrow();
+        assertStoredEntity(user, read.getEntity());
+
+        User copy = new User(user.getId(), "cas", "password", "nuevo@example.com", null, null);
+        Versioned<User> updated = dbManager.compareAndUpdate(copy, read.getVersion());
+        assertTrue(updated.getVersion() > read.getVersion());
+        assertEquals("nuevo@example.com", dbManager.findById(user.getId(), User.class).orElseThrow().getEmail());
+
+        // Una segunda actualización con la versión antigua es un conflicto y no modifica la fila
+        User stale = new User(user.getId(), "cas", "password", "viejo@example.com", null, null);
+        assertThrows(VersionConflictException.class, () -> dbManager.compareAndUpdate(stale, read.getVersion()));
+        assertEquals("nuevo@example.com", dbManager.findById(user.getId(), User.class).orElseThrow().getEmail());
+
+        // Un update sin versión también cambia la versión de la fila
+        dbManager.update(copy);
+        assertThrows(VersionConflictException.class, () -> dbManager.compareAndUpdate(copy, updated.getVersion()));
+
+        // Una fila borrada y vuelta a insertar no recupera una versión anterior
+        long beforeDelete = dbManager.findVersionedById(user.getId(), User.class).orElseThrow().getVersion();
+        dbManager.delete(user.getId(), User.class);
+        assertThrows(IllegalArgumentException.class, () -> dbManager.compareAndUpdate(copy, beforeDelete));
+        dbManager.save(copy);
+        assertTrue(dbManager.findVersionedById(user.getId(), User.class).orElseThrow().getVersion() > beforeDelete);
+
+        assertFalse(dbManager.findVersionedById(999L, User.class).isPresent());
+    }
+
+    @Test
+    public void testTransactionCommitAndRollback() {
+        User user = dbManager.save(new User("tx", "password", "tx@example.com"));
+        Pizza pizza = new Pizza("Margarita", "Mediana", 10.0);
+        Order order;
+
+        try (ITransaction transaction = dbManager.beginTransaction()) {
+            transaction.save(pizza);
+            order = transaction.save(new Order(user, List.of(pizza)));
+            assertNotNull(order.getId());
+
+            // La transacción ve sus propias escrituras, pero nadie más las ve todavía
+            assertSame(order, transaction.findById(order.getId(), Order.class).orElseThrow());
+            assertFalse(dbManager.findById(order.getId(), Order.class).isPresent());
+            assertFalse(dbManager.findById(pizza.getId(), Pizza.class).isPresent());
+
+            transaction.commit();
+            assertFalse(transaction.isActive());
+        }
+        assertTrue(dbManager.findById(order.getId(), Order.class).isPresent());
+        assertTrue(dbManager.findById(pizza.getId(), Pizza.class).isPresent());
+
+        // Cerrar sin confirmar deshace la transacción
+        Pizza discarded = new Pizza("Barbacoa", "Grande", 12.0);
+        try (ITransaction transaction = dbManager.beginTransaction()) {
+            transaction.save(discarded);
+            assertTrue(transaction.delete(pizza.getId(), Pizza.class));
+        }
+        assertFalse(dbManager.findById(discarded.getId(), Pizza.class).isPresent());
+        assertTrue(dbManager.findById(pizza.getId(), Pizza.class).isPresent());
+
+        ITransaction finished = dbManager.beginTransaction();
+        finished.rollback();
+        assertThrows(IllegalStateException.class, finished::commit);
+    }
+
+    @Test
+    public void testTransactionDetectsConflicts() {
+        User user = dbManager.save(new User("tx", "password", "tx@example.com"));
+        Pizza pizza = dbManager.save(new Pizza("Margarita", "Mediana", 10.0));
+
+        // Una fila leída que cambia antes de confirmar invalida la transacción completa
+        ITransaction transaction = dbManager.beginTransaction();
+        Pizza read = transaction.findById(pizza.getId(), Pizza.class).orElseThrow();
+        Order order = transaction.save(new Order(user, List.of(read)));
+        dbManager.update(new Pizza(pizza.getId(), "Margarita", "Mediana", null, 11.0));
+        assertThrows(VersionConflictException.class, transaction::commit);
+        assertFalse(dbManager.findById(order.getId(), Order.class).isPresent());
+
+        // Tampoco se puede confirmar si aparece una fila que se leyó como inexistente
+        ITransaction phantom = dbManager.beginTransaction();
+        assertFalse(phantom.findById(12345L, User.class).isPresent());
+        dbManager.save(new User(12345L, "phantom", "password", "phantom@example.com", null, null));
+        assertThrows(VersionConflictException.class, phantom::commit);
+
+        // Una actualización sobre una fila leída valida la versión leída
+        ITransaction first = dbManager.beginTransaction();
+        ITransaction second = dbManager.beginTransaction();
+        User firstCopy = copyOf(first.findById(user.getId(), User.class).orElseThrow());
+        User secondCopy = copyOf(second.findById(user.getId(), User.class).orElseThrow());
+        firstCopy.setAddress("Primera");
+        secondCopy.setAddress("Segunda");
+        first.update(firstCopy);
+        second.update(secondCopy);
+        first.commit();
+        assertThrows(VersionConflictException.class, second::commit);
+        assertEquals("Primera", dbManager.findById(user.getId(), User.class).orElseThrow().getAddress());
+    }
+
+    private static User copyOf(User user) {
+        return new User(user.getId(), user.getUsername(), user.getPassword(), user.getEmail(),
+                user.getAddress(), user.getPhoneNumber());
+    }
+}
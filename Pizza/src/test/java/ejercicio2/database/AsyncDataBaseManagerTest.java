@@ -0,0 +1,103 @@
+package ejercicio2.database;
+
+import ejercicio2.exceptions.VersionConflictException;
+import ejercicio2.interfaces.IAsyncDataBaseManager;
+import ejercicio2.model.Order;
+import ejercicio2.model.Pizza;
+import ejercicio2.model.User;
+import ejercicio2.model.Versioned;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pruebas unitarias para el adaptador asíncrono de la base de datos.
+ */
+public class AsyncDataBaseManagerTest {
+
+    private DataBaseManager dbManager;
+    private ExecutorService executor;
+    private IAsyncDataBaseManager asyncDbManager;
+
+    @BeforeEach
+    public void setUp() {
+        dbManager = new DataBaseManager();
+        dbManager.connect();
+        executor = Executors.newFixedThreadPool(2);
+        asyncDbManager = new AsyncDataBaseManager(dbManager, executor);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testCrudOperations() throws Exception {
+        User user = asyncDbManager.saveAsync(new User("async", "password", "async@example.com")).get();
+        assertNotNull(user.getId());
+        assertSame(user, asyncDbManager.findByIdAsync(user.getId(), User.class).get().orElseThrow());
+
+        user.setAddress("Calle Mayor 1");
+        asyncDbManager.updateAsync(user).get();
+        Versioned<User> versioned = asyncDbManager.findVersionedByIdAsync(user.getId(), User.class).get().orElseThrow();
+        assertEquals("Calle Mayor 1", versioned.getEntity().getAddress());
+
+        List<Pizza> pizzas = asyncDbManager.saveAllAsync(List.of(new Pizza("Margarita", "Mediana", 10.0),
+                new Pizza("Barbacoa", "Grande", 12.0))).get();
+        assertEquals(2, asyncDbManager.findAllAsync(Pizza.class).get().size());
+
+        assertTrue(asyncDbManager.deleteAsync(pizzas.get(0).getId(), Pizza.class).get());
+        assertFalse(asyncDbManager.deleteAsync(pizzas.get(0).getId(), Pizza.class).get());
+    }
+
+    @Test
+    public void testFailuresAreNotWrapped() throws Exception {
+        User user = dbManager.save(new User("async", "password", "async@example.com"));
+        long version = dbManager.findVersionedById(user.getId(), User.class).orElseThrow().getVersion();
+        dbManager.update(user);
+
+        ExecutionException e = assertThrows(ExecutionException.class,
+                () -> asyncDbManager.compareAndUpdateAsync(user, version).get());
+        assertInstanceOf(VersionConflictException.class, e.getCause());
+
+        // El fallo llega tal cual a las etapas encadenadas
+        Throwable[] seen = new Throwable[1];
+        asyncDbManager.compareAndUpdateAsync(user, version)
+                .whenComplete((result, error) -> seen[0] = error)
+                .exceptionally(error -> null)
+                .get();
+        assertInstanceOf(VersionConflictException.class, seen[0]);
+
+        executor.shutdown();
+        e = assertThrows(ExecutionException.class, () -> asyncDbManager.findAllAsync(User.class).get());
+        assertInstanceOf(RejectedExecutionException.class, e.getCause());
+    }
+
+    @Test
+    public void testTransactionCommitsOrRollsBack() throws Exception {
+        User user = dbManager.save(new User("async", "password", "async@example.com"));
+
+        Order order = asyncDbManager.inTransactionAsync(transaction -> {
+            Pizza pizza = transaction.save(new Pizza("Margarita", "Mediana", 10.0));
+            return transaction.save(new Order(user, List.of(pizza)));
+        }).get();
+        assertTrue(dbManager.findById(order.getId(), Order.class).isPresent());
+
+        Pizza[] discarded = new Pizza[1];
+        ExecutionException e = assertThrows(ExecutionException.class, () -> asyncDbManager.inTransactionAsync(transaction -> {
+            discarded[0] = transaction.save(new Pizza("Barbacoa", "Grande", 12.0));
+            throw new IllegalStateException("Fallo del trabajo");
+        }).get());
+        assertEquals("Fallo del trabajo", e.getCause().getMessage());
+        assertFalse(dbManager.findById(discarded[0].getId(), Pizza.class).isPresent());
+    }
+}
@@ -0,0 +1,72 @@
+package ejercicio2.database;
+
+import ejercicio2.model.Pizza;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Mide el coste por entidad de guardar pizzas una a una frente a saveAll
+ * con lotes de 1, 10, 100 y 1000 elementos.
+ *
+ * Uso: java ejercicio2.database.BatchWriteBenchmark [entidades por medida]
+ */
+public class BatchWriteBenchmark {
+
+    private static final int[] BATCH_SIZES = {1, 10, 100, 1000};
+    private static final int ROUNDS = 7;
+
+    public static void main(String[] args) {
+        int entities = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+
+        // Calentamiento para que el JIT compile ambos caminos
+        for (int batchSize : BATCH_SIZES) {
+            run(batchSize, entities / 10, false);
+            run(batchSize, entities / 10, true);
+        }
+
+        System.out.printf("%-8s %16s %16s%n", "Lote", "save (ns/ent.)", "saveAll (ns/ent.)");
+        for (int batchSize : BATCH_SIZES) {
+            double single = median(batchSize, entities, false);
+            double batch = median(batchSize, entities, true);
+            System.out.printf("%-8d %16.1f %16.1f%n", batchSize, single, batch);
+        }
+    }
+
+    private static double median(int batchSize, int entities, boolean useBatch) {
+        double[] results = new double[ROUNDS];
+        for (int i = 0; i < ROUNDS; i++) {
+            results[i] = run(batchSize, entities, useBatch);
+        }
+        Arrays.sort(results);
+        return results[ROUNDS / 2];
+    }
+
+    private static double run(int batchSize, int entities, boolean useBatch) {
+        DataBaseManager dbManager = new DataBaseManager();
+        dbManager.connect();
+
+        List<List<Pizza>> batches = new ArrayList<>();
+        for (int i = 0; i < entities / batchSize; i++) {
+            List<Pizza> batch = new ArrayList<>(batchSize);
+            for (int j = 0; j < batchSize; j++) {
+                batch.add(new Pizza("Margherita", "Medium", 9.99));
+            }
+            batches.add(batch);
+        }
+
+        System.gc();
+        long start = System.nanoTime();
+        for (List<Pizza> batch : batches) {
+            if (useBatch) {
+                dbManager.saveAll(batch);
+            } else {
+                for (Pizza pizza : batch) {
+                    dbManager.save(pizza);
+                }
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        return (double) elapsed / (batches.size() * batchSize);
+    }
+}
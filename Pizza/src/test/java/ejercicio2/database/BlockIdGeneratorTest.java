@@ -0,0 +1,69 @@
+package ejercicio2.database;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BlockIdGeneratorTest {
+
+    @Test
+    public void testSingleThreadIdsAreConsecutive() {
+        BlockIdGenerator generator = new BlockIdGenerator(1, 4);
+        for (long expected = 1; expected <= 10; expected++) {
+            assertEquals(expected, generator.nextId());
+        }
+        // Ya se ha reservado el tercer bloque entero
+        assertEquals(13, generator.getHighWaterMark());
+    }
+
+    @Test
+    public void testThreadsDoNotShareIds() throws InterruptedException {
+        BlockIdGenerator generator = new BlockIdGenerator();
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread thread = new Thread(() -> {
+                long previous = 0;
+                for (int i = 0; i < 10_000; i++) {
+                    long id = generator.nextId();
+                    // Dentro de un hilo los IDs siempre crecen
+                    assertTrue(id > previous);
+                    previous = id;
+                    ids.add(id);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(40_000, ids.size());
+    }
+
+    @Test
+    public void testLargeBatchesAreConsecutive() {
+        BlockIdGenerator generator = new BlockIdGenerator(1, 4);
+        generator.nextId();
+        long[] ids = generator.nextIds(10);
+        for (int i = 1; i < ids.length; i++) {
+            assertEquals(ids[i - 1] + 1, ids[i]);
+        }
+        assertEquals(5, ids[0]);
+    }
+
+    @Test
+    public void testObserveSkipsUsedIds() {
+        BlockIdGenerator generator = new BlockIdGenerator();
+        generator.observe(500);
+        assertEquals(501, generator.nextId());
+        generator.observe(10);
+        assertEquals(502, generator.nextId());
+        assertThrows(IllegalArgumentException.class, () -> new BlockIdGenerator(1, 0));
+    }
+}
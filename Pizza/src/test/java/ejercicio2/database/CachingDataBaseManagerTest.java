@@ -0,0 +1,190 @@
+package ejercicio2.database;
+
+import ejercicio2.interfaces.ITransaction;
+import ejercicio2.model.CacheStats;
+import ejercicio2.model.Pizza;
+import ejercicio2.model.User;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CachingDataBaseManagerTest extends AbstractDataBaseManagerTest<CachingDataBaseManager> {
+
+    @Override
+    protected CachingDataBaseManager createDataBaseManager() {
+        return new CachingDataBaseManager(new DataBaseManager());
+    }
+
+    @Override
+    protected void assertStoredEntity(Object expected, Object actual) {
+        assertSame(expected, actual);
+    }
+
+    @Test
+    public void testHitsAndMisses() {
+        User user = dbManager.save(new User("cached", "password", "cached@example.com"));
+
+        dbManager.findById(user.getId(), User.class);
+        dbManager.findById(user.getId(), User.class);
+        dbManager.findById(user.getId(), User.class);
+
+        CacheStats stats = dbManager.getStats();
+        assertEquals(1, stats.getMissCount());
+        assertEquals(2, stats.getHitCount());
+        assertEquals(1, stats.getSize());
+        assertEquals(2.0 / 3, stats.getHitRate(), 0.001);
+
+        // Las filas que no existen no se guardan en la caché
+        assertFalse(dbManager.findById(999L, User.class).isPresent());
+        assertFalse(dbManager.findById(999L, User.class).isPresent());
+        assertEquals(3, dbManager.getStats().getMissCount());
+    }
+
+    @Test
+    public void testWritesInvalidate() {
+        User user = dbManager.save(new User("original", "password", "original@example.com"));
+        dbManager.findById(user.getId(), User.class);
+
+        // Una copia actualizada sustituye a la fila en caché
+        dbManager.update(new User(user.getId(), "updated", "password", "updated@example.com", null, null));
+        assertEquals("updated", dbManager.findById(user.getId(), User.class).orElseThrow().getUsername());
+
+        dbManager.delete(user.getId(), User.class);
+        assertFalse(dbManager.findById(user.getId(), User.class).isPresent());
+
+        // También las escrituras de una transacción confirmada
+        User other = dbManager.save(new User("tx", "password", "tx@example.com"));
+        dbManager.findById(other.getId(), User.class);
+        try (ITransaction transaction = dbManager.beginTransaction()) {
+            transaction.update(new User(other.getId(), "tx2", "password", "tx@example.com", null, null));
+            transaction.commit();
+        }
+        assertEquals("tx2", dbManager.findById(other.getId(), User.class).orElseThrow().getUsername());
+    }
+
+    @Test
+    public void testWritesOutsideTheDecoratorInvalidate() {
+        DataBaseManager store = new DataBaseManager();
+        CachingDataBaseManager cached = new CachingDataBaseManager(store);
+        cached.connect();
+        User first = cached.save(new User("first", "password", null));
+        User second = cached.save(new User("second", "password", null));
+        cached.findById(first.getId(), User.class);
+        cached.findAllById(Arrays.asList(first.getId(), second.getId()), User.class);
+
+        // La retención borra directamente en el gestor decorado
+        store.setRetentionPolicy(RetentionPolicy.of(User.class).maxEntries(1));
+        assertEquals(1, store.enforceRetention());
+        User evicted = store.findById(first.getId(), User.class).isPresent() ? second : first;
+        User kept = evicted == first ? second : first;
+        assertFalse(cached.findById(evicted.getId(), User.class).isPresent());
+        assertEquals(1, cached.findAllById(Arrays.asList(first.getId(), second.getId()), User.class).size());
+
+        // También una actualización hecha sin pasar por el decorador
+        store.update(new User(kept.getId(), "changed", "password", null, null, null));
+        assertEquals("changed", cached.findById(kept.getId(), User.class).orElseThrow().getUsername());
+        cached.disconnect();
+    }
+
+    @Test
+    public void testFindAllByIdUsesCache() {
+        List<Pizza> pizzas = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            pizzas.add(new Pizza("Pizza " + i, "Mediana", 10.0));
+        }
+        dbManager.saveAll(pizzas);
+        dbManager.findById(pizzas.get(2).getId(), Pizza.class);
+
+        List<Pizza> found = dbManager.findAllById(Arrays.asList(pizzas.get(5).getId(), 12_345L,
+                pizzas.get(2).getId()), Pizza.class);
+        assertEquals(2, found.size());
+        assertSame(pizzas.get(5), found.get(0));
+        assertSame(pizzas.get(2), found.get(1));
+        assertEquals(1, dbManager.getStats().getHitCount());
+        assertEquals(2, dbManager.getStats().getSize());
+    }
+
+    @Test
+    public void testCapacityIsBounded() {
+        CachingDataBaseManager small = new CachingDataBaseManager(new DataBaseManager(), 100);
+        small.connect();
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < 1_000; i++) {
+            users.add(small.save(new User("user" + i, "password", null)));
+        }
+
+        // Las filas leídas a menudo sobreviven a un recorrido que lee el resto una sola vez
+        for (int i = 0; i < 10; i++) {
+            small.findById(users.get(i).getId(), User.class);
+            small.findById(users.get(i).getId(), User.class);
+        }
+        for (User user : users) {
+            small.findById(user.getId(), User.class);
+        }
+
+        CacheStats stats = small.getStats();
+        assertTrue(stats.getSize() <= 100);
+        assertTrue(stats.getEvictionCount() >= 900);
+        long hits = stats.getHitCount();
+        for (int i = 0; i < 10; i++) {
+            small.findById(users.get(i).getId(), User.class);
+        }
+        assertEquals(hits + 10, small.getStats().getHitCount());
+    }
+
+    @Test
+    public void testNoStaleReadsUnderConcurrentUpdates() throws Exception {
+        User user = dbManager.save(new User("v0", "password", null));
+        long id = user.getId();
+        int updates = 5_000;
+        int readers = 4;
+        ExecutorService executor = Executors.newFixedThreadPool(readers);
+        AtomicBoolean done = new AtomicBoolean();
+
+        try {
+            // Los lectores cargan la fila sin parar mientras se actualiza
+            List<Future<?>> results = new ArrayList<>();
+            for (int r = 0; r < readers; r++) {
+                results.add(executor.submit(() -> {
+                    while (!done.get()) {
+                        dbManager.findById(id, User.class);
+                    }
+                }));
+            }
+
+            // Justo después de cada actualización, la lectura devuelve la versión nueva
+            for (int i = 1; i <= updates; i++) {
+                dbManager.update(new User(id, "v" + i, "password", null, null, null));
+                assertEquals("v" + i, dbManager.findById(id, User.class).orElseThrow().getUsername());
+            }
+            done.set(true);
+            for (Future<?> result : results) {
+                result.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            done.set(true);
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testCachedReadsFailWhenDisconnected() {
+        User user = dbManager.save(new User("cached", "password", null));
+        dbManager.findById(user.getId(), User.class);
+
+        dbManager.disconnect();
+        assertThrows(IllegalStateException.class, () -> {
+            dbManager.findById(user.getId(), User.class);
+        });
+        assertEquals(0, dbManager.getStats().getSize());
+    }
+}
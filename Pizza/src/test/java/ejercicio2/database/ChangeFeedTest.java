@@ -0,0 +1,117 @@
+package ejercicio2.database;
+
+import ejercicio2.exceptions.ChangeFeedOverrunException;
+import ejercicio2.interfaces.IChangeSubscription;
+import ejercicio2.model.ChangeEvent;
+import ejercicio2.model.Order;
+import ejercicio2.model.User;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pruebas unitarias para el flujo de cambios.
+ */
+public class ChangeFeedTest {
+
+    @Test
+    public void testDrainInOrderAndResume() {
+        ChangeFeed feed = new ChangeFeed(8);
+        IChangeSubscription subscription = feed.subscribe(null, 1);
+        List<ChangeEvent> events = new ArrayList<>();
+        assertEquals(0, subscription.drain(events, 10));
+
+        for (long id = 1; id <= 5; id++) {
+            feed.publish(User.class, id, ChangeEvent.Operation.INSERT);
+        }
+        assertEquals(3, subscription.drain(events, 3));
+        assertEquals(2, subscription.drain(events, 10));
+        for (int i = 0; i < 5; i++) {
+            assertEquals(i + 1, events.get(i).getSequence());
+            assertEquals(i + 1, events.get(i).getId());
+        }
+        assertEquals(6, subscription.getNextSequence());
+
+        // Otra suscripción puede retomar el flujo desde cualquier secuencia conservada
+        IChangeSubscription resumed = feed.subscribe(null, 4);
+        events.clear();
+        assertEquals(2, resumed.drain(events, 10));
+        assertEquals(4, events.get(0).getSequence());
+
+        subscription.close();
+        assertThrows(IllegalStateException.class, () -> subscription.drain(new ArrayList<>(), 1));
+        assertThrows(IllegalArgumentException.class, () -> feed.subscribe(null, 7));
+        assertThrows(IllegalArgumentException.class, () -> feed.subscribe(null, 0));
+    }
+
+    @Test
+    public void testTableFilter() {
+        ChangeFeed feed = new ChangeFeed(8);
+        IChangeSubscription orders = feed.subscribe(Order.class, 1);
+        feed.publish(User.class, 1, ChangeEvent.Operation.INSERT);
+        feed.publish(Order.class, 2, ChangeEvent.Operation.INSERT);
+        feed.publish(User.class, 1, ChangeEvent.Operation.DELETE);
+
+        List<ChangeEvent> events = new ArrayList<>();
+        assertEquals(1, orders.drain(events, 10));
+        assertEquals(2, events.get(0).getId());
+        // Los cambios de otras tablas también avanzan la posición
+        assertEquals(4, orders.getNextSequence());
+    }
+
+    @Test
+    public void testSlowSubscriberIsOverrun() {
+        ChangeFeed feed = new ChangeFeed(4);
+        IChangeSubscription slow = feed.subscribe(null, 1);
+        for (long id = 1; id <= 6; id++) {
+            feed.publish(User.class, id, ChangeEvent.Operation.UPDATE);
+        }
+
+        // Los escritores no esperan: el suscriptor descubre que ha perdido cambios
+        assertThrows(ChangeFeedOverrunException.class, () -> slow.drain(new ArrayList<>(), 10));
+        assertThrows(ChangeFeedOverrunException.class, () -> feed.subscribe(null, 2));
+
+        IChangeSubscription recent = feed.subscribe(null, 3);
+        List<ChangeEvent> events = new ArrayList<>();
+        assertEquals(4, recent.drain(events, 10));
+        assertEquals(3, events.get(0).getId());
+    }
+
+    @Test
+    public void testConcurrentPublishersWithoutGaps() throws Exception {
+        ChangeFeed feed = new ChangeFeed(1 << 16);
+        IChangeSubscription subscription = feed.subscribe(null, 1);
+        int threads = 4;
+        int perThread = 5_000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    feed.publish(User.class, i, ChangeEvent.Operation.INSERT);
+                }
+            }));
+        }
+
+        List<ChangeEvent> events = new ArrayList<>();
+        while (events.size() < threads * perThread) {
+            subscription.drain(events, 1_000, 1, TimeUnit.SECONDS);
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        for (int i = 0; i < events.size(); i++) {
+            assertEquals(i + 1, events.get(i).getSequence());
+        }
+        assertEquals(0, subscription.drain(events, 10, 10, TimeUnit.MILLISECONDS));
+    }
+}
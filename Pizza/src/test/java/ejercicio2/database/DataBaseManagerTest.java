@@ -1,172 +1,746 @@
 package ejercicio2.database;
 
+import ejercicio2.exceptions.VersionConflictException;
+import ejercicio2.interfaces.IChangeSubscription;
+import ejercicio2.interfaces.IEntityResolver;
+import ejercicio2.interfaces.ITransaction;
+import ejercicio2.model.ChangeEvent;
 import ejercicio2.model.User;
 import ejercicio2.model.Order;
+import ejercicio2.model.Page;
 import ejercicio2.model.Pizza;
-import org.junit.jupiter.api.BeforeEach;
+import ejercicio2.model.Query;
+import ejercicio2.model.QueryResult;
+import ejercicio2.order.OrderManager;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
-public class DataBaseManagerTest {
+public class DataBaseManagerTest extends AbstractDataBaseManagerTest<DataBaseManager> {
 
-    private DataBaseManager dbManager;
+    @Override
+    protected DataBaseManager createDataBaseManager() {
+        return new DataBaseManager();
+    }
 
-    @BeforeEach
-    public void setUp() {
-        dbManager = new DataBaseManager();
-        dbManager.connect();
+    @Override
+    protected void assertStoredEntity(Object expected, Object actual) {
+        // Las lecturas devuelven el mismo objeto guardado, sin copiarlo
+        assertSame(expected, actual);
     }
 
     @Test
-    public void testConnection() {
-        assertTrue(dbManager.isConnected());
+    public void testEntityWithoutIEntityUsesIdField() {
+        // Una clase que no implementa IEntity pero tiene campo id
+        Ingredient ingredient = dbManager.save(new Ingredient("Queso"));
 
-        dbManager.disconnect();
-        assertFalse(dbManager.isConnected());
+        assertNotNull(ingredient.id);
+        assertEquals("Queso", dbManager.findById(ingredient.id, Ingredient.class).orElseThrow().name);
 
-        assertTrue(dbManager.connect());
-        assertTrue(dbManager.isConnected());
+        ingredient.name = "Tomate";
+        dbManager.update(ingredient);
+        assertEquals("Tomate", dbManager.findById(ingredient.id, Ingredient.class).orElseThrow().name);
     }
 
     @Test
-    public void testSaveAndFindById() {
-        // Crear y guardar un usuario
-        User user = new User("testuser", "password", "test@example.com");
-        user = dbManager.save(user);
+    public void testEntityWithoutIdFieldIsRejected() {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> {
+            dbManager.save(new Topping());
+        });
+        assertTrue(e.getMessage().contains("id"));
 
-        // Verificar que se ha asignado un ID
-        assertNotNull(user.getId());
+        // La clase no queda registrada
+        assertTrue(dbManager.findAll(Topping.class).isEmpty());
+    }
 
-        // Buscar el usuario por ID
-        Optional<User> foundUser = dbManager.findById(user.getId(), User.class);
+    private static class Ingredient {
+        private Long id;
+        private String name;
+
+        Ingredient(String name) {
+            this.name = name;
+        }
+    }
 
-        // Verificar que se ha encontrado
-        assertTrue(foundUser.isPresent());
-        assertEquals("testuser", foundUser.get().getUsername());
+    private static class Topping {
+        private String name;
     }
 
     @Test
-    public void testUpdate() {
-        // Crear y guardar un usuario
-        User user = new User("originaluser", "password", "original@example.com");
-        user = dbManager.save(user);
-        Long userId = user.getId();
+    public void testOffHeapOrders() {
+        DataBaseManager offHeap = new DataBaseManager();
+        offHeap.storeOffHeap(Order.class);
+        offHeap.createIndex("status", Order.class, Order::getStatus);
+        offHeap.connect();
+
+        User user = offHeap.save(new User("offHeap", "password", "offheap@example.com"));
+        List<Pizza> pizzas = offHeap.saveAll(Arrays.asList(
+                new Pizza("Margarita", "Mediana", 10.0), new Pizza("Barbacoa", "Grande", 14.0)));
+        List<Order> orders = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            orders.add(new Order(user, new ArrayList<>(pizzas)));
+        }
+        offHeap.saveAll(orders);
+
+        // Cada lectura materializa un pedido nuevo con las referencias resueltas
+        Order found = offHeap.findById(orders.get(0).getId(), Order.class).orElseThrow();
+        assertNotSame(orders.get(0), found);
+        assertSame(user, found.getUser());
+        assertSame(pizzas.get(1), found.getPizzas().get(1));
+        assertEquals(24.0, found.getTotalPrice(), 0.001);
+        assertEquals(orders.get(0).getOrderDate(), found.getOrderDate());
+
+        found.setStatus("DELIVERED");
+        long version = offHeap.findVersionedById(found.getId(), Order.class).orElseThrow().getVersion();
+        offHeap.compareAndUpdate(found, version);
+        assertEquals("DELIVERED", offHeap.findById(found.getId(), Order.class).orElseThrow().getStatus());
+        assertEquals(1, offHeap.findBy("status", Order.class, "DELIVERED").size());
+        assertThrows(VersionConflictException.class, () -> offHeap.compareAndUpdate(found, version));
+
+        offHeap.delete(orders.get(1).getId(), Order.class);
+        assertFalse(offHeap.findById(orders.get(1).getId(), Order.class).isPresent());
+        assertEquals(49, offHeap.findAll(Order.class).size());
+        assertEquals(49, offHeap.stream(Order.class).count());
+        assertEquals(49, offHeap.stream(Order.class).parallel().count());
+
+        Set<Long> paged = new HashSet<>();
+        Page<Order> page = offHeap.findPage(Order.class, null, 10);
+        while (true) {
+            page.getItems().forEach(order -> assertTrue(paged.add(order.getId())));
+            if (page.getNextCursor() == null) {
+                break;
+            }
+            page = offHeap.findPage(Order.class, page.getNextCursor(), 10);
+        }
+        assertEquals(49, paged.size());
+        QueryResult<Order> pending = offHeap.query(Query.from(Order.class)
+                .filter(order -> "PENDING".equals(order.getStatus())));
+        assertEquals(48, pending.getRows().size());
+        assertEquals(QueryResult.Plan.FULL_SCAN, pending.getPlan());
+
+        // Solo los pedidos, y antes de crear su tabla
+        assertThrows(IllegalStateException.class, () -> offHeap.storeOffHeap(Order.class));
+        assertThrows(IllegalArgumentException.class, () -> new DataBaseManager().storeOffHeap(User.class));
+    }
 
-        // Modificar el usuario
-        user.setUsername("updateduser");
-        user.setEmail("updated@example.com");
+    @Test
+    public void testConcurrentUpdatesOfASharedRowAreNeverTorn() throws Exception {
+        User user = dbManager.save(new User("shared", "password", "shared@example.com"));
+        Long id = user.getId();
+
+        // Cada escritura deja el usuario coherente: el correo es el nombre más el dominio
+        int threads = 8;
+        int updatesPerThread = 500;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                results.add(executor.submit(() -> {
+                    for (int i = 0; i < updatesPerThread; i++) {
+                        String name = "t" + thread + "_" + i;
+                        dbManager.update(new User(id, name, "password", name + "@example.com", null, null));
+                        User read = dbManager.findById(id, User.class).orElseThrow();
+                        assertEquals(read.getUsername() + "@example.com", read.getEmail());
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> result : results) {
+                result.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
 
-        // Actualizar en la base de datos
-        dbManager.update(user);
+        // La fila compartida sigue siendo una sola y es la última escritura de algún hilo
+        List<User> users = dbManager.findAll(User.class);
+        assertEquals(1, users.size());
+        assertTrue(users.get(0).getUsername().matches("t\\d+_" + (updatesPerThread - 1)), users.get(0).getUsername());
+        assertEquals(users.get(0).getUsername() + "@example.com", users.get(0).getEmail());
+    }
 
-        // Buscar el usuario actualizado
-        Optional<User> updatedUser = dbManager.findById(userId, User.class);
+    @Test
+    public void testOrderReferencesResolveById() {
+        User user = dbManager.save(new User("lazy", "password", "lazy@example.com"));
+        List<Pizza> pizzas = dbManager.saveAll(Arrays.asList(
+                new Pizza("Margarita", "Mediana", 10.0), new Pizza("Barbacoa", "Grande", 14.0)));
+        Order order = dbManager.save(new Order(user, Arrays.asList(pizzas.get(0), pizzas.get(1), pizzas.get(0))));
+        assertEquals(user.getId(), order.getUserId());
+        assertEquals(Arrays.asList(pizzas.get(0).getId(), pizzas.get(1).getId(), pizzas.get(0).getId()),
+                order.getPizzaIds());
+
+        // El pedido guardado no retiene las instancias: ve la versión actual
+        User renamed = new User(user.getId(), "lazy", "password", "lazy@example.com", "Calle Nueva 2", null);
+        dbManager.update(renamed);
+        assertSame(renamed, order.getUser());
+        assertSame(pizzas.get(0), order.getPizzas().get(2));
+
+        // La copia comparte los IDs y resuelve por la misma base de datos
+        Order copy = order.copy();
+        copy.addPizza(pizzas.get(1));
+        assertEquals(4, copy.getPizzas().size());
+        assertEquals(48.0, copy.getTotalPrice(), 0.001);
+        assertEquals(3, order.getPizzas().size());
+        dbManager.update(copy);
+        assertEquals(4, dbManager.findById(order.getId(), Order.class).orElseThrow().getPizzaIds().size());
+
+        // Una pizza borrada se omite, como al leer por JDBC, pero se conserva su ID
+        dbManager.delete(pizzas.get(1).getId(), Pizza.class);
+        assertEquals(Arrays.asList(pizzas.get(0), pizzas.get(0)), copy.getPizzas());
+        assertEquals(pizzas.get(1).getId(), copy.getPizzaIds().get(1));
+        assertEquals(20.0, new OrderManager(dbManager).calculateOrderPrice(copy), 0.001);
+    }
 
-        // Verificar que se ha actualizado
-        assertTrue(updatedUser.isPresent());
-        assertEquals("updateduser", updatedUser.get().getUsername());
-        assertEquals("updated@example.com", updatedUser.get().getEmail());
+    @Test
+    public void testResolvedPizzasCannotBeModified() {
+        Pizza pizza = dbManager.save(new Pizza("Margarita", "Mediana", 10.0));
+        Order order = dbManager.save(new Order(null, new ArrayList<>(Arrays.asList(pizza))));
+
+        // Añadir a la lista resuelta se perdería: se rechaza
+        assertThrows(UnsupportedOperationException.class, () -> order.getPizzas().add(pizza));
+        Order copy = order.copy();
+        copy.addPizza(pizza);
+        assertEquals(2, copy.getPizzas().size());
+        assertEquals(1, order.getPizzas().size());
     }
 
     @Test
-    public void testDelete() {
-        // Crear y guardar un usuario
-        User user = new User("userToDelete", "password", "delete@example.com");
-        user = dbManager.save(user);
-        Long userId = user.getId();
+    public void testResolvedReferencesAreKeptUntilTheStoreChanges() {
+        User user = dbManager.save(new User("cached", "password", "cached@example.com"));
+        Pizza pizza = dbManager.save(new Pizza("Margarita", "Mediana", 10.0));
+        Order stored = dbManager.save(new Order(user, Arrays.asList(pizza, pizza)));
+
+        AtomicInteger lookups = new AtomicInteger();
+        AtomicLong generation = new AtomicLong();
+        Order order = new Order();
+        order.setUserId(stored.getUserId());
+        order.setPizzaIds(stored.getPizzaIds());
+        order.attach(new IEntityResolver() {
+            @Override
+            public Object resolve(Class<?> clazz, long id) {
+                lookups.incrementAndGet();
+                return dbManager.findById(id, clazz).orElse(null);
+            }
+
+            @Override
+            public long getGeneration() {
+                return generation.get();
+            }
+        });
 
-        // Verificar que existe
-        assertTrue(dbManager.findById(userId, User.class).isPresent());
+        assertSame(user, order.getUser());
+        assertSame(user, order.getUser());
+        assertEquals(2, order.getPizzas().size());
+        assertSame(order.getPizzas(), order.getPizzas());
+        assertEquals(2, lookups.get());
+
+        // Al cambiar la base de datos se vuelven a buscar
+        User renamed = dbManager.update(new User(user.getId(), "renamed", "password", "cached@example.com", null, null));
+        generation.incrementAndGet();
+        assertSame(renamed, order.getUser());
+        assertEquals(3, lookups.get());
+
+        // Las filas enlazadas por la base de datos ven sus escrituras
+        assertSame(renamed, stored.getUser());
+        dbManager.delete(pizza.getId(), Pizza.class);
+        assertTrue(stored.getPizzas().isEmpty());
+    }
 
-        // Eliminar el usuario
-        boolean deleted = dbManager.delete(userId, User.class);
+    @Test
+    public void testDurableOrderNeedsSavedReferences(@TempDir Path directory) {
+        DataBaseManager durable = new DataBaseManager(directory, SyncPolicy.EVERY_WRITE);
+        durable.connect();
+        Order order = new Order(new User("unsaved", "password", null), new ArrayList<>());
+        assertThrows(IllegalArgumentException.class, () -> durable.save(order));
+        assertTrue(durable.findAll(Order.class).isEmpty());
+
+        // En memoria se admite y el pedido conserva la instancia
+        Order inMemory = dbManager.save(new Order(new User("unsaved", "password", null), new ArrayList<>()));
+        assertEquals("unsaved", inMemory.getUser().getUsername());
+        durable.disconnect();
+    }
+
+    @Test
+    public void testDisconnectWaitsForInFlightCommits(@TempDir Path directory) throws Exception {
+        DataBaseManager durable = new DataBaseManager(directory, SyncPolicy.EVERY_WRITE);
+        durable.connect();
+        int threads = 4;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            // Cada hilo escribe hasta que la desconexión se lo impide
+            List<Future<List<Long>>> results = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                results.add(executor.submit(() -> {
+                    List<Long> saved = new ArrayList<>();
+                    for (int i = 0; ; i++) {
+                        try {
+                            saved.add(durable.save(new User("w" + thread + "_" + i, "password", null)).getId());
+                        } catch (IllegalStateException e) {
+                            return saved;
+                        }
+                    }
+                }));
+            }
+            Thread.sleep(100);
+            durable.disconnect();
+
+            // Ninguna escritura falla por el cierre y las confirmadas se recuperan
+            DataBaseManager restarted = new DataBaseManager(directory, SyncPolicy.EVERY_WRITE);
+            List<Long> saved = new ArrayList<>();
+            for (Future<List<Long>> result : results) {
+                saved.addAll(result.get(30, TimeUnit.SECONDS));
+            }
+            assertFalse(saved.isEmpty());
+            restarted.connect();
+            assertEquals(saved.size(), restarted.findAllById(saved, User.class).size());
+            restarted.disconnect();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
 
-        // Verificar que se ha eliminado
-        assertTrue(deleted);
-        assertFalse(dbManager.findById(userId, User.class).isPresent());
+    @Test
+    public void testOffHeapOrdersRecoverAfterRestart(@TempDir Path directory) {
+        DataBaseManager durable = new DataBaseManager(directory, SyncPolicy.EVERY_WRITE);
+        durable.storeOffHeap(Order.class);
+        durable.connect();
+        User user = durable.save(new User("durable", "password", "durable@example.com"));
+        Order first = durable.save(new Order(user, List.of(durable.save(new Pizza("Margarita", "Mediana", 10.0)))));
+        durable.snapshot();
+        Order second = durable.save(new Order(user, new ArrayList<>()));
+        second.setStatus("CANCELLED");
+        durable.update(second);
+        durable.disconnect();
+
+        DataBaseManager restarted = new DataBaseManager(directory, SyncPolicy.EVERY_WRITE);
+        restarted.storeOffHeap(Order.class);
+        restarted.connect();
+        Order recovered = restarted.findById(first.getId(), Order.class).orElseThrow();
+        assertSame(restarted.findById(user.getId(), User.class).orElseThrow(), recovered.getUser());
+        assertEquals("Margarita", recovered.getPizzas().get(0).getName());
+        assertEquals("CANCELLED", restarted.findById(second.getId(), Order.class).orElseThrow().getStatus());
+        restarted.disconnect();
+    }
+
+    @Test
+    public void testDurableModeRecoversAfterRestart(@TempDir Path directory) {
+        DataBaseManager durable = new DataBaseManager(directory, SyncPolicy.EVERY_WRITE);
+        assertTrue(durable.connect());
+
+        User user = durable.save(new User("durable", "password", "durable@example.com"));
+        List<Pizza> pizzas = durable.saveAll(Arrays.asList(
+                new Pizza("Margarita", "Mediana", 10.0), new Pizza("Barbacoa", "Grande", 14.0)));
+        Order order = durable.save(new Order(user, pizzas));
+        order.setStatus("DELIVERED");
+        durable.update(order);
+        Pizza removed = durable.save(new Pizza("Cuatro quesos", "Pequeña", 9.0));
+        durable.delete(removed.getId(), Pizza.class);
+        durable.disconnect();
+
+        DataBaseManager restarted = new DataBaseManager(directory, SyncPolicy.EVERY_WRITE);
+        assertTrue(restarted.connect());
+
+        Order recovered = restarted.findById(order.getId(), Order.class).orElseThrow();
+        assertEquals("DELIVERED", recovered.getStatus());
+        assertEquals(order.getOrderDate(), recovered.getOrderDate());
+        assertEquals(24.0, recovered.getTotalPrice(), 0.001);
+        // Las referencias apuntan a las entidades recuperadas, no a copias
+        assertSame(restarted.findById(user.getId(), User.class).orElseThrow(), recovered.getUser());
+        assertEquals(2, recovered.getPizzas().size());
+        assertSame(restarted.findById(pizzas.get(0).getId(), Pizza.class).orElseThrow(), recovered.getPizzas().get(0));
+        assertFalse(restarted.findById(removed.getId(), Pizza.class).isPresent());
+
+        // Los IDs nuevos no reutilizan los recuperados
+        User another = restarted.save(new User("another", "password", "another@example.com"));
+        assertTrue(another.getId() > removed.getId());
+        restarted.disconnect();
     }
 
     @Test
-    public void testFindAll() {
-        // Limpiar registros previos
-        List<User> initialUsers = dbManager.findAll(User.class);
-        for (User user : initialUsers) {
-            dbManager.delete(user.getId(), User.class);
+    public void testDurableModeIgnoresTornTail(@TempDir Path directory) throws Exception {
+        DataBaseManager durable = new DataBaseManager(directory, SyncPolicy.OS_MANAGED);
+        assertTrue(durable.connect());
+        User first = durable.save(new User("first", "password", "first@example.com"));
+        User second = durable.save(new User("second", "password", "second@example.com"));
+        durable.disconnect();
+
+        // Simulamos una caída a mitad de la última escritura
+        try (FileChannel channel = FileChannel.open(lastLogSegment(directory), StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
         }
 
-        // Crear y guardar varios usuarios
-        User user1 = new User("user1", "pass1", "user1@example.com");
-        User user2 = new User("user2", "pass2", "user2@example.com");
-        User user3 = new User("user3", "pass3", "user3@example.com");
+        DataBaseManager restarted = new DataBaseManager(directory, SyncPolicy.OS_MANAGED);
+        assertTrue(restarted.connect());
+        assertTrue(restarted.findById(first.getId(), User.class).isPresent());
+        assertFalse(restarted.findById(second.getId(), User.class).isPresent());
 
-        dbManager.save(user1);
-        dbManager.save(user2);
-        dbManager.save(user3);
+        // El registro sigue siendo válido tras descartar el final incompleto
+        User third = restarted.save(new User("third", "password", "third@example.com"));
+        restarted.disconnect();
 
-        // Buscar todos los usuarios
-        List<User> allUsers = dbManager.findAll(User.class);
+        DataBaseManager again = new DataBaseManager(directory, SyncPolicy.OS_MANAGED);
+        assertTrue(again.connect());
+        assertEquals(2, again.findAll(User.class).size());
+        assertTrue(again.findById(third.getId(), User.class).isPresent());
+        again.disconnect();
+    }
 
-        // Verificar que se han encontrado todos
-        assertEquals(3, allUsers.size());
+    @Test
+    public void testDurableModeReconnectDoesNotReplayTwice(@TempDir Path directory) {
+        DataBaseManager durable = new DataBaseManager(directory, SyncPolicy.INTERVAL, 5);
+        assertTrue(durable.connect());
+        User user = durable.save(new User("user", "password", "user@example.com"));
+        durable.disconnect();
+
+        assertTrue(durable.connect());
+        assertSame(user, durable.findById(user.getId(), User.class).orElseThrow());
+        assertEquals(1, durable.findAll(User.class).size());
+        durable.disconnect();
     }
 
     @Test
-    public void testMultipleEntityTypes() {
-        // Crear y guardar un usuario
-        User user = new User("testuser", "password", "test@example.com");
-        user = dbManager.save(user);
+    public void testSnapshotAndLogTailRecovery(@TempDir Path directory) throws Exception {
+        DataBaseManager durable = new DataBaseManager(directory, SyncPolicy.OS_MANAGED);
+        // La tabla de pedidos se crea antes que la de usuarios a los que referencia
+        durable.createIndex("userId", Order.class, order -> order.getUser() != null ? order.getUser().getId() : null);
+        assertTrue(durable.connect());
+
+        User user = durable.save(new User("snapshot", "password", "snapshot@example.com"));
+        Pizza pizza = durable.save(new Pizza("Margarita", "Mediana", 10.0));
+        Order order = durable.save(new Order(user, List.of(pizza)));
+        durable.snapshot();
+
+        // Escrituras posteriores a la instantánea, que solo están en el registro
+        user.setAddress("Calle Mayor 1");
+        durable.update(user);
+        Order second = durable.save(new Order(user, List.of(pizza)));
+        durable.delete(order.getId(), Order.class);
+        durable.disconnect();
+
+        try (Stream<Path> segments = Files.list(directory)) {
+            assertEquals(1, segments.filter(p -> p.getFileName().toString().startsWith("wal-")).count());
+        }
 
-        // Crear y guardar una pizza
-        Pizza pizza = new Pizza("Margherita", "Medium", 9.99);
-        pizza = dbManager.save(pizza);
+        DataBaseManager restarted = new DataBaseManager(directory, SyncPolicy.OS_MANAGED);
+        restarted.createIndex("userId", Order.class, o -> o.getUser() != null ? o.getUser().getId() : null);
+        assertTrue(restarted.connect());
+
+        User recoveredUser = restarted.findById(user.getId(), User.class).orElseThrow();
+        assertEquals("Calle Mayor 1", recoveredUser.getAddress());
+        assertFalse(restarted.findById(order.getId(), Order.class).isPresent());
+        List<Order> orders = restarted.findBy("userId", Order.class, user.getId());
+        assertEquals(1, orders.size());
+        assertEquals(second.getId(), orders.get(0).getId());
+        assertSame(recoveredUser, orders.get(0).getUser());
+        assertEquals(3, restarted.findAll(Pizza.class).size() + restarted.findAll(User.class).size()
+                + restarted.findAll(Order.class).size());
+        restarted.disconnect();
+    }
 
-        // Crear y guardar un pedido
-        List<Pizza> pizzas = new ArrayList<>();
-        pizzas.add(pizza);
-        Order order = new Order(user, pizzas);
-        order = dbManager.save(order);
+    @Test
+    public void testSnapshotWithConcurrentWriters(@TempDir Path directory) throws Exception {
+        DataBaseManager durable = new DataBaseManager(directory, SyncPolicy.OS_MANAGED);
+        assertTrue(durable.connect());
+
+        int threads = 4;
+        int writesPerThread = 500;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < writesPerThread; i++) {
+                    durable.save(new Pizza("Pizza " + i, "Mediana", i));
+                }
+            }));
+        }
+        for (int i = 0; i < 5; i++) {
+            durable.snapshot();
+        }
+        for (Future<?> future : futures) {
+            future.get(10, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+        durable.disconnect();
 
-        // Verificar que todos se han guardado correctamente
-        assertTrue(dbManager.findById(user.getId(), User.class).isPresent());
-        assertTrue(dbManager.findById(pizza.getId(), Pizza.class).isPresent());
-        assertTrue(dbManager.findById(order.getId(), Order.class).isPresent());
+        DataBaseManager restarted = new DataBaseManager(directory, SyncPolicy.OS_MANAGED);
+        assertTrue(restarted.connect());
+        assertEquals(threads * writesPerThread, restarted.findAll(Pizza.class).size());
+        restarted.disconnect();
+    }
 
-        // Verificar que los IDs son distintos para cada tipo
-        assertNotEquals(user.getId(), pizza.getId());
-        assertNotEquals(user.getId(), order.getId());
-        assertNotEquals(pizza.getId(), order.getId());
+    @Test
+    public void testAutomaticSnapshot(@TempDir Path directory) throws Exception {
+        DataBaseManager durable = new DataBaseManager(directory, SyncPolicy.OS_MANAGED, 10, 4096);
+        assertTrue(durable.connect());
+        for (int i = 0; i < 500; i++) {
+            durable.save(new Pizza("Pizza " + i, "Mediana", i));
+        }
+
+        // La instantánea se toma en segundo plano
+        Path snapshot = directory.resolve("snapshot.dat");
+        for (int i = 0; i < 100 && !Files.exists(snapshot); i++) {
+            Thread.sleep(50);
+        }
+        assertTrue(Files.exists(snapshot));
+        durable.disconnect();
+        DataBaseManager restarted = new DataBaseManager(directory, SyncPolicy.OS_MANAGED);
+        assertTrue(restarted.connect());
+        assertEquals(500, restarted.findAll(Pizza.class).size());
+        restarted.disconnect();
     }
 
     @Test
-    public void testOperationsWhenDisconnected() {
-        dbManager.disconnect();
+    public void testSnapshotRequiresDurableMode() {
+        assertThrows(IllegalStateException.class, () -> dbManager.snapshot());
+    }
 
-        User user = new User("testuser", "password", "test@example.com");
+    @Test
+    public void testTransactionIsDurableAsOneRecord(@TempDir Path directory) {
+        DataBaseManager durable = new DataBaseManager(directory, SyncPolicy.EVERY_WRITE);
+        assertTrue(durable.connect());
+        User user = durable.save(new User("tx", "password", "tx@example.com"));
+        Order order;
+        try (ITransaction transaction = durable.beginTransaction()) {
+            Pizza pizza = transaction.save(new Pizza("Margarita", "Mediana", 10.0));
+            order = transaction.save(new Order(user, List.of(pizza)));
+            transaction.commit();
+        }
+        durable.disconnect();
+
+        DataBaseManager restarted = new DataBaseManager(directory, SyncPolicy.EVERY_WRITE);
+        assertTrue(restarted.connect());
+        Order recovered = restarted.findById(order.getId(), Order.class).orElseThrow();
+        assertEquals(1, recovered.getPizzas().size());
+        assertSame(restarted.findById(recovered.getPizzas().get(0).getId(), Pizza.class).orElseThrow(),
+                recovered.getPizzas().get(0));
+        restarted.disconnect();
+    }
 
-        assertThrows(IllegalStateException.class, () -> {
-            dbManager.save(user);
-        });
+    @Test
+    public void testChangeFeed() {
+        long start = dbManager.getNextChangeSequence();
+        IChangeSubscription all = dbManager.subscribe(start);
+        IChangeSubscription orders = dbManager.subscribe(Order.class, start);
+
+        User user = dbManager.save(new User("cdc", "password", "cdc@example.com"));
+        Pizza pizza = dbManager.save(new Pizza("Margarita", "Mediana", 10.0));
+        Order order = dbManager.save(new Order(user, List.of(pizza)));
+        order.setStatus("DELIVERED");
+        dbManager.update(order);
+        dbManager.save(order); // Guardar una fila existente también es una actualización
+        dbManager.delete(order.getId(), Order.class);
+        dbManager.delete(order.getId(), Order.class); // No cambia nada, no se publica
+
+        // Las transacciones y las comprobaciones fallidas no publican nada
+        ITransaction transaction = dbManager.beginTransaction();
+        transaction.findById(user.getId(), User.class);
+        dbManager.update(user);
+        transaction.save(new Pizza("Barbacoa", "Grande", 12.0));
+        assertThrows(VersionConflictException.class, transaction::commit);
+
+        List<ChangeEvent> events = new ArrayList<>();
+        assertEquals(7, all.drain(events, 100));
+        List<ChangeEvent.Operation> operations = events.stream().map(ChangeEvent::getOperation)
+                .collect(Collectors.toList());
+        assertEquals(List.of(ChangeEvent.Operation.INSERT, ChangeEvent.Operation.INSERT,
+                ChangeEvent.Operation.INSERT, ChangeEvent.Operation.UPDATE, ChangeEvent.Operation.UPDATE,
+                ChangeEvent.Operation.DELETE, ChangeEvent.Operation.UPDATE), operations);
+        assertEquals(Pizza.class, events.get(1).getTable());
+        assertEquals(user.getId(), events.get(6).getId());
+        for (int i = 0; i < events.size(); i++) {
+            assertEquals(start + i, events.get(i).getSequence());
+        }
 
-        assertThrows(IllegalStateException.class, () -> {
-            dbManager.findById(1L, User.class);
-        });
+        events.clear();
+        assertEquals(4, orders.drain(events, 100));
+        assertTrue(events.stream().allMatch(e -> e.getTable() == Order.class && e.getId() == order.getId()));
+        assertEquals(all.getNextSequence(), orders.getNextSequence());
+        all.close();
+        orders.close();
+
+        // Un suscriptor puede retomar desde el último cambio que procesó
+        try (IChangeSubscription resumed = dbManager.subscribe(start + 5)) {
+            events.clear();
+            assertEquals(2, resumed.drain(events, 100));
+            assertEquals(ChangeEvent.Operation.DELETE, events.get(0).getOperation());
+        }
+        assertThrows(IllegalArgumentException.class, () -> dbManager.subscribe(start + 100));
+    }
 
-        assertThrows(IllegalStateException.class, () -> {
-            dbManager.update(user);
-        });
+    @Test
+    public void testChangeFeedWithConcurrentWriters() throws Exception {
+        int threads = 4;
+        int perThread = 2_000;
+        IChangeSubscription subscription = dbManager.subscribe(Pizza.class, dbManager.getNextChangeSequence());
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    Pizza pizza = dbManager.save(new Pizza("Pizza " + i, "Mediana", 10.0));
+                    pizza.setPrice(11.0);
+                    dbManager.update(pizza);
+                }
+            }));
+        }
 
-        assertThrows(IllegalStateException.class, () -> {
-            dbManager.delete(1L, User.class);
-        });
+        // Un único consumidor ve todos los cambios sin huecos, y los de cada fila en orden
+        List<ChangeEvent> events = new ArrayList<>();
+        while (events.size() < threads * perThread * 2) {
+            subscription.drain(events, 1_000, 1, TimeUnit.SECONDS);
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        subscription.close();
+
+        Set<Long> inserted = new HashSet<>();
+        for (int i = 0; i < events.size(); i++) {
+            ChangeEvent event = events.get(i);
+            if (i > 0) {
+                assertEquals(events.get(i - 1).getSequence() + 1, event.getSequence());
+            }
+            if (event.getOperation() == ChangeEvent.Operation.INSERT) {
+                assertTrue(inserted.add(event.getId()));
+            } else {
+                assertTrue(inserted.contains(event.getId()));
+            }
+        }
+        assertEquals(threads * perThread, inserted.size());
+    }
 
-        assertThrows(IllegalStateException.class, () -> {
-            dbManager.findAll(User.class);
-        });
+    @Test
+    public void testTimeOrderedIdsAfterRestartWithClockBehind(@TempDir Path directory) {
+        long epoch = TimeOrderedIdGenerator.DEFAULT_EPOCH_MILLIS;
+        DataBaseManager durable = new DataBaseManager(directory, SyncPolicy.EVERY_WRITE, 10, 0,
+                new TimeOrderedIdGenerator(3, epoch, () -> epoch + 60_000));
+        durable.connect();
+        List<User> users = durable.saveAll(Arrays.asList(
+                new User("uno", "password", null), new User("dos", "password", null)));
+        User last = durable.save(new User("tres", "password", null));
+        durable.disconnect();
+        assertTrue(users.get(0).getId() < users.get(1).getId());
+        assertTrue(users.get(1).getId() < last.getId());
+        assertEquals(3, TimeOrderedIdGenerator.nodeOf(last.getId()));
+
+        // El reloj del nodo ha retrocedido al reiniciar: los IDs nuevos siguen creciendo
+        DataBaseManager restarted = new DataBaseManager(directory, SyncPolicy.EVERY_WRITE, 10, 0,
+                new TimeOrderedIdGenerator(3, epoch, () -> epoch + 1_000));
+        restarted.connect();
+        User after = restarted.save(new User("cuatro", "password", null));
+        assertTrue(after.getId() > last.getId());
+        assertEquals(4, restarted.findAll(User.class).size());
+        restarted.disconnect();
+    }
+
+    @Test
+    public void testOffHeapQueryRunsInParallel() {
+        DataBaseManager offHeap = new DataBaseManager();
+        offHeap.storeOffHeap(Order.class);
+        offHeap.connect();
+        User user = offHeap.save(new User("offHeapScan", "password", null));
+        List<Order> orders = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) {
+            Order order = new Order(user, new ArrayList<>());
+            order.setStatus(i % 100 == 0 ? "PROCESSING" : "DELIVERED");
+            orders.add(order);
+        }
+        offHeap.saveAll(orders);
+
+        QueryResult<Order> processing = offHeap.query(Query.from(Order.class)
+                .filter(order -> "PROCESSING".equals(order.getStatus())));
+        assertEquals(QueryResult.Plan.PARALLEL_SCAN, processing.getPlan());
+        assertEquals(200, processing.getRows().size());
+        assertEquals(20_000, processing.getExaminedRows());
+
+        // El límite se reparte entre las tareas
+        QueryResult<Order> limited = offHeap.query(Query.from(Order.class)
+                .filter(order -> "DELIVERED".equals(order.getStatus())).limit(50));
+        assertEquals(QueryResult.Plan.PARALLEL_SCAN, limited.getPlan());
+        assertEquals(50, limited.getRows().size());
+        offHeap.disconnect();
+    }
+
+    @Test
+    public void testQueryPlans() {
+        User user = dbManager.save(new User("plans", "password", null));
+        LocalDateTime base = LocalDateTime.of(2024, 1, 1, 12, 0);
+        List<Order> orders = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) {
+            Order order = new Order(user, new ArrayList<>());
+            order.setStatus(i % 100 == 0 ? "PROCESSING" : "DELIVERED");
+            order.setOrderDate(base.plusMinutes(i));
+            order.setTotalPrice(i % 200);
+            orders.add(order);
+        }
+        dbManager.saveAll(orders);
+        Query<Order> processing = Query.from(Order.class)
+                .whereEquals("status", Order::getStatus, "PROCESSING")
+                .filter(o -> o.getTotalPrice() > 50);
+
+        // Sin índices se recorre toda la tabla en paralelo
+        QueryResult<Order> scan = dbManager.query(processing);
+        assertEquals(QueryResult.Plan.PARALLEL_SCAN, scan.getPlan());
+        assertEquals(20_000, scan.getExaminedRows());
+        assertEquals(100, scan.getRows().size());
+
+        // El límite detiene el recorrido
+        QueryResult<Order> limited = dbManager.query(Query.from(Order.class).limit(10));
+        assertEquals(10, limited.getRows().size());
+        assertTrue(limited.getExaminedRows() < 20_000);
+
+        // Con un índice hash se examinan solo las filas de la clave
+        dbManager.createIndex("status", Order.class, Order::getStatus);
+        QueryResult<Order> lookup = dbManager.query(processing);
+        assertEquals(QueryResult.Plan.INDEX_LOOKUP, lookup.getPlan());
+        assertEquals("status", lookup.getIndexName());
+        assertEquals(200, lookup.getExaminedRows());
+        assertEquals(new HashSet<>(scan.getRows()), new HashSet<>(lookup.getRows()));
+
+        // Un rango usa el índice ordenado, pero se prefiere la búsqueda por clave
+        dbManager.createSortedIndex("orderDate", Order.class, Order::getOrderDate);
+        Query<Order> firstHour = Query.from(Order.class)
+                .whereBetween("orderDate", Order::getOrderDate, base, base.plusHours(1));
+        QueryResult<Order> range = dbManager.query(firstHour);
+        assertEquals(QueryResult.Plan.INDEX_RANGE, range.getPlan());
+        assertEquals(60, range.getRows().size());
+        assertEquals(QueryResult.Plan.INDEX_LOOKUP,
+                dbManager.query(firstHour.whereEquals("status", Order::getStatus, "PROCESSING")).getPlan());
+        assertTrue(range.describePlan().startsWith("INDEX_RANGE(orderDate)"));
+
+        // Las tablas pequeñas se recorren en el hilo que consulta
+        assertEquals(QueryResult.Plan.FULL_SCAN, dbManager.query(Query.from(User.class)).getPlan());
+    }
+
+    private static Path lastLogSegment(Path directory) throws Exception {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(p -> p.getFileName().toString().startsWith("wal-"))
+                    .max(Comparator.naturalOrder())
+                    .orElseThrow();
+        }
     }
-}
\ No newline at end of file
+}
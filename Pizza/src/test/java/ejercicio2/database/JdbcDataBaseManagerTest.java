@@ -0,0 +1,141 @@
+package ejercicio2.database;
+
+import ejercicio2.exceptions.OrderException;
+import ejercicio2.model.Order;
+import ejercicio2.model.Pizza;
+import ejercicio2.model.User;
+import ejercicio2.order.OrderManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JdbcDataBaseManagerTest extends AbstractDataBaseManagerTest<JdbcDataBaseManager> {
+
+    private static final AtomicInteger DATABASES = new AtomicInteger();
+
+    private String url;
+
+    @Override
+    protected JdbcDataBaseManager createDataBaseManager() {
+        // Cada prueba usa su propia base de datos en memoria
+        url = "jdbc:h2:mem:pizza" + DATABASES.incrementAndGet();
+        return new JdbcDataBaseManager(url, "sa", "");
+    }
+
+    @AfterEach
+    public void tearDown() {
+        dbManager.disconnect();
+    }
+
+    @Test
+    public void testFailedBatchIsNotReplayedOnTheSameConnection() {
+        JdbcDataBaseManager single = new JdbcDataBaseManager("jdbc:h2:mem:pizza" + DATABASES.incrementAndGet(),
+                "sa", "", 1);
+        single.connect();
+        try {
+            User user = single.save(new User("batch", "password", "batch@example.com"));
+            Pizza saved = single.save(new Pizza("Margarita", "Mediana", 10.0));
+
+            // La primera línea entra en el lote antes de encontrar la pizza sin guardar
+            Order invalid = new Order(user, List.of(saved, new Pizza("Sin guardar", "Mediana", 9.0)));
+            assertThrows(IllegalArgumentException.class, () -> single.save(invalid));
+
+            // La única conexión del pool no arrastra las líneas del pedido deshecho
+            Order order = single.save(new Order(user, List.of(saved)));
+            Order read = single.findById(order.getId(), Order.class).orElseThrow();
+            assertEquals(1, read.getPizzas().size());
+            assertEquals(1, single.findAll(Order.class).size());
+        } finally {
+            single.disconnect();
+        }
+    }
+
+    @Test
+    public void testOrderRoundTrip() {
+        User user = dbManager.save(new User(null, "jdbc", "password", "jdbc@example.com", "Calle Mayor 1", "600000000"));
+        Pizza margarita = new Pizza("Margarita", "Mediana", 10.0).addTopping("Tomate").addTopping("Mozzarella");
+        Pizza barbacoa = new Pizza("Barbacoa", "Grande", 12.5).addTopping("Carne");
+        dbManager.saveAll(List.of(margarita, barbacoa));
+
+        Order order = new Order(user, List.of(margarita, barbacoa, margarita));
+        order.setOrderDate(LocalDateTime.of(2024, 5, 1, 20, 30, 15, 123_456_789));
+        order.calculateTotalPrice();
+        order.setPaymentTransactionId("TX-1");
+        dbManager.save(order);
+
+        // El pedido se lee con su usuario, sus pizzas en orden y los ingredientes de cada una
+        Order read = dbManager.findById(order.getId(), Order.class).orElseThrow();
+        assertNotSame(order, read);
+        assertEquals(order.getOrderDate(), read.getOrderDate());
+        assertEquals("PENDING", read.getStatus());
+        assertEquals(32.5, read.getTotalPrice(), 0.001);
+        assertEquals("TX-1", read.getPaymentTransactionId());
+        assertEquals(user.getId(), read.getUser().getId());
+        assertEquals("Calle Mayor 1", read.getUser().getAddress());
+        assertEquals(3, read.getPizzas().size());
+        assertEquals(margarita.getId(), read.getPizzas().get(0).getId());
+        assertEquals(barbacoa.getId(), read.getPizzas().get(1).getId());
+        assertEquals(List.of("Tomate", "Mozzarella"), read.getPizzas().get(2).getToppings());
+
+        // Al actualizar se sustituyen las pizzas del pedido
+        order.setPizzas(new ArrayList<>(List.of(barbacoa)));
+        dbManager.update(order);
+        read = dbManager.findById(order.getId(), Order.class).orElseThrow();
+        assertEquals(1, read.getPizzas().size());
+        assertEquals(List.of("Carne"), read.getPizzas().get(0).getToppings());
+    }
+
+    @Test
+    public void testCreateOrderWithOrderManager() throws OrderException {
+        OrderManager orderManager = new OrderManager(dbManager);
+        User user = dbManager.save(new User("manager", "password", "manager@example.com"));
+
+        Order order = orderManager.createOrder(user, List.of(new Pizza("Cuatro quesos", "Mediana", 11.0),
+                new Pizza("Hawaiana", "Pequeña", 8.0)));
+
+        Order read = orderManager.getOrderById(order.getId());
+        assertEquals(19.0, read.getTotalPrice(), 0.001);
+        assertEquals(2, read.getPizzas().size());
+        assertEquals(2, dbManager.findAll(Pizza.class).size());
+    }
+
+    @Test
+    public void testInstancesSharingTheDatabaseDoNotRepeatIds() {
+        JdbcDataBaseManager other = new JdbcDataBaseManager(url, "sa", "");
+        assertTrue(other.connect());
+        try {
+            User first = dbManager.save(new User("first", "password", null));
+            User second = other.save(new User("second", "password", null));
+
+            assertNotEquals(first.getId(), second.getId());
+            assertEquals(2, dbManager.findAll(User.class).size());
+            assertEquals("second", dbManager.findById(second.getId(), User.class).orElseThrow().getUsername());
+        } finally {
+            other.disconnect();
+        }
+    }
+
+    @Test
+    public void testUnsupportedClassIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> {
+            dbManager.save("no es una entidad");
+        });
+        assertThrows(IllegalArgumentException.class, () -> {
+            dbManager.findAll(String.class);
+        });
+    }
+
+    @Test
+    public void testConnectFailsWithInvalidUrl() {
+        JdbcDataBaseManager invalid = new JdbcDataBaseManager("jdbc:no-existe:test", "sa", "");
+
+        assertFalse(invalid.connect());
+        assertFalse(invalid.isConnected());
+    }
+}
@@ -0,0 +1,104 @@
+package ejercicio2.database;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pruebas unitarias para la tabla hash de claves primitivas.
+ */
+public class LongObjectMapTest {
+
+    @Test
+    public void testPutGetRemove() {
+        LongObjectMap map = new LongObjectMap();
+
+        assertNull(map.put(1L, "uno"));
+        assertNull(map.put(0L, "cero"));
+        assertNull(map.put(-5L, "menos cinco"));
+        assertEquals("uno", map.put(1L, "one"));
+
+        assertEquals("one", map.get(1L));
+        assertEquals("cero", map.get(0L));
+        assertEquals("menos cinco", map.get(-5L));
+        assertNull(map.get(2L));
+        assertEquals(3, map.size());
+
+        assertEquals("one", map.remove(1L));
+        assertNull(map.remove(1L));
+        assertEquals("cero", map.remove(0L));
+        assertNull(map.get(1L));
+        assertEquals(1, map.size());
+
+        // Reinsertar una clave eliminada reutiliza su ranura
+        assertNull(map.put(1L, "otra vez"));
+        assertEquals("otra vez", map.get(1L));
+        assertEquals(2, map.size());
+    }
+
+    @Test
+    public void testMatchesHashMapUnderRandomOperations() {
+        LongObjectMap map = new LongObjectMap();
+        Map<Long, Object> expected = new HashMap<>();
+        Random random = new Random(42);
+
+        for (int i = 0; i < 200_000; i++) {
+            long key = random.nextInt(5_000);
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), map.remove(key));
+            } else {
+                Object value = "v" + i;
+                assertEquals(expected.put(key, value), map.put(key, value));
+            }
+        }
+
+        assertEquals(expected.size(), map.size());
+        for (Map.Entry<Long, Object> entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), map.get(entry.getKey()));
+        }
+
+        Map<Long, Object> visited = new HashMap<>();
+        map.forEach(visited::put);
+        assertEquals(expected, visited);
+    }
+
+    @Test
+    public void testReadersNeverMissStableKeysDuringWrites() throws Exception {
+        LongObjectMap map = new LongObjectMap();
+        for (long key = 1; key <= 1_000; key++) {
+            map.put(key, key);
+        }
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicReference<String> failure = new AtomicReference<>();
+        Thread reader = new Thread(() -> {
+            while (running.get()) {
+                for (long key = 1; key <= 1_000; key++) {
+                    if (!Long.valueOf(key).equals(map.get(key))) {
+                        failure.set("Clave perdida durante la escritura: " + key);
+                        return;
+                    }
+                }
+            }
+        });
+        reader.start();
+
+        // Un único escritor inserta y borra otras claves, forzando redimensionados
+        for (long key = 1_001; key <= 200_000; key++) {
+            map.put(key, key);
+            if (key % 3 == 0) {
+                map.remove(key);
+            }
+        }
+        running.set(false);
+        reader.join();
+
+        assertNull(failure.get());
+    }
+}
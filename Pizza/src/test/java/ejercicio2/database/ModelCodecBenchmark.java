@@ -0,0 +1,98 @@
+package ejercicio2.database;
+
+import ejercicio2.interfaces.IEntityResolver;
+import ejercicio2.model.Order;
+import ejercicio2.model.Pizza;
+import ejercicio2.model.User;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+
+/**
+ * Mide el rendimiento de codificar y decodificar pedidos, usuarios y pizzas
+ * con el codificador escrito a mano frente al codificador por reflexión,
+ * junto con el tamaño de cada registro.
+ *
+ * Uso: java ejercicio2.database.ModelCodecBenchmark [operaciones por medida]
+ */
+public class ModelCodecBenchmark {
+
+    private static final int ROUNDS = 7;
+
+    /**
+     * Operación a medir sobre un buffer ya preparado.
+     */
+    private interface Operation {
+        void run() throws IOException;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int operations = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+
+        User user = new User(1L, "mario.rossi", "contraseña-segura", "mario@example.com",
+                "Calle de la Pizza 12, Madrid", "+34 600 000 000");
+        Pizza margherita = new Pizza(2L, "Margherita", "Medium", null, 9.99);
+        margherita.addTopping("Tomate").addTopping("Mozzarella").addTopping("Albahaca");
+        Pizza pepperoni = new Pizza(3L, "Pepperoni", "Large", null, 12.99);
+        pepperoni.addTopping("Pepperoni");
+        Order order = new Order(4L, user, Arrays.asList(margherita, pepperoni),
+                LocalDateTime.now(), "PROCESSING", 22.98, "TX-1234567890");
+
+        System.out.printf("%-8s %10s %10s %14s %14s %14s %14s%n", "Entidad", "bytes", "bytes refl.",
+                "cod. (ns/op)", "dec. (ns/op)", "cod. refl.", "dec. refl.");
+        for (Object entity : new Object[] {user, margherita, order}) {
+            measure(entity, operations);
+        }
+    }
+
+    private static void measure(Object entity, int operations) throws IOException {
+        IEntityResolver resolver = (clazz, id) -> null;
+
+        ByteBuffer buffer = ByteBuffer.allocate(ModelCodec.maxEncodedSize(entity));
+        ModelCodec.encode(entity, buffer);
+        int size = buffer.position();
+        ByteBuffer encoded = ByteBuffer.wrap(Arrays.copyOf(buffer.array(), size));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        DataOutputStream out = new DataOutputStream(bytes);
+        EntityCodec.encode(entity, out);
+        byte[] reflective = bytes.toByteArray();
+
+        double encode = median(operations, () -> {
+            buffer.clear();
+            ModelCodec.encode(entity, buffer);
+        });
+        double decode = median(operations, () -> {
+            encoded.rewind();
+            ModelCodec.decode(encoded, resolver);
+        });
+        double encodeReflective = median(operations, () -> {
+            bytes.reset();
+            EntityCodec.encode(entity, out);
+        });
+        double decodeReflective = median(operations, () -> {
+            EntityCodec.decode(entity.getClass(), new DataInputStream(new ByteArrayInputStream(reflective)), resolver);
+        });
+
+        System.out.printf("%-8s %10d %10d %14.1f %14.1f %14.1f %14.1f%n", entity.getClass().getSimpleName(),
+                size, reflective.length, encode, decode, encodeReflective, decodeReflective);
+    }
+
+    private static double median(int operations, Operation operation) throws IOException {
+        double[] results = new double[ROUNDS];
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < operations; i++) {
+                operation.run();
+            }
+            results[round] = (System.nanoTime() - start) / (double) operations;
+        }
+        Arrays.sort(results);
+        return results[ROUNDS / 2];
+    }
+}
@@ -0,0 +1,156 @@
+package ejercicio2.database;
+
+import ejercicio2.model.Order;
+import ejercicio2.model.Pizza;
+import ejercicio2.model.User;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pruebas unitarias para el codificador binario de User, Pizza y Order.
+ */
+public class ModelCodecTest {
+
+    @Test
+    public void testUserRoundTrip() throws IOException {
+        User user = new User(7L, "ñandú", "contraseña", "user@example.com", "Calle Mayor 1 🍕", null);
+
+        User decoded = (User) roundTrip(user, ByteBuffer.allocate(256));
+
+        assertEquals(7L, decoded.getId());
+        assertEquals("ñandú", decoded.getUsername());
+        assertEquals("contraseña", decoded.getPassword());
+        assertEquals("user@example.com", decoded.getEmail());
+        assertEquals("Calle Mayor 1 🍕", decoded.getAddress());
+        assertNull(decoded.getPhoneNumber());
+
+        // Un sustituto suelto se escribe como '?', igual que String.getBytes
+        user.setPhoneNumber("600\uD800");
+        assertEquals("600?", ((User) roundTrip(user, ByteBuffer.allocate(256))).getPhoneNumber());
+    }
+
+    @Test
+    public void testPizzaRoundTripWithDirectBuffer() throws IOException {
+        Pizza pizza = new Pizza(-3L, "Cuatro quesos", "Large", new ArrayList<>(Arrays.asList("Mozzarella", null)), 12.5);
+        Pizza withoutId = new Pizza("Margherita", null, 0);
+        withoutId.setToppings(null);
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(256);
+        Pizza decoded = (Pizza) roundTrip(pizza, buffer);
+        buffer.clear();
+        Pizza decodedWithoutId = (Pizza) roundTrip(withoutId, buffer);
+
+        assertEquals(-3L, decoded.getId());
+        assertEquals("Cuatro quesos", decoded.getName());
+        assertEquals("Large", decoded.getSize());
+        assertEquals(Arrays.asList("Mozzarella", null), decoded.getToppings());
+        assertEquals(12.5, decoded.getPrice());
+
+        assertNull(decodedWithoutId.getId());
+        assertNull(decodedWithoutId.getSize());
+        assertNull(decodedWithoutId.getToppings());
+    }
+
+    @Test
+    public void testOrderRoundTripResolvesReferences() throws IOException {
+        User user = new User(1L, "user", "password", "user@example.com", null, null);
+        Pizza pizza1 = new Pizza(2L, "Margherita", "Medium", null, 9.99);
+        Pizza pizza2 = new Pizza(3L, "Pepperoni", "Large", null, 12.99);
+        Order order = new Order(4L, user, Arrays.asList(pizza1, pizza2, pizza1),
+                LocalDateTime.of(1969, 7, 20, 20, 17, 40, 123_456_789), "PROCESSING", 32.97, "TX-1");
+
+        Map<String, Object> entities = new HashMap<>();
+        entities.put("User:1", user);
+        entities.put("Pizza:2", pizza1);
+        entities.put("Pizza:3", pizza2);
+        ByteBuffer buffer = ByteBuffer.allocate(ModelCodec.maxEncodedSize(order));
+        ModelCodec.encode(order, buffer);
+        buffer.flip();
+        Order decoded = (Order) ModelCodec.decode(buffer,
+                (clazz, id) -> entities.get(clazz.getSimpleName() + ":" + id));
+
+        assertFalse(buffer.hasRemaining());
+        assertEquals(4L, decoded.getId());
+        assertSame(user, decoded.getUser());
+        assertEquals(3, decoded.getPizzas().size());
+        assertSame(pizza1, decoded.getPizzas().get(0));
+        assertSame(pizza2, decoded.getPizzas().get(1));
+        assertSame(pizza1, decoded.getPizzas().get(2));
+        assertEquals(order.getOrderDate(), decoded.getOrderDate());
+        assertEquals("PROCESSING", decoded.getStatus());
+        assertEquals(32.97, decoded.getTotalPrice());
+        assertEquals("TX-1", decoded.getPaymentTransactionId());
+    }
+
+    @Test
+    public void testOrderWithNullFields() throws IOException {
+        Order order = new Order(null, null, null, null, null, 0, null);
+        order.setOrderDate(null);
+
+        Order decoded = (Order) roundTrip(order, ByteBuffer.allocate(64));
+
+        assertNull(decoded.getId());
+        assertNull(decoded.getUser());
+        assertTrue(decoded.getPizzas().isEmpty());
+        assertNull(decoded.getOrderDate());
+        assertNull(decoded.getStatus());
+    }
+
+    @Test
+    public void testCompactEncoding() {
+        User user = new User(1L, "user", "password", "user@example.com", null, null);
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        ModelCodec.encode(user, buffer);
+
+        // Cabecera (3) + ID (1) + cadenas con su longitud (5 + 9 + 17 + 1 + 1)
+        assertEquals(37, buffer.position());
+        assertTrue(buffer.position() <= ModelCodec.maxEncodedSize(user));
+    }
+
+    @Test
+    public void testInvalidData() {
+        Order order = new Order(1L, new User(), new ArrayList<>(), null, "PENDING", 0, null);
+        assertThrows(IllegalArgumentException.class, () -> {
+            ModelCodec.encode(order, ByteBuffer.allocate(64));
+        });
+        assertThrows(IllegalArgumentException.class, () -> {
+            ModelCodec.encode("texto", ByteBuffer.allocate(64));
+        });
+
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        ModelCodec.encode(new User(1L, "user", "password", "user@example.com", null, null), buffer);
+        buffer.flip();
+
+        // Registro truncado
+        ByteBuffer truncated = buffer.duplicate();
+        truncated.limit(truncated.limit() - 2);
+        assertThrows(IOException.class, () -> ModelCodec.decode(truncated, null));
+        assertThrows(IOException.class, () -> ModelCodec.decode(ByteBuffer.allocate(0), null));
+
+        // Versión de esquema desconocida
+        ByteBuffer future = buffer.duplicate();
+        future.put(1, (byte) 99);
+        assertThrows(IOException.class, () -> ModelCodec.decode(future, null));
+
+        // Tipo esperado distinto
+        assertThrows(IOException.class, () -> ModelCodec.decodePizza(buffer.duplicate()));
+    }
+
+    private static Object roundTrip(Object entity, ByteBuffer buffer) throws IOException {
+        ModelCodec.encode(entity, buffer);
+        assertTrue(buffer.position() <= ModelCodec.maxEncodedSize(entity));
+        buffer.flip();
+        Object decoded = ModelCodec.decode(buffer, (clazz, id) -> null);
+        assertFalse(buffer.hasRemaining());
+        return decoded;
+    }
+}
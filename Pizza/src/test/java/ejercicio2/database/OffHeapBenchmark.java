@@ -0,0 +1,143 @@
+package ejercicio2.database;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import ejercicio2.model.Order;
+import ejercicio2.model.Pizza;
+import ejercicio2.model.User;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.NotificationEmitter;
+import javax.management.openmbean.CompositeData;
+
+/**
+ * Compara el heap ocupado y las pausas del recolector con los pedidos en el
+ * heap y fuera de él. Carga los pedidos, mide el heap vivo tras una recolección
+ * completa y su duración, y después mantiene durante un tiempo una carga de
+ * lecturas y actualizaciones midiendo las pausas. Cada modo debe ejecutarse
+ * en una JVM distinta.
+ *
+ * Uso: java -Xmx4g ejercicio2.database.OffHeapBenchmark heap|offheap [pedidos] [segundos]
+ */
+public class OffHeapBenchmark {
+
+    private static final int USERS = 10_000;
+    private static final int BATCH = 10_000;
+
+    public static void main(String[] args) throws Exception {
+        boolean offHeap = args.length > 0 && args[0].equals("offheap");
+        int orders = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 30;
+
+        AtomicLong pauses = new AtomicLong();
+        AtomicLong totalPause = new AtomicLong();
+        AtomicLong maxPause = new AtomicLong();
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            ((NotificationEmitter) gc).addNotificationListener((notification, handback) -> {
+                if (notification.getType().equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION)) {
+                    GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo
+                            .from((CompositeData) notification.getUserData());
+                    if (info.getGcCause().equals("System.gc()")) {
+                        return; // Las recolecciones completas se miden aparte
+                    }
+                    long duration = info.getGcInfo().getDuration();
+                    pauses.incrementAndGet();
+                    totalPause.addAndGet(duration);
+                    maxPause.accumulateAndGet(duration, Math::max);
+                }
+            }, null, null);
+        }
+
+        DataBaseManager dbManager = new DataBaseManager();
+        if (offHeap) {
+            dbManager.storeOffHeap(Order.class);
+        }
+        dbManager.connect();
+        List<User> users = populate(dbManager, orders);
+        Thread.sleep(500); // Las notificaciones del recolector llegan de forma asíncrona
+        long loadPauses = pauses.getAndSet(0);
+        long loadTotal = totalPause.getAndSet(0);
+        long loadMax = maxPause.getAndSet(0);
+
+        // Heap vivo y duración de una recolección completa con la tabla cargada
+        System.gc();
+        long start = System.nanoTime();
+        System.gc();
+        double fullGcMillis = (System.nanoTime() - start) / 1e6;
+        long heapUsed = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+        long directUsed = 0;
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if (pool.getName().equals("direct")) {
+                directUsed = pool.getMemoryUsed();
+            }
+        }
+
+        // Pausas durante una carga mixta de lecturas y actualizaciones
+        pauses.set(0);
+        totalPause.set(0);
+        maxPause.set(0);
+        Random random = new Random(42);
+        long operations = 0;
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        while (System.nanoTime() < deadline) {
+            for (int i = 0; i < 1_000; i++) {
+                long id = users.size() + 21 + random.nextInt(orders);
+                Order order = dbManager.findById(id, Order.class).orElseThrow();
+                if (random.nextInt(10) == 0) {
+                    order.setStatus(random.nextBoolean() ? "PROCESSING" : "DELIVERED");
+                    order.setPaymentTransactionId("TX-" + random.nextLong());
+                    dbManager.update(order);
+                }
+            }
+            operations += 1_000;
+        }
+        Thread.sleep(500);
+
+        String collectors = ManagementFactory.getGarbageCollectorMXBeans().get(0).getName();
+        System.out.printf("%s, %,d pedidos (%s)%n", offHeap ? "offheap" : "heap", orders, collectors);
+        System.out.printf("  heap vivo %,d MB, memoria directa %,d MB, GC completo %,.0f ms%n",
+                heapUsed >> 20, directUsed >> 20, fullGcMillis);
+        System.out.printf("  carga inicial: %d pausas, total %,d ms, máx. %,d ms%n", loadPauses, loadTotal, loadMax);
+        System.out.printf("  lecturas y actualizaciones: %,d op/s, %d pausas, total %,d ms, máx. %,d ms%n",
+                operations / seconds, pauses.get(), totalPause.get(), maxPause.get());
+    }
+
+    private static List<User> populate(DataBaseManager dbManager, int orders) {
+        List<User> users = new ArrayList<>(USERS);
+        for (int i = 0; i < USERS; i++) {
+            users.add(new User("user" + i, "password" + i, "user" + i + "@example.com"));
+        }
+        dbManager.saveAll(users);
+
+        List<Pizza> pizzas = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            pizzas.add(new Pizza("Pizza " + i, i % 2 == 0 ? "Medium" : "Large", 8 + i)
+                    .addTopping("Tomate").addTopping("Mozzarella"));
+        }
+        dbManager.saveAll(pizzas);
+
+        Random random = new Random(7);
+        List<Order> batch = new ArrayList<>(BATCH);
+        for (int i = 0; i < orders; i++) {
+            List<Pizza> chosen = new ArrayList<>(3);
+            for (int j = 0, count = 1 + random.nextInt(3); j < count; j++) {
+                chosen.add(pizzas.get(random.nextInt(pizzas.size())));
+            }
+            Order order = new Order(users.get(random.nextInt(USERS)), chosen);
+            order.setPaymentTransactionId("TX-" + i);
+            batch.add(order);
+            if (batch.size() == BATCH) {
+                dbManager.saveAll(batch);
+                batch = new ArrayList<>(BATCH);
+            }
+        }
+        if (!batch.isEmpty()) {
+            dbManager.saveAll(batch);
+        }
+        return users;
+    }
+}
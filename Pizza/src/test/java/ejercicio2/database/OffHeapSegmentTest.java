@@ -0,0 +1,112 @@
+package ejercicio2.database;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pruebas unitarias para el segmento de tabla fuera del heap.
+ */
+public class OffHeapSegmentTest {
+
+    @Test
+    public void testPutReadRemove() {
+        OffHeapSegment segment = new OffHeapSegment();
+
+        segment.put(1L, bytes("uno"), 1);
+        segment.put(0L, bytes("cero"), 2);
+        segment.put(-5L, bytes("menos cinco"), 3);
+        segment.put(1L, bytes("one"), 4);
+
+        assertEquals("one", text(segment.read(1L)));
+        assertEquals("cero", text(segment.read(0L)));
+        assertEquals("menos cinco", text(segment.read(-5L)));
+        assertNull(segment.read(2L));
+        assertEquals(4, segment.version(1L));
+        assertEquals(0, segment.version(2L));
+        assertEquals(3, segment.size());
+
+        assertTrue(segment.remove(1L));
+        assertFalse(segment.remove(1L));
+        assertNull(segment.read(1L));
+        assertEquals(0, segment.version(1L));
+        assertEquals(2, segment.size());
+    }
+
+    @Test
+    public void testMatchesHashMapUnderRandomOperations() {
+        OffHeapSegment segment = new OffHeapSegment();
+        Map<Long, String> expected = new HashMap<>();
+        Random random = new Random(42);
+
+        // Muchas sustituciones y borrados fuerzan compactaciones y redimensionados
+        for (int i = 0; i < 200_000; i++) {
+            long key = random.nextInt(5_000);
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key) != null, segment.remove(key));
+            } else {
+                String value = "valor " + i;
+                expected.put(key, value);
+                segment.put(key, bytes(value), i + 1);
+            }
+        }
+
+        assertEquals(expected.size(), segment.size());
+        for (Map.Entry<Long, String> entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), text(segment.read(entry.getKey())));
+        }
+
+        Map<Long, String> visited = new HashMap<>();
+        segment.forEach((id, record) -> visited.put(id, text(record)));
+        assertEquals(expected, visited);
+    }
+
+    @Test
+    public void testRecordsStayReadableAfterCompaction() {
+        OffHeapSegment segment = new OffHeapSegment();
+        segment.put(1L, bytes("estable"), 1);
+        ByteBuffer view = segment.read(1L);
+
+        // Sobrescribir otra fila genera espacio muerto suficiente para compactar
+        String payload = "x".repeat(1000);
+        for (int i = 0; i < 5_000; i++) {
+            segment.put(2L, bytes(payload + i), i + 2);
+        }
+
+        assertEquals("estable", text(view));
+        assertEquals("estable", text(segment.read(1L)));
+        assertEquals(payload + 4999, text(segment.read(2L)));
+        assertTrue(segment.reservedBytes() < 8 << 20);
+    }
+
+    @Test
+    public void testScanContinuesFromSlot() {
+        OffHeapSegment segment = new OffHeapSegment();
+        for (long id = 1; id <= 100; id++) {
+            segment.put(id, bytes("fila " + id), id);
+        }
+
+        Map<Long, String> visited = new HashMap<>();
+        int slot = 0;
+        while (slot >= 0) {
+            slot = segment.scan(slot, 7, (id, record) -> assertNull(visited.put(id, text(record))));
+        }
+        assertEquals(100, visited.size());
+    }
+
+    private static ByteBuffer bytes(String value) {
+        return ByteBuffer.wrap(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String text(ByteBuffer record) {
+        byte[] bytes = new byte[record.remaining()];
+        record.duplicate().get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
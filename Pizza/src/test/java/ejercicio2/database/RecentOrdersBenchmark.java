@@ -0,0 +1,77 @@
+package ejercicio2.database;
+
+import ejercicio2.model.Order;
+import ejercicio2.model.User;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Mide la consulta de los pedidos de los últimos minutos con el índice ordenado
+ * por fecha frente a filtrar la tabla completa, para tablas de distinto tamaño
+ * y un resultado de tamaño fijo.
+ *
+ * Uso: java ejercicio2.database.RecentOrdersBenchmark [pedidos recientes]
+ */
+public class RecentOrdersBenchmark {
+
+    private static final int[] TABLE_SIZES = {10_000, 100_000, 1_000_000};
+    private static final int QUERIES = 200;
+    private static final int ROUNDS = 5;
+    private static final LocalDateTime START = LocalDateTime.of(2024, 1, 1, 0, 0);
+
+    public static void main(String[] args) {
+        int recent = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+
+        System.out.printf("%-10s %18s %18s%n", "Pedidos", "índice (us/cons.)", "filtro (us/cons.)");
+        for (int tableSize : TABLE_SIZES) {
+            DataBaseManager dbManager = populate(tableSize);
+            LocalDateTime from = START.plusSeconds(tableSize - recent);
+            double indexed = median(() -> dbManager.findRange("orderDate", Order.class, from, null).size(), recent);
+            double filtered = median(() -> dbManager.findAll(Order.class).stream()
+                    .filter(order -> !order.getOrderDate().isBefore(from))
+                    .collect(Collectors.toList()).size(), recent);
+            System.out.printf("%-10d %18.1f %18.1f%n", tableSize, indexed, filtered);
+        }
+    }
+
+    /**
+     * Consulta a medir; devuelve el número de pedidos encontrados.
+     */
+    private interface Query {
+        int run();
+    }
+
+    private static DataBaseManager populate(int tableSize) {
+        DataBaseManager dbManager = new DataBaseManager();
+        dbManager.connect();
+        dbManager.createSortedIndex("orderDate", Order.class, Order::getOrderDate);
+
+        User user = dbManager.save(new User("bench", "password", "bench@example.com"));
+        List<Order> orders = new ArrayList<>(tableSize);
+        for (int i = 0; i < tableSize; i++) {
+            Order order = new Order(user, new ArrayList<>());
+            order.setOrderDate(START.plusSeconds(i));
+            orders.add(order);
+        }
+        dbManager.saveAll(orders);
+        return dbManager;
+    }
+
+    private static double median(Query query, int expected) {
+        double[] results = new double[ROUNDS];
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < QUERIES; i++) {
+                if (query.run() != expected) {
+                    throw new IllegalStateException("Resultado inesperado");
+                }
+            }
+            results[round] = (System.nanoTime() - start) / 1_000.0 / QUERIES;
+        }
+        Arrays.sort(results);
+        return results[ROUNDS / 2];
+    }
+}
@@ -0,0 +1,174 @@
+package ejercicio2.database;
+
+import ejercicio2.model.Order;
+import ejercicio2.model.Pizza;
+import ejercicio2.model.User;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ReplicaDataBaseManagerTest {
+
+    private DataBaseManager leader;
+    private ReplicaDataBaseManager replica;
+
+    @BeforeEach
+    public void setUp() {
+        leader = new DataBaseManager();
+        leader.connect();
+        replica = new ReplicaDataBaseManager(leader, 0);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        replica.disconnect();
+        leader.disconnect();
+    }
+
+    @Test
+    public void testReplicaCopiesExistingRowsOnConnect() {
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < 3_000; i++) {
+            users.add(new User("user" + i, "password", null));
+        }
+        leader.saveAll(users);
+
+        assertTrue(replica.connect());
+
+        assertEquals(3_000, replica.findAll(User.class).size());
+        User read = replica.findById(users.get(42).getId(), User.class).orElseThrow();
+        assertEquals("user42", read.getUsername());
+        assertNotSame(users.get(42), read);
+    }
+
+    @Test
+    public void testReplicaFollowsInsertsUpdatesAndDeletes() {
+        replica.connect();
+
+        User user = leader.save(new User("replica", "password", "replica@example.com"));
+        assertEquals("replica", replica.findById(user.getId(), User.class).orElseThrow().getUsername());
+
+        leader.update(new User(user.getId(), "changed", "password", "replica@example.com", null, null));
+        assertEquals("changed", replica.findById(user.getId(), User.class).orElseThrow().getUsername());
+
+        leader.delete(user.getId(), User.class);
+        assertFalse(replica.findById(user.getId(), User.class).isPresent());
+    }
+
+    @Test
+    public void testOrderReferencesResolveToReplicaRows() {
+        User user = leader.save(new User("orders", "password", null));
+        replica.connect();
+
+        List<Pizza> pizzas = leader.saveAll(Arrays.asList(new Pizza("Margarita", "Mediana", 10.0),
+                new Pizza("Barbacoa", "Grande", 12.0)));
+        Order order = leader.save(new Order(user, pizzas));
+
+        Order read = replica.findById(order.getId(), Order.class).orElseThrow();
+        assertSame(replica.findById(user.getId(), User.class).orElseThrow(), read.getUser());
+        assertEquals(2, read.getPizzas().size());
+        assertSame(replica.findById(pizzas.get(0).getId(), Pizza.class).orElseThrow(), read.getPizzas().get(0));
+    }
+
+    @Test
+    public void testConcurrentWritersConverge() throws InterruptedException {
+        replica.connect();
+
+        List<Thread> writers = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread writer = new Thread(() -> {
+                for (int i = 0; i < 500; i++) {
+                    User user = leader.save(new User("user", "password", null));
+                    leader.update(new User(user.getId(), "final", "password", null, null, null));
+                }
+            });
+            writer.start();
+            writers.add(writer);
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+
+        List<User> read = replica.findAll(User.class);
+        assertEquals(2_000, read.size());
+        assertTrue(read.stream().allMatch(u -> "final".equals(u.getUsername())));
+        assertEquals(0, replica.getPendingRecords());
+        assertEquals(0, replica.getReplicationLagMillis());
+        assertEquals(4_000, replica.getAppliedRecords());
+    }
+
+    @Test
+    public void testStaleReadsWithinBound() throws InterruptedException {
+        ReplicaDataBaseManager relaxed = new ReplicaDataBaseManager(leader, TimeUnit.MINUTES.toMillis(1));
+        relaxed.connect();
+        try {
+            User user = leader.save(new User("eventual", "password", null));
+
+            // Con un margen amplio la lectura no espera, pero el cambio acaba llegando
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (!relaxed.findById(user.getId(), User.class).isPresent()) {
+                assertTrue(System.nanoTime() < deadline, "La réplica no ha recibido el cambio");
+                Thread.sleep(1);
+            }
+        } finally {
+            relaxed.disconnect();
+        }
+    }
+
+    @Test
+    public void testIndexesAreBuiltOnReplica() {
+        replica.createIndex("status", Order.class, Order::getStatus);
+        User user = leader.save(new User("index", "password", null));
+        leader.save(new Order(user, new ArrayList<>()));
+        replica.connect();
+
+        Order order = leader.save(new Order(user, new ArrayList<>()));
+        assertEquals(2, replica.findBy("status", Order.class, "PENDING").size());
+
+        order.setStatus("DELIVERED");
+        leader.update(order);
+        assertEquals(1, replica.findBy("status", Order.class, "PENDING").size());
+        assertEquals(order.getId(), replica.findBy("status", Order.class, "DELIVERED").get(0).getId());
+    }
+
+    @Test
+    public void testReplicaIsReadOnly() {
+        replica.connect();
+
+        assertThrows(UnsupportedOperationException.class, () -> replica.save(new User("x", "password", null)));
+        assertThrows(UnsupportedOperationException.class, () -> replica.delete(1L, User.class));
+        assertThrows(UnsupportedOperationException.class, () -> replica.beginTransaction());
+    }
+
+    @Test
+    public void testReconnectStartsFromFreshCopy() {
+        replica.connect();
+        User user = leader.save(new User("before", "password", null));
+        replica.disconnect();
+
+        assertFalse(replica.isConnected());
+        assertThrows(IllegalStateException.class, () -> replica.findAll(User.class));
+
+        leader.delete(user.getId(), User.class);
+        leader.save(new User("after", "password", null));
+        assertTrue(replica.connect());
+
+        List<User> read = replica.findAll(User.class);
+        assertEquals(1, read.size());
+        assertEquals("after", read.get(0).getUsername());
+    }
+
+    @Test
+    public void testConnectRequiresConnectedLeader() {
+        leader.disconnect();
+        assertFalse(replica.connect());
+        assertThrows(IllegalArgumentException.class, () -> new ReplicaDataBaseManager(leader, -1));
+    }
+}
@@ -0,0 +1,107 @@
+package ejercicio2.database;
+
+import ejercicio2.model.Pizza;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+
+/**
+ * Mide el tiempo de arranque de una base de datos duradera con muchas filas,
+ * cargando una instantánea frente a reproducir el registro completo, y la
+ * latencia máxima de un escritor mientras se toma la instantánea.
+ *
+ * Uso: java -Xms4500m -Xmx4500m ejercicio2.database.RestartBenchmark [filas]
+ */
+public class RestartBenchmark {
+
+    private static final int BATCH_SIZE = 1000;
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+
+        Path logOnly = Files.createTempDirectory("restart-log");
+        Path withSnapshot = Files.createTempDirectory("restart-snapshot");
+        try {
+            fill(logOnly, rows, false);
+            System.out.printf("Arranque reproduciendo el registro: %d ms%n", restart(logOnly, rows));
+
+            fill(withSnapshot, rows, true);
+            System.out.printf("Arranque con instantánea: %d ms%n", restart(withSnapshot, rows));
+        } finally {
+            delete(logOnly);
+            delete(withSnapshot);
+        }
+    }
+
+    private static void fill(Path directory, int rows, boolean takeSnapshot) throws Exception {
+        DataBaseManager dbManager = new DataBaseManager(directory, SyncPolicy.OS_MANAGED, 10, 0);
+        dbManager.connect();
+        for (int i = 0; i < rows; i += BATCH_SIZE) {
+            List<Pizza> batch = new ArrayList<>(BATCH_SIZE);
+            for (int j = i; j < Math.min(rows, i + BATCH_SIZE); j++) {
+                batch.add(new Pizza("Pizza " + j, "Mediana", j % 20));
+            }
+            dbManager.saveAll(batch);
+        }
+
+        if (takeSnapshot) {
+            // Un escritor sigue guardando, a ritmo moderado, mientras se toma la instantánea
+            long[] maxLatency = new long[1];
+            int[] writes = new int[1];
+            AtomicBoolean running = new AtomicBoolean(true);
+            Thread writer = new Thread(() -> {
+                while (running.get()) {
+                    long start = System.nanoTime();
+                    dbManager.save(new Pizza("Durante", "Mediana", 1));
+                    maxLatency[0] = Math.max(maxLatency[0], System.nanoTime() - start);
+                    writes[0]++;
+                    LockSupport.parkNanos(100_000);
+                }
+            });
+            writer.start();
+            long start = System.nanoTime();
+            dbManager.snapshot();
+            long elapsed = (System.nanoTime() - start) / 1_000_000;
+            running.set(false);
+            writer.join();
+            System.out.printf("Instantánea de %d filas: %d ms, %d MB; escrituras concurrentes: %d, latencia máxima %.1f ms%n",
+                    rows, elapsed, Files.size(directory.resolve(Snapshot.FILE_NAME)) / (1024 * 1024),
+                    writes[0], maxLatency[0] / 1e6);
+        }
+        dbManager.disconnect();
+    }
+
+    private static long restart(Path directory, int rows) {
+        System.gc();
+        long start = System.nanoTime();
+        DataBaseManager dbManager = new DataBaseManager(directory, SyncPolicy.OS_MANAGED, 10, 0);
+        if (!dbManager.connect()) {
+            throw new IllegalStateException("No se pudo recuperar la base de datos");
+        }
+        long elapsed = (System.nanoTime() - start) / 1_000_000;
+        if (dbManager.findAll(Pizza.class).size() < rows) {
+            throw new IllegalStateException("Faltan filas tras la recuperación");
+        }
+        dbManager.disconnect();
+        return elapsed;
+    }
+
+    private static void delete(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.delete(path);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
+}
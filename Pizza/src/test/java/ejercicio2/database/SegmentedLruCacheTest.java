@@ -0,0 +1,54 @@
+package ejercicio2.database;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SegmentedLruCacheTest {
+
+    @Test
+    public void testEvictsProbationBeforeProtected() {
+        // Capacidad 10 en una sola franja: 8 protegidas y 2 de prueba
+        SegmentedLruCache<String> cache = new SegmentedLruCache<>(10);
+        for (long key = 0; key < 10; key++) {
+            assertTrue(cache.putIfUnchanged(key, "v" + key, cache.generation(key)));
+        }
+        assertEquals("v0", cache.get(0));
+        assertEquals("v1", cache.get(1));
+
+        // Las entradas nuevas expulsan a las que solo se han leído una vez
+        for (long key = 10; key < 30; key++) {
+            cache.putIfUnchanged(key, "v" + key, cache.generation(key));
+        }
+        assertEquals(10, cache.size());
+        assertEquals(20, cache.getEvictionCount());
+        assertEquals("v0", cache.get(0));
+        assertEquals("v1", cache.get(1));
+        assertNull(cache.get(2));
+    }
+
+    @Test
+    public void testInvalidationRejectsLoadsInFlight() {
+        SegmentedLruCache<String> cache = new SegmentedLruCache<>(100);
+        cache.putIfUnchanged(1, "viejo", cache.generation(1));
+
+        // Una carga que empezó antes de la invalidación no se guarda
+        long generation = cache.generation(1);
+        cache.invalidate(1);
+        assertFalse(cache.putIfUnchanged(1, "viejo", generation));
+        assertNull(cache.get(1));
+
+        assertTrue(cache.putIfUnchanged(1, "nuevo", cache.generation(1)));
+        assertEquals("nuevo", cache.get(1));
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void testInvalidCapacity() {
+        assertThrows(IllegalArgumentException.class, () -> new SegmentedLruCache<String>(0));
+    }
+}
@@ -0,0 +1,217 @@
+package ejercicio2.database;
+
+import ejercicio2.exceptions.VersionConflictException;
+import ejercicio2.interfaces.ITransaction;
+import ejercicio2.model.Order;
+import ejercicio2.model.Pizza;
+import ejercicio2.model.User;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ShardedDataBaseManagerTest extends AbstractDataBaseManagerTest<ShardedDataBaseManager> {
+
+    private static final int SHARDS = 4;
+
+    private List<DataBaseManager> shards;
+
+    @Override
+    protected ShardedDataBaseManager createDataBaseManager() {
+        shards = new ArrayList<>();
+        for (int i = 0; i < SHARDS; i++) {
+            shards.add(new DataBaseManager());
+        }
+        return new ShardedDataBaseManager(shards, ForkJoinPool.commonPool());
+    }
+
+    @Override
+    protected void assertStoredEntity(Object expected, Object actual) {
+        // Los fragmentos son locales y devuelven el mismo objeto guardado
+        assertSame(expected, actual);
+    }
+
+    @Test
+    public void testRowsAreSpreadAcrossShards() {
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < 1_000; i++) {
+            users.add(new User("user" + i, "password", null));
+        }
+        dbManager.saveAll(users);
+
+        // Cada fila está en un único fragmento y todos reciben una parte parecida
+        int total = 0;
+        for (DataBaseManager shard : shards) {
+            int rows = shard.findAll(User.class).size();
+            assertTrue(rows > 150 && rows < 350, "Fragmento desequilibrado: " + rows);
+            total += rows;
+        }
+        assertEquals(1_000, total);
+
+        // El recorrido combinado sale en orden de ID
+        List<User> all = dbManager.findAll(User.class);
+        for (int i = 1; i < all.size(); i++) {
+            assertTrue(all.get(i - 1).getId() < all.get(i).getId());
+        }
+    }
+
+    @Test
+    public void testOrderReferencesRowsInOtherShards() {
+        User user = dbManager.save(new User("shards", "password", null));
+        List<Pizza> pizzas = dbManager.saveAll(Arrays.asList(new Pizza("Margarita", "Mediana", 10.0),
+                new Pizza("Barbacoa", "Grande", 12.0), new Pizza("Hawaiana", "Pequeña", 8.0)));
+        Order order = dbManager.save(new Order(user, pizzas));
+
+        Order read = dbManager.findById(order.getId(), Order.class).orElseThrow();
+        assertSame(user, read.getUser());
+        assertEquals(3, read.getPizzas().size());
+    }
+
+    @Test
+    public void testUpdateAllAcrossShardsIsAllOrNothing() {
+        List<Pizza> pizzas = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            pizzas.add(new Pizza("Pizza " + i, "Mediana", 10.0));
+        }
+        dbManager.saveAll(pizzas);
+
+        List<Pizza> changed = new ArrayList<>();
+        for (Pizza pizza : pizzas) {
+            changed.add(new Pizza(pizza.getId(), "Cambiada", "Mediana", null, 10.0));
+        }
+        changed.add(new Pizza(99_999L, "No existe", "Mediana", null, 10.0));
+
+        assertThrows(IllegalArgumentException.class, () -> dbManager.updateAll(changed));
+        assertTrue(dbManager.stream(Pizza.class).noneMatch(p -> "Cambiada".equals(p.getName())));
+    }
+
+    @Test
+    public void testConflictOnLaterShardLeavesEarlierShardUnchanged() throws Exception {
+        // El primer fragmento deja que otra escritura lo intente justo antes de confirmar
+        AtomicReference<Runnable> beforeCommit = new AtomicReference<>();
+        DataBaseManager first = new DataBaseManager() {
+            @Override
+            public ITransaction beginTransaction() {
+                return new HookedTransaction(super.beginTransaction(), beforeCommit);
+            }
+        };
+        DataBaseManager second = new DataBaseManager();
+        ShardedDataBaseManager sharded = new ShardedDataBaseManager(Arrays.asList(first, second),
+                ForkJoinPool.commonPool());
+        sharded.connect();
+
+        Pizza inFirst = null;
+        Pizza inSecond = null;
+        while (inFirst == null || inSecond == null) {
+            Pizza pizza = sharded.save(new Pizza("Original", "Small", 5.0));
+            if (first.findById(pizza.getId(), Pizza.class).isPresent()) {
+                inFirst = pizza;
+            } else {
+                inSecond = pizza;
+            }
+        }
+        Long firstId = inFirst.getId();
+        Long secondId = inSecond.getId();
+
+        ITransaction transaction = sharded.beginTransaction();
+        transaction.findById(firstId, Pizza.class);
+        transaction.update(new Pizza(firstId, "Transaction", "Small", null, 5.0));
+        transaction.findById(secondId, Pizza.class);
+        transaction.update(new Pizza(secondId, "Transaction", "Small", null, 5.0));
+
+        Thread writer = new Thread(() -> sharded.update(new Pizza(secondId, "Concurrent", "Small", null, 5.0)));
+        beforeCommit.set(() -> {
+            writer.start();
+            try {
+                writer.join(200);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        boolean committed;
+        try {
+            transaction.commit();
+            committed = true;
+        } catch (VersionConflictException e) {
+            committed = false;
+        }
+        writer.join(10_000);
+
+        // O se confirman los dos fragmentos o ninguno
+        assertEquals(committed ? "Transaction" : "Original",
+                sharded.findById(firstId, Pizza.class).orElseThrow().getName());
+        // La escritura concurrente espera a que termine la confirmación
+        assertTrue(committed);
+        assertEquals("Concurrent", sharded.findById(secondId, Pizza.class).orElseThrow().getName());
+        sharded.disconnect();
+    }
+
+    @Test
+    public void testInvalidShardCount() {
+        assertThrows(IllegalArgumentException.class, () -> new ShardedDataBaseManager(0));
+        assertEquals(8, new ShardedDataBaseManager(8).getShardCount());
+    }
+
+    /**
+     * Transacción que ejecuta una acción antes de confirmar.
+     */
+    private static final class HookedTransaction implements ITransaction {
+        private final ITransaction transaction;
+        private final AtomicReference<Runnable> beforeCommit;
+
+        HookedTransaction(ITransaction transaction, AtomicReference<Runnable> beforeCommit) {
+            this.transaction = transaction;
+            this.beforeCommit = beforeCommit;
+        }
+
+        @Override
+        public <T> T save(T object) {
+            return transaction.save(object);
+        }
+
+        @Override
+        public <T> Optional<T> findById(Long id, Class<T> clazz) {
+            return transaction.findById(id, clazz);
+        }
+
+        @Override
+        public <T> T update(T object) {
+            return transaction.update(object);
+        }
+
+        @Override
+        public <T> boolean delete(Long id, Class<T> clazz) {
+            return transaction.delete(id, clazz);
+        }
+
+        @Override
+        public void commit() {
+            Runnable hook = beforeCommit.getAndSet(null);
+            if (hook != null) {
+                hook.run();
+            }
+            transaction.commit();
+        }
+
+        @Override
+        public void rollback() {
+            transaction.rollback();
+        }
+
+        @Override
+        public boolean isActive() {
+            return transaction.isActive();
+        }
+
+        @Override
+        public void close() {
+            transaction.close();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package ejercicio2.database;
+
+import ejercicio2.interfaces.IDataBaseManager;
+import ejercicio2.model.User;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Mide el rendimiento de una carga mixta de lecturas, actualizaciones e
+ * inserciones desde varios hilos con 1, 2, 4 y 8 fragmentos locales, frente a
+ * un único DataBaseManager sin fachada.
+ *
+ * Uso: java ejercicio2.database.ShardingBenchmark [hilos] [segundos por medida]
+ */
+public class ShardingBenchmark {
+
+    private static final int[] SHARD_COUNTS = {1, 2, 4, 8};
+    private static final int USERS = 100_000;
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        double seconds = args.length > 1 ? Double.parseDouble(args[1]) : 2;
+
+        // Calentamiento para que el JIT compile todos los caminos
+        run(new DataBaseManager(), threads, seconds / 2);
+        for (int shardCount : SHARD_COUNTS) {
+            run(new ShardedDataBaseManager(shardCount), threads, seconds / 2);
+        }
+
+        System.out.printf("%d hilos%n", threads);
+        System.out.printf("%-12s %16s%n", "Fragmentos", "Operaciones/s");
+        System.out.printf("%-12s %16.0f%n", "sin fachada", median(0, threads, seconds));
+        for (int shardCount : SHARD_COUNTS) {
+            System.out.printf("%-12d %16.0f%n", shardCount, median(shardCount, threads, seconds));
+        }
+    }
+
+    private static double median(int shardCount, int threads, double seconds) throws Exception {
+        double[] results = new double[ROUNDS];
+        for (int i = 0; i < ROUNDS; i++) {
+            IDataBaseManager dbManager = shardCount == 0 ? new DataBaseManager() : new ShardedDataBaseManager(shardCount);
+            results[i] = run(dbManager, threads, seconds);
+        }
+        Arrays.sort(results);
+        return results[ROUNDS / 2];
+    }
+
+    /**
+     * @return Operaciones por segundo
+     */
+    private static double run(IDataBaseManager dbManager, int threads, double seconds) throws Exception {
+        dbManager.connect();
+        List<User> users = new ArrayList<>(USERS);
+        for (int i = 0; i < USERS; i++) {
+            users.add(new User("user" + i, "password", "user" + i + "@example.com"));
+        }
+        dbManager.saveAll(users);
+        long[] ids = users.stream().mapToLong(User::getId).toArray();
+
+        AtomicLong operations = new AtomicLong();
+        CountDownLatch start = new CountDownLatch(1);
+        long deadline = System.nanoTime() + (long) (seconds * 1e9);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Thread worker = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                long done = 0;
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                while ((done & 0xFF) != 0 || System.nanoTime() < deadline) {
+                    long id = ids[random.nextInt(ids.length)];
+                    int operation = random.nextInt(10);
+                    if (operation < 7) {
+                        dbManager.findById(id, User.class);
+                    } else if (operation < 9) {
+                        dbManager.update(new User(id, "updated", "password", "updated@example.com", null, null));
+                    } else {
+                        dbManager.save(new User("new", "password", null));
+                    }
+                    done++;
+                }
+                operations.addAndGet(done);
+            });
+            worker.start();
+            workers.add(worker);
+        }
+
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long elapsed = System.nanoTime() - begin;
+        dbManager.disconnect();
+        return operations.get() / (elapsed / 1e9);
+    }
+}
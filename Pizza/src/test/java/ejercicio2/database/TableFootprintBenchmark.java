@@ -0,0 +1,60 @@
+package ejercicio2.database;
+
+import java.lang.ref.Reference;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Compara la memoria que ocupa la estructura de una tabla de N filas con
+ * HashMap&lt;Long, Object&gt; frente a LongObjectMap. Los valores son el mismo
+ * objeto compartido, así que solo se mide el coste de la estructura.
+ *
+ * Uso: java ejercicio2.database.TableFootprintBenchmark [filas]
+ */
+public class TableFootprintBenchmark {
+
+    private static final Object VALUE = new Object();
+
+    public static void main(String[] args) {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+
+        long hashMapBytes = measure(() -> {
+            Map<Long, Object> map = new HashMap<>();
+            for (long id = 1; id <= rows; id++) {
+                map.put(id, VALUE);
+            }
+            return map;
+        });
+
+        long longMapBytes = measure(() -> {
+            LongObjectMap map = new LongObjectMap();
+            for (long id = 1; id <= rows; id++) {
+                map.put(id, VALUE);
+            }
+            return map;
+        });
+
+        System.out.printf("Filas: %,d%n", rows);
+        System.out.printf("HashMap<Long, Object>: %,d bytes (%.1f bytes/fila)%n",
+                hashMapBytes, (double) hashMapBytes / rows);
+        System.out.printf("LongObjectMap:         %,d bytes (%.1f bytes/fila)%n",
+                longMapBytes, (double) longMapBytes / rows);
+    }
+
+    private static long measure(Supplier<Object> builder) {
+        long before = usedHeap();
+        Object structure = builder.get();
+        long after = usedHeap();
+        Reference.reachabilityFence(structure);
+        return after - before;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,246 @@
+package ejercicio2.database;
+
+import ejercicio2.model.Order;
+import ejercicio2.model.TableStats;
+import ejercicio2.model.User;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TableRetentionTest {
+
+    private DataBaseManager dbManager;
+
+    @BeforeEach
+    public void setUp() {
+        dbManager = new DataBaseManager();
+        dbManager.connect();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        dbManager.disconnect();
+    }
+
+    @Test
+    public void testExpiredOrdersGoToOverflowStore() {
+        DataBaseManager archive = new DataBaseManager();
+        archive.connect();
+        User user = dbManager.save(new User("retention", "password", null));
+        archive.save(user);
+
+        LocalDateTime now = LocalDateTime.now();
+        List<Order> orders = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            Order order = new Order(user, new ArrayList<>());
+            order.setOrderDate(i < 200 ? now.minusDays(100) : now);
+            order.setStatus(i % 2 == 0 ? "DELIVERED" : "PENDING");
+            orders.add(order);
+        }
+        dbManager.saveAll(orders);
+
+        dbManager.setRetentionPolicy(RetentionPolicy.of(Order.class)
+                .maxAge(Order::getOrderDate, Duration.ofDays(90))
+                .evictOnly(o -> "DELIVERED".equals(o.getStatus()))
+                .overflowTo(archive::save));
+        assertEquals(100, dbManager.enforceRetention());
+
+        // Solo se van los pedidos entregados y antiguos
+        assertEquals(200, dbManager.findAll(Order.class).size());
+        assertFalse(dbManager.findById(orders.get(0).getId(), Order.class).isPresent());
+        assertTrue(dbManager.findById(orders.get(1).getId(), Order.class).isPresent());
+        assertTrue(dbManager.findById(orders.get(200).getId(), Order.class).isPresent());
+        assertTrue(archive.findById(orders.get(0).getId(), Order.class).isPresent());
+        assertEquals(100, archive.findAll(Order.class).size());
+
+        TableStats stats = dbManager.getTableStats(Order.class);
+        assertEquals(200, stats.getSize());
+        assertEquals(100, stats.getExpiredCount());
+        assertEquals(100, stats.getOverflowCount());
+        assertEquals(0, dbManager.enforceRetention());
+        archive.disconnect();
+    }
+
+    @Test
+    public void testRowChangedDuringEvictionIsNotSentToOverflow() {
+        DataBaseManager archive = new DataBaseManager();
+        archive.connect();
+        User user = dbManager.save(new User("retention", "password", null));
+        archive.save(user);
+
+        List<Order> orders = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            Order order = new Order(user, new ArrayList<>());
+            order.setOrderDate(LocalDateTime.now().minusDays(100));
+            order.setStatus("DELIVERED");
+            orders.add(order);
+        }
+        dbManager.saveAll(orders);
+
+        // La segunda comprobación de una fila es la del lote; al hacerla se
+        // modifica la fila anterior del mismo lote, que ya se ha vuelto a leer
+        Map<Long, Integer> checks = new HashMap<>();
+        AtomicReference<Long> previous = new AtomicReference<>();
+        AtomicReference<Long> changed = new AtomicReference<>();
+        dbManager.setRetentionPolicy(RetentionPolicy.of(Order.class)
+                .maxAge(Order::getOrderDate, Duration.ofDays(90))
+                .evictOnly(o -> {
+                    if (checks.merge(o.getId(), 1, Integer::sum) == 2) {
+                        Long last = previous.getAndSet(o.getId());
+                        Optional<Order> pending = last != null ? dbManager.findById(last, Order.class) : Optional.empty();
+                        if (changed.get() == null && pending.isPresent()) {
+                            Order update = pending.get().copy();
+                            update.setStatus("PENDING");
+                            dbManager.update(update);
+                            changed.set(last);
+                        }
+                    }
+                    return "DELIVERED".equals(o.getStatus());
+                })
+                .overflowTo(archive::save));
+        assertEquals(299, dbManager.enforceRetention());
+
+        // La fila modificada se conserva y no llega al destino
+        assertNotNull(changed.get());
+        assertEquals("PENDING", dbManager.findById(changed.get(), Order.class).orElseThrow().getStatus());
+        assertFalse(archive.findById(changed.get(), Order.class).isPresent());
+        assertEquals(299, archive.findAll(Order.class).size());
+        assertEquals(299, dbManager.getTableStats(Order.class).getOverflowCount());
+        archive.disconnect();
+    }
+
+    @Test
+    public void testFailedOverflowDeliveryIsRetried() {
+        DataBaseManager archive = new DataBaseManager();
+        archive.connect();
+        User user = dbManager.save(new User("retention", "password", null));
+        archive.save(user);
+
+        List<Order> orders = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            Order order = new Order(user, new ArrayList<>());
+            order.setOrderDate(LocalDateTime.now().minusDays(100));
+            orders.add(order);
+        }
+        dbManager.saveAll(orders);
+
+        // El destino rechaza un pedido hasta que se recupera
+        Long rejected = orders.get(0).getId();
+        AtomicBoolean failing = new AtomicBoolean(true);
+        dbManager.setRetentionPolicy(RetentionPolicy.of(Order.class)
+                .maxAge(Order::getOrderDate, Duration.ofDays(90))
+                .overflowTo(order -> {
+                    if (failing.get() && rejected.equals(order.getId())) {
+                        throw new IllegalStateException("Destino no disponible");
+                    }
+                    archive.save(order);
+                }));
+        dbManager.enforceRetention();
+
+        // Los borrados se cuentan y el resto de filas se entrega
+        TableStats stats = dbManager.getTableStats(Order.class);
+        assertEquals(0, stats.getSize());
+        assertEquals(100, stats.getExpiredCount());
+        assertEquals(99, stats.getOverflowCount());
+        assertFalse(archive.findById(rejected, Order.class).isPresent());
+
+        // La fila pendiente se vuelve a enviar en el siguiente paso
+        failing.set(false);
+        dbManager.enforceRetention();
+        assertTrue(archive.findById(rejected, Order.class).isPresent());
+        assertEquals(100, archive.findAll(Order.class).size());
+        assertEquals(100, dbManager.getTableStats(Order.class).getOverflowCount());
+        archive.disconnect();
+    }
+
+    @Test
+    public void testSweepStartsAFullPassAfterABackgroundStep() {
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < 1_000; i++) {
+            users.add(new User("user" + i, "password", null));
+        }
+        dbManager.saveAll(users);
+
+        // Un paso en segundo plano calcula el exceso con 1000 filas y deja la vuelta a medias
+        TableRetention retention = new TableRetention(dbManager.tableFor(User.class),
+                RetentionPolicy.of(User.class).maxEntries(600));
+        retention.step(dbManager);
+        users.clear();
+        for (int i = 0; i < 1_000; i++) {
+            users.add(new User("more" + i, "password", null));
+        }
+        dbManager.saveAll(users);
+
+        // La vuelta explícita recorre todos los segmentos con el exceso actual
+        retention.sweep(dbManager);
+        assertEquals(600, dbManager.findAll(User.class).size());
+    }
+
+    @Test
+    public void testMaxEntriesEvictsOldestRows() {
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < 1_000; i++) {
+            users.add(new User("user" + i, "password", null));
+        }
+        dbManager.saveAll(users);
+
+        dbManager.setRetentionPolicy(RetentionPolicy.of(User.class).maxEntries(600));
+        dbManager.enforceRetention();
+
+        // El exceso se reparte por segmentos redondeando hacia arriba
+        TableStats stats = dbManager.getTableStats(User.class);
+        assertTrue(stats.getSize() <= 600 && stats.getSize() > 600 - Table.SEGMENTS, "Filas: " + stats.getSize());
+        assertEquals(1_000 - stats.getSize(), stats.getCapacityEvictionCount());
+        assertEquals(0, stats.getExpiredCount());
+        assertFalse(dbManager.findById(users.get(0).getId(), User.class).isPresent());
+        assertTrue(dbManager.findById(users.get(999).getId(), User.class).isPresent());
+    }
+
+    @Test
+    public void testBackgroundSweeperEnforcesPolicy() throws InterruptedException {
+        dbManager.setRetentionPolicy(RetentionPolicy.of(User.class).maxEntries(100));
+        for (int i = 0; i < 500; i++) {
+            dbManager.save(new User("user" + i, "password", null));
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (dbManager.getTableStats(User.class).getSize() > 100) {
+            assertTrue(System.nanoTime() < deadline, "El hilo de retención no ha expulsado las filas");
+            Thread.sleep(10);
+        }
+        assertTrue(dbManager.getTableStats(User.class).getEvictionCount() >= 400);
+
+        // Sin política las filas ya no se expulsan
+        dbManager.removeRetentionPolicy(User.class);
+        int size = dbManager.findAll(User.class).size();
+        dbManager.save(new User("extra", "password", null));
+        assertEquals(0, dbManager.enforceRetention());
+        assertEquals(size + 1, dbManager.getTableStats(User.class).getSize());
+    }
+
+    @Test
+    public void testTableStatsWithoutPolicy() {
+        dbManager.save(new User("stats", "password", null));
+        TableStats stats = dbManager.getTableStats(User.class);
+        assertEquals(1, stats.getSize());
+        assertEquals(0, stats.getEvictionCount());
+        assertEquals(0, dbManager.getTableStats(Order.class).getSize());
+        assertEquals(1, dbManager.getTableStats().size());
+
+        assertThrows(IllegalArgumentException.class, () -> RetentionPolicy.of(User.class).maxEntries(-1));
+        assertThrows(IllegalArgumentException.class, () -> dbManager.setRetentionPolicy(null));
+    }
+}
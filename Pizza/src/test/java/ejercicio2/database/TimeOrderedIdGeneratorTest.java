@@ -0,0 +1,73 @@
+package ejercicio2.database;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TimeOrderedIdGeneratorTest {
+
+    private static final long EPOCH = TimeOrderedIdGenerator.DEFAULT_EPOCH_MILLIS;
+
+    @Test
+    public void testIdsEncodeTimeAndNode() {
+        TimeOrderedIdGenerator generator = new TimeOrderedIdGenerator(42, EPOCH, () -> EPOCH + 1_234);
+        long id = generator.nextId();
+        assertTrue(id > 0);
+        assertEquals(42, TimeOrderedIdGenerator.nodeOf(id));
+        assertEquals(EPOCH + 1_234, generator.timestampOf(id));
+        assertEquals(id + 1, generator.getHighWaterMark());
+    }
+
+    @Test
+    public void testSequenceOverflowBorrowsNextMillisecond() {
+        TimeOrderedIdGenerator generator = new TimeOrderedIdGenerator(1, EPOCH, () -> EPOCH + 10);
+        long previous = 0;
+        for (int i = 0; i < 5_000; i++) {
+            long id = generator.nextId();
+            assertTrue(id > previous);
+            previous = id;
+        }
+        assertEquals(EPOCH + 11, generator.timestampOf(previous));
+        assertEquals(1, TimeOrderedIdGenerator.nodeOf(previous));
+    }
+
+    @Test
+    public void testClockGoingBackwardsKeepsIdsGrowing() {
+        AtomicLong clock = new AtomicLong(EPOCH + 5_000);
+        TimeOrderedIdGenerator generator = new TimeOrderedIdGenerator(0, EPOCH, clock::get);
+        long before = generator.nextId();
+        clock.set(EPOCH + 1_000);
+        assertTrue(generator.nextId() > before);
+
+        long[] batch = generator.nextIds(3);
+        assertTrue(batch[0] < batch[1] && batch[1] < batch[2]);
+    }
+
+    @Test
+    public void testNodesNeverCollide() {
+        TimeOrderedIdGenerator first = new TimeOrderedIdGenerator(1, EPOCH, () -> EPOCH);
+        TimeOrderedIdGenerator second = new TimeOrderedIdGenerator(2, EPOCH, () -> EPOCH);
+        Set<Long> ids = new HashSet<>();
+        for (int i = 0; i < 1_000; i++) {
+            assertTrue(ids.add(first.nextId()));
+            assertTrue(ids.add(second.nextId()));
+        }
+    }
+
+    @Test
+    public void testObserveAndInvalidNode() {
+        TimeOrderedIdGenerator other = new TimeOrderedIdGenerator(7, EPOCH, () -> EPOCH + 9_000);
+        long used = other.nextId();
+        TimeOrderedIdGenerator generator = new TimeOrderedIdGenerator(7, EPOCH, () -> EPOCH);
+        generator.observe(used);
+        assertTrue(generator.nextId() > used);
+
+        assertThrows(IllegalArgumentException.class, () -> new TimeOrderedIdGenerator(-1));
+        assertThrows(IllegalArgumentException.class,
+                () -> new TimeOrderedIdGenerator(TimeOrderedIdGenerator.MAX_NODE_ID + 1));
+    }
+}
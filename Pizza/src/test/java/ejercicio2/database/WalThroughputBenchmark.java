@@ -0,0 +1,79 @@
+package ejercicio2.database;
+
+import ejercicio2.model.Pizza;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+/**
+ * Mide las escrituras por segundo de save con varios hilos para la base de
+ * datos en memoria y para cada política de sincronización del registro.
+ *
+ * Uso: java ejercicio2.database.WalThroughputBenchmark [hilos] [escrituras por hilo]
+ */
+public class WalThroughputBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int writesPerThread = args.length > 1 ? Integer.parseInt(args[1]) : 2_000;
+
+        // Calentamiento para que el JIT compile el camino de escritura
+        run(null, threads, writesPerThread);
+        run(SyncPolicy.OS_MANAGED, threads, writesPerThread);
+
+        System.out.printf("%-12s %14s%n", "Política", "escrituras/s");
+        System.out.printf("%-12s %14.0f%n", "MEMORIA", run(null, threads, writesPerThread));
+        for (SyncPolicy policy : SyncPolicy.values()) {
+            System.out.printf("%-12s %14.0f%n", policy, run(policy, threads, writesPerThread));
+        }
+    }
+
+    private static double run(SyncPolicy policy, int threads, int writesPerThread) throws Exception {
+        Path directory = Files.createTempDirectory("wal-benchmark");
+        DataBaseManager dbManager = policy != null
+                ? new DataBaseManager(directory, policy) : new DataBaseManager();
+        dbManager.connect();
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            long start = System.nanoTime();
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < writesPerThread; i++) {
+                        dbManager.save(new Pizza("Margherita", "Medium", 9.99));
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            long elapsed = System.nanoTime() - start;
+            return threads * (double) writesPerThread * 1_000_000_000L / elapsed;
+        } finally {
+            executor.shutdown();
+            dbManager.disconnect();
+            delete(directory);
+        }
+    }
+
+    private static void delete(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.delete(path);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
+}
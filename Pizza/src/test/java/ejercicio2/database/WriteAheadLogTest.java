@@ -0,0 +1,145 @@
+package ejercicio2.database;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WriteAheadLogTest {
+
+    @Test
+    public void testAppendAndReplay(@TempDir Path directory) throws Exception {
+        try (WriteAheadLog log = new WriteAheadLog(directory, SyncPolicy.EVERY_WRITE, 10)) {
+            log.open(0, (lsn, payload) -> fail("El registro debería estar vacío"));
+            for (String text : new String[] {"uno", "dos", "tres"}) {
+                long lsn = log.append(text.getBytes(StandardCharsets.UTF_8));
+                log.awaitDurable(lsn);
+            }
+            assertEquals(3, log.getLastLsn());
+        }
+
+        List<String> replayed = new ArrayList<>();
+        List<Long> lsns = new ArrayList<>();
+        try (WriteAheadLog log = new WriteAheadLog(directory, SyncPolicy.EVERY_WRITE, 10)) {
+            log.open(0, (lsn, payload) -> {
+                lsns.add(lsn);
+                replayed.add(StandardCharsets.UTF_8.decode(payload).toString());
+            });
+            assertEquals(4, log.append(new byte[0]));
+        }
+
+        assertEquals(List.of("uno", "dos", "tres"), replayed);
+        assertEquals(List.of(1L, 2L, 3L), lsns);
+    }
+
+    @Test
+    public void testCorruptRecordTruncatesLog(@TempDir Path directory) throws Exception {
+        try (WriteAheadLog log = new WriteAheadLog(directory, SyncPolicy.OS_MANAGED, 10)) {
+            log.open(0, (lsn, payload) -> { });
+            log.append(new byte[] {1, 2, 3});
+            log.append(new byte[] {4, 5, 6});
+        }
+
+        // Alteramos el último byte del segundo registro
+        try (FileChannel channel = FileChannel.open(directory.resolve(String.format("wal-%020d.log", 1)),
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[] {9}), channel.size() - 1);
+        }
+
+        List<Long> lsns = new ArrayList<>();
+        try (WriteAheadLog log = new WriteAheadLog(directory, SyncPolicy.OS_MANAGED, 10)) {
+            log.open(0, (lsn, payload) -> lsns.add(lsn));
+            assertEquals(List.of(1L), lsns);
+            assertEquals(2, log.append(new byte[] {7}));
+        }
+    }
+
+    @Test
+    public void testConcurrentGroupCommit(@TempDir Path directory) throws Exception {
+        int threads = 8;
+        int recordsPerThread = 200;
+
+        try (WriteAheadLog log = new WriteAheadLog(directory, SyncPolicy.EVERY_WRITE, 10)) {
+            log.open(0, (lsn, payload) -> { });
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            try {
+                List<Future<?>> futures = new ArrayList<>();
+                for (int t = 0; t < threads; t++) {
+                    futures.add(executor.submit(() -> {
+                        for (int i = 0; i < recordsPerThread; i++) {
+                            log.awaitDurable(log.append(new byte[] {(byte) i}));
+                        }
+                        return null;
+                    }));
+                }
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            } finally {
+                executor.shutdown();
+            }
+        }
+
+        List<Long> lsns = new ArrayList<>();
+        try (WriteAheadLog log = new WriteAheadLog(directory, SyncPolicy.EVERY_WRITE, 10)) {
+            log.open(0, (lsn, payload) -> lsns.add(lsn));
+        }
+        assertEquals(threads * recordsPerThread, lsns.size());
+        for (int i = 0; i < lsns.size(); i++) {
+            assertEquals(i + 1, lsns.get(i));
+        }
+    }
+
+    @Test
+    public void testRotateAndDeleteUpTo(@TempDir Path directory) throws Exception {
+        try (WriteAheadLog log = new WriteAheadLog(directory, SyncPolicy.EVERY_WRITE, 10)) {
+            log.open(0, (lsn, payload) -> { });
+            log.append(new byte[] {1});
+            log.append(new byte[] {2});
+            assertEquals(2, log.rotate());
+            assertEquals(0, log.getSegmentBytes());
+            log.append(new byte[] {3});
+            assertEquals(3, log.rotate());
+            log.append(new byte[] {4});
+
+            log.deleteUpTo(2);
+            assertFalse(Files.exists(directory.resolve(String.format("wal-%020d.log", 1))));
+            assertTrue(Files.exists(directory.resolve(String.format("wal-%020d.log", 3))));
+        }
+
+        // Solo se reproducen los registros posteriores al lsn indicado
+        List<Long> lsns = new ArrayList<>();
+        try (WriteAheadLog log = new WriteAheadLog(directory, SyncPolicy.EVERY_WRITE, 10)) {
+            log.open(3, (lsn, payload) -> lsns.add(lsn));
+            assertEquals(5, log.append(new byte[] {5}));
+        }
+        assertEquals(List.of(4L), lsns);
+    }
+
+    @Test
+    public void testEmptySegmentKeepsSequence(@TempDir Path directory) throws Exception {
+        try (WriteAheadLog log = new WriteAheadLog(directory, SyncPolicy.OS_MANAGED, 10)) {
+            log.open(0, (lsn, payload) -> { });
+            log.append(new byte[] {1});
+            log.rotate();
+            log.deleteUpTo(1);
+        }
+
+        try (WriteAheadLog log = new WriteAheadLog(directory, SyncPolicy.OS_MANAGED, 10)) {
+            log.open(1, (lsn, payload) -> fail("No quedan registros por reproducir"));
+            assertEquals(2, log.append(new byte[] {2}));
+        }
+    }
+}
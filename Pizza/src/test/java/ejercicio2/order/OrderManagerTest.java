@@ -1,17 +1,30 @@
 package ejercicio2.order;
 
+import ejercicio2.database.AsyncDataBaseManager;
 import ejercicio2.database.DataBaseManager;
 import ejercicio2.exceptions.OrderException;
 import ejercicio2.interfaces.IDataBaseManager;
 import ejercicio2.model.Order;
+import ejercicio2.model.OrderStatus;
+import ejercicio2.model.Page;
 import ejercicio2.model.Pizza;
 import ejercicio2.model.User;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -104,6 +117,76 @@ public class OrderManagerTest {
         }
     }
 
+    @Test
+    public void testGetUserOrdersPaged() throws OrderException {
+        User otherUser = dbManager.save(new User("otherOrderUser", "password", "other@example.com"));
+        LocalDateTime base = LocalDateTime.of(2024, 1, 1, 12, 0);
+        List<Order> orders = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            Order order = orderManager.createOrder(testUser, testPizzas);
+            order.setOrderDate(base.plusMinutes(i));
+            orders.add(order);
+            orderManager.createOrder(otherUser, testPizzas);
+        }
+        // Dos pedidos a la misma hora se ordenan por ID
+        orders.get(6).setOrderDate(base.plusMinutes(5));
+        dbManager.updateAll(orders);
+
+        Page<Order> page = orderManager.getUserOrders(testUser, null, 3);
+        assertEquals(3, page.getItems().size());
+        assertEquals(orders.get(6).getId(), page.getItems().get(0).getId());
+        assertEquals(orders.get(5).getId(), page.getItems().get(1).getId());
+        assertEquals(orders.get(4).getId(), page.getItems().get(2).getId());
+        assertTrue(page.hasNext());
+
+        // Cambiar el estado no mueve el pedido, y uno nuevo no desplaza el recorrido
+        orderManager.updateOrderStatus(orders.get(3).getId(), "PROCESSING");
+        orderManager.cancelOrder(orders.get(2).getId());
+        orderManager.createOrder(testUser, testPizzas);
+        page = orderManager.getUserOrders(testUser, page.getNextCursor(), 3);
+        assertEquals(3, page.getItems().size());
+        assertEquals(orders.get(3).getId(), page.getItems().get(0).getId());
+        assertEquals("PROCESSING", page.getItems().get(0).getStatus());
+        assertEquals("CANCELLED", page.getItems().get(1).getStatus());
+
+        page = orderManager.getUserOrders(testUser, page.getNextCursor(), 3);
+        assertEquals(1, page.getItems().size());
+        assertEquals(orders.get(0).getId(), page.getItems().get(0).getId());
+        assertFalse(page.hasNext());
+
+        assertTrue(orderManager.getUserOrders(null, null, 3).getItems().isEmpty());
+        assertThrows(OrderException.class, () -> orderManager.getUserOrders(testUser, null, 0));
+        assertThrows(OrderException.class, () -> orderManager.getUserOrders(testUser, "no-es-un-cursor", 3));
+    }
+
+    @Test
+    public void testOrdersByDate() throws OrderException {
+        Order first = orderManager.createOrder(testUser, testPizzas);
+        Order second = orderManager.createOrder(testUser, testPizzas);
+        Order third = orderManager.createOrder(testUser, testPizzas);
+
+        // Fijar fechas distintas para que el orden no dependa del reloj
+        LocalDateTime now = LocalDateTime.now();
+        first.setOrderDate(now.minusMinutes(30));
+        second.setOrderDate(now.minusMinutes(4));
+        third.setOrderDate(now.minusMinutes(1));
+        dbManager.updateAll(Arrays.asList(first, second, third));
+
+        List<Order> recent = orderManager.getOrdersBetween(now.minusMinutes(5), null);
+        assertEquals(2, recent.size());
+        assertEquals(second.getId(), recent.get(0).getId());
+        assertEquals(third.getId(), recent.get(1).getId());
+
+        List<Order> latest = orderManager.getLatestOrders(2);
+        assertEquals(2, latest.size());
+        assertEquals(third.getId(), latest.get(0).getId());
+        assertEquals(second.getId(), latest.get(1).getId());
+
+        assertThrows(OrderException.class, () -> {
+            orderManager.getLatestOrders(-1);
+        });
+    }
+
     @Test
     public void testUpdateOrderStatus() throws OrderException {
         // Crear un pedido
@@ -150,7 +233,8 @@ public class OrderManagerTest {
         // Crear un pedido
         Order order = orderManager.createOrder(testUser, testPizzas);
 
-        // Marcar el pedido como entregado
+        // Marcar el pedido como entregado, pasando por PROCESSING
+        orderManager.updateOrderStatus(order.getId(), "PROCESSING");
         orderManager.updateOrderStatus(order.getId(), "DELIVERED");
 
         // Intentar cancelar un pedido ya entregado
@@ -159,6 +243,52 @@ public class OrderManagerTest {
         });
     }
 
+    @Test
+    public void testTransitionStatus() throws OrderException {
+        Order order = orderManager.createOrder(testUser, testPizzas);
+
+        Order processing = orderManager.transitionStatus(order.getId(), OrderStatus.PENDING, OrderStatus.PROCESSING);
+        assertEquals(OrderStatus.PROCESSING, processing.getOrderStatus());
+        assertEquals("PROCESSING", orderManager.getOrderById(order.getId()).getStatus());
+
+        // El pedido ya no está pendiente
+        assertThrows(OrderException.class, () ->
+                orderManager.transitionStatus(order.getId(), OrderStatus.PENDING, OrderStatus.CANCELLED));
+        // Transición que no está en la tabla
+        assertThrows(OrderException.class, () ->
+                orderManager.transitionStatus(order.getId(), OrderStatus.PROCESSING, OrderStatus.PENDING));
+
+        orderManager.transitionStatus(order.getId(), OrderStatus.PROCESSING, OrderStatus.DELIVERED);
+        assertTrue(OrderStatus.DELIVERED.isFinal());
+        assertThrows(OrderException.class, () ->
+                orderManager.transitionStatus(order.getId(), OrderStatus.DELIVERED, OrderStatus.CANCELLED));
+        assertEquals(OrderStatus.DELIVERED, orderManager.getOrderById(order.getId()).getOrderStatus());
+
+        assertThrows(OrderException.class, () ->
+                orderManager.transitionStatus(-1L, OrderStatus.PENDING, OrderStatus.PROCESSING));
+    }
+
+    @Test
+    public void testStatusCounts() throws OrderException {
+        Order first = orderManager.createOrder(testUser, testPizzas);
+        Order second = orderManager.createOrder(testUser, testPizzas);
+        orderManager.createOrder(testUser, testPizzas);
+
+        orderManager.transitionStatus(first.getId(), OrderStatus.PENDING, OrderStatus.PROCESSING);
+        orderManager.cancelOrder(second.getId());
+
+        Map<OrderStatus, Integer> counts = orderManager.getStatusCounts();
+        assertEquals(OrderStatus.values().length, counts.size());
+        assertEquals(1, counts.get(OrderStatus.PENDING));
+        assertEquals(1, counts.get(OrderStatus.PROCESSING));
+        assertEquals(0, counts.get(OrderStatus.DELIVERED));
+        assertEquals(1, counts.get(OrderStatus.CANCELLED));
+
+        // Los contadores siguen también a los cambios que no pasan por el gestor
+        dbManager.delete(first.getId(), Order.class);
+        assertEquals(0, orderManager.getStatusCounts().get(OrderStatus.PROCESSING));
+    }
+
     @Test
     public void testCalculateOrderPrice() throws OrderException {
         // Crear pizzas con precios conocidos
@@ -175,4 +305,188 @@ public class OrderManagerTest {
         // Verificar que el cálculo es correcto
         assertEquals(13.98, totalPrice, 0.01);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testConcurrentCancelSucceedsOnlyOnce() throws Exception {
+        Order order = orderManager.createOrder(testUser, testPizzas);
+
+        int threads = 8;
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger cancelled = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for (int i = 0; i < threads; i++) {
+            executor.execute(() -> {
+                try {
+                    start.await();
+                    orderManager.cancelOrder(order.getId());
+                    cancelled.incrementAndGet();
+                } catch (OrderException e) {
+                    rejected.incrementAndGet();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        // Solo una cancelación ve el pedido pendiente; el resto ya lo ve cancelado
+        assertEquals(1, cancelled.get());
+        assertEquals(threads - 1, rejected.get());
+        assertEquals("CANCELLED", orderManager.getOrderById(order.getId()).getStatus());
+    }
+
+    @Test
+    public void testConcurrentStatusUpdatesDoNotLoseOrders() throws Exception {
+        Order order = orderManager.createOrder(testUser, testPizzas);
+
+        int threads = 4;
+        int updatesPerThread = 200;
+        AtomicInteger applied = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            String status = t % 2 == 0 ? "PROCESSING" : "DELIVERED";
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < updatesPerThread; i++) {
+                    try {
+                        orderManager.updateOrderStatus(order.getId(), status);
+                        applied.incrementAndGet();
+                    } catch (OrderException e) {
+                        // Transición no permitida desde el estado actual
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get(10, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        // Cada actualización se aplica sobre la versión que ha leído, sin pisar otros campos,
+        // y cada estado se alcanza como mucho una vez
+        Order updated = orderManager.getOrderById(order.getId());
+        assertTrue("PROCESSING".equals(updated.getStatus()) || "DELIVERED".equals(updated.getStatus()));
+        assertEquals("PROCESSING".equals(updated.getStatus()) ? 1 : 2, applied.get());
+        assertEquals(order.getTotalPrice(), updated.getTotalPrice(), 0.001);
+        assertEquals(testPizzas.size(), updated.getPizzas().size());
+    }
+
+    @Test
+    public void testUpdateOrderStatusRejectsIllegalTransitions() throws OrderException {
+        Order order = orderManager.createOrder(testUser, testPizzas);
+        assertThrows(OrderException.class, () -> orderManager.updateOrderStatus(order.getId(), "DELIVERED"));
+        assertThrows(OrderException.class, () -> orderManager.updateOrderStatus(order.getId(), "PENDING"));
+
+        orderManager.updateOrderStatus(order.getId(), "PROCESSING");
+        orderManager.updateOrderStatus(order.getId(), "DELIVERED");
+
+        // Un pedido entregado no vuelve a estar pendiente
+        assertThrows(OrderException.class, () -> orderManager.updateOrderStatus(order.getId(), "PENDING"));
+        assertEquals(OrderStatus.DELIVERED, orderManager.getOrderById(order.getId()).getOrderStatus());
+    }
+
+    @Test
+    public void testConcurrentCancelAndUpdateApplyOne() throws Exception {
+        for (int round = 0; round < 50; round++) {
+            Order order = orderManager.createOrder(testUser, testPizzas);
+            orderManager.updateOrderStatus(order.getId(), "PROCESSING");
+
+            CountDownLatch start = new CountDownLatch(1);
+            ExecutorService executor = Executors.newFixedThreadPool(2);
+            Future<Boolean> cancel = executor.submit(() -> {
+                start.await();
+                try {
+                    return orderManager.cancelOrder(order.getId());
+                } catch (OrderException e) {
+                    return false;
+                }
+            });
+            Future<Boolean> deliver = executor.submit(() -> {
+                start.await();
+                try {
+                    orderManager.updateOrderStatus(order.getId(), "DELIVERED");
+                    return true;
+                } catch (OrderException e) {
+                    return false;
+                }
+            });
+            start.countDown();
+            boolean cancelled = cancel.get(10, TimeUnit.SECONDS);
+            boolean delivered = deliver.get(10, TimeUnit.SECONDS);
+            executor.shutdown();
+
+            // Los dos estados son finales: solo uno de los cambios se aplica
+            assertTrue(cancelled ^ delivered);
+            assertEquals(cancelled ? OrderStatus.CANCELLED : OrderStatus.DELIVERED,
+                    orderManager.getOrderById(order.getId()).getOrderStatus());
+        }
+    }
+
+    @Test
+    public void testConcurrentTransitionsFromSameStatusApplyOnce() throws Exception {
+        Order order = orderManager.createOrder(testUser, testPizzas);
+
+        int threads = 8;
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger applied = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for (int i = 0; i < threads; i++) {
+            OrderStatus target = i % 2 == 0 ? OrderStatus.PROCESSING : OrderStatus.CANCELLED;
+            executor.execute(() -> {
+                try {
+                    start.await();
+                    orderManager.transitionStatus(order.getId(), OrderStatus.PENDING, target);
+                    applied.incrementAndGet();
+                } catch (OrderException e) {
+                    rejected.incrementAndGet();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        // Solo la primera transición ve el pedido pendiente
+        assertEquals(1, applied.get());
+        assertEquals(threads - 1, rejected.get());
+        OrderStatus status = orderManager.getOrderById(order.getId()).getOrderStatus();
+        assertTrue(status == OrderStatus.PROCESSING || status == OrderStatus.CANCELLED);
+        assertEquals(1, orderManager.getStatusCounts().get(status));
+        assertEquals(0, orderManager.getStatusCounts().get(OrderStatus.PENDING));
+    }
+
+    @Test
+    public void testCreateOrderAsync() throws Exception {
+        // Muchos pedidos en curso a la vez sobre solo dos hilos
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        OrderManager asyncManager = new OrderManager(dbManager, new AsyncDataBaseManager(dbManager, executor));
+        int orders = 1_000;
+        List<CompletableFuture<Order>> futures = new ArrayList<>();
+        for (int i = 0; i < orders; i++) {
+            List<Pizza> pizzas = List.of(new Pizza("Margherita", "Medium", 9.99), new Pizza("Pepperoni", "Large", 12.99));
+            futures.add(asyncManager.createOrderAsync(testUser, pizzas));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get(10, TimeUnit.SECONDS);
+        executor.shutdown();
+
+        for (CompletableFuture<Order> future : futures) {
+            Order order = future.get();
+            assertEquals(order, orderManager.getOrderById(order.getId()));
+            assertEquals(22.98, order.getTotalPrice(), 0.01);
+        }
+        assertEquals(orders, orderManager.getUserOrders(testUser).size());
+
+        // Los datos no válidos se rechazan sin llegar a la base de datos
+        CompletableFuture<Order> invalid = asyncManager.createOrderAsync(testUser, new ArrayList<>());
+        assertTrue(invalid.isCompletedExceptionally());
+        ExecutionException e = assertThrows(ExecutionException.class, invalid::get);
+        assertInstanceOf(OrderException.class, e.getCause());
+    }
+}
@@ -1,23 +1,38 @@
 package ejercicio2.payment;
 
 import ejercicio2.database.DataBaseManager;
+import ejercicio2.exceptions.OrderException;
 import ejercicio2.exceptions.PaymentException;
 import ejercicio2.model.Order;
+import ejercicio2.model.OrderStatus;
 import ejercicio2.model.Pizza;
 import ejercicio2.model.User;
 import ejercicio2.interfaces.IDataBaseManager;
+import ejercicio2.order.OrderManager;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 
 public class PaymentProcessorTest {
 
+    // Fecha de expiración que no caduca al pasar el tiempo
+    private static final String VALID_EXPIRY = YearMonth.now().plusYears(2).format(DateTimeFormatter.ofPattern("MM/yy"));
+
     private IDataBaseManager dbManager;
     private PaymentProcessor paymentProcessor;
+    private OrderManager orderManager;
     private Order testOrder;
 
     @BeforeEach
@@ -25,6 +40,7 @@ public class PaymentProcessorTest {
         dbManager = new DataBaseManager();
         dbManager.connect();
         paymentProcessor = new PaymentProcessor(dbManager);
+        orderManager = new OrderManager(dbManager);
 
         // Crear usuario, pizzas y orden de prueba
         User user = new User("paymentUser", "password", "payment@example.com");
@@ -47,7 +63,7 @@ public class PaymentProcessorTest {
         String transactionId = paymentProcessor.processPayment(
                 testOrder,
                 "4111111111111111", // Número de tarjeta de prueba
-                "12/25", // Fecha de expiración
+                VALID_EXPIRY, // Fecha de expiración
                 "123" // CVV
         );
 
@@ -68,7 +84,7 @@ public class PaymentProcessorTest {
             paymentProcessor.processPayment(
                     testOrder,
                     "1234", // Número de tarjeta inválido
-                    "12/25",
+                    VALID_EXPIRY,
                     "123"
             );
         });
@@ -92,19 +108,37 @@ public class PaymentProcessorTest {
             paymentProcessor.processPayment(
                     testOrder,
                     "4111111111111111",
-                    "12/25",
+                    VALID_EXPIRY,
                     "1" // CVV inválido
             );
         });
     }
 
+    @Test
+    public void testExpiryDateLimits() throws PaymentException {
+        DateTimeFormatter format = DateTimeFormatter.ofPattern("MM/yy");
+
+        // La tarjeta sirve hasta el final del mes indicado
+        assertNotNull(paymentProcessor.processPayment(
+                testOrder, "4111111111111111", YearMonth.now().format(format), "123"));
+
+        Order another = dbManager.save(new Order(testOrder.getUser(), testOrder.getPizzas()));
+        assertThrows(PaymentException.class, () -> paymentProcessor.processPayment(
+                another, "4111111111111111", YearMonth.now().minusMonths(1).format(format), "123"));
+        String nextYear = YearMonth.now().plusYears(1).format(DateTimeFormatter.ofPattern("yy"));
+        assertThrows(PaymentException.class, () -> paymentProcessor.processPayment(
+                another, "4111111111111111", "13/" + nextYear, "123"));
+        assertThrows(PaymentException.class, () -> paymentProcessor.processPayment(
+                another, "4111111111111111", "00/" + nextYear, "123"));
+    }
+
     @Test
     public void testVerifyPayment() throws PaymentException {
         // Procesar un pago
         String transactionId = paymentProcessor.processPayment(
                 testOrder,
                 "4111111111111111",
-                "12/25",
+                VALID_EXPIRY,
                 "123"
         );
 
@@ -128,7 +162,7 @@ public class PaymentProcessorTest {
         String transactionId = paymentProcessor.processPayment(
                 testOrder,
                 "4111111111111111",
-                "12/25",
+                VALID_EXPIRY,
                 "123"
         );
 
@@ -146,6 +180,67 @@ public class PaymentProcessorTest {
         assertEquals("CANCELLED", updatedOrder.getStatus());
     }
 
+    @Test
+    public void testPaymentAndRefundFollowStatusTransitions() throws Exception {
+        String transactionId = paymentProcessor.processPayment(testOrder, "4111111111111111", VALID_EXPIRY, "123");
+
+        // Un pedido ya pagado no se vuelve a pagar
+        assertThrows(PaymentException.class,
+                () -> paymentProcessor.processPayment(testOrder, "4111111111111111", VALID_EXPIRY, "123"));
+
+        // Un pedido entregado no se reembolsa
+        orderManager.updateOrderStatus(testOrder.getId(), "DELIVERED");
+        assertThrows(PaymentException.class, () -> paymentProcessor.refundPayment(transactionId));
+        assertEquals("COMPLETED", paymentProcessor.verifyPayment(transactionId));
+        assertEquals(OrderStatus.DELIVERED, dbManager.findById(testOrder.getId(), Order.class).orElseThrow().getOrderStatus());
+
+        // Un pedido cancelado no se paga
+        Order cancelled = dbManager.save(new Order(testOrder.getUser(), testOrder.getPizzas()));
+        orderManager.cancelOrder(cancelled.getId());
+        assertThrows(PaymentException.class,
+                () -> paymentProcessor.processPayment(cancelled, "4111111111111111", VALID_EXPIRY, "123"));
+        ExecutionException e = assertThrows(ExecutionException.class,
+                () -> paymentProcessor.processPaymentAsync(cancelled, "4111111111111111", VALID_EXPIRY, "123").get());
+        assertInstanceOf(PaymentException.class, e.getCause());
+        assertEquals(OrderStatus.CANCELLED, dbManager.findById(cancelled.getId(), Order.class).orElseThrow().getOrderStatus());
+    }
+
+    @Test
+    public void testConcurrentCancelAndRefundApplyOne() throws Exception {
+        for (int round = 0; round < 50; round++) {
+            Order order = dbManager.save(new Order(testOrder.getUser(), testOrder.getPizzas()));
+            String transactionId = paymentProcessor.processPayment(order, "4111111111111111", VALID_EXPIRY, "123");
+
+            CountDownLatch start = new CountDownLatch(1);
+            ExecutorService executor = Executors.newFixedThreadPool(2);
+            Future<Boolean> cancel = executor.submit(() -> {
+                start.await();
+                try {
+                    return orderManager.cancelOrder(order.getId());
+                } catch (OrderException e) {
+                    return false;
+                }
+            });
+            Future<Boolean> refund = executor.submit(() -> {
+                start.await();
+                try {
+                    return paymentProcessor.refundPayment(transactionId);
+                } catch (PaymentException e) {
+                    return false;
+                }
+            });
+            start.countDown();
+            boolean cancelled = cancel.get(10, TimeUnit.SECONDS);
+            boolean refunded = refund.get(10, TimeUnit.SECONDS);
+            executor.shutdown();
+
+            // Solo uno de los dos cancela el pedido, y el pago solo queda reembolsado si fue el reembolso
+            assertTrue(cancelled ^ refunded);
+            assertEquals(refunded ? "REFUNDED" : "COMPLETED", paymentProcessor.verifyPayment(transactionId));
+            assertEquals(OrderStatus.CANCELLED, dbManager.findById(order.getId(), Order.class).orElseThrow().getOrderStatus());
+        }
+    }
+
     @Test
     public void testRefundNonExistentPayment() {
         assertThrows(PaymentException.class, () -> {
@@ -159,7 +254,7 @@ public class PaymentProcessorTest {
         String transactionId = paymentProcessor.processPayment(
                 testOrder,
                 "4111111111111111",
-                "12/25",
+                VALID_EXPIRY,
                 "123"
         );
 
@@ -204,9 +299,31 @@ public class PaymentProcessorTest {
             paymentProcessor.processPayment(
                     finalZeroOrder,
                     "4111111111111111",
-                    "12/25",
+                    VALID_EXPIRY,
                     "123"
             );
         });
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testProcessPaymentAsync() throws Exception {
+        String transactionId = paymentProcessor.processPaymentAsync(testOrder, "4111111111111111", VALID_EXPIRY, "123")
+                .get(10, TimeUnit.SECONDS);
+
+        assertEquals("COMPLETED", paymentProcessor.verifyPayment(transactionId));
+        Order updatedOrder = dbManager.findById(testOrder.getId(), Order.class).orElseThrow();
+        assertEquals(transactionId, updatedOrder.getPaymentTransactionId());
+        assertEquals("PROCESSING", updatedOrder.getStatus());
+        assertEquals(transactionId, testOrder.getPaymentTransactionId());
+
+        ExecutionException e = assertThrows(ExecutionException.class,
+                () -> paymentProcessor.processPaymentAsync(testOrder, "4111", VALID_EXPIRY, "123").get());
+        assertInstanceOf(PaymentException.class, e.getCause());
+
+        Order missing = new Order(testOrder.getUser(), testOrder.getPizzas());
+        missing.setId(999_999L);
+        e = assertThrows(ExecutionException.class,
+                () -> paymentProcessor.processPaymentAsync(missing, "4111111111111111", VALID_EXPIRY, "123").get());
+        assertInstanceOf(PaymentException.class, e.getCause());
+    }
+}